@@ -24,8 +24,8 @@ public class Alias implements Serializable {
 	 * @param alias
 	 */
 	Alias(String name, String alias) {
-		this.setName(name);
-		this.setAlias(alias);
+		this.name = name;
+		this.alias = alias;
 	}
 
 	/**
@@ -41,8 +41,7 @@ public class Alias implements Serializable {
 	 * @param name
 	 */
 	Alias() {
-		this.setName("");
-		this.setAlias("");
+		this("", "");
 	}
 
 	public String getName() {
@@ -63,7 +62,7 @@ public class Alias implements Serializable {
 
 	@Override
 	public String toString() {
-		return alias;
+		return getAlias();
 	}
 
 }
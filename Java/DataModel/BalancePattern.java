@@ -0,0 +1,241 @@
+package DataModel;
+
+/**
+ * Class holding the part of the mass balance equations that depends only on the active species pattern
+ * A pattern is the set of product species with non-zero molar flow and the set of elements available in the feed.
+ * With the product species molar flows n, the scaled stoichiometry matrix is B = A*diag(n), where A is the atom count matrix of the pattern.
+ * The Schur complement of the Lagrangian equations B*B' = sum of n_k^2*a_k*a_k' over the columns a_k of A, and the matrix of the regression equations
+ * B'*B = diag(n)*A'*A*diag(n), so the non-zero products of atom counts are computed once for a pattern and each case only scales them by the flows.
+ * A pattern is not modified after construction and can be shared by multiple threads.
+ */
+public class BalancePattern
+{
+	//number of product species with non-zero flow
+	private int nSpeciesProduct;
+
+	//number of elements available in feed
+	private int nElementFeed;
+
+	//all species indices of the product species
+	private int[] iProduct2All;
+
+	//product species indices of all species, -1 if not a product species
+	private int[] iAll2Product;
+
+	//element columns of the plan available in feed
+	private int[] iElementFeedColumn;
+
+	//atom count of feed element i in product species j stored at i*nSpeciesProduct+j
+	private double[] atomCount;
+
+	//true if there are more feed elements than product species and the regression equations are used
+	private boolean bRegression;
+
+	//non-zero terms of the lower triangle of the Schur complement, entry p of the triangle in row major order
+	//is the sum of schurProduct[t]*n_k^2 with k = schurSpecies[t] for t from schurStart[p] to schurStart[p+1]-1
+	private int[] schurStart;
+	private int[] schurSpecies;
+	private double[] schurProduct;
+
+	//lower triangle of A'*A for the regression equations, entry (i,j) at i*nSpeciesProduct+j
+	private double[] gram;
+
+	//constructor with the first nSpeciesProduct indices of iProduct2All and the first nElementFeed element columns of iElementFeedColumn
+	public BalancePattern(ElementBalancePlan plan, int[] iProduct2All, int nSpeciesProduct, int[] iElementFeedColumn, int nElementFeed)
+	{
+		int i, j, k, p;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		double[] planAtomCount = plan.getAtomCounts();
+		double product;
+		this.nSpeciesProduct = nSpeciesProduct;
+		this.nElementFeed = nElementFeed;
+		this.iProduct2All = new int[nSpeciesProduct];
+		System.arraycopy(iProduct2All, 0, this.iProduct2All, 0, nSpeciesProduct);
+		this.iElementFeedColumn = new int[nElementFeed];
+		System.arraycopy(iElementFeedColumn, 0, this.iElementFeedColumn, 0, nElementFeed);
+		iAll2Product = new int[nSpecies];
+		for (i=0; i<nSpecies; i++)
+			iAll2Product[i] = -1;
+		for (i=0; i<nSpeciesProduct; i++)
+			iAll2Product[iProduct2All[i]] = i;
+		atomCount = new double[nElementFeed*nSpeciesProduct];
+		for (i=0; i<nElementFeed; i++)
+		{
+			for (j=0; j<nSpeciesProduct; j++)
+				atomCount[i*nSpeciesProduct+j] = planAtomCount[iProduct2All[j]*nElement+iElementFeedColumn[i]];
+		}
+		bRegression = nElementFeed>nSpeciesProduct;
+		if (bRegression)
+		{
+			gram = new double[nSpeciesProduct*nSpeciesProduct];
+			for (i=0; i<nSpeciesProduct; i++)
+			{
+				for (j=0; j<=i; j++)
+				{
+					product = 0;
+					for (k=0; k<nElementFeed; k++)
+						product += atomCount[k*nSpeciesProduct+i]*atomCount[k*nSpeciesProduct+j];
+					gram[i*nSpeciesProduct+j] = product;
+				}
+			}
+			return;
+		}
+		//count the non-zero terms first
+		int nTerm = 0;
+		for (i=0; i<nElementFeed; i++)
+		{
+			for (j=0; j<=i; j++)
+			{
+				for (k=0; k<nSpeciesProduct; k++)
+				{
+					if (atomCount[i*nSpeciesProduct+k]*atomCount[j*nSpeciesProduct+k]!=0)
+						nTerm++;
+				}
+			}
+		}
+		schurStart = new int[nElementFeed*(nElementFeed+1)/2+1];
+		schurSpecies = new int[nTerm];
+		schurProduct = new double[nTerm];
+		p = 0;
+		nTerm = 0;
+		for (i=0; i<nElementFeed; i++)
+		{
+			for (j=0; j<=i; j++)
+			{
+				schurStart[p++] = nTerm;
+				for (k=0; k<nSpeciesProduct; k++)
+				{
+					product = atomCount[i*nSpeciesProduct+k]*atomCount[j*nSpeciesProduct+k];
+					if (product!=0)
+					{
+						schurSpecies[nTerm] = k;
+						schurProduct[nTerm] = product;
+						nTerm++;
+					}
+				}
+			}
+		}
+		schurStart[p] = nTerm;
+	}
+
+	public int getNumberOfProductSpecies()
+	{
+		return nSpeciesProduct;
+	}
+
+	public int getNumberOfFeedElements()
+	{
+		return nElementFeed;
+	}
+
+	public int[] getProduct2AllIndices()
+	{
+		return iProduct2All;
+	}
+
+	public int[] getAll2ProductIndices()
+	{
+		return iAll2Product;
+	}
+
+	public int[] getElementFeedColumns()
+	{
+		return iElementFeedColumn;
+	}
+
+	//flat feed element by product species atom count matrix
+	public double[] getAtomCounts()
+	{
+		return atomCount;
+	}
+
+	public boolean isRegression()
+	{
+		return bRegression;
+	}
+
+	//lower triangle of the Schur complement B*B' for the squared product species flows, only for the Lagrangian equations
+	public void calcSchurComplement(double[] flowSquared, double[] schurMatrix)
+	{
+		int i, j, p, t;
+		int tEnd;
+		double sum;
+		p = 0;
+		for (i=0; i<nElementFeed; i++)
+		{
+			for (j=0; j<=i; j++)
+			{
+				sum = 0;
+				tEnd = schurStart[p+1];
+				for (t=schurStart[p]; t<tEnd; t++)
+					sum += schurProduct[t]*flowSquared[schurSpecies[t]];
+				schurMatrix[i*nElementFeed+j] = sum;
+				p++;
+			}
+		}
+	}
+
+	//Schur complements of cases c0 to c1-1 of a block, flowSquared[k][c] is the squared flow of product species k of case c
+	//and entry (i,j) of the lower triangle of case c is stored in schurMatrix[i*nElementFeed+j][c]
+	public void calcSchurComplement(double[][] flowSquared, double[][] schurMatrix, int c0, int c1)
+	{
+		int i, j, p, t, c;
+		int tEnd;
+		double product;
+		double[] sij, fk;
+		p = 0;
+		for (i=0; i<nElementFeed; i++)
+		{
+			for (j=0; j<=i; j++)
+			{
+				sij = schurMatrix[i*nElementFeed+j];
+				for (c=c0; c<c1; c++)
+					sij[c] = 0;
+				tEnd = schurStart[p+1];
+				for (t=schurStart[p]; t<tEnd; t++)
+				{
+					product = schurProduct[t];
+					fk = flowSquared[schurSpecies[t]];
+					for (c=c0; c<c1; c++)
+						sij[c] += product*fk[c];
+				}
+				p++;
+			}
+		}
+	}
+
+	//lower triangle of the regression matrix B'*B for the product species flows, only for the regression equations
+	public void calcNormalMatrix(double[] flow, double[] normalMatrix)
+	{
+		int i, j, in;
+		for (i=0; i<nSpeciesProduct; i++)
+		{
+			in = i*nSpeciesProduct;
+			for (j=0; j<=i; j++)
+				normalMatrix[in+j] = flow[i]*flow[j]*gram[in+j];
+		}
+	}
+
+	//regression matrices of cases c0 to c1-1 of a block, flow[k][c] is the flow of product species k of case c
+	//and entry (i,j) of the lower triangle of case c is stored in normalMatrix[i*nSpeciesProduct+j][c]
+	public void calcNormalMatrix(double[][] flow, double[][] normalMatrix, int c0, int c1)
+	{
+		int i, j, c, in;
+		double g;
+		double[] nij, fi, fj;
+		for (i=0; i<nSpeciesProduct; i++)
+		{
+			in = i*nSpeciesProduct;
+			fi = flow[i];
+			for (j=0; j<=i; j++)
+			{
+				g = gram[in+j];
+				fj = flow[j];
+				nij = normalMatrix[in+j];
+				for (c=c0; c<c1; c++)
+					nij[c] = fi[c]*fj[c]*g;
+			}
+		}
+	}
+}
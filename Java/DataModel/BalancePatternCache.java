@@ -0,0 +1,173 @@
+package DataModel;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class of a least recently used cache of BalancePattern keyed by the active species pattern
+ * The key is a bit mask of the product species with non-zero flow followed by a bit mask of the elements available in feed.
+ * The pattern of the last lookup is checked first, so a batch in which most cases share one pattern does not hash the key.
+ * A lookup that finds a cached pattern does not allocate memory. The cache is not thread-safe, each corrector owns its cache.
+ */
+public class BalancePatternCache
+{
+	//default maximum number of cached patterns
+	public static final int defaultCapacity = 16;
+
+	//key of the cache, the words are only changed for the probe key
+	private static class PatternKey
+	{
+		private long[] words;
+		private int hash;
+
+		PatternKey(int nWord)
+		{
+			words = new long[nWord];
+		}
+
+		PatternKey(PatternKey key)
+		{
+			words = key.words.clone();
+			hash = key.hash;
+		}
+
+		void updateHash()
+		{
+			hash = Arrays.hashCode(words);
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof PatternKey))
+				return false;
+			PatternKey key = (PatternKey)obj;
+			return hash==key.hash && Arrays.equals(words, key.words);
+		}
+	}
+
+	private ElementBalancePlan plan;
+
+	//maximum number of cached patterns
+	private int capacity;
+
+	//number of 64-bit words of the species mask
+	private int nWordSpecies;
+
+	//reused key of the pattern being looked up
+	private PatternKey probe;
+
+	//key and pattern of the last lookup
+	private PatternKey lastKey;
+	private BalancePattern lastPattern;
+
+	//cached patterns in access order
+	private LinkedHashMap<PatternKey,BalancePattern> patterns;
+
+	//statistics
+	private long nHit;
+	private long nMiss;
+
+	//scratch array of product species indices for building a new pattern
+	private int[] iProduct2All;
+
+	public BalancePatternCache(ElementBalancePlan plan, int capacity)
+	{
+		this.plan = plan;
+		this.capacity = capacity>0 ? capacity : 1;
+		nWordSpecies = (plan.getNumberOfSpecies()+63)/64;
+		probe = new PatternKey(nWordSpecies + (plan.getNumberOfElements()+63)/64);
+		iProduct2All = new int[plan.getNumberOfSpecies()];
+		patterns = new LinkedHashMap<PatternKey,BalancePattern>(16, 0.75f, true)
+		{
+			protected boolean removeEldestEntry(Map.Entry<PatternKey,BalancePattern> eldest)
+			{
+				return size()>BalancePatternCache.this.capacity;
+			}
+		};
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public int size()
+	{
+		return patterns.size();
+	}
+
+	public long getNumberOfHits()
+	{
+		return nHit;
+	}
+
+	public long getNumberOfMisses()
+	{
+		return nMiss;
+	}
+
+	//pattern returned by the last lookup, null if none
+	public BalancePattern getLastPattern()
+	{
+		return lastPattern;
+	}
+
+	public void clear()
+	{
+		patterns.clear();
+		lastKey = null;
+		lastPattern = null;
+	}
+
+	//find the pattern of the species with positive molar flow and the first nElementFeed element columns in iElementFeedColumn
+	//the pattern is built and cached if not found
+	public BalancePattern lookup(double[] speciesMoleFlowRate, int[] iElementFeedColumn, int nElementFeed)
+	{
+		int i;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nSpeciesProduct;
+		long[] words = probe.words;
+		Arrays.fill(words, 0);
+		for (i=0; i<nSpecies; i++)
+		{
+			if (speciesMoleFlowRate[i]>0)
+				words[i>>6] |= 1L<<(i&63);
+		}
+		for (i=0; i<nElementFeed; i++)
+			words[nWordSpecies+(iElementFeedColumn[i]>>6)] |= 1L<<(iElementFeedColumn[i]&63);
+		if (lastKey!=null && Arrays.equals(words, lastKey.words))
+		{
+			nHit++;
+			return lastPattern;
+		}
+		probe.updateHash();
+		BalancePattern pattern = patterns.get(probe);
+		if (pattern!=null)
+			nHit++;
+		else
+		{
+			nMiss++;
+			nSpeciesProduct = 0;
+			for (i=0; i<nSpecies; i++)
+			{
+				if (speciesMoleFlowRate[i]>0)
+					iProduct2All[nSpeciesProduct++] = i;
+			}
+			pattern = new BalancePattern(plan, iProduct2All, nSpeciesProduct, iElementFeedColumn, nElementFeed);
+			patterns.put(new PatternKey(probe), pattern);
+		}
+		//the key of the map entry is not available from get(), keep a private copy of the probe
+		if (lastKey==null)
+			lastKey = new PatternKey(probe);
+		else
+			System.arraycopy(words, 0, lastKey.words, 0, words.length);
+		lastPattern = pattern;
+		return pattern;
+	}
+}
@@ -0,0 +1,520 @@
+package DataModel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class of the memory-mapped binary format of grouped ROM input and output vectors
+ * The file starts with a 32-byte header of little-endian int values: magic number, version, number of inputs,
+ * number of outputs, number of groups, number of cases in each group and two reserved values.
+ * The header is followed by one row of little-endian float64 values for each case, ROM input vector followed by ROM output vector,
+ * cases of the first group first. The rows are accessed through mapped windows of the file,
+ * so reading and writing of a case are thread safe as long as different threads access different cases.
+ */
+public class BinaryVectorFile implements Closeable
+{
+	//"IRVB" in little-endian byte order
+	public static final int magicNumber = 0x42565249;
+
+	public static final int formatVersion = 1;
+
+	//size of the header in bytes, rows start at an 8-byte aligned position
+	public static final int headerSize = 32;
+
+	//maximum size of a mapped window in bytes
+	private static final long maxWindowSize = 1L<<30;
+
+	private FileChannel channel;
+
+	//true if the file is opened for writing
+	private boolean bWritable;
+
+	//number of ROM input parameters in a case
+	private int nInput;
+
+	//number of ROM output parameters in a case
+	private int nOutput;
+
+	//number of groups
+	private int nGroup;
+
+	//number of cases in each group
+	private int nCase;
+
+	//number of values in a row, nInput+nOutput
+	private int nVector;
+
+	//number of cases in each mapped window
+	private int nCasePerWindow;
+
+	//mapped windows and their views as little-endian double buffers
+	private MappedByteBuffer[] mappedWindows;
+	private DoubleBuffer[] windows;
+
+	private BinaryVectorFile(FileChannel ch, boolean bWrite)
+	{
+		channel = ch;
+		bWritable = bWrite;
+	}
+
+	//create a new file for writing, existing file is overwritten
+	public static BinaryVectorFile create(String fileName, int nInput, int nOutput, int nGroup, int nCase) throws IOException
+	{
+		if (nInput<0 || nOutput<0 || nInput+nOutput<1 || nGroup<0 || nCase<0)
+			throw new IOException("Invalid size of binary vector file " + fileName);
+		FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		BinaryVectorFile bvf = new BinaryVectorFile(ch, true);
+		try
+		{
+			bvf.setSize(nInput, nOutput, nGroup, nCase);
+			ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(magicNumber);
+			header.putInt(formatVersion);
+			header.putInt(nInput);
+			header.putInt(nOutput);
+			header.putInt(nGroup);
+			header.putInt(nCase);
+			header.putInt(0);
+			header.putInt(0);
+			header.flip();
+			while (header.hasRemaining())
+				ch.write(header, header.position());
+			bvf.mapWindows();
+		}
+		catch(IOException e)
+		{
+			ch.close();
+			throw e;
+		}
+		return bvf;
+	}
+
+	//open an existing file, for reading only if bWrite is false
+	public static BinaryVectorFile open(String fileName, boolean bWrite) throws IOException
+	{
+		FileChannel ch = bWrite ? FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE) :
+			FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		BinaryVectorFile bvf = new BinaryVectorFile(ch, bWrite);
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+			{
+				if (ch.read(header, header.position())<0)
+					throw new EOFException("Incomplete header of binary vector file " + fileName);
+			}
+			header.flip();
+			if (header.getInt()!=magicNumber)
+				throw new IOException(fileName + " is not a binary vector file");
+			if (header.getInt()!=formatVersion)
+				throw new IOException("Unsupported version of binary vector file " + fileName);
+			bvf.setSize(header.getInt(), header.getInt(), header.getInt(), header.getInt());
+			if (ch.size()<bvf.getFileSize())
+				throw new EOFException("Binary vector file " + fileName + " is truncated");
+			bvf.mapWindows();
+		}
+		catch(IOException e)
+		{
+			ch.close();
+			throw e;
+		}
+		return bvf;
+	}
+
+	private void setSize(int nInput, int nOutput, int nGroup, int nCase)
+	{
+		this.nInput = nInput;
+		this.nOutput = nOutput;
+		this.nGroup = nGroup;
+		this.nCase = nCase;
+		nVector = nInput + nOutput;
+	}
+
+	//map the rows in windows containing whole cases
+	private void mapWindows() throws IOException
+	{
+		int i;
+		int nWindow;
+		long rowSize = 8L*nVector;
+		long nCaseTotal = getNumberOfCasesTotal();
+		long nCaseInWindow;
+		FileChannel.MapMode mode = bWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		nCasePerWindow = (int)Math.max(1, maxWindowSize/rowSize);
+		nWindow = (int)((nCaseTotal + nCasePerWindow - 1)/nCasePerWindow);
+		mappedWindows = new MappedByteBuffer[nWindow];
+		windows = new DoubleBuffer[nWindow];
+		for (i=0; i<nWindow; i++)
+		{
+			nCaseInWindow = Math.min(nCasePerWindow, nCaseTotal-(long)i*nCasePerWindow);
+			mappedWindows[i] = channel.map(mode, headerSize + (long)i*nCasePerWindow*rowSize, nCaseInWindow*rowSize);
+			mappedWindows[i].order(ByteOrder.LITTLE_ENDIAN);
+			windows[i] = mappedWindows[i].asDoubleBuffer();
+		}
+	}
+
+	public int getNumberOfInputs()
+	{
+		return nInput;
+	}
+
+	public int getNumberOfOutputs()
+	{
+		return nOutput;
+	}
+
+	public int getNumberOfGroups()
+	{
+		return nGroup;
+	}
+
+	public int getNumberOfCases()
+	{
+		return nCase;
+	}
+
+	//number of cases in all groups
+	public long getNumberOfCasesTotal()
+	{
+		return (long)nGroup*nCase;
+	}
+
+	//expected size of the file in bytes
+	public long getFileSize()
+	{
+		return headerSize + 8L*nVector*getNumberOfCasesTotal();
+	}
+
+	//read the row of case iCase counted from the first case of the first group into v starting at offset
+	public void readCase(long iCase, double[] v, int offset)
+	{
+		int i;
+		DoubleBuffer window = windows[(int)(iCase/nCasePerWindow)];
+		int index = (int)(iCase%nCasePerWindow)*nVector;
+		for (i=0; i<nVector; i++)
+			v[offset+i] = window.get(index+i);
+	}
+
+	//write the row of case iCase counted from the first case of the first group from v starting at offset
+	public void writeCase(long iCase, double[] v, int offset)
+	{
+		int i;
+		DoubleBuffer window = windows[(int)(iCase/nCasePerWindow)];
+		int index = (int)(iCase%nCasePerWindow)*nVector;
+		for (i=0; i<nVector; i++)
+			window.put(index+i, v[offset+i]);
+	}
+
+	//write the changes to the storage device
+	public void force()
+	{
+		if (!bWritable)
+			return;
+		for (MappedByteBuffer mbb : mappedWindows)
+			mbb.force();
+	}
+
+	//the mapped windows are released by the garbage collector
+	public void close() throws IOException
+	{
+		force();
+		mappedWindows = null;
+		windows = null;
+		channel.close();
+	}
+
+	//convert a grouped vector file in text format of -b option to binary format
+	//the text file does not contain the number of inputs and outputs, which are given by nInput and nOutput
+	//returns 0 if successful
+	public static int convertTextToBinary(String textFileName, String binaryFileName, int nInput, int nOutput)
+	{
+		int j, k;
+		int nGroup;
+		int nCase;
+		double[] v = new double[nInput+nOutput];
+		VectorFileReader in = null;
+		BinaryVectorFile out = null;
+		try
+		{
+			in = new VectorFileReader(textFileName);
+			nGroup = in.nextInt();
+			nCase = in.nextInt();
+			in.skipLine();
+			out = create(binaryFileName, nInput, nOutput, nGroup, nCase);
+			for (k=0; k<nGroup; k++)
+			{
+				for (j=0; j<nCase; j++)
+				{
+					in.readCaseVector(v, 0, v.length);
+					out.writeCase((long)k*nCase+j, v, 0);
+				}
+				if (k<nGroup-1)
+					in.skipLine();
+			}
+			in.close();
+			in = null;
+			out.close();
+			out = null;
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+			return 1;
+		}
+		finally
+		{
+			closeQuietly(in);
+			closeQuietly(out);
+		}
+		return 0;
+	}
+
+	//convert a binary vector file to the grouped text format of -b option
+	//returns 0 if successful
+	public static int convertBinaryToText(String binaryFileName, String textFileName)
+	{
+		int j, k;
+		int nGroup;
+		int nCase;
+		double[] v;
+		BinaryVectorFile in = null;
+		VectorFileWriter out = null;
+		try
+		{
+			in = open(binaryFileName, false);
+			nGroup = in.getNumberOfGroups();
+			nCase = in.getNumberOfCases();
+			v = new double[in.nVector];
+			out = new VectorFileWriter(textFileName);
+			out.writeHeader(nGroup, nCase);
+			for (k=0; k<nGroup; k++)
+			{
+				for (j=0; j<nCase; j++)
+				{
+					in.readCase((long)k*nCase+j, v, 0);
+					out.writeCaseVector(v, 0, v.length);
+				}
+				if (k<nGroup-1)
+					out.println();
+			}
+			out.close();
+			out = null;
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+			return 1;
+		}
+		finally
+		{
+			closeQuietly(in);
+			closeQuietly(out);
+		}
+		return 0;
+	}
+
+	//convert the I/O data of iRevealLite.csv to a binary vector file with a single group
+	//the number of inputs and outputs are given by the Input and Output labels in the first line, the second line contains the names
+	//the cases are counted in a first pass and parsed into the mapped output file in a second pass, so the rows are not held in memory
+	//returns 0 if successful
+	public static int convertCsvToBinary(String csvFileName, String binaryFileName)
+	{
+		int i;
+		int nInput = 0;
+		int nOutput = 0;
+		int nVector;
+		long iCase;
+		long nCaseTotal;
+		String line;
+		String[] labels;
+		String[] items;
+		double[] v;
+		BufferedReader in = null;
+		BinaryVectorFile out = null;
+		try
+		{
+			in = new BufferedReader(new FileReader(csvFileName), 65536);
+			line = in.readLine();
+			if (line==null)
+				throw new EOFException("Empty csv file " + csvFileName);
+			labels = line.split(",");
+			for (i=1; i<labels.length; i++)
+			{
+				if (labels[i].trim().equals("Input"))
+					nInput++;
+				else if (labels[i].trim().equals("Output"))
+					nOutput++;
+			}
+			nVector = nInput + nOutput;
+			in.readLine();		//skip names
+			nCaseTotal = 0;
+			while ((line=in.readLine())!=null)
+			{
+				if (line.trim().length()!=0)
+					nCaseTotal++;
+			}
+			in.close();
+			if (nCaseTotal>Integer.MAX_VALUE)
+				throw new IOException("Too many cases in " + csvFileName);
+			out = create(binaryFileName, nInput, nOutput, 1, (int)nCaseTotal);
+			v = new double[nVector];
+			in = new BufferedReader(new FileReader(csvFileName), 65536);
+			in.readLine();		//skip labels
+			in.readLine();		//skip names
+			iCase = 0;
+			while (iCase<nCaseTotal && (line=in.readLine())!=null)
+			{
+				if (line.trim().length()==0)
+					continue;
+				items = line.split(",");
+				if (items.length<nVector+1)
+					throw new IOException("Data missing in case " + items[0] + " of " + csvFileName);
+				for (i=0; i<nVector; i++)
+					v[i] = Double.parseDouble(items[i+1].trim());
+				out.writeCase(iCase++, v, 0);
+			}
+			if (iCase<nCaseTotal)
+				throw new EOFException("Csv file " + csvFileName + " is changed during conversion");
+			in.close();
+			in = null;
+			out.close();
+			out = null;
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+			return 1;
+		}
+		catch(NumberFormatException e)
+		{
+			System.out.println(e);
+			return 1;
+		}
+		finally
+		{
+			closeQuietly(in);
+			closeQuietly(out);
+		}
+		return 0;
+	}
+
+	//convert a binary vector file to the csv format of iRevealLite.csv, cases of all groups are numbered consecutively
+	//names contains the names of the input and output parameters, default names are used if names is null
+	//returns 0 if successful
+	public static int convertBinaryToCsv(String binaryFileName, String csvFileName, String romName, String[] names)
+	{
+		int i;
+		int nInput;
+		int nVector;
+		long iCase;
+		long nCaseTotal;
+		double[] v;
+		BinaryVectorFile in = null;
+		PrintWriter out = null;
+		try
+		{
+			in = open(binaryFileName, false);
+			nInput = in.getNumberOfInputs();
+			nVector = in.nVector;
+			nCaseTotal = in.getNumberOfCasesTotal();
+			v = new double[nVector];
+			out = new PrintWriter(new BufferedWriter(new FileWriter(csvFileName)));
+			out.print("I/O data for " + romName);
+			for (i=0; i<nVector; i++)
+				out.print(i<nInput ? ",Input" : ",Output");
+			out.print("\nCase");
+			for (i=0; i<nVector; i++)
+			{
+				if (names!=null)
+					out.print("," + names[i]);
+				else
+					out.print(i<nInput ? ",Input" + (i+1) : ",Output" + (i-nInput+1));
+			}
+			out.print("\n");
+			for (iCase=0; iCase<nCaseTotal; iCase++)
+			{
+				in.readCase(iCase, v, 0);
+				out.print(iCase+1);
+				for (i=0; i<nVector; i++)
+				{
+					out.print(",");
+					out.print(v[i]);
+				}
+				out.print("\n");
+			}
+			out.close();
+			out = null;
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+			return 1;
+		}
+		finally
+		{
+			closeQuietly(in);
+			if (out!=null)
+				out.close();
+		}
+		return 0;
+	}
+
+	private static void closeQuietly(Closeable c)
+	{
+		if (c==null)
+			return;
+		try
+		{
+			c.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+	}
+
+	//main method for command line conversion
+	//Command example: java DataModel.BinaryVectorFile -t2b number_of_inputs number_of_outputs row_vectors.input row_vectors.bin
+	//Command example: java DataModel.BinaryVectorFile -b2t row_vectors.bin row_vectors.input
+	//Command example: java DataModel.BinaryVectorFile -c2b iRevealLite.csv row_vectors.bin
+	//Command example: java DataModel.BinaryVectorFile -b2c row_vectors.bin iRevealLite.csv [rom_name]
+	public static void main(String argu[])
+	{
+		int i = argu.length;
+		if (i<3)
+		{
+			System.out.println("Number of argument < 3!");
+			return;
+		}
+		if (argu[0].equals("-t2b"))
+		{
+			if (i<5)
+			{
+				System.out.println("Number of argument < 5!");
+				return;
+			}
+			try
+			{
+				convertTextToBinary(argu[3], argu[4], Integer.parseInt(argu[1]), Integer.parseInt(argu[2]));
+			}
+			catch(NumberFormatException e)
+			{
+				System.out.println(e);
+			}
+		}
+		else if (argu[0].equals("-b2t"))
+			convertBinaryToText(argu[1], argu[2]);
+		else if (argu[0].equals("-c2b"))
+			convertCsvToBinary(argu[1], argu[2]);
+		else if (argu[0].equals("-b2c"))
+			convertBinaryToCsv(argu[1], argu[2], i>3 ? argu[3] : "ROM", null);
+		else
+			System.out.println("Unknown option " + argu[0]);
+	}
+}
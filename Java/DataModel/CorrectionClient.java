@@ -0,0 +1,206 @@
+package DataModel;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class of a client of CorrectionServer
+ * A client keeps one connection open for any number of requests and is not thread-safe.
+ * The server writes the response while it reads the request, so a correction request is written by a writer thread of the client
+ * while the calling thread reads the response, otherwise both sides could block on full socket buffers.
+ */
+public class CorrectionClient implements Closeable
+{
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	//number of setups on the server and the number of inputs and outputs of each setup
+	private int nSetup;
+	private int[] nInput;
+	private int[] nOutput;
+
+	//thread writing the correction requests, created with the first request
+	private ExecutorService writer;
+
+	//connect to a server on the loopback address
+	public CorrectionClient(int port) throws IOException
+	{
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	public CorrectionClient(InetAddress address, int port) throws IOException
+	{
+		socket = new Socket(address, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		try
+		{
+			requestInfo();
+		}
+		catch(IOException e)
+		{
+			//the server refused the connection or is not a correction server
+			socket.close();
+			throw e;
+		}
+	}
+
+	private void requestInfo() throws IOException
+	{
+		int i;
+		out.writeInt(4);
+		out.writeInt(CorrectionServer.OP_INFO);
+		out.flush();
+		in.readInt();
+		checkStatus();
+		nSetup = in.readInt();
+		nInput = new int[nSetup];
+		nOutput = new int[nSetup];
+		for (i=0; i<nSetup; i++)
+		{
+			nInput[i] = in.readInt();
+			nOutput[i] = in.readInt();
+		}
+	}
+
+	private void checkStatus() throws IOException
+	{
+		if (in.readInt()!=CorrectionServer.STATUS_OK)
+			throw new IOException(in.readUTF());
+	}
+
+	public int getNumberOfSetups()
+	{
+		return nSetup;
+	}
+
+	public int getNumberOfInputs(int iSetup)
+	{
+		return nInput[iSetup];
+	}
+
+	public int getNumberOfOutputs(int iSetup)
+	{
+		return nOutput[iSetup];
+	}
+
+	//correct nCase cases of setup iSetup, cases contains the input vector followed by the output vector of each case
+	//the output vectors in cases are replaced by the corrected output vectors and the return codes are stored in codes if it is not null
+	//the number of cases is limited by CorrectionServer.getMaxNumberOfCases()
+	//returns the number of cases failed in mass balance correction
+	public int correct(final int iSetup, final int nCase, final double[] cases, int[] codes) throws IOException
+	{
+		int i, j, k;
+		int code;
+		int nFailed = 0;
+		int nVector = nInput[iSetup] + nOutput[iSetup];
+		final long nValue = (long)nCase*nVector;
+		final long length = 12 + 8*nValue;
+		int nCaseMax = CorrectionServer.getMaxNumberOfCases(nInput[iSetup], nOutput[iSetup]);
+		if (nCase<0 || nCase>nCaseMax)
+			throw new IllegalArgumentException("Number of cases " + nCase + " is not between 0 and " + nCaseMax);
+		if (cases.length<nValue)
+			throw new IllegalArgumentException("Array of cases is smaller than " + nCase + " cases of " + nVector + " values");
+		if (writer==null)
+		{
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "CorrectionClient writer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		Future<?> request = writer.submit(new Callable<Void>()
+		{
+			public Void call() throws IOException
+			{
+				int iValue;
+				out.writeInt((int)length);
+				out.writeInt(CorrectionServer.OP_CORRECT);
+				out.writeInt(iSetup);
+				out.writeInt(nCase);
+				for (iValue=0; iValue<nValue; iValue++)
+					out.writeDouble(cases[iValue]);
+				out.flush();
+				return null;
+			}
+		});
+		try
+		{
+			in.readInt();
+			checkStatus();
+			if (in.readInt()!=nCase)
+				throw new IOException("Number of cases in response does not match the request");
+			for (i=0; i<nCase; i++)
+			{
+				code = in.readInt();
+				if (codes!=null)
+					codes[i] = code;
+				if (code!=MassBalanceCorrector.SUCCESS)
+					nFailed++;
+				k = i*nVector + nInput[iSetup];
+				for (j=0; j<nOutput[iSetup]; j++)
+					cases[k+j] = in.readDouble();
+			}
+		}
+		finally
+		{
+			waitForRequest(request);
+		}
+		return nFailed;
+	}
+
+	//wait until the writer thread has written a request and rethrow its failure
+	private static void waitForRequest(Future<?> request) throws IOException
+	{
+		boolean bInterrupted = false;
+		while (true)
+		{
+			try
+			{
+				request.get();
+				break;
+			}
+			catch(InterruptedException e)
+			{
+				bInterrupted = true;
+			}
+			catch(ExecutionException e)
+			{
+				if (e.getCause() instanceof IOException)
+					throw (IOException)e.getCause();
+				throw new IOException(e.getCause());
+			}
+		}
+		if (bInterrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	public void close() throws IOException
+	{
+		try
+		{
+			out.writeInt(4);
+			out.writeInt(CorrectionServer.OP_CLOSE);
+			out.flush();
+		}
+		finally
+		{
+			socket.close();
+			if (writer!=null)
+				writer.shutdown();
+		}
+	}
+}
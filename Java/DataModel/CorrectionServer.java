@@ -0,0 +1,420 @@
+package DataModel;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class of a long-running mass balance correction service on a local TCP socket
+ * The UnitOperation setups are read once when the server is created and kept for all requests.
+ * Each connection is handled by a thread of a pool of a fixed maximum size with its own MassBalanceCorrector for each setup.
+ * A connection accepted when all threads are busy waits in a bounded queue until another connection is closed, a connection beyond the queue
+ * gets an error response and is closed. A connection without a request for the idle timeout is closed, so waiting clients are not blocked forever.
+ * Every message in both directions is an int length of the body in bytes followed by the body, all values in network (big-endian) byte order.
+ * Request body: int operation code followed by the operation data.
+ *   OP_INFO: no data. Response: int status, int number of setups, then int number of inputs and int number of outputs of each setup.
+ *   OP_CORRECT: int setup index, int number of cases, then the ROM input vector followed by the ROM output vector of each case as doubles.
+ *     The number of cases is limited by getMaxNumberOfCases() of the numbers of inputs and outputs of the setup.
+ *     Response: int status, int number of cases, then for each case int return code of MassBalanceCorrector.correct() and the corrected output vector as doubles.
+ *   OP_CLOSE: no data and no response, the connection is closed.
+ * If status is not STATUS_OK, the response contains an error message written by DataOutputStream.writeUTF() instead of the data.
+ * The cases are corrected while they are read and the response is written while the request is read, so a client has to read the response
+ * while it writes a large request, as CorrectionClient does.
+ * A message with an invalid length gets an error response and the connection is closed.
+ */
+public class CorrectionServer
+{
+	//operation codes
+	public static final int OP_CLOSE = 0;
+	public static final int OP_INFO = 1;
+	public static final int OP_CORRECT = 2;
+
+	//response status
+	public static final int STATUS_OK = 0;
+	public static final int STATUS_ERROR = 1;
+
+	//maximum length of a message body in bytes
+	public static final int maxMessageLength = 1<<30;
+
+	//default time in milliseconds a connection may wait for the next request or data of a request before it is closed
+	public static final int defaultIdleTimeout = 60000;
+
+	//time in milliseconds a refused connection is read until the client closes it, so the error response is not lost by a reset
+	private static final int refuseLingerTime = 1000;
+
+	//setups loaded by the server
+	private List<UnitOperation> setups;
+
+	private ServerSocket serverSocket;
+
+	//maximum number of connections handled at the same time
+	private int nThread;
+
+	//maximum number of connections waiting for a thread, 0 to refuse connections when all threads are busy
+	private int nQueue;
+
+	//read timeout of the connections in milliseconds, 0 for no timeout
+	private int idleTimeout;
+
+	//threads of connections
+	private ThreadPoolExecutor pool;
+
+	//constructor with the setups to serve, updateAllSpeciesList() should have been called for each setup
+	//connections are handled by up to the number of available processors threads
+	public CorrectionServer(List<UnitOperation> setups)
+	{
+		this(setups, Runtime.getRuntime().availableProcessors());
+	}
+
+	//constructor with the setups to serve and the maximum number of threads handling connections
+	public CorrectionServer(List<UnitOperation> setups, int nThread)
+	{
+		this.nThread = nThread>0 ? nThread : 1;
+		nQueue = this.nThread;
+		idleTimeout = defaultIdleTimeout;
+		this.setups = new ArrayList<UnitOperation>(setups);
+		for (UnitOperation uo : this.setups)
+		{
+			if (uo.getElementBalancePlan()==null)
+				uo.updateAllSpeciesList();
+		}
+	}
+
+	//load the prepared JSON setup files or their snapshots and create a server
+	public static CorrectionServer fromJsonFiles(String[] jsonFileNames, int nThread)
+	{
+		List<UnitOperation> setups = new ArrayList<UnitOperation>();
+		for (String fileName : jsonFileNames)
+			setups.add(SetupSnapshot.load(fileName));
+		return new CorrectionServer(setups, nThread);
+	}
+
+	public int getNumberOfSetups()
+	{
+		return setups.size();
+	}
+
+	public int getNumberOfThreads()
+	{
+		return nThread;
+	}
+
+	public int getMaxQueuedConnections()
+	{
+		return nQueue;
+	}
+
+	//set the maximum number of connections waiting for a thread before bind() is called, the default is the number of threads
+	public void setMaxQueuedConnections(int n)
+	{
+		nQueue = n>0 ? n : 0;
+	}
+
+	public int getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	//set the read timeout of new connections in milliseconds, 0 for no timeout
+	public void setIdleTimeout(int ms)
+	{
+		idleTimeout = ms>0 ? ms : 0;
+	}
+
+	//maximum number of cases of a correction request of a setup with nInput inputs and nOutput outputs,
+	//so that both the request and the response are within maxMessageLength
+	public static int getMaxNumberOfCases(int nInput, int nOutput)
+	{
+		long nRequest = nInput+nOutput>0 ? (maxMessageLength-12)/(8L*(nInput+nOutput)) : Long.MAX_VALUE;
+		long nResponse = (maxMessageLength-8)/(4+8L*nOutput);
+		return (int)Math.min(nRequest, nResponse);
+	}
+
+	//local port the server is listening on, -1 if not started
+	public int getPort()
+	{
+		return serverSocket==null ? -1 : serverSocket.getLocalPort();
+	}
+
+	//bind to the loopback address, a port of 0 selects a free port
+	public void bind(int port) throws IOException
+	{
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		//idle threads are released, connections beyond the number of threads wait in the queue and connections beyond the queue are refused
+		BlockingQueue<Runnable> queue = nQueue>0 ? new ArrayBlockingQueue<Runnable>(nQueue) : new SynchronousQueue<Runnable>();
+		pool = new ThreadPoolExecutor(nThread, nThread, 60, TimeUnit.SECONDS, queue, new RejectedExecutionHandler()
+		{
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+			{
+				refuseConnection(((ConnectionTask)r).socket, executor.isShutdown() ? "Server is stopped" :
+					"Server is busy with " + nThread + " connections and " + nQueue + " waiting connections");
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	//task handling a connection on a thread of the pool
+	private class ConnectionTask implements Runnable
+	{
+		private Socket socket;
+
+		ConnectionTask(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		public void run()
+		{
+			handleConnection(socket);
+		}
+	}
+
+	//accept connections until stop() is called
+	public void serve()
+	{
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				Socket socket = serverSocket.accept();
+				socket.setSoTimeout(idleTimeout);
+				pool.execute(new ConnectionTask(socket));
+			}
+			catch(SocketException e)
+			{
+				//server socket closed by stop()
+			}
+			catch(IOException e)
+			{
+				System.out.println(e);
+			}
+		}
+	}
+
+	//start accepting connections on a background thread
+	public void start(int port) throws IOException
+	{
+		bind(port);
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				serve();
+			}
+		}, "CorrectionServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	//stop accepting connections, open connections are closed by the clients
+	public void stop()
+	{
+		try
+		{
+			if (serverSocket!=null)
+				serverSocket.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+		if (pool!=null)
+			pool.shutdown();
+	}
+
+	//write an error response to a connection that is not handled and close it
+	//the input is read until the client closes the connection, as closing a socket with unread input resets the connection
+	private static void refuseConnection(Socket socket, String message)
+	{
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			writeError(out, message);
+			out.flush();
+			socket.shutdownOutput();
+			socket.setSoTimeout(refuseLingerTime);
+			InputStream in = socket.getInputStream();
+			byte[] b = new byte[256];
+			while (in.read(b)>=0)
+				;
+		}
+		catch(IOException e)
+		{
+			//the client is gone or does not close the connection
+		}
+		finally
+		{
+			closeQuietly(socket);
+		}
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+	}
+
+	//handle requests of a connection until it is closed or idle for the idle timeout
+	private void handleConnection(Socket socket)
+	{
+		int i;
+		int nSetup = setups.size();
+		int length;
+		int operation;
+		MassBalanceCorrector[] correctors = new MassBalanceCorrector[nSetup];
+		try
+		{
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true)
+			{
+				try
+				{
+					length = in.readInt();
+				}
+				catch(EOFException e)
+				{
+					break;
+				}
+				if (length<4 || length>maxMessageLength)
+				{
+					//the rest of the stream cannot be framed
+					writeError(out, "Invalid message length " + length);
+					out.flush();
+					break;
+				}
+				operation = in.readInt();
+				if (operation==OP_CLOSE)
+					break;
+				if (operation==OP_INFO)
+				{
+					out.writeInt(8 + 8*nSetup);
+					out.writeInt(STATUS_OK);
+					out.writeInt(nSetup);
+					for (i=0; i<nSetup; i++)
+					{
+						out.writeInt(setups.get(i).getRomInputVector().size());
+						out.writeInt(setups.get(i).getYromOutputVector().size());
+					}
+				}
+				else if (operation==OP_CORRECT)
+					correct(in, length-4, out, correctors);
+				else
+				{
+					skipFully(in, length-4);
+					writeError(out, "Unknown operation " + operation);
+				}
+				out.flush();
+			}
+		}
+		catch(SocketTimeoutException e)
+		{
+			//idle connection, closed to free the thread
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+		finally
+		{
+			closeQuietly(socket);
+		}
+	}
+
+	//read the cases of a correction request with length bytes after the operation code and write the length-prefixed response
+	//each case is corrected when it is read and written to the buffered socket stream, so only one case is held in memory
+	private void correct(DataInputStream in, int length, DataOutputStream out, MassBalanceCorrector[] correctors) throws IOException
+	{
+		int i, j;
+		if (length<8)
+		{
+			skipFully(in, length);
+			writeError(out, "Incomplete correction request");
+			return;
+		}
+		int iSetup = in.readInt();
+		int nCase = in.readInt();
+		if (iSetup<0 || iSetup>=setups.size())
+		{
+			skipFully(in, length-8);
+			writeError(out, "Invalid setup index " + iSetup);
+			return;
+		}
+		if (correctors[iSetup]==null)
+			correctors[iSetup] = new MassBalanceCorrector(setups.get(iSetup));
+		MassBalanceCorrector mbc = correctors[iSetup];
+		int nInput = mbc.getNumberOfInputs();
+		int nOutput = mbc.getNumberOfOutputs();
+		int nCaseMax = getMaxNumberOfCases(nInput, nOutput);
+		if (nCase<0 || nCase>nCaseMax)
+		{
+			skipFully(in, length-8);
+			writeError(out, "Number of cases " + nCase + " is not between 0 and " + nCaseMax);
+			return;
+		}
+		if (length!=8+8L*nCase*(nInput+nOutput))
+		{
+			skipFully(in, length-8);
+			writeError(out, "Message length does not match " + nCase + " cases of " + nInput + " inputs and " + nOutput + " outputs");
+			return;
+		}
+		//at most maxMessageLength by the limit of the number of cases
+		long responseLength = 8 + (4 + 8L*nOutput)*nCase;
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		out.writeInt((int)responseLength);
+		out.writeInt(STATUS_OK);
+		out.writeInt(nCase);
+		for (i=0; i<nCase; i++)
+		{
+			for (j=0; j<nInput; j++)
+				x[j] = in.readDouble();
+			for (j=0; j<nOutput; j++)
+				y[j] = in.readDouble();
+			out.writeInt(mbc.correct(x, y, y));
+			for (j=0; j<nOutput; j++)
+				out.writeDouble(y[j]);
+		}
+	}
+
+	private static void skipFully(DataInputStream in, long n) throws IOException
+	{
+		while (n>0)
+		{
+			if (in.read()<0)
+				throw new EOFException();
+			n--;
+			n -= in.skip(n);
+		}
+	}
+
+	//write a length-prefixed error response, the short message is encoded first to know its length
+	private static void writeError(DataOutputStream out, String message) throws IOException
+	{
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream bodyOut = new DataOutputStream(body);
+		bodyOut.writeInt(STATUS_ERROR);
+		bodyOut.writeUTF(message);
+		bodyOut.flush();
+		out.writeInt(body.size());
+		body.writeTo(out);
+	}
+}
@@ -0,0 +1,232 @@
+package DataModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class holding the topology-dependent data used by the elemental mass balance correction
+ * The plan is compiled once from a UnitOperation after updateAllSpeciesList() is called.
+ * It contains a flat species by element stoichiometry matrix, the molecular weights and
+ * flat lists of the species flow parameters in inlet and outlet boundaries, so that the
+ * correction of each case only loops over arrays. The plan is not modified after construction.
+ * The plan has to be compiled again if species, boundaries or species flow maps are changed.
+ */
+public class ElementBalancePlan
+{
+	//number of species in all species list
+	private int nSpecies;
+
+	//number of elements involved, columns of the stoichiometry matrix
+	private int nElement;
+
+	//atomic numbers of the element columns, same as iElementAll of UnitOperation
+	private int[] iElement;
+
+	//atom counts of species i and element column j stored at i*nElement+j
+	private double[] atomCount;
+
+	//molecular weights of all species
+	private double[] molecularWeight;
+
+	//number of species flow parameters in all inlet boundaries
+	private int nInletFlow;
+
+	//species flow (mass flow or mass fraction) parameters in all inlet boundaries
+	private Parameter[] inletFlow;
+
+	//total mass flow parameter of the mixture if the mixture has constant mass fractions, otherwise null
+	private Parameter[] inletTotalFlow;
+
+	//index in all species list of each inlet species flow parameter
+	private int[] iInletFlowSpecies;
+
+	//number of species flow parameters in all outlet boundaries
+	private int nOutletFlow;
+
+	//species flow (mass flow or mass fraction) parameters in all outlet boundaries
+	private Parameter[] outletFlow;
+
+	//total mass flow parameter of the mixture if the mixture has constant mass fractions, otherwise null
+	private Parameter[] outletTotalFlow;
+
+	//index in all species list of each outlet species flow parameter
+	private int[] iOutletFlowSpecies;
+
+	//index in outletMixtures of each outlet species flow parameter
+	private int[] iOutletFlowMixture;
+
+	//all gas and solid mixtures in outlet boundaries
+	private Mixture[] outletMixtures;
+
+	//constructor compiling the plan from a UnitOperation, assuming updateAllSpeciesList() has been called
+	public ElementBalancePlan(UnitOperation uo)
+	{
+		int i, j;
+		int nAtomElement;
+		int[] iAtom;
+		double[] nAtom;
+		int[] iColumn = new int[Species.maxAtomicNumberPlus1];
+		Species sp;
+		List<Species> allSpeciesList = uo.getAllSpeciesList();
+		nSpecies = allSpeciesList.size();
+		iElement = uo.getAllElementAtomicNumbers().clone();
+		nElement = iElement.length;
+		for (j=0; j<nElement; j++)
+			iColumn[iElement[j]] = j;
+		atomCount = new double[nSpecies*nElement];
+		molecularWeight = new double[nSpecies];
+		for (i=0; i<nSpecies; i++)
+		{
+			sp = allSpeciesList.get(i);
+			molecularWeight[i] = sp.getMolecularWeight();
+			nAtomElement = sp.getNumberOfElements();
+			iAtom = sp.getAtomicNumbers();
+			nAtom = sp.getAtomCounts();
+			for (j=0; j<nAtomElement; j++)
+				atomCount[i*nElement+iColumn[iAtom[j]]] += nAtom[j];
+		}
+		//flatten inlet species flows
+		List<Parameter> flowList = new ArrayList<Parameter>();
+		List<Parameter> totalFlowList = new ArrayList<Parameter>();
+		List<Integer> speciesList = new ArrayList<Integer>();
+		List<Integer> mixtureList = new ArrayList<Integer>();
+		List<Mixture> mixtures = new ArrayList<Mixture>();
+		int[][] iSolidPhase2All = uo.getSolidPhase2AllSpeciesIndices();
+		appendSpeciesFlows(uo.getInletBoundaryList(), iSolidPhase2All, flowList, totalFlowList, speciesList, mixtureList, mixtures);
+		nInletFlow = flowList.size();
+		inletFlow = flowList.toArray(new Parameter[nInletFlow]);
+		inletTotalFlow = totalFlowList.toArray(new Parameter[nInletFlow]);
+		iInletFlowSpecies = toIntArray(speciesList);
+		//flatten outlet species flows
+		flowList.clear();
+		totalFlowList.clear();
+		speciesList.clear();
+		mixtureList.clear();
+		mixtures.clear();
+		appendSpeciesFlows(uo.getOutletBoundaryList(), iSolidPhase2All, flowList, totalFlowList, speciesList, mixtureList, mixtures);
+		nOutletFlow = flowList.size();
+		outletFlow = flowList.toArray(new Parameter[nOutletFlow]);
+		outletTotalFlow = totalFlowList.toArray(new Parameter[nOutletFlow]);
+		iOutletFlowSpecies = toIntArray(speciesList);
+		iOutletFlowMixture = toIntArray(mixtureList);
+		outletMixtures = mixtures.toArray(new Mixture[mixtures.size()]);
+	}
+
+	//append the species flow parameters of all phases in given boundaries to the lists
+	private static void appendSpeciesFlows(List<FlowBoundary> flowBoundaryList, int[][] iSolidPhase2All, List<Parameter> flowList, List<Parameter> totalFlowList,
+		List<Integer> speciesList, List<Integer> mixtureList, List<Mixture> mixtures)
+	{
+		for (FlowBoundary fb : flowBoundaryList)
+		{
+			if (fb.hasGasPhase())
+				appendSpeciesFlows(fb.getGasMixture().get(0), null, flowList, totalFlowList, speciesList, mixtureList, mixtures);
+			if (fb.hasSolidPhase())
+			{
+				for (SolidMixture sm : fb.getSolidMixtures())
+					appendSpeciesFlows(sm, iSolidPhase2All[sm.getPhaseIndex()], flowList, totalFlowList, speciesList, mixtureList, mixtures);
+			}
+		}
+	}
+
+	//append the species flow parameters of a mixture to the lists, iPhase2All is null for gas phase
+	private static void appendSpeciesFlows(Mixture m, int[] iPhase2All, List<Parameter> flowList, List<Parameter> totalFlowList,
+		List<Integer> speciesList, List<Integer> mixtureList, List<Mixture> mixtures)
+	{
+		Integer iMixture = Integer.valueOf(mixtures.size());
+		Parameter totalFlow = m.hasConstMassFractions() ? m.getTotalMassFlow() : null;
+		mixtures.add(m);
+		for (int iSpecies : m.getSpeciesIndices())
+		{
+			flowList.add(m.getSpeciesFlowParameter(iSpecies));
+			totalFlowList.add(totalFlow);
+			speciesList.add(Integer.valueOf(iPhase2All==null ? iSpecies : iPhase2All[iSpecies]));
+			mixtureList.add(iMixture);
+		}
+	}
+
+	private static int[] toIntArray(List<Integer> list)
+	{
+		int i;
+		int n = list.size();
+		int[] a = new int[n];
+		for (i=0; i<n; i++)
+			a[i] = list.get(i).intValue();
+		return a;
+	}
+
+	public int getNumberOfSpecies()
+	{
+		return nSpecies;
+	}
+
+	public int getNumberOfElements()
+	{
+		return nElement;
+	}
+
+	public int[] getElementAtomicNumbers()
+	{
+		return iElement;
+	}
+
+	//flat species by element stoichiometry matrix, atom count of species i and element column j at i*nElement+j
+	public double[] getAtomCounts()
+	{
+		return atomCount;
+	}
+
+	public double[] getMolecularWeights()
+	{
+		return molecularWeight;
+	}
+
+	public int getNumberOfInletFlows()
+	{
+		return nInletFlow;
+	}
+
+	public Parameter[] getInletFlows()
+	{
+		return inletFlow;
+	}
+
+	public Parameter[] getInletTotalFlows()
+	{
+		return inletTotalFlow;
+	}
+
+	public int[] getInletFlowSpeciesIndices()
+	{
+		return iInletFlowSpecies;
+	}
+
+	public int getNumberOfOutletFlows()
+	{
+		return nOutletFlow;
+	}
+
+	public Parameter[] getOutletFlows()
+	{
+		return outletFlow;
+	}
+
+	public Parameter[] getOutletTotalFlows()
+	{
+		return outletTotalFlow;
+	}
+
+	public int[] getOutletFlowSpeciesIndices()
+	{
+		return iOutletFlowSpecies;
+	}
+
+	public int[] getOutletFlowMixtureIndices()
+	{
+		return iOutletFlowMixture;
+	}
+
+	public Mixture[] getOutletMixtures()
+	{
+		return outletMixtures;
+	}
+}
@@ -0,0 +1,361 @@
+package DataModel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class of the immutable elemental composition of a chemical formula
+ * Compositions are interned in a concurrent cache keyed by the formula string, so species with the same formula share one composition
+ * and a formula is parsed only once. The formula is parsed in a single pass with a table mapping element symbols to atomic numbers.
+ * Parenthesised or bracketed groups with a count, e.g. Ca(OH)2, and hydrate parts separated by * or a middle dot, e.g. CuSO4*5H2O, are supported.
+ * A period is always a decimal point as in CH0.8O0.1, so CuSO4.5H2O reads as 5.5 atoms of O, a period not between two digits is an invalid character.
+ * Parsing stops at a charge (+ or -) or at a state in parentheses such as (s) or (aq). The elements are kept in the order of their first appearance.
+ */
+public class FormulaComposition
+{
+	//parse status codes
+	public static final int statusOk = 0;
+	public static final int statusInvalidCharacter = 1;
+	public static final int statusUnbalancedGroup = 2;
+	public static final int statusUnknownElement = 3;
+
+	//atomic mass of 87 atoms from periodic table, array index corresponding to atomic number, 0th element is Ah as coal ash with atomic mass of 1
+	private static final double[] atomicMass = {1,1.0079,4.0026,6.939,9.0122,10.81,12.01115,14.0067,15.9994,18.994,20.183,22.9898,24.312,26.9815,28.086,30.9738,32.064,35.453,39.948,
+		39.098,40.08,44.956,47.9,50.942,51.996,54.938,55.847,58.933,58.71,63.546,65.38,69.72,72.59,74.922,78.96,79.904,83.8,
+		85.47,87.62,88.905,91.22,92.906,95.94,98.0,101.07,102.905,106.4,107.868,112.4,114.82,118.69,121.75,127.6,126.904,131.3,
+		132.905,137.34,138.91,140.12,140.907,144.24,147.0,150.35,151.96,157.25,158.924,162.5,164.93,167.26,168.934,173.04,174.97,
+		178.49,180.948,183.85,186.2,190.2,192.2,195.09,196.967,200.59,204.37,207.19,208.98,210.0,210.0,222.0};
+
+	//element symbols up to atomic number 86 (excluding 7th period and Actinoids), 0th element is Ah as coal ash
+	private static final String[] elementSymbols = {"Ah","H","He","Li","Be","B","C","N","O","F","Ne","Na","Mg","Al","Si","P","S","Cl","Ar",
+		"K","Ca","Sc","Ti","V","Cr","Mn","Fe","Co","Ni","Cu","Zn","Ga","Ge","As","Se","Br","Kr",
+		"Rb","Sr","Y","Zr","Nb","Mo","Tc","Ru","Rh","Pd","Ag","Cd","In","Sn","Sb","Te","I","Xe",
+		"Cs","Ba","La","Ce","Pr","Nd","Pm","Sm","Eu","Gd","Tb","Dy","Ho","Er","Tm","Yb","Lu",
+		"Hf","Ta","W","Re","Os","Ir","Pt","Au","Hg","Tl","Pb","Bi","Po","At","Rn"};
+
+	//atomic number of each symbol, indexed by 27*(upper case letter) + (0 for a one-letter symbol or 1 + lower case letter), -1 if unknown
+	private static final byte[] symbolTable = new byte[26*27];
+
+	//powers of ten exactly representable as double
+	private static final double[] powerOfTen = {1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22};
+
+	//cache of compositions by formula
+	private static final ConcurrentHashMap<String,FormulaComposition> cache = new ConcurrentHashMap<String,FormulaComposition>();
+
+	static
+	{
+		int i;
+		String symbol;
+		for (i=0; i<symbolTable.length; i++)
+			symbolTable[i] = -1;
+		for (i=0; i<elementSymbols.length; i++)
+		{
+			symbol = elementSymbols[i];
+			symbolTable[27*(symbol.charAt(0)-'A') + (symbol.length()>1 ? symbol.charAt(1)-'a'+1 : 0)] = (byte)i;
+		}
+	}
+
+	//formula parsed
+	private final String formula;
+
+	//atomic numbers of the elements in the order of first appearance
+	private final int[] iAtom;
+
+	//atom counts of the elements, use double in case not the whole number
+	private final double[] nAtom;
+
+	private final double molecularWeight;
+
+	//parse status, non-zero if the formula is not fully parsed
+	private final int status;
+
+	private FormulaComposition(String formula, int[] iAtom, double[] nAtom, int status)
+	{
+		int i;
+		double mw = 0;
+		this.formula = formula;
+		this.iAtom = iAtom;
+		this.nAtom = nAtom;
+		this.status = status;
+		for (i=0; i<iAtom.length; i++)
+			mw += nAtom[i]*atomicMass[iAtom[i]];
+		molecularWeight = mw;
+	}
+
+	//shared composition of a formula, the formula is parsed when first requested
+	public static FormulaComposition of(String formula)
+	{
+		FormulaComposition c = cache.get(formula);
+		if (c!=null)
+			return c;
+		c = parse(formula);
+		FormulaComposition old = cache.putIfAbsent(formula, c);
+		return old!=null ? old : c;
+	}
+
+	//number of formulas in the cache
+	public static int getCacheSize()
+	{
+		return cache.size();
+	}
+
+	//element symbol of an atomic number, null if not supported
+	public static String getElementSymbol(int iAtomicNumber)
+	{
+		return iAtomicNumber>=0 && iAtomicNumber<elementSymbols.length ? elementSymbols[iAtomicNumber] : null;
+	}
+
+	public static double getAtomicMass(int iAtomicNumber)
+	{
+		return atomicMass[iAtomicNumber];
+	}
+
+	public String getFormula()
+	{
+		return formula;
+	}
+
+	public int getNumberOfElements()
+	{
+		return iAtom.length;
+	}
+
+	//atomic numbers of the elements, the array is shared and should not be modified
+	public int[] getAtomicNumbers()
+	{
+		return iAtom;
+	}
+
+	//atom counts of the elements, the array is shared and should not be modified
+	public double[] getAtomCounts()
+	{
+		return nAtom;
+	}
+
+	public double getMolecularWeight()
+	{
+		return molecularWeight;
+	}
+
+	public int getStatus()
+	{
+		return status;
+	}
+
+	public boolean containsElement(int iAtomicNumber)
+	{
+		int i;
+		for (i=0; i<iAtom.length; i++)
+		{
+			if (iAtom[i]==iAtomicNumber)
+				return true;
+		}
+		return false;
+	}
+
+	public double getNumberOfAtoms(int iAtomicNumber)
+	{
+		int i;
+		for (i=0; i<iAtom.length; i++)
+		{
+			if (iAtom[i]==iAtomicNumber)
+				return nAtom[i];
+		}
+		return 0;
+	}
+
+	//atomic number of the symbol starting at pos with length 1 or 2, -1 if unknown
+	private static int getElementIndex(String str, int pos, int len)
+	{
+		char ch = str.charAt(pos);
+		char ch2 = len>1 ? str.charAt(pos+1) : 0;
+		if (ch<'A' || ch>'Z')
+			return -1;
+		if (len==1)
+			return symbolTable[27*(ch-'A')];
+		if (ch2<'a' || ch2>'z')
+			return -1;
+		return symbolTable[27*(ch-'A') + ch2-'a'+1];
+	}
+
+	//length of the number starting at pos, digits with an optional decimal point followed by a digit
+	private static int scanNumber(String str, int pos)
+	{
+		int i = pos;
+		int len = str.length();
+		boolean bPoint = false;
+		while (i<len)
+		{
+			char ch = str.charAt(i);
+			if (ch>='0' && ch<='9')
+				i++;
+			else if (ch=='.' && !bPoint && i>pos && i+1<len && str.charAt(i+1)>='0' && str.charAt(i+1)<='9')
+			{
+				bPoint = true;
+				i++;
+			}
+			else
+				break;
+		}
+		return i - pos;
+	}
+
+	//value of the number of given length starting at pos, 1 if the length is zero
+	private static double parseNumber(String str, int pos, int len)
+	{
+		int i;
+		int nFraction = -1;
+		long mantissa = 0;
+		if (len==0)
+			return 1;
+		if (len>15)
+			return Double.parseDouble(str.substring(pos, pos+len));
+		for (i=pos; i<pos+len; i++)
+		{
+			char ch = str.charAt(i);
+			if (ch=='.')
+				nFraction = 0;
+			else
+			{
+				mantissa = 10*mantissa + (ch-'0');
+				if (nFraction>=0)
+					nFraction++;
+			}
+		}
+		//both operands are exact, so the quotient is rounded the same way as Double.parseDouble()
+		return nFraction>0 ? mantissa/powerOfTen[nFraction] : mantissa;
+	}
+
+	//check if the parentheses starting at pos contain a state of matter such as (s), (l), (g), (aq) or (L)
+	private static boolean isStateSuffix(String str, int pos)
+	{
+		int i;
+		int end = str.indexOf(')', pos);
+		if (end<0 || end==pos+1)
+			return false;
+		boolean bLowerCase = Character.isLowerCase(str.charAt(pos+1));
+		for (i=pos+1; i<end; i++)
+		{
+			if (!Character.isLetter(str.charAt(i)))
+				return false;
+		}
+		if (bLowerCase)
+			return true;
+		//upper case content is a state if it is not an element symbol
+		for (i=pos+1; i<end; )
+		{
+			int len = i+1<end && Character.isLowerCase(str.charAt(i+1)) ? 2 : 1;
+			if (getElementIndex(str, i, len)<0)
+				return true;
+			i += len;
+		}
+		return false;
+	}
+
+	//parse formula, the elements are collected as a list of (atomic number, count) items that groups and hydrate parts multiply
+	private static FormulaComposition parse(String formula)
+	{
+		int i, j, k;
+		int len = formula.length();
+		int pos = 0;
+		int nItem = 0;
+		int nGroup = 0;
+		int nElement;
+		int iSymbol;
+		int lenSymbol;
+		int lenNumber;
+		int iPart = 0;
+		int status = statusOk;
+		double x;
+		char ch;
+		int[] itemAtom = new int[len];
+		double[] itemCount = new double[len];
+		int[] groupStart = new int[len];
+		//a leading number is the count of the first part
+		lenNumber = scanNumber(formula, pos);
+		double partCount = parseNumber(formula, pos, lenNumber);
+		pos += lenNumber;
+		while (pos<len)
+		{
+			ch = formula.charAt(pos);
+			if (ch>='A' && ch<='Z')
+			{
+				lenSymbol = pos+1<len && Character.isLowerCase(formula.charAt(pos+1)) ? 2 : 1;
+				iSymbol = getElementIndex(formula, pos, lenSymbol);
+				if (iSymbol<0)
+				{
+					//unknown symbols are counted as ash as in earlier versions
+					iSymbol = 0;
+					status = statusUnknownElement;
+				}
+				pos += lenSymbol;
+				lenNumber = scanNumber(formula, pos);
+				itemAtom[nItem] = iSymbol;
+				itemCount[nItem] = parseNumber(formula, pos, lenNumber);
+				nItem++;
+				pos += lenNumber;
+			}
+			else if (ch=='(' || ch=='[')
+			{
+				if (ch=='(' && isStateSuffix(formula, pos))
+					break;
+				groupStart[nGroup++] = nItem;
+				pos++;
+			}
+			else if (ch==')' || ch==']')
+			{
+				if (nGroup==0)
+				{
+					status = statusUnbalancedGroup;
+					break;
+				}
+				pos++;
+				lenNumber = scanNumber(formula, pos);
+				x = parseNumber(formula, pos, lenNumber);
+				pos += lenNumber;
+				for (i=groupStart[--nGroup]; i<nItem; i++)
+					itemCount[i] *= x;
+			}
+			else if (ch=='*' || ch=='\u00b7')
+			{
+				for (i=iPart; i<nItem; i++)
+					itemCount[i] *= partCount;
+				iPart = nItem;
+				pos++;
+				lenNumber = scanNumber(formula, pos);
+				partCount = parseNumber(formula, pos, lenNumber);
+				pos += lenNumber;
+			}
+			else if (ch=='+' || ch=='-')
+				break;
+			else
+			{
+				status = statusInvalidCharacter;
+				break;
+			}
+		}
+		if (nGroup>0 && status==statusOk)
+			status = statusUnbalancedGroup;
+		for (i=iPart; i<nItem; i++)
+			itemCount[i] *= partCount;
+		//merge duplicated elements keeping the order of first appearance
+		int[] iElement = new int[atomicMass.length];
+		for (i=0; i<iElement.length; i++)
+			iElement[i] = -1;
+		nElement = 0;
+		for (i=0; i<nItem; i++)
+		{
+			if (iElement[itemAtom[i]]<0)
+				iElement[itemAtom[i]] = nElement++;
+		}
+		int[] iAtom = new int[nElement];
+		double[] nAtom = new double[nElement];
+		for (i=0; i<nItem; i++)
+		{
+			j = itemAtom[i];
+			k = iElement[j];
+			iAtom[k] = j;
+			nAtom[k] += itemCount[i];
+		}
+		return new FormulaComposition(formula, iAtom, nAtom, status);
+	}
+}
@@ -0,0 +1,99 @@
+package DataModel;
+
+/**
+ * Class of the leave-one-out cross-validation errors of a Kriging model computed by KrigingModel.crossValidate()
+ * The residual of design site i is y(i) minus the prediction at x(i) of the model fitted to the other design sites with the same theta,
+ * Beta is fitted again without site i but theta and the normalization of the design sites are not changed.
+ * The residuals are in the units of the outputs, the variance of a residual is the process variance divided by the i-th diagonal value
+ * of the inverse of the bordered correlation matrix, so a residual divided by the square root of its variance is a standardized residual.
+ */
+public class KrigingCrossValidation
+{
+	private int nds;				//number of design sites
+	private int ny;					//number of outputs
+	private double[] residual;		//leave-one-out residuals, nds by ny
+	private double[] variance;		//variances of the leave-one-out predictions, nds by ny
+	private double[] rmsError;		//root mean square of the residuals of each output
+	private double[] maxError;		//maximum absolute residual of each output
+	private int[] iMaxError;		//design site of the maximum absolute residual of each output
+
+	//called by KrigingModel.crossValidate() with the arrays used without copying
+	KrigingCrossValidation(int nds, int ny, double[] residual, double[] variance)
+	{
+		int i, j;
+		double e;
+		this.nds = nds;
+		this.ny = ny;
+		this.residual = residual;
+		this.variance = variance;
+		rmsError = new double[ny];
+		maxError = new double[ny];
+		iMaxError = new int[ny];
+		for (j=0; j<ny; j++)
+		{
+			for (i=0; i<nds; i++)
+			{
+				e = residual[i*ny+j];
+				rmsError[j] += e*e;
+				if (Math.abs(e)>maxError[j])
+				{
+					maxError[j] = Math.abs(e);
+					iMaxError[j] = i;
+				}
+			}
+			rmsError[j] = Math.sqrt(rmsError[j]/nds);
+		}
+	}
+
+	public int getNumberOfDesignSites()
+	{
+		return nds;
+	}
+
+	public int getNumberOfOutputs()
+	{
+		return ny;
+	}
+
+	//leave-one-out residual of output j at design site i
+	public double getResidual(int i, int j)
+	{
+		return residual[i*ny+j];
+	}
+
+	//leave-one-out residuals, nds by ny in row-major order
+	public double[] getResiduals()
+	{
+		return residual.clone();
+	}
+
+	//residual of output j at design site i divided by its standard deviation
+	public double getStandardizedResidual(int i, int j)
+	{
+		return residual[i*ny+j]/Math.sqrt(variance[i*ny+j]);
+	}
+
+	//variances of the leave-one-out predictions, nds by ny in row-major order
+	public double[] getVariances()
+	{
+		return variance.clone();
+	}
+
+	//root mean square of the leave-one-out residuals of each output
+	public double[] getRootMeanSquareErrors()
+	{
+		return rmsError.clone();
+	}
+
+	//maximum absolute leave-one-out residual of each output
+	public double[] getMaximumErrors()
+	{
+		return maxError.clone();
+	}
+
+	//design site of the maximum absolute leave-one-out residual of each output
+	public int[] getMaximumErrorSites()
+	{
+		return iMaxError.clone();
+	}
+}
@@ -0,0 +1,745 @@
+package DataModel;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class of a Kriging response surface model fitted by the native CKriging and saved by CKriging::Write(), or fitted in Java by KrigingTrainer
+ * The input vector x is in the order of the ROM input vector and the output vector y is in the order of the ROM output vector of the UnitOperation.
+ * The prediction is the same as CKriging::Interpolate(): y = mean + sigma*(f(xn)*Beta + r(xn)*Gamma) where xn is the normalized input,
+ * f is the array of regression functions and r is the array of correlations between xn and the normalized design site inputs.
+ * The gradient dy/dx is the same expression with f and r replaced by their analytic derivatives to xn, scaled by the input standard deviations.
+ * The leave-one-out residuals of the design sites are computed in closed form from the same matrices by crossValidate().
+ * The model data are stored in flat row-major arrays. A model is not modified after it is read, so it can be shared by threads,
+ * the methods with a work array do not allocate memory and each thread should pass its own work array.
+ */
+public class KrigingModel
+{
+	//regression model options of CKriging
+	public static final int REGRESSION_CONSTANT = 0;
+	public static final int REGRESSION_LINEAR = 1;
+	public static final int REGRESSION_QUADRATIC = 2;
+
+	//correlation model options of CKriging
+	public static final int CORRELATION_GAUSS = 0;
+	public static final int CORRELATION_EXPONENTIAL = 1;
+	public static final int CORRELATION_LINEAR = 2;
+	public static final int CORRELATION_SPHERICAL = 3;
+	public static final int CORRELATION_CUBIC = 4;
+	public static final int CORRELATION_SPLINE = 5;
+
+	//version of CKriging, CDesignSite and CMatrix data written by the native code
+	private static final int nativeVersion = 0;
+
+	//number of points normalized and correlated together by the batch prediction
+	private static final int batchBlockSize = 32;
+
+	private int iregression;		//regression model option
+	private int icorrelation;		//correlation model option
+	private int nx;					//number of inputs
+	private int ny;					//number of outputs
+	private int nf;					//number of regression functions
+	private int nds;				//number of design sites
+	private double detR1m;			//determinant of the correlation matrix raised to the power of 1/nds
+	private double[] sigma2;		//process variance of each normalized output
+	private double[] theta;			//correlation parameters
+	private double[] xMean;			//mean of design site inputs
+	private double[] xSigma;		//standard deviation of design site inputs
+	private double[] yMean;			//mean of design site outputs
+	private double[] ySigma;		//standard deviation of design site outputs
+	private double[] xDesign;		//normalized design site inputs, nds by nx
+	private double[] yDesign;		//normalized design site outputs, nds by ny
+	private double[] beta;			//Beta matrix, nf by ny
+	private double[] gamma;			//Gamma matrix, nds by ny
+	private double[] ftilde;		//Ftilde matrix, nds by nf
+	private double[] cLower;		//lower triangle of the Cholesky factor C of the correlation matrix, row i starts at i*(i+1)/2
+	private double[] g;				//G matrix, lower triangle, nf by nf
+
+	private KrigingModel()
+	{
+	}
+
+	//model fitted in Java by KrigingTrainer, the arrays are used without copying and have the same layout as the fields
+	KrigingModel(int iregression, int icorrelation, int nx, int ny, int nds, double detR1m, double[] sigma2, double[] theta,
+		double[] xMean, double[] xSigma, double[] yMean, double[] ySigma, double[] xDesign, double[] yDesign,
+		double[] beta, double[] gamma, double[] ftilde, double[] cLower, double[] g)
+	{
+		this.iregression = iregression;
+		this.icorrelation = icorrelation;
+		this.nx = nx;
+		this.ny = ny;
+		this.nf = getNumberOfRegressionFunctions(iregression, nx);
+		this.nds = nds;
+		this.detR1m = detR1m;
+		this.sigma2 = sigma2;
+		this.theta = theta;
+		this.xMean = xMean;
+		this.xSigma = xSigma;
+		this.yMean = yMean;
+		this.ySigma = ySigma;
+		this.xDesign = xDesign;
+		this.yDesign = yDesign;
+		this.beta = beta;
+		this.gamma = gamma;
+		this.ftilde = ftilde;
+		this.cLower = cLower;
+		this.g = g;
+	}
+
+	//number of regression functions of a regression option and number of inputs, -1 if the option is invalid
+	public static int getNumberOfRegressionFunctions(int iregression, int nx)
+	{
+		switch (iregression)
+		{
+		case REGRESSION_CONSTANT:
+			return 1;
+		case REGRESSION_LINEAR:
+			return nx + 1;
+		case REGRESSION_QUADRATIC:
+			return (nx + 1)*(nx + 2)/2;
+		}
+		return -1;
+	}
+
+	//read a model file written by CKriging::Write() on a little-endian machine
+	public static KrigingModel read(String fileName) throws IOException
+	{
+		return read(fileName, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	//read a model file written by CKriging::Write() in the given byte order, int is 4 bytes, bool is 1 byte and T_REAL is double
+	public static KrigingModel read(String fileName, ByteOrder order) throws IOException
+	{
+		FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try
+		{
+			ByteBuffer bb = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			bb.order(order);
+			try
+			{
+				return read(bb);
+			}
+			catch(BufferUnderflowException e)
+			{
+				throw new EOFException("Kriging model file " + fileName + " is truncated");
+			}
+		}
+		finally
+		{
+			ch.close();
+		}
+	}
+
+	//read a model from a buffer positioned at the data written by CKriging::Write()
+	public static KrigingModel read(ByteBuffer bb) throws IOException
+	{
+		int i;
+		KrigingModel km = new KrigingModel();
+		checkVersion(bb.getInt(), "Kriging model");
+		km.iregression = bb.getInt();
+		km.icorrelation = bb.getInt();
+		km.nx = bb.getInt();
+		km.ny = bb.getInt();
+		km.nf = bb.getInt();
+		km.nds = bb.getInt();
+		km.detR1m = bb.getDouble();
+		if (km.icorrelation<CORRELATION_GAUSS || km.icorrelation>CORRELATION_SPLINE)
+			throw new IOException("Invalid Kriging correlation option " + km.icorrelation);
+		if (km.nx<1 || km.ny<1 || km.nds<1)
+			throw new IOException("Invalid Kriging model dimensions " + km.nx + ", " + km.ny + ", " + km.nds);
+		if (km.nf!=getNumberOfRegressionFunctions(km.iregression, km.nx))
+			throw new IOException("Invalid Kriging regression option " + km.iregression + " with " + km.nf + " regression functions");
+		if (bb.get()==0)
+			throw new IOException("Kriging model is not allocated");
+		int nx = km.nx;
+		int ny = km.ny;
+		int nf = km.nf;
+		int nds = km.nds;
+		km.sigma2 = readDoubles(bb, new double[ny], 0, ny);
+		km.theta = readDoubles(bb, new double[nx], 0, nx);
+		km.xDesign = new double[nds*nx];
+		km.yDesign = new double[nds*ny];
+		for (i=0; i<nds; i++)
+		{
+			readDesignSite(bb, nx, ny, null, null, 0);
+			readDesignSite(bb, nx, ny, km.xDesign, km.yDesign, i);
+		}
+		km.xMean = new double[nx];
+		km.yMean = new double[ny];
+		km.xSigma = new double[nx];
+		km.ySigma = new double[ny];
+		readDesignSite(bb, nx, ny, km.xMean, km.yMean, 0);
+		readDesignSite(bb, nx, ny, km.xSigma, km.ySigma, 0);
+		for (i=0; i<nx; i++)
+		{
+			if (km.xSigma[i]<=0)
+				throw new IOException("Standard deviation of Kriging input " + i + " is not positive");
+		}
+		readMatrix(bb, "Y", nds, ny, null);
+		readMatrix(bb, "Ytilde", nds, ny, null);
+		readMatrix(bb, "F", nds, nf, null);
+		km.ftilde = readMatrix(bb, "Ftilde", nds, nf, new double[nds*nf]);
+		readMatrix(bb, "R", nds, nds, null);
+		km.cLower = readLowerTriangle(bb, "C", nds);
+		km.g = readMatrix(bb, "G", nf, nf, new double[nf*nf]);
+		km.beta = readMatrix(bb, "Beta", nf, ny, new double[nf*ny]);
+		km.gamma = readMatrix(bb, "Gamma", nds, ny, new double[nds*ny]);
+		return km;
+	}
+
+	private static void checkVersion(int iversion, String name) throws IOException
+	{
+		if (iversion!=nativeVersion)
+			throw new IOException("Unsupported version " + iversion + " of " + name + " data");
+	}
+
+	private static double[] readDoubles(ByteBuffer bb, double[] v, int offset, int n)
+	{
+		int i;
+		if (v==null)
+		{
+			//skipping past the end is reported as reading past it
+			if (bb.remaining()<8L*n)
+				throw new BufferUnderflowException();
+			bb.position(bb.position() + 8*n);
+			return null;
+		}
+		for (i=0; i<n; i++)
+			v[offset+i] = bb.getDouble();
+		return v;
+	}
+
+	//read a CDesignSite into row i of the flat input and output arrays, the data are skipped if the arrays are null
+	private static void readDesignSite(ByteBuffer bb, int nx, int ny, double[] x, double[] y, int i) throws IOException
+	{
+		checkVersion(bb.getInt(), "design site");
+		int nxds = bb.getInt();
+		int nyds = bb.getInt();
+		if (nxds!=nx || nyds!=ny)
+			throw new IOException("Design site dimensions " + nxds + ", " + nyds + " differ from Kriging model dimensions " + nx + ", " + ny);
+		if (bb.get()==0)
+			throw new IOException("Design site is not allocated");
+		readDoubles(bb, x, i*nx, nx);
+		readDoubles(bb, y, i*ny, ny);
+	}
+
+	//read a CMatrix into a flat row-major array, the data are skipped if the array is null
+	private static double[] readMatrix(ByteBuffer bb, String name, int nrow, int ncol, double[] a) throws IOException
+	{
+		checkVersion(bb.getInt(), name + " matrix");
+		int nr = bb.getInt();
+		int nc = bb.getInt();
+		if (nr!=nrow || nc!=ncol)
+			throw new IOException(name + " matrix is " + nr + " by " + nc + " instead of " + nrow + " by " + ncol);
+		if (bb.get()==0)
+			throw new IOException(name + " matrix is not allocated");
+		return readDoubles(bb, a, 0, nrow*ncol);
+	}
+
+	//read the lower triangle of a square CMatrix into a packed array
+	private static double[] readLowerTriangle(ByteBuffer bb, String name, int n) throws IOException
+	{
+		int i;
+		checkVersion(bb.getInt(), name + " matrix");
+		int nr = bb.getInt();
+		int nc = bb.getInt();
+		if (nr!=n || nc!=n)
+			throw new IOException(name + " matrix is " + nr + " by " + nc + " instead of " + n + " by " + n);
+		if (bb.get()==0)
+			throw new IOException(name + " matrix is not allocated");
+		double[] a = new double[n*(n+1)/2];
+		for (i=0; i<n; i++)
+		{
+			readDoubles(bb, a, i*(i+1)/2, i+1);
+			readDoubles(bb, null, 0, n-i-1);
+		}
+		return a;
+	}
+
+	public int getRegressionOption()
+	{
+		return iregression;
+	}
+
+	public int getCorrelationOption()
+	{
+		return icorrelation;
+	}
+
+	public int getNumberOfInputs()
+	{
+		return nx;
+	}
+
+	public int getNumberOfOutputs()
+	{
+		return ny;
+	}
+
+	public int getNumberOfRegressionFunctions()
+	{
+		return nf;
+	}
+
+	public int getNumberOfDesignSites()
+	{
+		return nds;
+	}
+
+	public double getDetR1m()
+	{
+		return detR1m;
+	}
+
+	public double[] getTheta()
+	{
+		return theta.clone();
+	}
+
+	//length of the work array of predict()
+	public int getWorkLength()
+	{
+		return nx + nf + nds;
+	}
+
+	//length of the work array of the batch predict(), the normalized inputs, regression functions and correlations of a block of points
+	public int getBatchWorkLength()
+	{
+		return batchBlockSize*(nx + nf + nds);
+	}
+
+	//length of the work array of predictWithErrorEstimate()
+	public int getErrorEstimateWorkLength()
+	{
+		return nx + 2*nf + 2*nds;
+	}
+
+	//length of the work array of predictWithGradient()
+	public int getGradientWorkLength()
+	{
+		return 2*nx + nf + nds;
+	}
+
+	//normalized input xn[offset..offset+nx) of raw input x[xOffset..xOffset+nx)
+	private void normalizeInput(double[] x, int xOffset, double[] xn, int offset)
+	{
+		int k;
+		for (k=0; k<nx; k++)
+			xn[offset+k] = (x[xOffset+k] - xMean[k])/xSigma[k];
+	}
+
+	//regression functions f[offset..offset+nf) of normalized input xn[xOffset..xOffset+nx), same as CKriging::CalcFunctionArray()
+	private void calcFunctionArray(double[] xn, int xOffset, double[] f, int offset)
+	{
+		int i, j, k;
+		f[offset] = 1;
+		if (iregression==REGRESSION_CONSTANT)
+			return;
+		for (i=0; i<nx; i++)
+			f[offset+i+1] = xn[xOffset+i];
+		if (iregression==REGRESSION_LINEAR)
+			return;
+		k = offset + nx + 1;
+		for (i=0; i<nx; i++)
+		{
+			for (j=i; j<nx; j++)
+				f[k++] = xn[xOffset+i]*xn[xOffset+j];
+		}
+	}
+
+	//correlations r[offset..offset+nds) between normalized input xn[xOffset..xOffset+nx) and all design sites, same as CKriging::CalcCorrelation()
+	//the Gaussian and exponential products of the inputs are evaluated as one exponential of the sum of the exponents
+	private void calcCorrelationArray(double[] xn, int xOffset, double[] r, int offset)
+	{
+		int i, k, row;
+		double dx, tmp, s;
+		for (i=0; i<nds; i++)
+		{
+			row = i*nx;
+			switch (icorrelation)
+			{
+			case CORRELATION_GAUSS:
+				s = 0;
+				for (k=0; k<nx; k++)
+				{
+					dx = xn[xOffset+k] - xDesign[row+k];
+					s += theta[k]*dx*dx;
+				}
+				r[offset+i] = Math.exp(-s);
+				break;
+			case CORRELATION_EXPONENTIAL:
+				s = 0;
+				for (k=0; k<nx; k++)
+					s += theta[k]*Math.abs(xn[xOffset+k] - xDesign[row+k]);
+				r[offset+i] = Math.exp(-s);
+				break;
+			case CORRELATION_LINEAR:
+				s = 1;
+				for (k=0; k<nx && s!=0; k++)
+				{
+					tmp = 1 - theta[k]*Math.abs(xn[xOffset+k] - xDesign[row+k]);
+					s *= (tmp>0 ? tmp : 0);
+				}
+				r[offset+i] = s;
+				break;
+			case CORRELATION_SPHERICAL:
+				s = 1;
+				for (k=0; k<nx && s!=0; k++)
+				{
+					tmp = theta[k]*Math.abs(xn[xOffset+k] - xDesign[row+k]);
+					tmp = (tmp<1 ? tmp : 1);
+					s *= 1 - 1.5*tmp + 0.5*tmp*tmp*tmp;
+				}
+				r[offset+i] = s;
+				break;
+			case CORRELATION_CUBIC:
+				s = 1;
+				for (k=0; k<nx && s!=0; k++)
+				{
+					tmp = theta[k]*Math.abs(xn[xOffset+k] - xDesign[row+k]);
+					tmp = (tmp<1 ? tmp : 1);
+					s *= 1 - 3*tmp*tmp + 2*tmp*tmp*tmp;
+				}
+				r[offset+i] = s;
+				break;
+			default:	//spline
+				s = 1;
+				for (k=0; k<nx && s!=0; k++)
+				{
+					tmp = theta[k]*Math.abs(xn[xOffset+k] - xDesign[row+k]);
+					if (tmp<=0.2)
+						s *= 1 - 15*tmp*tmp + 30*tmp*tmp*tmp;
+					else if (tmp<1)
+					{
+						tmp = 1 - tmp;
+						s *= 1.25*tmp*tmp*tmp;
+					}
+					else
+						s = 0;
+				}
+				r[offset+i] = s;
+				break;
+			}
+		}
+	}
+
+	//normalized output yn = f*Beta + r*Gamma into y[yOffset..yOffset+ny), then converted to raw output
+	private void combine(double[] f, int fOffset, double[] r, int rOffset, double[] y, int yOffset)
+	{
+		int i, j, row;
+		double fi, ri;
+		for (j=0; j<ny; j++)
+			y[yOffset+j] = 0;
+		for (i=0; i<nf; i++)
+		{
+			fi = f[fOffset+i];
+			row = i*ny;
+			for (j=0; j<ny; j++)
+				y[yOffset+j] += fi*beta[row+j];
+		}
+		for (i=0; i<nds; i++)
+		{
+			ri = r[rOffset+i];
+			if (ri==0)
+				continue;
+			row = i*ny;
+			for (j=0; j<ny; j++)
+				y[yOffset+j] += ri*gamma[row+j];
+		}
+		for (j=0; j<ny; j++)
+			y[yOffset+j] = y[yOffset+j]*ySigma[j] + yMean[j];
+	}
+
+	//predict the outputs y of inputs x, a work array is allocated
+	public void predict(double[] x, double[] y)
+	{
+		predict(x, y, new double[getWorkLength()]);
+	}
+
+	//predict the outputs y of inputs x using a work array of length getWorkLength()
+	public void predict(double[] x, double[] y, double[] work)
+	{
+		normalizeInput(x, 0, work, 0);
+		calcFunctionArray(work, 0, work, nx);
+		calcCorrelationArray(work, 0, work, nx+nf);
+		combine(work, nx, work, nx+nf, y, 0);
+	}
+
+	//predict the outputs of nPoint input vectors, x is nPoint by nx and y is nPoint by ny in row-major order, a work array is allocated
+	public void predict(double[] x, double[] y, int nPoint)
+	{
+		predict(x, y, nPoint, new double[getBatchWorkLength()]);
+	}
+
+	//predict the outputs of nPoint input vectors using a work array of length getBatchWorkLength()
+	//the points are processed in blocks, so the design sites are streamed once per block instead of once per point
+	public void predict(double[] x, double[] y, int nPoint, double[] work)
+	{
+		int i, i0, n, p;
+		int iF = batchBlockSize*nx;			//regression functions of the block
+		int iR = iF + batchBlockSize*nf;	//correlations of the block
+		for (i0=0; i0<nPoint; i0+=batchBlockSize)
+		{
+			n = Math.min(batchBlockSize, nPoint-i0);
+			for (p=0; p<n; p++)
+			{
+				i = i0 + p;
+				normalizeInput(x, i*nx, work, p*nx);
+				calcFunctionArray(work, p*nx, work, iF+p*nf);
+				calcCorrelationArray(work, p*nx, work, iR+p*nds);
+			}
+			combineBlock(work, iF, work, iR, n, y, i0*ny);
+		}
+	}
+
+	//outputs of a block of n points, row i of Beta and Gamma is applied to all points of the block while it is in cache
+	private void combineBlock(double[] f, int fOffset, double[] r, int rOffset, int n, double[] y, int yOffset)
+	{
+		int i, j, p, row, yRow;
+		double c;
+		for (j=0; j<n*ny; j++)
+			y[yOffset+j] = 0;
+		for (i=0; i<nf; i++)
+		{
+			row = i*ny;
+			for (p=0; p<n; p++)
+			{
+				c = f[fOffset+p*nf+i];
+				yRow = yOffset + p*ny;
+				for (j=0; j<ny; j++)
+					y[yRow+j] += c*beta[row+j];
+			}
+		}
+		for (i=0; i<nds; i++)
+		{
+			row = i*ny;
+			for (p=0; p<n; p++)
+			{
+				c = r[rOffset+p*nds+i];
+				if (c==0)
+					continue;
+				yRow = yOffset + p*ny;
+				for (j=0; j<ny; j++)
+					y[yRow+j] += c*gamma[row+j];
+			}
+		}
+		for (p=0; p<n; p++)
+		{
+			yRow = yOffset + p*ny;
+			for (j=0; j<ny; j++)
+				y[yRow+j] = y[yRow+j]*ySigma[j] + yMean[j];
+		}
+	}
+
+	//predict the outputs y of inputs x and their estimated standard deviations e, same as CKriging::InterpolateWithErrorEstimate()
+	public void predictWithErrorEstimate(double[] x, double[] y, double[] e)
+	{
+		predictWithErrorEstimate(x, y, e, new double[getErrorEstimateWorkLength()]);
+	}
+
+	//predict with the error estimate using a work array of length getErrorEstimateWorkLength()
+	public void predictWithErrorEstimate(double[] x, double[] y, double[] e, double[] work)
+	{
+		int i, j, k, row;
+		double sum;
+		double term = 1;
+		int iF = nx;				//f array
+		int iR = iF + nf;			//r array
+		int iRt = iR + nds;			//r tilde = Cinv*r
+		int iU = iRt + nds;			//u = Ftilde^T*r tilde - f, then Ginv*u
+		predict(x, y, work);
+		//forward substitution of C*rtilde = r
+		for (i=0; i<nds; i++)
+		{
+			row = i*(i+1)/2;
+			sum = work[iR+i];
+			for (k=0; k<i; k++)
+				sum -= cLower[row+k]*work[iRt+k];
+			work[iRt+i] = sum/cLower[row+i];
+		}
+		for (j=0; j<nf; j++)
+			work[iU+j] = -work[iF+j];
+		for (i=0; i<nds; i++)
+		{
+			row = i*nf;
+			for (j=0; j<nf; j++)
+				work[iU+j] += ftilde[row+j]*work[iRt+i];
+		}
+		//forward substitution of G*v = u, v replaces u
+		for (i=0; i<nf; i++)
+		{
+			row = i*nf;
+			sum = work[iU+i];
+			for (k=0; k<i; k++)
+				sum -= g[row+k]*work[iU+k];
+			work[iU+i] = sum/g[row+i];
+		}
+		for (i=0; i<nf; i++)
+			term += work[iU+i]*work[iU+i];
+		for (i=0; i<nds; i++)
+			term -= work[iRt+i]*work[iRt+i];
+		for (j=0; j<ny; j++)
+			e[j] = Math.sqrt(Math.abs(term*sigma2[j]*ySigma[j]*ySigma[j]));
+	}
+
+	//predict the outputs y of inputs x and the derivatives dydx of the outputs to the inputs, a work array is allocated
+	public void predictWithGradient(double[] x, double[] y, double[] dydx)
+	{
+		predictWithGradient(x, y, dydx, new double[getGradientWorkLength()]);
+	}
+
+	//predict the outputs y and the ny by nx row-major matrix dydx, dydx[j*nx+k] = dy_j/dx_k, using a work array of length getGradientWorkLength()
+	//the correlations are products of one factor of each input, so the derivative of correlation r to input k is r times the derivative of
+	//the logarithm of factor k, a correlation of zero has a zero factor at a point where the factor is constant and has zero derivatives
+	//the derivative of |dx| at dx = 0 is taken as zero for the kernels with a kink at the design site
+	public void predictWithGradient(double[] x, double[] y, double[] dydx, double[] work)
+	{
+		int i, j, k, m, row;
+		int iF = nx;				//f array
+		int iR = iF + nf;			//r array
+		int iW = iR + nds;			//derivatives of one correlation to the normalized inputs
+		double dx, sign, tmp, dtmp, ri, c;
+		predict(x, y, work);
+		for (i=0; i<ny*nx; i++)
+			dydx[i] = 0;
+		//derivatives of the regression functions, f is 1, then xn for linear and quadratic, then xn_i*xn_j with i<=j for quadratic
+		if (iregression!=REGRESSION_CONSTANT)
+		{
+			for (k=0; k<nx; k++)
+			{
+				row = (k+1)*ny;
+				for (j=0; j<ny; j++)
+					dydx[j*nx+k] += beta[row+j];
+			}
+		}
+		if (iregression==REGRESSION_QUADRATIC)
+		{
+			m = nx + 1;
+			for (i=0; i<nx; i++)
+			{
+				for (k=i; k<nx; k++)
+				{
+					row = m*ny;
+					for (j=0; j<ny; j++)
+					{
+						c = beta[row+j];
+						dydx[j*nx+i] += c*work[k];
+						dydx[j*nx+k] += c*work[i];
+					}
+					m++;
+				}
+			}
+		}
+		//derivatives of the correlations
+		for (i=0; i<nds; i++)
+		{
+			ri = work[iR+i];
+			if (ri==0)
+				continue;
+			row = i*nx;
+			for (k=0; k<nx; k++)
+			{
+				dx = work[k] - xDesign[row+k];
+				sign = dx>0 ? 1 : (dx<0 ? -1 : 0);
+				tmp = theta[k]*Math.abs(dx);
+				switch (icorrelation)
+				{
+				case CORRELATION_GAUSS:
+					dtmp = -2*theta[k]*dx;
+					break;
+				case CORRELATION_EXPONENTIAL:
+					dtmp = -theta[k]*sign;
+					break;
+				case CORRELATION_LINEAR:
+					dtmp = -theta[k]*sign/(1 - tmp);
+					break;
+				case CORRELATION_SPHERICAL:
+					dtmp = tmp<1 ? (-1.5 + 1.5*tmp*tmp)*theta[k]*sign/(1 - 1.5*tmp + 0.5*tmp*tmp*tmp) : 0;
+					break;
+				case CORRELATION_CUBIC:
+					dtmp = tmp<1 ? (-6*tmp + 6*tmp*tmp)*theta[k]*sign/(1 - 3*tmp*tmp + 2*tmp*tmp*tmp) : 0;
+					break;
+				default:	//spline
+					if (tmp<=0.2)
+						dtmp = (-30*tmp + 90*tmp*tmp)*theta[k]*sign/(1 - 15*tmp*tmp + 30*tmp*tmp*tmp);
+					else
+						dtmp = -3*theta[k]*sign/(1 - tmp);
+					break;
+				}
+				work[iW+k] = ri*dtmp;
+			}
+			row = i*ny;
+			for (j=0; j<ny; j++)
+			{
+				c = gamma[row+j];
+				for (k=0; k<nx; k++)
+					dydx[j*nx+k] += c*work[iW+k];
+			}
+		}
+		//convert to the derivatives of the raw outputs to the raw inputs
+		for (j=0; j<ny; j++)
+		{
+			for (k=0; k<nx; k++)
+				dydx[j*nx+k] *= ySigma[j]/xSigma[k];
+		}
+	}
+
+	//closed-form leave-one-out cross-validation of the design sites with theta fixed, from one Cholesky factor instead of nds refits
+	//the residual of site i is Gamma(i)/Q(i,i) where Q = Rinv - Rinv*F*inv(F'*Rinv*F)*F'*Rinv is the upper left block of the inverse
+	//of the bordered correlation matrix, Q(i,i) = |w|^2 - |Ginv*Ftilde'*w|^2 with C*w = e(i), so only Gamma, C, Ftilde and G are used
+	public KrigingCrossValidation crossValidate()
+	{
+		int i, j, k, row;
+		double sum, q;
+		double[] w = new double[nds];
+		double[] u = new double[nf];
+		double[] residual = new double[nds*ny];
+		double[] variance = new double[nds*ny];
+		for (i=0; i<nds; i++)
+		{
+			//forward substitution of C*w = e(i), w is zero above row i
+			row = i*(i+1)/2;
+			w[i] = 1/cLower[row+i];
+			q = w[i]*w[i];
+			for (k=i+1; k<nds; k++)
+			{
+				row = k*(k+1)/2;
+				sum = 0;
+				for (j=i; j<k; j++)
+					sum -= cLower[row+j]*w[j];
+				w[k] = sum/cLower[row+k];
+				q += w[k]*w[k];
+			}
+			//u = Ftilde'*w, then forward substitution of G*v = u, v replaces u
+			for (j=0; j<nf; j++)
+				u[j] = 0;
+			for (k=i; k<nds; k++)
+			{
+				row = k*nf;
+				for (j=0; j<nf; j++)
+					u[j] += ftilde[row+j]*w[k];
+			}
+			for (k=0; k<nf; k++)
+			{
+				row = k*nf;
+				sum = u[k];
+				for (j=0; j<k; j++)
+					sum -= g[row+j]*u[j];
+				u[k] = sum/g[row+k];
+				q -= u[k]*u[k];
+			}
+			row = i*ny;
+			for (j=0; j<ny; j++)
+			{
+				residual[row+j] = gamma[row+j]/q*ySigma[j];
+				variance[row+j] = sigma2[j]/q*ySigma[j]*ySigma[j];
+			}
+		}
+		return new KrigingCrossValidation(nds, ny, residual, variance);
+	}
+}
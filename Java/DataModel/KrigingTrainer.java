@@ -0,0 +1,832 @@
+package DataModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class fitting the correlation parameters of a Kriging model in Java with the objective function of CKriging::CalcObjectiveFunction()
+ * The design sites are normalized as CDesignSite::Normalize() and the F and Y matrices are computed once and shared by all starts.
+ * The natural logarithm of theta is optimized by the Nelder-Mead method of CSimplex from a number of starts run in parallel on a fork-join pool,
+ * the first start is the starting point of CYROM::CalcRegression(), moved into the limits of ln(theta) if they do not contain it,
+ * and the others are drawn uniformly in the limits, the initial simplex and every new point are kept within the limits.
+ * The starts are run in rounds of a fixed size, after each round the remaining starts are skipped if enough starts have reached the best
+ * objective within the tolerance, so the result does not depend on the number of threads.
+ * Each thread evaluating the objective function uses its own workspace of the correlation matrix and its factors.
+ * The objective function is either the likelihood objective of the native code or the mean square leave-one-out error of the normalized outputs,
+ * computed in closed form from the same factors as KrigingModel.crossValidate().
+ */
+public class KrigingTrainer
+{
+	//objective function options
+	public static final int OBJECTIVE_LIKELIHOOD = 0;
+	public static final int OBJECTIVE_CROSS_VALIDATION = 1;
+
+	//tiny number to avoid dividing by zero in the relative error of the objective function, same as TINY of the native code
+	private static final double tiny = 1.0e-20;
+
+	//a column of Ftilde is rejected if its diagonal value of R relative to its norm is below this value
+	private static final double rankTolerance = 1e-12;
+
+	//offset of the initial simplex from the starting point in each dimension, same as CYROM::CalcRegression()
+	private static final double initialStep = 1;
+
+	//Nelder-Mead coefficients of reflection, expansion, contraction and shrinking, same as CSimplex
+	private static final double cref = 1;
+	private static final double cexp = 2;
+	private static final double ccon = 0.5;
+	private static final double cshr = 0.5;
+
+	private int iregression;		//regression model option
+	private int icorrelation;		//correlation model option
+	private int iobjective;			//objective function option
+	private int nx;					//number of inputs
+	private int ny;					//number of outputs
+	private int nf;					//number of regression functions
+	private int nds;				//number of design sites
+	private double[] xMean;			//mean of design site inputs
+	private double[] xSigma;		//standard deviation of design site inputs
+	private double[] yMean;			//mean of design site outputs
+	private double[] ySigma;		//standard deviation of design site outputs
+	private double[] xDesign;		//normalized design site inputs, nds by nx
+	private double[] yDesign;		//normalized design site outputs, nds by ny
+	private double[] fy;			//F and Y matrices side by side, nds by nf+ny
+
+	private double lnThetaMin;		//lower limit of ln(theta)
+	private double lnThetaMax;		//upper limit of ln(theta)
+	private double ftolr;			//relative error of objective function for convergence
+	private int nStart;				//number of starts
+	private int nStartPerRound;		//number of starts run together in a round
+	private int nConverged;			//number of starts reaching the best objective to skip the remaining starts, 0 to run all starts
+	private long seed;				//seed of the random starting points
+	private ForkJoinPool pool;		//pool running the starts, the common pool if null
+
+	//workspaces not used by a running start
+	private List<Workspace> freeWorkspaces;
+
+	//result of the last training
+	private double[] bestLnTheta;
+	private double bestObjective;
+	private int nStartRun;
+
+	//trainer of nds design sites with inputs x, nds by nx, and outputs y, nds by ny, in row-major order
+	public KrigingTrainer(int iregression, int icorrelation, int nx, int ny, double[] x, double[] y)
+	{
+		int i, j, k;
+		double d;
+		if (icorrelation<KrigingModel.CORRELATION_GAUSS || icorrelation>KrigingModel.CORRELATION_SPLINE)
+			throw new IllegalArgumentException("Invalid Kriging correlation option " + icorrelation);
+		nf = KrigingModel.getNumberOfRegressionFunctions(iregression, nx);
+		if (nf<0)
+			throw new IllegalArgumentException("Invalid Kriging regression option " + iregression);
+		if (nx<1 || ny<1 || x.length%nx!=0 || y.length!=x.length/nx*ny)
+			throw new IllegalArgumentException("Design site arrays of length " + x.length + " and " + y.length + " do not match " + nx + " inputs and " + ny + " outputs");
+		this.iregression = iregression;
+		this.icorrelation = icorrelation;
+		this.nx = nx;
+		this.ny = ny;
+		nds = x.length/nx;
+		if (nds<2 || nds<nf)
+			throw new IllegalArgumentException("Number of design sites " + nds + " is less than 2 or the number of regression functions " + nf);
+		//normalize the design sites, same as CDesignSite::Normalize()
+		xMean = new double[nx];
+		xSigma = new double[nx];
+		yMean = new double[ny];
+		ySigma = new double[ny];
+		xDesign = new double[nds*nx];
+		yDesign = new double[nds*ny];
+		for (k=0; k<nx; k++)
+		{
+			for (i=0; i<nds; i++)
+				xMean[k] += x[i*nx+k];
+			xMean[k] /= nds;
+			for (i=0; i<nds; i++)
+			{
+				d = x[i*nx+k] - xMean[k];
+				xSigma[k] += d*d;
+			}
+			xSigma[k] = Math.sqrt(xSigma[k]/(nds-1));
+			if (!(xSigma[k]>0))
+				throw new IllegalArgumentException("Standard deviation of Kriging input " + k + " is not positive");
+			for (i=0; i<nds; i++)
+				xDesign[i*nx+k] = (x[i*nx+k] - xMean[k])/xSigma[k];
+		}
+		for (j=0; j<ny; j++)
+		{
+			for (i=0; i<nds; i++)
+				yMean[j] += y[i*ny+j];
+			yMean[j] /= nds;
+			for (i=0; i<nds; i++)
+			{
+				d = y[i*ny+j] - yMean[j];
+				ySigma[j] += d*d;
+			}
+			ySigma[j] = Math.sqrt(ySigma[j]/(nds-1));
+			if (ySigma[j]<=0)		//output sigma zero is allowed
+				ySigma[j] = 1;
+			for (i=0; i<nds; i++)
+				yDesign[i*ny+j] = (y[i*ny+j] - yMean[j])/ySigma[j];
+		}
+		//F and Y matrices do not depend on theta, same as CKriging::CalcFYMatrices()
+		int m = nf + ny;
+		fy = new double[nds*m];
+		for (i=0; i<nds; i++)
+		{
+			calcFunctionArray(i, fy, i*m);
+			for (j=0; j<ny; j++)
+				fy[i*m+nf+j] = yDesign[i*ny+j];
+		}
+		iobjective = OBJECTIVE_LIKELIHOOD;
+		lnThetaMin = -3;
+		lnThetaMax = 5;
+		ftolr = 0.0001;
+		nStart = 16;
+		nStartPerRound = 8;
+		nConverged = 3;
+		seed = 0;
+		pool = null;
+		freeWorkspaces = new ArrayList<Workspace>();
+		bestObjective = Double.NaN;
+	}
+
+	public int getNumberOfDesignSites()
+	{
+		return nds;
+	}
+
+	public int getObjectiveOption()
+	{
+		return iobjective;
+	}
+
+	//objective function minimized by train(), the likelihood objective of CKriging::CalcObjectiveFunction() by default
+	public void setObjectiveOption(int iobj)
+	{
+		if (iobj!=OBJECTIVE_LIKELIHOOD && iobj!=OBJECTIVE_CROSS_VALIDATION)
+			throw new IllegalArgumentException("Invalid Kriging objective option " + iobj);
+		iobjective = iobj;
+	}
+
+	public double getLnThetaMin()
+	{
+		return lnThetaMin;
+	}
+
+	public double getLnThetaMax()
+	{
+		return lnThetaMax;
+	}
+
+	//limits of ln(theta) in all dimensions, -3 and 5 as CYROM::CalcRegression() by default
+	public void setLnThetaLimits(double lo, double up)
+	{
+		if (!(lo<=up))
+			throw new IllegalArgumentException("Invalid limits of ln(theta) " + lo + " and " + up);
+		lnThetaMin = lo;
+		lnThetaMax = up;
+	}
+
+	public double getTolerance()
+	{
+		return ftolr;
+	}
+
+	//relative error of the objective function for the convergence of a start and for comparing the objectives of starts
+	public void setTolerance(double tol)
+	{
+		ftolr = tol;
+	}
+
+	public int getNumberOfStarts()
+	{
+		return nStart;
+	}
+
+	public void setNumberOfStarts(int n)
+	{
+		nStart = n>0 ? n : 1;
+	}
+
+	public int getNumberOfStartsPerRound()
+	{
+		return nStartPerRound;
+	}
+
+	public void setNumberOfStartsPerRound(int n)
+	{
+		nStartPerRound = n>0 ? n : 1;
+	}
+
+	public int getNumberOfConvergedStarts()
+	{
+		return nConverged;
+	}
+
+	//number of starts reaching the best objective within the tolerance after which the remaining rounds are skipped, 0 to run all starts
+	public void setNumberOfConvergedStarts(int n)
+	{
+		nConverged = n>0 ? n : 0;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	public void setSeed(long s)
+	{
+		seed = s;
+	}
+
+	//pool running the starts, the common pool is used if null
+	public void setPool(ForkJoinPool fjp)
+	{
+		pool = fjp;
+	}
+
+	//ln(theta) of the best start of the last training, null before training
+	public double[] getBestLnTheta()
+	{
+		return bestLnTheta==null ? null : bestLnTheta.clone();
+	}
+
+	//objective function of the best start of the last training
+	public double getBestObjective()
+	{
+		return bestObjective;
+	}
+
+	//number of starts run by the last training
+	public int getNumberOfStartsRun()
+	{
+		return nStartRun;
+	}
+
+	//correlation matrix, its factors and the solution of one objective function evaluation
+	private class Workspace
+	{
+		double[] r;					//correlation matrix, then its Cholesky factor C in the lower triangle, nds by nds
+		double[] z;					//Ftilde and Ytilde side by side, C*z = [F Y], nds by nf+ny
+		double[] qr;				//Householder QR decomposition of Ftilde, nds by nf
+		double[] tau;				//factors of Householder reflections
+		double[] b;					//column of Ytilde, overwritten by Q'*Ytilde
+		double[] qty;				//Q'*Ytilde by columns for the cross-validation, ny by nds
+		double[] w;					//column of Cinv for the cross-validation
+		double[] x;					//column of Beta
+		double[] sigma2;			//process variance of each normalized output
+		double[] theta;				//correlation parameters
+		double detR1m;				//determinant of the correlation matrix raised to the power of 1/nds
+		SolverDiagnostic diag;
+
+		Workspace()
+		{
+			r = new double[nds*nds];
+			z = new double[nds*(nf+ny)];
+			qr = new double[nds*nf];
+			tau = new double[nf];
+			b = new double[nds];
+			qty = new double[ny*nds];
+			w = new double[nds];
+			x = new double[nf];
+			sigma2 = new double[ny];
+			theta = new double[nx];
+			diag = new SolverDiagnostic();
+		}
+	}
+
+	private Workspace acquireWorkspace()
+	{
+		synchronized (freeWorkspaces)
+		{
+			if (!freeWorkspaces.isEmpty())
+				return freeWorkspaces.remove(freeWorkspaces.size()-1);
+		}
+		return new Workspace();
+	}
+
+	private void releaseWorkspace(Workspace ws)
+	{
+		synchronized (freeWorkspaces)
+		{
+			freeWorkspaces.add(ws);
+		}
+	}
+
+	//regression functions of normalized design site i into f[offset..offset+nf), same as CKriging::CalcFunctionArray()
+	private void calcFunctionArray(int i, double[] f, int offset)
+	{
+		int j, k, m;
+		int row = i*nx;
+		f[offset] = 1;
+		if (iregression==KrigingModel.REGRESSION_CONSTANT)
+			return;
+		for (j=0; j<nx; j++)
+			f[offset+j+1] = xDesign[row+j];
+		if (iregression==KrigingModel.REGRESSION_LINEAR)
+			return;
+		m = offset + nx + 1;
+		for (j=0; j<nx; j++)
+		{
+			for (k=j; k<nx; k++)
+				f[m++] = xDesign[row+j]*xDesign[row+k];
+		}
+	}
+
+	//correlation of normalized design sites i and j, same as CKriging::CalcCorrelation()
+	//the Gaussian and exponential products are evaluated as one exponential of the sum of the exponents as KrigingModel
+	private double calcCorrelation(double[] theta, int i, int j)
+	{
+		int k;
+		int rowi = i*nx;
+		int rowj = j*nx;
+		double dx, tmp;
+		double s;
+		switch (icorrelation)
+		{
+		case KrigingModel.CORRELATION_GAUSS:
+			s = 0;
+			for (k=0; k<nx; k++)
+			{
+				dx = xDesign[rowi+k] - xDesign[rowj+k];
+				s += theta[k]*dx*dx;
+			}
+			return Math.exp(-s);
+		case KrigingModel.CORRELATION_EXPONENTIAL:
+			s = 0;
+			for (k=0; k<nx; k++)
+				s += theta[k]*Math.abs(xDesign[rowi+k] - xDesign[rowj+k]);
+			return Math.exp(-s);
+		case KrigingModel.CORRELATION_LINEAR:
+			s = 1;
+			for (k=0; k<nx && s!=0; k++)
+			{
+				tmp = 1 - theta[k]*Math.abs(xDesign[rowi+k] - xDesign[rowj+k]);
+				s *= (tmp>0 ? tmp : 0);
+			}
+			return s;
+		case KrigingModel.CORRELATION_SPHERICAL:
+			s = 1;
+			for (k=0; k<nx && s!=0; k++)
+			{
+				tmp = theta[k]*Math.abs(xDesign[rowi+k] - xDesign[rowj+k]);
+				tmp = (tmp<1 ? tmp : 1);
+				s *= 1 - 1.5*tmp + 0.5*tmp*tmp*tmp;
+			}
+			return s;
+		case KrigingModel.CORRELATION_CUBIC:
+			s = 1;
+			for (k=0; k<nx && s!=0; k++)
+			{
+				tmp = theta[k]*Math.abs(xDesign[rowi+k] - xDesign[rowj+k]);
+				tmp = (tmp<1 ? tmp : 1);
+				s *= 1 - 3*tmp*tmp + 2*tmp*tmp*tmp;
+			}
+			return s;
+		default:	//spline
+			s = 1;
+			for (k=0; k<nx && s!=0; k++)
+			{
+				tmp = theta[k]*Math.abs(xDesign[rowi+k] - xDesign[rowj+k]);
+				if (tmp<=0.2)
+					s *= 1 - 15*tmp*tmp + 30*tmp*tmp*tmp;
+				else if (tmp<1)
+				{
+					tmp = 1 - tmp;
+					s *= 1.25*tmp*tmp*tmp;
+				}
+				else
+					s = 0;
+			}
+			return s;
+		}
+	}
+
+	//objective function of ln(theta) pln of the objective option, the factors are left in the workspace
+	private double calcObjectiveFunction(double[] pln, Workspace ws)
+	{
+		double fun = calcLikelihoodObjective(pln, ws);
+		if (iobjective==OBJECTIVE_CROSS_VALIDATION && fun!=Double.POSITIVE_INFINITY)
+			return calcCrossValidationError(ws);
+		return fun;
+	}
+
+	//likelihood objective function of ln(theta) pln, same as CKriging::CalcObjectiveFunction(), the factors are left in the workspace
+	//returns positive infinity if the correlation matrix is not positive definite or Ftilde is rank deficient
+	private double calcLikelihoodObjective(double[] pln, Workspace ws)
+	{
+		int i, j, k, m, in, im, km;
+		double sum, c;
+		double[] r = ws.r;
+		double[] z = ws.z;
+		for (k=0; k<nx; k++)
+			ws.theta[k] = Math.exp(pln[k]);
+		//lower triangle of R with the tiny number added to the diagonal as CKriging::CalcRMatrix()
+		for (i=0; i<nds; i++)
+		{
+			in = i*nds;
+			for (j=0; j<i; j++)
+				r[in+j] = calcCorrelation(ws.theta, i, j);
+			r[in+i] = 1 + (10+nds)*Math.pow(2.0, -52.0);
+		}
+		if (LinearSolver.choleskyDecomposition(nds, r, 0, ws.diag)!=0)
+			return Double.POSITIVE_INFINITY;
+		//pow(|R|,1/nds) from the diagonal of C, summed as logarithms to avoid underflow
+		sum = 0;
+		for (i=0; i<nds; i++)
+			sum += Math.log(r[i*nds+i]);
+		ws.detR1m = Math.exp(2*sum/nds);
+		//forward substitution of C*[Ftilde Ytilde] = [F Y]
+		m = nf + ny;
+		System.arraycopy(fy, 0, z, 0, nds*m);
+		for (i=0; i<nds; i++)
+		{
+			in = i*nds;
+			im = i*m;
+			for (k=0; k<i; k++)
+			{
+				c = r[in+k];
+				if (c==0)
+					continue;
+				km = k*m;
+				for (j=0; j<m; j++)
+					z[im+j] -= c*z[km+j];
+			}
+			c = r[in+i];
+			for (j=0; j<m; j++)
+				z[im+j] /= c;
+		}
+		//least squares solution Beta of Ftilde*Beta = Ytilde, the variance is the squared residual of Q'*Ytilde below the first nf rows
+		for (i=0; i<nds; i++)
+		{
+			for (k=0; k<nf; k++)
+				ws.qr[i*nf+k] = z[i*m+k];
+		}
+		if (LinearSolver.householderQR(nds, nf, ws.qr, ws.tau, rankTolerance, ws.diag)!=0)
+			return Double.POSITIVE_INFINITY;
+		double fun = 0;
+		for (j=0; j<ny; j++)
+		{
+			for (i=0; i<nds; i++)
+				ws.b[i] = z[i*m+nf+j];
+			LinearSolver.qrSolve(nds, nf, ws.qr, ws.tau, ws.b, ws.x);
+			sum = 0;
+			for (i=nf; i<nds; i++)
+				sum += ws.b[i]*ws.b[i];
+			ws.sigma2[j] = sum/nds;
+			fun += ws.sigma2[j];
+			System.arraycopy(ws.b, 0, ws.qty, j*nds, nds);
+		}
+		return fun*ws.detR1m;
+	}
+
+	//sum over the outputs of the mean square leave-one-out residual of the normalized outputs from the factors in the workspace
+	//with P the last nds-nf rows of Q', the residual of site i is (P*w)'*(P*Ytilde)/|P*w|^2 with C*w = e(i),
+	//which is Gamma(i)/Q(i,i) of KrigingModel.crossValidate() without forming Gamma
+	private double calcCrossValidationError(Workspace ws)
+	{
+		int i, j, k, in, jn;
+		double sum, q, e;
+		double fun = 0;
+		double[] r = ws.r;
+		double[] w = ws.w;
+		for (i=0; i<nds; i++)
+		{
+			//forward substitution of C*w = e(i), w is zero above row i
+			for (k=0; k<i; k++)
+				w[k] = 0;
+			w[i] = 1/r[i*nds+i];
+			for (k=i+1; k<nds; k++)
+			{
+				in = k*nds;
+				sum = 0;
+				for (j=i; j<k; j++)
+					sum -= r[in+j]*w[j];
+				w[k] = sum/r[in+k];
+			}
+			LinearSolver.qrApplyTranspose(nds, nf, ws.qr, ws.tau, w);
+			q = 0;
+			for (k=nf; k<nds; k++)
+				q += w[k]*w[k];
+			for (j=0; j<ny; j++)
+			{
+				jn = j*nds;
+				e = 0;
+				for (k=nf; k<nds; k++)
+					e += w[k]*ws.qty[jn+k];
+				e /= q;
+				fun += e*e;
+			}
+		}
+		return fun/nds;
+	}
+
+	//objective function of ln(theta) pln of the objective option
+	public double calcObjectiveFunction(double[] pln)
+	{
+		Workspace ws = acquireWorkspace();
+		try
+		{
+			return calcObjectiveFunction(pln, ws);
+		}
+		finally
+		{
+			releaseWorkspace(ws);
+		}
+	}
+
+	//task of one start, the Nelder-Mead method of CSimplex::Optimize() from starting point p0 and the offsets of CSimplex::InitSimplex()
+	//returns ln(theta) of the best point followed by its objective function
+	private class StartTask extends RecursiveTask<double[]>
+	{
+		private static final long serialVersionUID = 4035020679327453186L;
+
+		private double[] p0;
+
+		StartTask(double[] p)
+		{
+			p0 = p;
+		}
+
+		protected double[] compute()
+		{
+			int i, j;
+			int nvar = nx;
+			int niteMax = nvar*50;
+			int nite = 0;
+			double ferra, ferrr;
+			double fref, fexp, fcon;
+			double[] ptmp;
+			double[] psum = new double[nvar];
+			double[] pnew = new double[nvar+1];
+			double[] psave = new double[nvar+1];
+			double[][] pps = new double[nvar+1][nvar+1];
+			Workspace ws = acquireWorkspace();
+			try
+			{
+				for (j=0; j<=nvar; j++)
+				{
+					for (i=0; i<nvar; i++)
+						pps[j][i] = p0[i];
+					if (j>0)		//step down from the upper limit and stay within a range narrower than the step
+					{
+						i = j - 1;
+						pps[j][i] += pps[j][i]+initialStep<=lnThetaMax ? initialStep : -initialStep;
+						if (pps[j][i]<lnThetaMin)
+							pps[j][i] = lnThetaMin;
+						if (pps[j][i]>lnThetaMax)
+							pps[j][i] = lnThetaMax;
+					}
+					pps[j][nvar] = calcObjectiveFunction(pps[j], ws);
+				}
+				calcPsum(pps, psum);
+				while (true)
+				{
+					sortSimplex(pps);
+					ferra = Math.abs(pps[nvar][nvar] - pps[0][nvar]);
+					ferrr = ferra/(Math.abs(pps[0][nvar]) + tiny);
+					if (ferrr<ftolr || nite>=niteMax)
+						break;
+					nite++;
+					//reflection
+					calcNewPoint(pps, psum, cref, pnew);
+					fref = pnew[nvar] = calcObjectiveFunction(pnew, ws);
+					if (fref<pps[nvar-1][nvar] && fref>pps[0][nvar])	//swap reflection point with worst point
+					{
+						for (i=0; i<nvar; i++)
+							psum[i] += pnew[i] - pps[nvar][i];
+						ptmp = pnew;
+						pnew = pps[nvar];
+						pps[nvar] = ptmp;
+					}
+					else if (fref<pps[0][nvar])		//expansion
+					{
+						ptmp = psave;
+						psave = pnew;
+						pnew = ptmp;
+						calcNewPoint(pps, psum, cexp, pnew);
+						fexp = pnew[nvar] = calcObjectiveFunction(pnew, ws);
+						if (fexp<fref)		//swap expansion point with worst point
+						{
+							for (i=0; i<nvar; i++)
+								psum[i] += pnew[i] - pps[nvar][i];
+							ptmp = pnew;
+							pnew = pps[nvar];
+							pps[nvar] = ptmp;
+						}
+						else				//swap reflection point with worst point
+						{
+							for (i=0; i<nvar; i++)
+								psum[i] += psave[i] - pps[nvar][i];
+							ptmp = psave;
+							psave = pps[nvar];
+							pps[nvar] = ptmp;
+						}
+					}
+					else		//contraction
+					{
+						calcNewPoint(pps, psum, -ccon, pnew);
+						fcon = pnew[nvar] = calcObjectiveFunction(pnew, ws);
+						if (fcon<pps[nvar][nvar])		//swap contraction point with worst point
+						{
+							for (i=0; i<nvar; i++)
+								psum[i] += pnew[i] - pps[nvar][i];
+							ptmp = pnew;
+							pnew = pps[nvar];
+							pps[nvar] = ptmp;
+						}
+						else			//shrinking
+						{
+							for (j=1; j<=nvar; j++)
+							{
+								for (i=0; i<nvar; i++)
+									pps[j][i] = pps[0][i] + cshr*(pps[j][i] - pps[0][i]);
+								pps[j][nvar] = calcObjectiveFunction(pps[j], ws);
+							}
+							calcPsum(pps, psum);
+						}
+					}
+				}
+			}
+			finally
+			{
+				releaseWorkspace(ws);
+			}
+			return pps[0];
+		}
+
+		private void calcPsum(double[][] pps, double[] psum)
+		{
+			int i, j;
+			for (i=0; i<nx; i++)
+			{
+				psum[i] = 0;
+				for (j=0; j<=nx; j++)
+					psum[i] += pps[j][i];
+			}
+		}
+
+		//sort the simplex from the lowest to the highest objective function, same as CSimplex::SortSimplex()
+		private void sortSimplex(double[][] pps)
+		{
+			int i, j;
+			double[] ptmp;
+			for (i=0; i<nx; i++)
+			{
+				for (j=i+1; j<=nx; j++)
+				{
+					if (pps[j][nx]<pps[i][nx])
+					{
+						ptmp = pps[j];
+						pps[j] = pps[i];
+						pps[i] = ptmp;
+					}
+				}
+			}
+		}
+
+		//point on the line from the worst point through the centroid of the other points, clipped to the limits, same as CSimplex::CalcNewPoint()
+		private void calcNewPoint(double[][] pps, double[] psum, double coef, double[] pnew)
+		{
+			int i;
+			double cnew = (coef+1)/nx;
+			double cnew1 = cnew + coef;
+			for (i=0; i<nx; i++)
+			{
+				pnew[i] = cnew*psum[i] - cnew1*pps[nx][i];
+				if (pnew[i]<lnThetaMin)
+					pnew[i] = lnThetaMin;
+				if (pnew[i]>lnThetaMax)
+					pnew[i] = lnThetaMax;
+			}
+		}
+	}
+
+	//task running the starts in rounds and choosing the best point in the order of the starts
+	private class TrainingTask extends RecursiveTask<double[]>
+	{
+		private static final long serialVersionUID = 7725882101379359593L;
+
+		protected double[] compute()
+		{
+			int i, k, i0, i1, nAgree;
+			double f;
+			SplittableRandom random = new SplittableRandom(seed);
+			List<StartTask> starts = new ArrayList<StartTask>(nStart);
+			List<double[]> results = new ArrayList<double[]>(nStart);
+			for (i=0; i<nStart; i++)
+			{
+				double[] p0 = new double[nx];
+				for (k=0; k<nx; k++)
+					p0[k] = i>0 ? lnThetaMin + (lnThetaMax - lnThetaMin)*random.nextDouble() : Math.min(Math.max(0, lnThetaMin), lnThetaMax);
+				starts.add(new StartTask(p0));
+			}
+			double[] best = null;
+			for (i0=0; i0<nStart; i0=i1)
+			{
+				i1 = Math.min(nStart, i0+nStartPerRound);
+				invokeAll(starts.subList(i0, i1));
+				for (i=i0; i<i1; i++)
+				{
+					double[] p = starts.get(i).join();
+					results.add(p);
+					if (best==null || p[nx]<best[nx])
+						best = p;
+				}
+				nStartRun = i1;
+				if (nConverged<=0)
+					continue;
+				nAgree = 0;
+				for (double[] p : results)
+				{
+					f = Math.abs(p[nx] - best[nx])/(Math.abs(best[nx]) + tiny);
+					if (f<ftolr)
+						nAgree++;
+				}
+				if (nAgree>=nConverged)
+					break;
+			}
+			return best;
+		}
+	}
+
+	//optimize ln(theta) and return the Kriging model of the best start
+	public KrigingModel train()
+	{
+		ForkJoinPool fjp = pool!=null ? pool : ForkJoinPool.commonPool();
+		double[] best = fjp.invoke(new TrainingTask());
+		bestLnTheta = new double[nx];
+		System.arraycopy(best, 0, bestLnTheta, 0, nx);
+		bestObjective = best[nx];
+		return createModel(bestLnTheta);
+	}
+
+	//Kriging model of ln(theta) pln with the matrices of CKriging::CalcAllMatrices(), null if the correlation matrix cannot be factorized
+	public KrigingModel createModel(double[] pln)
+	{
+		int i, j, k, m, in;
+		double c;
+		Workspace ws = new Workspace();
+		if (calcLikelihoodObjective(pln, ws)==Double.POSITIVE_INFINITY)
+			return null;
+		m = nf + ny;
+		double[] r = ws.r;
+		double[] z = ws.z;
+		double[] beta = new double[nf*ny];
+		double[] gamma = new double[nds*ny];
+		double[] ftilde = new double[nds*nf];
+		double[] cLower = new double[nds*(nds+1)/2];
+		double[] g = new double[nf*nf];
+		//Beta and the residual Ytilde - Ftilde*Beta
+		for (j=0; j<ny; j++)
+		{
+			for (i=0; i<nds; i++)
+				ws.b[i] = z[i*m+nf+j];
+			LinearSolver.qrSolve(nds, nf, ws.qr, ws.tau, ws.b, ws.x);
+			for (k=0; k<nf; k++)
+				beta[k*ny+j] = ws.x[k];
+		}
+		for (i=0; i<nds; i++)
+		{
+			for (k=0; k<nf; k++)
+				ftilde[i*nf+k] = z[i*m+k];
+			for (j=0; j<ny; j++)
+			{
+				c = z[i*m+nf+j];
+				for (k=0; k<nf; k++)
+					c -= ftilde[i*nf+k]*beta[k*ny+j];
+				gamma[i*ny+j] = c;
+			}
+		}
+		//back substitution of C'*Gamma = Ytilde - Ftilde*Beta as CKriging::CalcGammaMatrix()
+		for (i=nds-1; i>=0; i--)
+		{
+			for (k=i+1; k<nds; k++)
+			{
+				c = r[k*nds+i];
+				if (c==0)
+					continue;
+				for (j=0; j<ny; j++)
+					gamma[i*ny+j] -= c*gamma[k*ny+j];
+			}
+			c = r[i*nds+i];
+			for (j=0; j<ny; j++)
+				gamma[i*ny+j] /= c;
+		}
+		for (i=0; i<nds; i++)
+		{
+			in = i*(i+1)/2;
+			for (k=0; k<=i; k++)
+				cLower[in+k] = r[i*nds+k];
+		}
+		//G is the transpose of R of Ftilde = Q*R
+		for (i=0; i<nf; i++)
+		{
+			for (k=0; k<=i; k++)
+				g[i*nf+k] = ws.qr[k*nf+i];
+		}
+		return new KrigingModel(iregression, icorrelation, nx, ny, nds, ws.detR1m, ws.sigma2.clone(), ws.theta.clone(),
+			xMean, xSigma, yMean, ySigma, xDesign, yDesign, beta, gamma, ftilde, cLower, g);
+	}
+}
@@ -0,0 +1,507 @@
+package DataModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class of a space-filling Latin hypercube sampler of the ROM input space
+ * The points are on the same grid as CLHS of the native code: value j of a dimension is lower + j*(upper-lower)/(nPoint-1), each grid value is used once.
+ * A number of independent starts is run on a fork-join pool. Each start creates a random Latin hypercube and improves it by exchanging
+ * two values of a column when the exchange reduces the phi-p measure, which only needs the distances of the two exchanged points to the others.
+ * By default the number of attempted exchanges is exchangesPerValue times the number of grid values nPoint*nDim, so each value takes part
+ * in about 2*exchangesPerValue attempts whatever the size of the design. The change of the phi-p measure of an exchange is summed over
+ * the other points by a fork-join task when the design is large, split at fixed points so the sum does not depend on the number of threads.
+ * The best design of all starts is chosen by the criterion: the maximin criterion of CLHS::MaxMinDistanceSampling(), maximizing the minimum
+ * squared distance of two points and then minimizing the number of pairs at that distance, or the phi-p measure of CLHS::CalcQualityPhi()
+ * using rectilinear distances. Distances are measured in grid steps.
+ * The random stream of each start is split from one seeded stream in a fixed order, so the design does not depend on the number of threads.
+ */
+public class LatinHypercubeSampler
+{
+	//design criterion, maximin distance as CLHS::MaxMinDistanceSampling()
+	public static final int CRITERION_MAXIMIN = 0;
+
+	//design criterion, phi-p of rectilinear distances as CLHS::CalcQualityPhi()
+	public static final int CRITERION_PHI_P = 1;
+
+	//pairs of points in a task of the distance evaluation below which the task is not split
+	private static final long pairsPerTask = 1 << 18;
+
+	//grid values of the points in a task summing the change of an exchange below which the task is not split
+	private static final long valuesPerDeltaTask = 1 << 15;
+
+	//attempted exchanges per grid value in a start if the number of exchanges is not set
+	public static final int exchangesPerValue = 2;
+
+	private int nDim;				//number of dimensions
+	private int nPoint;				//number of points
+	private double[] lower;			//lower limit of each dimension
+	private double[] upper;			//upper limit of each dimension
+	private int criterion;			//criterion choosing the best design
+	private double p;				//exponent of the phi-p measure
+	private int nStart;				//number of independent starts
+	private int nExchange;			//number of attempted exchanges in each start, negative for exchangesPerValue*nPoint*nDim
+	private long seed;				//seed of the random streams
+	private ForkJoinPool pool;		//pool running the starts, the common pool if null
+
+	//sampler of the ranges of the parameters in the ROM input vector of a UnitOperation
+	public LatinHypercubeSampler(UnitOperation uo, int n)
+	{
+		this(getMinValues(uo.getRomInputVector()), getMaxValues(uo.getRomInputVector()), n);
+	}
+
+	//sampler of the ranges given by lower and upper limits
+	public LatinHypercubeSampler(double[] lo, double[] up, int n)
+	{
+		if (lo.length!=up.length)
+			throw new IllegalArgumentException("Lower limits of " + lo.length + " dimensions and upper limits of " + up.length + " dimensions");
+		nDim = lo.length;
+		nPoint = n;
+		lower = lo.clone();
+		upper = up.clone();
+		criterion = CRITERION_MAXIMIN;
+		p = 50;
+		nStart = 16;
+		nExchange = -1;
+		seed = 0;
+		pool = null;
+	}
+
+	private static double[] getMinValues(List<Parameter> list)
+	{
+		int i;
+		double[] v = new double[list.size()];
+		for (i=0; i<v.length; i++)
+			v[i] = list.get(i).getMinValue();
+		return v;
+	}
+
+	private static double[] getMaxValues(List<Parameter> list)
+	{
+		int i;
+		double[] v = new double[list.size()];
+		for (i=0; i<v.length; i++)
+			v[i] = list.get(i).getMaxValue();
+		return v;
+	}
+
+	public int getNumberOfDimensions()
+	{
+		return nDim;
+	}
+
+	public int getNumberOfPoints()
+	{
+		return nPoint;
+	}
+
+	public int getCriterion()
+	{
+		return criterion;
+	}
+
+	public void setCriterion(int c)
+	{
+		criterion = c;
+	}
+
+	public double getPhiExponent()
+	{
+		return p;
+	}
+
+	public void setPhiExponent(double pe)
+	{
+		p = pe;
+	}
+
+	public int getNumberOfStarts()
+	{
+		return nStart;
+	}
+
+	public void setNumberOfStarts(int n)
+	{
+		nStart = n>0 ? n : 1;
+	}
+
+	//number of attempted exchanges in each start
+	public int getNumberOfExchanges()
+	{
+		if (nExchange>=0)
+			return nExchange;
+		return (int)Math.min((long)exchangesPerValue*nPoint*nDim, Integer.MAX_VALUE);
+	}
+
+	//number of attempted exchanges in each start, 0 for random Latin hypercubes as CLHS::MaxMinDistanceSampling(),
+	//a negative number restores the default of exchangesPerValue*nPoint*nDim
+	public void setNumberOfExchanges(int n)
+	{
+		nExchange = n>=0 ? n : -1;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	public void setSeed(long s)
+	{
+		seed = s;
+	}
+
+	//pool running the starts and distance evaluations, the common pool is used if null
+	public void setPool(ForkJoinPool fjp)
+	{
+		pool = fjp;
+	}
+
+	//design of one start, grid indices of the points in point-major order and the criterion values
+	private static class Design
+	{
+		int[] grid;				//grid index of each point in each dimension, nPoint by nDim
+		long minDistance;		//minimum squared distance of two points
+		long nMinPair;			//number of pairs at the minimum squared distance
+		double phi;				//phi-p measure of the criterion distances
+
+		Design(int[] g)
+		{
+			grid = g;
+		}
+	}
+
+	//distance of a pair of points used by criterion c, squared Euclidean distance for maximin and rectilinear distance for phi-p
+	private long distance(int[] g, int i, int j, int c)
+	{
+		int k;
+		long d;
+		long sum = 0;
+		int rowi = i*nDim;
+		int rowj = j*nDim;
+		if (c==CRITERION_MAXIMIN)
+		{
+			for (k=0; k<nDim; k++)
+			{
+				d = g[rowi+k] - g[rowj+k];
+				sum += d*d;
+			}
+		}
+		else
+		{
+			for (k=0; k<nDim; k++)
+				sum += Math.abs(g[rowi+k] - g[rowj+k]);
+		}
+		return sum;
+	}
+
+	//exponent of the distance in the phi-p term of criterion c, the squared Euclidean distance is raised to -p/2
+	private double phiExponent(int c)
+	{
+		return c==CRITERION_MAXIMIN ? 0.5*p : p;
+	}
+
+	//term of a pair in the phi-p sum, dist^-e is evaluated by repeated squaring if e is an integer
+	private static double phiTerm(long dist, double e, int ie)
+	{
+		if (ie<0)
+			return Math.pow(dist, -e);
+		double base = 1.0/dist;
+		double term = 1;
+		while (ie>0)
+		{
+			if ((ie & 1)!=0)
+				term *= base;
+			base *= base;
+			ie >>= 1;
+		}
+		return term;
+	}
+
+	//integer exponent of the phi-p term, -1 if the exponent is not a small integer
+	private static int integerExponent(double e)
+	{
+		return e==Math.rint(e) && e>=0 && e<=1024 ? (int)e : -1;
+	}
+
+	//task evaluating the values of criterion c of the pairs (i,j) with i in [i0,i1) and j>i
+	private class EvaluationTask extends RecursiveTask<Design>
+	{
+		private static final long serialVersionUID = -5209259175986168893L;
+
+		private int[] g;
+		private int c;
+		private int i0, i1;
+
+		EvaluationTask(int[] grid, int cr, int first, int last)
+		{
+			g = grid;
+			c = cr;
+			i0 = first;
+			i1 = last;
+		}
+
+		protected Design compute()
+		{
+			int i, j;
+			long dist;
+			//number of pairs of rows i0 to i1-1
+			long nPair = (long)(i1-i0)*(2*nPoint-i0-i1-1)/2;
+			if (nPair>pairsPerTask && i1-i0>1)
+			{
+				//split at the row halving the number of pairs
+				int im = i0 + 1;
+				long half = 0;
+				while (im<i1-1 && 2*(half + nPoint-im)<nPair)
+				{
+					half += nPoint - im;
+					im++;
+				}
+				EvaluationTask left = new EvaluationTask(g, c, i0, im);
+				EvaluationTask right = new EvaluationTask(g, c, im, i1);
+				left.fork();
+				Design dr = right.compute();
+				Design dl = left.join();
+				if (dr.minDistance<dl.minDistance)
+				{
+					dl.minDistance = dr.minDistance;
+					dl.nMinPair = dr.nMinPair;
+				}
+				else if (dr.minDistance==dl.minDistance)
+					dl.nMinPair += dr.nMinPair;
+				dl.phi += dr.phi;
+				return dl;
+			}
+			double e = phiExponent(c);
+			int ie = integerExponent(e);
+			Design d = new Design(g);
+			d.minDistance = Long.MAX_VALUE;
+			for (i=i0; i<i1; i++)
+			{
+				for (j=i+1; j<nPoint; j++)
+				{
+					dist = distance(g, i, j, c);
+					if (dist<d.minDistance)
+					{
+						d.minDistance = dist;
+						d.nMinPair = 1;
+					}
+					else if (dist==d.minDistance)
+						d.nMinPair++;
+					d.phi += phiTerm(dist, e, ie);
+				}
+			}
+			return d;
+		}
+	}
+
+	//evaluate the values of criterion c of all pairs, phi is the sum of the phi-p terms
+	private Design evaluate(int[] g, int c)
+	{
+		return new EvaluationTask(g, c, 0, nPoint).compute();
+	}
+
+	//true if design a is better than design b by the criterion
+	private boolean isBetter(Design a, Design b)
+	{
+		if (b==null)
+			return true;
+		if (criterion==CRITERION_PHI_P)
+			return a.phi<b.phi;
+		if (a.minDistance!=b.minDistance)
+			return a.minDistance>b.minDistance;
+		return a.nMinPair<b.nMinPair;
+	}
+
+	//change of the phi-p sum of criterion c of exchanging the values ra of point a and rb of point b in column k,
+	//summed over the points j in [j0,j1) other than a and b, the distance between a and b does not change
+	private double exchangeDelta(int[] g, int k, int a, int b, int j0, int j1, int c, double e, int ie)
+	{
+		int j, rj;
+		long dOld, dNew;
+		int ra = g[a*nDim+k];
+		int rb = g[b*nDim+k];
+		double delta = 0;
+		for (j=j0; j<j1; j++)
+		{
+			if (j==a || j==b)
+				continue;
+			rj = g[j*nDim+k];
+			dOld = distance(g, a, j, c);
+			dNew = dOld - columnDistance(ra, rj, c) + columnDistance(rb, rj, c);
+			delta += phiTerm(dNew, e, ie) - phiTerm(dOld, e, ie);
+			dOld = distance(g, b, j, c);
+			dNew = dOld - columnDistance(rb, rj, c) + columnDistance(ra, rj, c);
+			delta += phiTerm(dNew, e, ie) - phiTerm(dOld, e, ie);
+		}
+		return delta;
+	}
+
+	//task summing the change of the phi-p sum of an exchange over the points j in [j0,j1), split in halves while the points
+	//have more than valuesPerDeltaTask grid values, so the order of the sum only depends on the size of the design
+	private class DeltaTask extends RecursiveTask<Double>
+	{
+		private static final long serialVersionUID = 6320855184930162417L;
+
+		private int[] g;
+		private int k, a, b;
+		private int j0, j1;
+		private int c;
+		private double e;
+		private int ie;
+
+		DeltaTask(int[] grid, int col, int pa, int pb, int first, int last, int cr, double pe, int ipe)
+		{
+			g = grid;
+			k = col;
+			a = pa;
+			b = pb;
+			j0 = first;
+			j1 = last;
+			c = cr;
+			e = pe;
+			ie = ipe;
+		}
+
+		protected Double compute()
+		{
+			if ((long)(j1-j0)*nDim<=valuesPerDeltaTask || j1-j0<2)
+				return exchangeDelta(g, k, a, b, j0, j1, c, e, ie);
+			int jm = (j0+j1) >>> 1;
+			DeltaTask left = new DeltaTask(g, k, a, b, j0, jm, c, e, ie);
+			DeltaTask right = new DeltaTask(g, k, a, b, jm, j1, c, e, ie);
+			left.fork();
+			double dr = right.compute();
+			return left.join() + dr;
+		}
+	}
+
+	//task of one start: a random Latin hypercube improved by exchanges of column values
+	private class StartTask extends RecursiveTask<Design>
+	{
+		private static final long serialVersionUID = 2793259440957826899L;
+
+		private SplittableRandom random;
+
+		StartTask(SplittableRandom r)
+		{
+			random = r;
+		}
+
+		protected Design compute()
+		{
+			int i, j, k, a, b, t, ra, rb;
+			double delta;
+			int c = criterion;
+			int nAttempt = getNumberOfExchanges();
+			boolean bSplit = (long)nPoint*nDim>valuesPerDeltaTask;
+			double e = phiExponent(c);
+			int ie = integerExponent(e);
+			int[] g = new int[nPoint*nDim];
+			//random permutation of the grid indices in each dimension
+			for (k=0; k<nDim; k++)
+			{
+				for (i=0; i<nPoint; i++)
+					g[i*nDim+k] = i;
+				for (i=nPoint-1; i>0; i--)
+				{
+					j = random.nextInt(i+1);
+					t = g[i*nDim+k];
+					g[i*nDim+k] = g[j*nDim+k];
+					g[j*nDim+k] = t;
+				}
+			}
+			if (nPoint<3)
+				return evaluate(g, c);
+			for (t=0; t<nAttempt; t++)
+			{
+				k = random.nextInt(nDim);
+				a = random.nextInt(nPoint);
+				b = random.nextInt(nPoint-1);
+				if (b>=a)
+					b++;
+				ra = g[a*nDim+k];
+				rb = g[b*nDim+k];
+				if (bSplit)
+					delta = new DeltaTask(g, k, a, b, 0, nPoint, c, e, ie).compute();
+				else
+					delta = exchangeDelta(g, k, a, b, 0, nPoint, c, e, ie);
+				if (delta<0)
+				{
+					g[a*nDim+k] = rb;
+					g[b*nDim+k] = ra;
+				}
+			}
+			return evaluate(g, c);
+		}
+	}
+
+	//contribution of one dimension to the distance of criterion c
+	private static long columnDistance(int ri, int rj, int c)
+	{
+		long d = ri - rj;
+		return c==CRITERION_MAXIMIN ? d*d : Math.abs(d);
+	}
+
+	//task running all starts and choosing the best design in the order of the starts
+	private class SamplingTask extends RecursiveTask<Design>
+	{
+		private static final long serialVersionUID = -2218675177113708494L;
+
+		protected Design compute()
+		{
+			int i;
+			SplittableRandom root = new SplittableRandom(seed);
+			List<StartTask> starts = new ArrayList<StartTask>(nStart);
+			for (i=0; i<nStart; i++)
+				starts.add(new StartTask(root.split()));
+			invokeAll(starts);
+			Design best = null;
+			for (StartTask st : starts)
+			{
+				Design d = st.join();
+				if (isBetter(d, best))
+					best = d;
+			}
+			return best;
+		}
+	}
+
+	//grid indices of the best design, nPoint by nDim in point-major order
+	public int[] sampleGrid()
+	{
+		if (nPoint<1 || nDim<1)
+			return new int[0];
+		ForkJoinPool fjp = pool!=null ? pool : ForkJoinPool.commonPool();
+		return fjp.invoke(new SamplingTask()).grid;
+	}
+
+	//points of the best design, nPoint by nDim in point-major order
+	public double[] sample()
+	{
+		int i, k;
+		int[] g = sampleGrid();
+		double[] x = new double[g.length];
+		for (k=0; k<nDim; k++)
+		{
+			double dx = nPoint>1 ? (upper[k] - lower[k])/(nPoint-1) : 0;
+			for (i=0; i<nPoint; i++)
+				x[i*nDim+k] = lower[k] + dx*g[i*nDim+k];
+		}
+		return x;
+	}
+
+	//minimum squared distance in grid steps of a design as used by the maximin criterion
+	public long getMinimumSquaredDistance(int[] grid)
+	{
+		return evaluate(grid, CRITERION_MAXIMIN).minDistance;
+	}
+
+	//phi-p measure of rectilinear distances in grid steps of a design, same measure as CLHS::CalcQualityPhi() of grid indices
+	public double getPhi(int[] grid)
+	{
+		return Math.pow(evaluate(grid, CRITERION_PHI_P).phi, 1/p);
+	}
+}
@@ -0,0 +1,351 @@
+package DataModel;
+
+/**
+ * Class of dense linear equation solvers used by the mass balance correction
+ * The symmetric and least squares solvers work on flat row-major arrays, element (i,j) of a matrix with n columns is stored at i*n+j.
+ * They report the numerical rank found by the factorization in a SolverDiagnostic.
+ */
+public class LinearSolver
+{
+	//algorithm to solve a set of linear equations by Gaussian elimination
+	//ppa and pb are overwritten, returns 1 if rank < nrow
+	public static int gaussianEliminationWithRowPivoting(int nrow, int ncol, double[][] ppa, double[] pb, double[] px)
+	{
+		boolean brank = false;			//true if rank<nrow
+		int i, j, k;
+		int imax;
+		double aijabs;
+		double aijmax;
+		double aswap;
+		double fac;
+		double[] rowPivot;
+		for (i=0; i<nrow; i++)
+		{
+			imax = i;
+			aijmax = Math.abs(ppa[i][i]);
+			for (k=i+1; k<nrow; k++)
+			{
+				aijabs = Math.abs(ppa[k][i]);
+				if (aijabs > aijmax)
+				{
+					imax = k;
+					aijmax = aijabs;
+				}
+			}
+			if (aijmax==0)		//rank < nrow
+			{
+				brank = true;
+				break;
+			}
+			if (imax!=i)	//swap
+			{
+				for (j=i; j<ncol; j++)
+				{
+					aswap = ppa[i][j];
+					ppa[i][j] = ppa[imax][j];
+					ppa[imax][j] = aswap;
+				}
+				aswap = pb[i];
+				pb[i] = pb[imax];
+				pb[imax] = aswap;
+			}
+			//elimimation
+			rowPivot = ppa[i];
+			for (k=i+1; k<nrow; k++)
+			{
+				fac = ppa[k][i]/rowPivot[i];
+				for (j=i; j<ncol; j++)
+					ppa[k][j] -= fac*rowPivot[j];
+				pb[k] -= fac*pb[i];
+			}
+		}
+		//set px[] to zero from i to ncol
+		for (k=i; k<ncol; k++)
+			px[k] = 0;
+		//back substitution
+		for (k=i-1; k>=0; k--)
+		{
+			aswap = 0;
+			for (j=k+1; j<ncol; j++)
+			{
+				aswap += ppa[k][j]*px[j];
+			}
+			px[k] = (pb[k]-aswap)/ppa[k][k];
+		}
+		if (brank)
+			return 1;
+		return 0;
+	}
+
+	//Cholesky decomposition A = L*L' of a symmetric positive definite n by n matrix stored in a
+	//only the lower triangle of a is used and it is overwritten by L, the upper triangle is not changed
+	//a pivot is rejected if it is not larger than tolerance times the original diagonal value
+	//returns 0 if successful, 1 if the matrix is not positive definite or rank deficient
+	public static int choleskyDecomposition(int n, double[] a, double tolerance, SolverDiagnostic diag)
+	{
+		int i, j, k;
+		int in, jn;
+		double sum;
+		double pivot;
+		diag.reset(SolverDiagnostic.CHOLESKY, n);
+		for (j=0; j<n; j++)
+		{
+			jn = j*n;
+			sum = a[jn+j];
+			for (k=0; k<j; k++)
+				sum -= a[jn+k]*a[jn+k];
+			if (!(sum>tolerance*a[jn+j]))		//also rejects NaN
+			{
+				diag.rejectPivot(j);
+				return 1;
+			}
+			diag.acceptPivot(sum/a[jn+j]);
+			pivot = Math.sqrt(sum);
+			a[jn+j] = pivot;
+			for (i=j+1; i<n; i++)
+			{
+				in = i*n;
+				sum = a[in+j];
+				for (k=0; k<j; k++)
+					sum -= a[in+k]*a[jn+k];
+				a[in+j] = sum/pivot;
+			}
+		}
+		return 0;
+	}
+
+	//solve L*L'*x = b with the Cholesky factor L stored in the lower triangle of l, b is overwritten by x
+	public static void choleskySolve(int n, double[] l, double[] b)
+	{
+		int i, k;
+		int in;
+		double sum;
+		//forward substitution
+		for (i=0; i<n; i++)
+		{
+			in = i*n;
+			sum = b[i];
+			for (k=0; k<i; k++)
+				sum -= l[in+k]*b[k];
+			b[i] = sum/l[in+i];
+		}
+		//back substitution
+		for (i=n-1; i>=0; i--)
+		{
+			sum = b[i];
+			for (k=i+1; k<n; k++)
+				sum -= l[k*n+i]*b[k];
+			b[i] = sum/l[i*n+i];
+		}
+	}
+
+	//Cholesky decomposition of the n by n matrices of cases c0 to c1-1 of a block, entry (i,j) of case c is stored in a[i*n+j][c]
+	//the operations of each case are the same as choleskyDecomposition(), the cases are processed together in the innermost loops
+	//each entry is a separate array of the cases, so the loops over the cases read and write different arrays at the same index and can be vectorized
+	//info[c] is set to 0 if successful or 1 if the matrix of case c is not positive definite or rank deficient, a rejected pivot is replaced by 1
+	//so the other cases are not affected, the smallest accepted relative pivot of case c is stored in minPivot[c] if minPivot is not null
+	//work is a scratch array of length c1, returns the number of failed cases
+	public static int choleskyDecomposition(int n, double[][] a, int c0, int c1, double tolerance, int[] info, double[] minPivot, double[] work)
+	{
+		int i, j, k, c;
+		int nFailed = 0;
+		double[] ajj, ajk, aij, aik;
+		for (c=c0; c<c1; c++)
+			info[c] = 0;
+		if (minPivot!=null)
+		{
+			for (c=c0; c<c1; c++)
+				minPivot[c] = 1;
+		}
+		for (j=0; j<n; j++)
+		{
+			ajj = a[j*n+j];
+			for (c=c0; c<c1; c++)
+				work[c] = ajj[c];
+			for (k=0; k<j; k++)
+			{
+				ajk = a[j*n+k];
+				for (c=c0; c<c1; c++)
+					ajj[c] -= ajk[c]*ajk[c];
+			}
+			//the pivots are checked before the square roots, so the loops of the factorization have no branch
+			for (c=c0; c<c1; c++)
+			{
+				if (!(ajj[c]>tolerance*work[c]))	//also rejects NaN
+				{
+					if (info[c]==0)
+						nFailed++;
+					info[c] = 1;
+					ajj[c] = 1;
+				}
+				else if (minPivot!=null && ajj[c]/work[c]<minPivot[c])
+					minPivot[c] = ajj[c]/work[c];
+			}
+			for (c=c0; c<c1; c++)
+				ajj[c] = Math.sqrt(ajj[c]);
+			for (i=j+1; i<n; i++)
+			{
+				aij = a[i*n+j];
+				for (k=0; k<j; k++)
+				{
+					aik = a[i*n+k];
+					ajk = a[j*n+k];
+					for (c=c0; c<c1; c++)
+						aij[c] -= aik[c]*ajk[c];
+				}
+				for (c=c0; c<c1; c++)
+					aij[c] /= ajj[c];
+			}
+		}
+		return nFailed;
+	}
+
+	//solve L*L'*x = b for cases c0 to c1-1 of a block with the factors of the block version of choleskyDecomposition()
+	//b[i][c] is element i of the right hand side of case c and it is overwritten by x
+	public static void choleskySolve(int n, double[][] l, double[][] b, int c0, int c1)
+	{
+		int i, k, c;
+		double[] bi, bk, lik;
+		//forward substitution
+		for (i=0; i<n; i++)
+		{
+			bi = b[i];
+			for (k=0; k<i; k++)
+			{
+				bk = b[k];
+				lik = l[i*n+k];
+				for (c=c0; c<c1; c++)
+					bi[c] -= lik[c]*bk[c];
+			}
+			lik = l[i*n+i];
+			for (c=c0; c<c1; c++)
+				bi[c] /= lik[c];
+		}
+		//back substitution
+		for (i=n-1; i>=0; i--)
+		{
+			bi = b[i];
+			for (k=i+1; k<n; k++)
+			{
+				bk = b[k];
+				lik = l[k*n+i];
+				for (c=c0; c<c1; c++)
+					bi[c] -= lik[c]*bk[c];
+			}
+			lik = l[i*n+i];
+			for (c=c0; c<c1; c++)
+				bi[c] /= lik[c];
+		}
+	}
+
+	//Householder QR decomposition A = Q*R of an m by n matrix stored in a with m>=n
+	//R is stored in the upper triangle of a, the Householder vectors with an implicit unit first element below the diagonal and their factors in tau
+	//a column is rejected if the absolute diagonal value of R is not larger than tolerance times the norm of the original column
+	//returns 0 if successful, 1 if the matrix is rank deficient
+	public static int householderQR(int m, int n, double[] a, double[] tau, double tolerance, SolverDiagnostic diag)
+	{
+		int i, j, k;
+		double sum;
+		double norm;
+		double columnNorm;
+		double beta;
+		double v0;
+		double w;
+		diag.reset(SolverDiagnostic.QR, n);
+		for (k=0; k<n; k++)
+		{
+			//norm of the original column k is the norm of R(0:k,k) after the transformation
+			columnNorm = 0;
+			for (i=0; i<k; i++)
+				columnNorm += a[i*n+k]*a[i*n+k];
+			sum = 0;
+			for (i=k; i<m; i++)
+				sum += a[i*n+k]*a[i*n+k];
+			norm = Math.sqrt(sum);
+			columnNorm = Math.sqrt(columnNorm + sum);
+			if (!(norm>tolerance*columnNorm))
+			{
+				diag.rejectPivot(k);
+				return 1;
+			}
+			diag.acceptPivot(norm/columnNorm);
+			beta = a[k*n+k]>0 ? -norm : norm;
+			v0 = a[k*n+k] - beta;
+			tau[k] = -v0/beta;
+			for (i=k+1; i<m; i++)
+				a[i*n+k] /= v0;
+			a[k*n+k] = beta;
+			//apply the reflection to the remaining columns
+			for (j=k+1; j<n; j++)
+			{
+				w = a[k*n+j];
+				for (i=k+1; i<m; i++)
+					w += a[i*n+k]*a[i*n+j];
+				w *= tau[k];
+				a[k*n+j] -= w;
+				for (i=k+1; i<m; i++)
+					a[i*n+j] -= w*a[i*n+k];
+			}
+		}
+		return 0;
+	}
+
+	//solve the least squares problem min |A*x-b| with the QR decomposition from householderQR()
+	//b of size m is overwritten by Q'*b, the solution is stored in x of size n
+	public static void qrSolve(int m, int n, double[] qr, double[] tau, double[] b, double[] x)
+	{
+		int i, k;
+		double w;
+		qrApplyTranspose(m, n, qr, tau, b);
+		//back substitution of R*x = Q'*b
+		for (k=n-1; k>=0; k--)
+		{
+			w = b[k];
+			for (i=k+1; i<n; i++)
+				w -= qr[k*n+i]*x[i];
+			x[k] = w/qr[k*n+k];
+		}
+	}
+
+	//apply Q' of the Householder reflections stored by householderQR() to b of size m, b is overwritten by Q'*b
+	//the last m-n values of Q'*b are the components of b orthogonal to the columns of A
+	public static void qrApplyTranspose(int m, int n, double[] qr, double[] tau, double[] b)
+	{
+		int i, k;
+		double w;
+		for (k=0; k<n; k++)
+		{
+			w = b[k];
+			for (i=k+1; i<m; i++)
+				w += qr[i*n+k]*b[i];
+			w *= tau[k];
+			b[k] -= w;
+			for (i=k+1; i<m; i++)
+				b[i] -= w*qr[i*n+k];
+		}
+	}
+
+	//solve R'*R*x = b with R stored in the upper triangle of qr from householderQR(), b of size n is overwritten by x
+	//R'*R is the matrix A'*A of the normal equations, so this solves the normal equations with the factors of the least squares problem
+	public static void qrNormalSolve(int n, double[] qr, double[] b)
+	{
+		int i, k;
+		double w;
+		//forward substitution of R'*z = b
+		for (k=0; k<n; k++)
+		{
+			w = b[k];
+			for (i=0; i<k; i++)
+				w -= qr[i*n+k]*b[i];
+			b[k] = w/qr[k*n+k];
+		}
+		//back substitution of R*x = z
+		for (k=n-1; k>=0; k--)
+		{
+			w = b[k];
+			for (i=k+1; i<n; i++)
+				w -= qr[k*n+i]*b[i];
+			b[k] = w/qr[k*n+k];
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package DataModel;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class for correcting the grouped ROM input and output vectors of the -b option on multiple threads
+ * All workers share one UnitOperation and its read-only element balance plan, each worker thread owns its own MassBalanceCorrector.
+ * The corrected vectors are written in the same case and group order as the input file, and the failed cases are printed
+ * with their case and group numbers by the calling thread after each block, so the messages of the workers are not interleaved.
+ */
+public class MassBalanceBatchCorrector
+{
+	//number of cases corrected by one worker in one block of cases
+	private static final int nCasePerWorker = 256;
+
+	//number of worker threads
+	private int nThread;
+
+	//number of ROM input parameters in a case
+	private int nInputParam;
+
+	//number of ROM output parameters in a case
+	private int nOutputParam;
+
+	//one corrector for each worker thread, all sharing the balance plan of the first one
+	private MassBalanceCorrector[] workerCorrectors;
+
+	//constructor with the JSON setup file and the number of worker threads
+	//if uo is not null, it is used as the setup of all workers and should have been read from the same JSON file,
+	//otherwise the setup is loaded once from the JSON file or its snapshot
+	//the parameters of the setup are only read by the workers, the corrected vectors are not stored in them
+	public MassBalanceBatchCorrector(UnitOperation uo, String jsonFileName, int n)
+	{
+		int i;
+		nThread = n>0 ? n : 1;
+		if (uo==null)
+			uo = SetupSnapshot.load(jsonFileName);
+		workerCorrectors = new MassBalanceCorrector[nThread];
+		workerCorrectors[0] = new MassBalanceCorrector(uo);
+		for (i=1; i<nThread; i++)
+			workerCorrectors[i] = new MassBalanceCorrector(uo, workerCorrectors[0].getElementBalancePlan());
+		nInputParam = uo.getRomInputVector().size();
+		nOutputParam = uo.getYromOutputVector().size();
+	}
+
+	public int getNumberOfThreads()
+	{
+		return nThread;
+	}
+
+	//task correcting a contiguous range of cases in a block with the corrector owned by one worker
+	//each case is corrected as UnitOperation.correctCaseVector() does, the failure message of a case is stored in messages
+	private static class CorrectionTask implements Callable<Integer>
+	{
+		private MassBalanceCorrector corrector;
+		private float[][] cases;
+		private String[] messages;
+		private int iStart;
+		private int iEnd;
+
+		CorrectionTask(MassBalanceCorrector corrector, float[][] cases, String[] messages, int iStart, int iEnd)
+		{
+			this.corrector = corrector;
+			this.cases = cases;
+			this.messages = messages;
+			this.iStart = iStart;
+			this.iEnd = iEnd;
+		}
+
+		public Integer call()
+		{
+			int i, j;
+			int iReturn;
+			int nFailed = 0;
+			int nInput = corrector.getNumberOfInputs();
+			int nOutput = corrector.getNumberOfOutputs();
+			double[] x = new double[nInput];
+			double[] y = new double[nOutput];
+			float[] v;
+			for (i=iStart; i<iEnd; i++)
+			{
+				v = cases[i];
+				for (j=0; j<nInput; j++)
+					x[j] = v[j];
+				for (j=0; j<nOutput; j++)
+					y[j] = v[nInput+j];
+				iReturn = corrector.correct(x, y, y);
+				for (j=0; j<nOutput; j++)
+					v[nInput+j] = (float)y[j];
+				messages[i] = UnitOperation.getCorrectionFailureMessage(iReturn, corrector.getLastSolverDiagnostic());
+				if (iReturn!=0)
+					nFailed++;
+			}
+			return Integer.valueOf(nFailed);
+		}
+	}
+
+	//task correcting a contiguous range of cases of a binary vector file with the corrector owned by one worker
+	//the cases are read and corrected in blocks of the block corrector, the messages of the failed cases are kept for the calling thread
+	private static class BinaryCorrectionTask implements Callable<Integer>
+	{
+		private MassBalanceBlockCorrector corrector;
+		private BinaryVectorFile in;
+		private BinaryVectorFile out;
+		private long iStart;
+		private long iEnd;
+		private List<String> failures = new ArrayList<String>();
+
+		BinaryCorrectionTask(MassBalanceBlockCorrector corrector, BinaryVectorFile in, BinaryVectorFile out, long iStart, long iEnd)
+		{
+			this.corrector = corrector;
+			this.in = in;
+			this.out = out;
+			this.iStart = iStart;
+			this.iEnd = iEnd;
+		}
+
+		public Integer call()
+		{
+			int i, n;
+			long iCase;
+			int nFailed = 0;
+			int nInput = in.getNumberOfInputs();
+			int nOutput = in.getNumberOfOutputs();
+			int nBlock = corrector.getBlockSize();
+			double[] v = new double[nInput+nOutput];
+			double[] x = new double[nBlock*nInput];
+			double[] y = new double[nBlock*nOutput];
+			int[] status = new int[nBlock];
+			for (iCase=iStart; iCase<iEnd; iCase+=n)
+			{
+				n = (int)Math.min(nBlock, iEnd-iCase);
+				for (i=0; i<n; i++)
+				{
+					in.readCase(iCase+i, v, 0);
+					System.arraycopy(v, 0, x, i*nInput, nInput);
+					System.arraycopy(v, nInput, y, i*nOutput, nOutput);
+				}
+				nFailed += corrector.correct(x, y, y, n, status);
+				for (i=0; i<n; i++)
+				{
+					if (status[i]!=0)
+						failures.add(getCaseName(iCase+i, in.getNumberOfCases()) + ": " + UnitOperation.getCorrectionFailureMessage(status[i], null));
+					System.arraycopy(x, i*nInput, v, 0, nInput);
+					System.arraycopy(y, i*nOutput, v, nInput, nOutput);
+					out.writeCase(iCase+i, v, 0);
+				}
+			}
+			return Integer.valueOf(nFailed);
+		}
+
+		List<String> getFailures()
+		{
+			return failures;
+		}
+	}
+
+	//case iCase of a file with nCase cases in each group, numbered from 1 in the group
+	private static String getCaseName(long iCase, int nCase)
+	{
+		return "Case " + (iCase%nCase + 1) + " of group " + (iCase/nCase + 1);
+	}
+
+	//read the raw vectors from inFileName, correct them and write the corrected vectors to outFileName
+	//file format is the same as the -b option of UnitOperation.main(), first line contains number of groups and number of cases in each group
+	//return the number of cases failed in mass balance correction, or -1 if failed to read or write the files
+	public int correctVectorFile(String inFileName, String outFileName)
+	{
+		int i, j, k;
+		int nGroup;			//number of groups
+		int nCase;			//number of cases in each group
+		int nBlock;			//number of cases in current block
+		int nChunk;			//number of cases for each worker in current block
+		int nFailed = 0;
+		int nVector = nInputParam + nOutputParam;
+		int nCaseMax = nThread*nCasePerWorker;
+		float[][] cases = new float[nCaseMax][nVector];
+		String[] messages = new String[nCaseMax];
+		VectorFileReader in = null;
+		VectorFileWriter out = null;
+		ExecutorService pool = Executors.newFixedThreadPool(nThread);
+		List<CorrectionTask> tasks = new ArrayList<CorrectionTask>();
+		try
+		{
+			in = new VectorFileReader(inFileName);
+			out = new VectorFileWriter(outFileName);
+			nGroup = in.nextInt();
+			nCase = in.nextInt();
+			in.skipLine();
+			for (k=0; k<nGroup; k++)
+			{
+				//process a group in blocks of cases, a block never crosses the group boundary
+				for (j=0; j<nCase; j+=nBlock)
+				{
+					nBlock = Math.min(nCaseMax, nCase-j);
+					for (i=0; i<nBlock; i++)
+						in.readCaseVector(cases[i]);
+					nChunk = (nBlock + nThread - 1)/nThread;
+					tasks.clear();
+					for (i=0; i*nChunk<nBlock; i++)
+						tasks.add(new CorrectionTask(workerCorrectors[i], cases, messages, i*nChunk, Math.min(nBlock, (i+1)*nChunk)));
+					for (Future<Integer> f : pool.invokeAll(tasks))
+						nFailed += f.get().intValue();
+					for (i=0; i<nBlock; i++)
+					{
+						if (messages[i]!=null)
+							System.out.println(getCaseName((long)k*nCase + j + i, nCase) + ": " + messages[i]);
+						out.writeCaseVector(cases[i]);
+					}
+				}
+				if (k<nGroup-1)
+				{
+					in.skipLine();
+					out.println();
+				}
+			}
+			out.close();
+			out = null;
+		}//end of try
+		catch(IOException e)
+		{
+			System.out.println(e);
+			nFailed = -1;
+		}
+		catch(InterruptedException e)
+		{
+			System.out.println(e);
+			nFailed = -1;
+		}
+		catch(ExecutionException e)
+		{
+			System.out.println(e.getCause());
+			nFailed = -1;
+		}
+		finally
+		{
+			pool.shutdown();
+			closeQuietly(in);
+			closeQuietly(out);
+		}
+		return nFailed;
+	}
+
+	//correct the vectors of binary vector file inFileName and write the corrected vectors to binary vector file outFileName
+	//the vectors are corrected in double precision directly in the mapped files, each worker corrects a contiguous range of cases in blocks
+	//return the number of cases failed in mass balance correction, or -1 if failed to read or write the files
+	public int correctBinaryFile(String inFileName, String outFileName)
+	{
+		int i;
+		int nFailed = 0;
+		long nCaseTotal;
+		long nChunk;
+		BinaryVectorFile in = null;
+		BinaryVectorFile out = null;
+		ExecutorService pool = Executors.newFixedThreadPool(nThread);
+		List<BinaryCorrectionTask> tasks = new ArrayList<BinaryCorrectionTask>();
+		try
+		{
+			in = BinaryVectorFile.open(inFileName, false);
+			if (in.getNumberOfInputs()!=nInputParam || in.getNumberOfOutputs()!=nOutputParam)
+				throw new IOException("Size of vectors in " + inFileName + " does not match the ROM input and output vectors");
+			out = BinaryVectorFile.create(outFileName, nInputParam, nOutputParam, in.getNumberOfGroups(), in.getNumberOfCases());
+			nCaseTotal = in.getNumberOfCasesTotal();
+			nChunk = (nCaseTotal + nThread - 1)/nThread;
+			for (i=0; i*nChunk<nCaseTotal; i++)
+				tasks.add(new BinaryCorrectionTask(new MassBalanceBlockCorrector(workerCorrectors[i], MassBalanceBlockCorrector.defaultBlockSize), in, out, i*nChunk, Math.min(nCaseTotal, (i+1)*nChunk)));
+			for (Future<Integer> f : pool.invokeAll(tasks))
+				nFailed += f.get().intValue();
+			//the tasks cover the cases in order
+			for (BinaryCorrectionTask task : tasks)
+			{
+				for (String failure : task.getFailures())
+					System.out.println(failure);
+			}
+			out.close();
+			out = null;
+		}//end of try
+		catch(IOException e)
+		{
+			System.out.println(e);
+			nFailed = -1;
+		}
+		catch(InterruptedException e)
+		{
+			System.out.println(e);
+			nFailed = -1;
+		}
+		catch(ExecutionException e)
+		{
+			System.out.println(e.getCause());
+			nFailed = -1;
+		}
+		finally
+		{
+			pool.shutdown();
+			closeQuietly(in);
+			closeQuietly(out);
+		}
+		return nFailed;
+	}
+
+	private static void closeQuietly(Closeable c)
+	{
+		if (c==null)
+			return;
+		try
+		{
+			c.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+	}
+}
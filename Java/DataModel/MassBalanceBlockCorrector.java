@@ -0,0 +1,590 @@
+package DataModel;
+
+/**
+ * Class enforcing the elemental mass balance on blocks of cases with the same equations as MassBalanceCorrector
+ * The flows of a block are stored by flow and then by case, so each step of the correction is a loop over the cases of the block in the innermost loop.
+ * The species molar flows of a block are contracted with the atom count matrix as one matrix product for the feed and one for the product,
+ * the Schur complement systems of consecutive cases with the same active species pattern are assembled, factorized and solved together.
+ * The equations are stored with one array of the cases for each matrix entry and each species or element, so the loops over the cases
+ * read and write different arrays and the JIT compiler can vectorize them.
+ * Each case has the same operations in the same order as MassBalanceCorrector.correct(), so the corrected vectors are identical.
+ * Cases with ill-conditioned regression equations, modifying outlet mixtures with constant mass fractions or failing in the correction are corrected
+ * one by one by the wrapped MassBalanceCorrector, which also gives the same partially corrected vector and return value for a failed case.
+ * A block corrector is not thread-safe, each thread should use its own block corrector.
+ */
+public class MassBalanceBlockCorrector
+{
+	//default number of cases corrected together
+	public static final int defaultBlockSize = 64;
+
+	//an coefficient to modify the value of a flow rate if it is negative, same as MassBalanceCorrector
+	private static final double reflectionCoefficient = -0.01;
+
+	//a pivot relative to its original diagonal value below this value is treated as zero, same as MassBalanceCorrector
+	private static final double rankTolerance = 1e-12;
+
+	//normal equations with a relative pivot below this value are left to the corrector, which solves them by QR decomposition
+	private static final double illConditionedPivot = 1e-8;
+
+	//corrector of the cases not corrected in blocks, its pattern cache is shared
+	private MassBalanceCorrector corrector;
+
+	private ElementBalancePlan plan;
+
+	//number of ROM input and output parameters
+	private int nInputParam;
+	private int nOutputParam;
+
+	//number of cases in a block
+	private int nBlock;
+
+	//ROM vector indices of the flows of the plan, taken from the corrector
+	private int[] iInletFlowInput;
+	private int[] iInletTotalFlowInput;
+	private int[] iOutletFlowOutput;
+	private int[] iOutletTotalFlowOutput;
+
+	//ROM output vector indices of the outlet total flows, the only outputs stored by flow in yBlock
+	private int[] iTotalFlowOutput;
+
+	//true if an outlet flow belongs to a mixture with constant mass fractions
+	private boolean[] bConstFractionFlow;
+
+	//outlet flows of the species containing each element
+	private int[][] iElementOutletFlow;
+
+	//scratch arrays of a block, entry of parameter, flow or element i of case c at i*nBlock+c, or at [i][c] for the arrays of the equations
+	private double[] xBlock;					//ROM input vectors
+	private double[] yBlock;					//ROM outputs of the outlet total flows
+	private double[] outletFlowValue;			//outlet species flows after elimination
+	private double[] speciesMoleFlowRate;		//species molar flow rates
+	private double[] elementMoleFlowFeed;		//element molar flow rates of inlet boundaries
+	private double[] elementMoleFlowProduct;	//element molar flow rates of outlet boundaries
+	private double[][] productFlow;				//molar flow rates of product species
+	private double[][] flowSquared;				//squared molar flow rates of product species
+	private double[][] systemMatrix;			//Schur complements or regression matrices, entry (i,j) of case c at [i*n+j][c]
+	private double[][] b;						//element imbalances, then Lagrangian multipliers
+	private double[][] correctionFactor;		//correction factors of product species
+	private double[] minPivot;					//smallest relative pivot of the factorization of each case
+	private double[] work;						//scratch array of the factorization
+
+	//scratch arrays of cases
+	private boolean[] bCorrectorCase;			//flags of the cases of a block left to the corrector before the pattern lookup
+	private BalancePattern[] casePattern;		//pattern of each case of a block, null if the case is corrected by the corrector
+	private BalancePattern[] keyPattern;		//pattern of the species and elements of each case of a block, null if not looked up
+	private boolean[] bNewKey;					//true if the pattern key of a case differs from the key of the previous case
+	private int[] info;							//factorization result of each case of a block
+	private double[] caseFlow;					//species molar flow rates of one case for the pattern lookup
+	private int[] iElementFeedColumn;			//element columns available in feed of one case
+	private double[] xCase;						//ROM input vector of one case
+	private double[] yCase;						//ROM output vector of one case
+
+	//constructor based on the ROM vectors of a UnitOperation
+	public MassBalanceBlockCorrector(UnitOperation uo)
+	{
+		this(new MassBalanceCorrector(uo), defaultBlockSize);
+	}
+
+	//constructor wrapping a corrector, the corrector is used for the cases not corrected in blocks and should not be used by another thread
+	public MassBalanceBlockCorrector(MassBalanceCorrector mbc, int n)
+	{
+		int i, j, k;
+		corrector = mbc;
+		plan = mbc.getElementBalancePlan();
+		nInputParam = mbc.getNumberOfInputs();
+		nOutputParam = mbc.getNumberOfOutputs();
+		nBlock = n>0 ? n : defaultBlockSize;
+		iInletFlowInput = mbc.getInletFlowInputIndices();
+		iInletTotalFlowInput = mbc.getInletTotalFlowInputIndices();
+		iOutletFlowOutput = mbc.getOutletFlowOutputIndices();
+		iOutletTotalFlowOutput = mbc.getOutletTotalFlowOutputIndices();
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int[] iOutletFlowMixture = plan.getOutletFlowMixtureIndices();
+		Mixture[] outletMixtures = plan.getOutletMixtures();
+		bConstFractionFlow = new boolean[nOutletFlow];
+		for (i=0; i<nOutletFlow; i++)
+			bConstFractionFlow[i] = outletMixtures[iOutletFlowMixture[i]].hasConstMassFractions();
+		boolean[] bTotalFlow = new boolean[nOutputParam];
+		k = 0;
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iOutletTotalFlowOutput[i];
+			if (j>=0 && !bTotalFlow[j])
+			{
+				bTotalFlow[j] = true;
+				k++;
+			}
+		}
+		iTotalFlowOutput = new int[k];
+		k = 0;
+		for (j=0; j<nOutputParam; j++)
+		{
+			if (bTotalFlow[j])
+				iTotalFlowOutput[k++] = j;
+		}
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		double[] atomCount = plan.getAtomCounts();
+		iElementOutletFlow = new int[nElement][];
+		for (j=0; j<nElement; j++)
+		{
+			k = 0;
+			for (i=0; i<nOutletFlow; i++)
+			{
+				if (atomCount[iOutletFlowSpecies[i]*nElement+j]!=0)
+					k++;
+			}
+			iElementOutletFlow[j] = new int[k];
+			k = 0;
+			for (i=0; i<nOutletFlow; i++)
+			{
+				if (atomCount[iOutletFlowSpecies[i]*nElement+j]!=0)
+					iElementOutletFlow[j][k++] = i;
+			}
+		}
+		xBlock = new double[nInputParam*nBlock];
+		yBlock = new double[nOutputParam*nBlock];
+		outletFlowValue = new double[nOutletFlow*nBlock];
+		speciesMoleFlowRate = new double[nSpecies*nBlock];
+		elementMoleFlowFeed = new double[nElement*nBlock];
+		elementMoleFlowProduct = new double[nElement*nBlock];
+		productFlow = new double[nSpecies][nBlock];
+		flowSquared = new double[nSpecies][nBlock];
+		//the regression equations are only used with fewer product species than feed elements
+		systemMatrix = new double[nElement*nElement][nBlock];
+		b = new double[nElement][nBlock];
+		correctionFactor = new double[nSpecies][nBlock];
+		minPivot = new double[nBlock];
+		work = new double[nBlock];
+		bCorrectorCase = new boolean[nBlock];
+		casePattern = new BalancePattern[nBlock];
+		keyPattern = new BalancePattern[nBlock];
+		bNewKey = new boolean[nBlock];
+		info = new int[nBlock];
+		caseFlow = new double[nSpecies];
+		iElementFeedColumn = new int[nElement];
+		xCase = new double[nInputParam];
+		yCase = new double[nOutputParam];
+	}
+
+	public MassBalanceCorrector getMassBalanceCorrector()
+	{
+		return corrector;
+	}
+
+	public int getBlockSize()
+	{
+		return nBlock;
+	}
+
+	//enforce elemental mass balance for nCase cases, x is nCase by number of inputs and y and yCorrected are nCase by number of outputs in row-major order
+	//yCorrected can be the same array as y, the return value of MassBalanceCorrector.correct() of each case is stored in status if it is not null
+	//returns the number of cases failed in the correction
+	public int correct(double[] x, double[] y, double[] yCorrected, int nCase, int[] status)
+	{
+		int i, n;
+		int nFailed = 0;
+		for (i=0; i<nCase; i+=n)
+		{
+			n = Math.min(nBlock, nCase-i);
+			nFailed += correctBlock(x, y, yCorrected, i, n, status);
+		}
+		return nFailed;
+	}
+
+	//correct cases iCase to iCase+n-1, n is not larger than the block size
+	private int correctBlock(double[] x, double[] y, double[] yCorrected, int iCase, int n, int[] status)
+	{
+		int i, j, k, t, c, c0, c1, is, js;
+		int iReturn;
+		int[] iFlow;
+		int nFailed = 0;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		Parameter[] outletFlow = plan.getOutletFlows();
+		double xdouble;
+		BalancePattern pattern;
+		for (c=0; c<n; c++)
+		{
+			bCorrectorCase[c] = false;
+			casePattern[c] = null;
+			k = (iCase+c)*nInputParam;
+			for (i=0; i<nInputParam; i++)
+				xBlock[i*nBlock+c] = x[k+i];
+			k = (iCase+c)*nOutputParam;
+			for (t=0; t<iTotalFlowOutput.length; t++)
+			{
+				j = iTotalFlowOutput[t];
+				yBlock[j*nBlock+c] = y[k+j];
+			}
+		}
+		//reflect negative product species flows to small positive values, a case modifying a mixture with constant mass fractions is left to the corrector
+		//the outlet flows of the ROM output vectors are read case by case, so the output vectors are only read once
+		for (i=0; i<nOutletFlow; i++)
+		{
+			if (iOutletFlowOutput[i]>=0)
+				continue;
+			is = i*nBlock;
+			xdouble = outletFlow[i].getDefaultValue();
+			if (xdouble<0)
+				xdouble *= reflectionCoefficient;
+			for (c=0; c<n; c++)
+				outletFlowValue[is+c] = xdouble;
+			if (bConstFractionFlow[i] && outletFlow[i].getDefaultValue()<0)
+			{
+				for (c=0; c<n; c++)
+					bCorrectorCase[c] = true;
+			}
+		}
+		for (c=0; c<n; c++)
+		{
+			k = (iCase+c)*nOutputParam;
+			for (i=0; i<nOutletFlow; i++)
+			{
+				j = iOutletFlowOutput[i];
+				if (j<0)
+					continue;
+				xdouble = y[k+j];
+				outletFlowValue[i*nBlock+c] = xdouble<0 ? xdouble*reflectionCoefficient : xdouble;
+				if (xdouble<0 && bConstFractionFlow[i])
+					bCorrectorCase[c] = true;
+			}
+		}
+		//eliminate product species containing elements unavailable in feed
+		calcInletSpeciesMoleFlowRate(n);
+		calcElementMoleFlowRate(elementMoleFlowFeed, n);
+		for (j=0; j<nElement; j++)
+		{
+			js = j*nBlock;
+			iFlow = iElementOutletFlow[j];
+			for (t=0; t<iFlow.length; t++)
+			{
+				i = iFlow[t];
+				is = i*nBlock;
+				for (c=0; c<n; c++)
+				{
+					if (elementMoleFlowFeed[js+c]<=0)
+						outletFlowValue[is+c] = 0;
+				}
+				if (bConstFractionFlow[i])
+				{
+					for (c=0; c<n; c++)
+					{
+						if (elementMoleFlowFeed[js+c]<=0)
+							bCorrectorCase[c] = true;
+					}
+				}
+			}
+		}
+		calcOutletSpeciesMoleFlowRate(n);
+		calcElementMoleFlowRate(elementMoleFlowProduct, n);
+		//a case with the same product species and feed elements as the previous case has the same pattern
+		bNewKey[0] = true;
+		for (c=1; c<n; c++)
+			bNewKey[c] = false;
+		for (i=0; i<nSpecies; i++)
+		{
+			is = i*nBlock;
+			for (c=1; c<n; c++)
+			{
+				if ((speciesMoleFlowRate[is+c]>0)!=(speciesMoleFlowRate[is+c-1]>0))
+					bNewKey[c] = true;
+			}
+		}
+		for (j=0; j<nElement; j++)
+		{
+			js = j*nBlock;
+			for (c=1; c<n; c++)
+			{
+				if ((elementMoleFlowFeed[js+c]<=0)!=(elementMoleFlowFeed[js+c-1]<=0))
+					bNewKey[c] = true;
+			}
+		}
+		//pattern of each case, cases failing the element check are left to the corrector
+		for (c=0; c<n; c++)
+		{
+			keyPattern[c] = bNewKey[c] ? null : keyPattern[c-1];
+			if (bCorrectorCase[c])
+				continue;
+			k = 0;
+			for (j=0; j<nElement; j++)
+			{
+				if (!(elementMoleFlowFeed[j*nBlock+c]<=0))
+				{
+					if (elementMoleFlowProduct[j*nBlock+c]<=0)
+						break;
+					iElementFeedColumn[k++] = j;
+				}
+			}
+			if (j<nElement)
+				continue;
+			if (keyPattern[c]==null)
+			{
+				for (i=0; i<nSpecies; i++)
+					caseFlow[i] = speciesMoleFlowRate[i*nBlock+c];
+				keyPattern[c] = corrector.getPatternCache().lookup(caseFlow, iElementFeedColumn, k);
+			}
+			casePattern[c] = keyPattern[c];
+		}
+		//solve the equations of runs of consecutive cases with the same pattern, cases left to the corrector are skipped inside a run
+		for (c0=0; c0<n; c0=c1)
+		{
+			pattern = casePattern[c0];
+			if (pattern==null)
+			{
+				c1 = c0 + 1;
+				continue;
+			}
+			c1 = c0 + 1;
+			while (c1<n && (casePattern[c1]==pattern || casePattern[c1]==null))
+				c1++;
+			while (casePattern[c1-1]==null)
+				c1--;
+			solve(pattern, c0, c1);
+		}
+		//store the corrected cases and correct the other cases by the corrector
+		for (c=0; c<n; c++)
+		{
+			k = iCase + c;
+			if (casePattern[c]!=null)
+			{
+				if (yCorrected!=y)
+					System.arraycopy(y, k*nOutputParam, yCorrected, k*nOutputParam, nOutputParam);
+				for (i=0; i<nOutletFlow; i++)
+				{
+					j = iOutletFlowOutput[i];
+					if (j>=0)
+						yCorrected[k*nOutputParam+j] = outletFlowValue[i*nBlock+c];
+				}
+				iReturn = MassBalanceCorrector.SUCCESS;
+			}
+			else
+			{
+				System.arraycopy(x, k*nInputParam, xCase, 0, nInputParam);
+				System.arraycopy(y, k*nOutputParam, yCase, 0, nOutputParam);
+				iReturn = corrector.correct(xCase, yCase, yCase);
+				System.arraycopy(yCase, 0, yCorrected, k*nOutputParam, nOutputParam);
+			}
+			if (status!=null)
+				status[k] = iReturn;
+			if (iReturn!=MassBalanceCorrector.SUCCESS)
+				nFailed++;
+		}
+		return nFailed;
+	}
+
+	//solve the equations of cases c0 to c1-1 with the same pattern and correct their outlet flows, same equations as MassBalanceCorrector.correct()
+	//cases with singular equations or ill-conditioned regression equations are left to the corrector,
+	//cases of the run already left to the corrector are solved but not used
+	private void solve(BalancePattern pattern, int c0, int c1)
+	{
+		int i, j, c, ks;
+		int nSpeciesProduct = pattern.getNumberOfProductSpecies();
+		int nElementFeed = pattern.getNumberOfFeedElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int[] iProduct2All = pattern.getProduct2AllIndices();
+		int[] iAll2Product = pattern.getAll2ProductIndices();
+		int[] iFeedColumn = pattern.getElementFeedColumns();
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		double[] bj, pi, fi, cj;
+		//element imbalance
+		for (j=0; j<nElementFeed; j++)
+		{
+			bj = b[j];
+			ks = iFeedColumn[j]*nBlock;
+			for (c=c0; c<c1; c++)
+				bj[c] = elementMoleFlowFeed[ks+c] - elementMoleFlowProduct[ks+c];
+		}
+		//molar flow rates of the product species
+		for (i=0; i<nSpeciesProduct; i++)
+		{
+			pi = productFlow[i];
+			ks = iProduct2All[i]*nBlock;
+			for (c=c0; c<c1; c++)
+				pi[c] = speciesMoleFlowRate[ks+c];
+		}
+		if (pattern.isRegression())	//use regression equations
+		{
+			pattern.calcNormalMatrix(productFlow, systemMatrix, c0, c1);
+			calcCorrectionFactor(pattern, c0, c1);
+			LinearSolver.choleskyDecomposition(nSpeciesProduct, systemMatrix, c0, c1, rankTolerance, info, minPivot, work);
+			//ill-conditioned normal equations are solved by QR decomposition in the corrector
+			for (c=c0; c<c1; c++)
+			{
+				if (info[c]!=0 || !(minPivot[c]>=illConditionedPivot))
+					casePattern[c] = null;
+			}
+			LinearSolver.choleskySolve(nSpeciesProduct, systemMatrix, correctionFactor, c0, c1);
+		}
+		else		//use Lagrangian multiplier method
+		{
+			for (i=0; i<nSpeciesProduct; i++)
+			{
+				pi = productFlow[i];
+				fi = flowSquared[i];
+				for (c=c0; c<c1; c++)
+					fi[c] = pi[c]*pi[c];
+			}
+			pattern.calcSchurComplement(flowSquared, systemMatrix, c0, c1);
+			if (LinearSolver.choleskyDecomposition(nElementFeed, systemMatrix, c0, c1, rankTolerance, info, null, work)>0)
+			{
+				for (c=c0; c<c1; c++)
+				{
+					if (info[c]!=0)
+						casePattern[c] = null;
+				}
+			}
+			LinearSolver.choleskySolve(nElementFeed, systemMatrix, b, c0, c1);
+			calcCorrectionFactor(pattern, c0, c1);
+		}
+		//now do correction, if flow is zero, the species is not a product species and the value is still zero
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iAll2Product[iOutletFlowSpecies[i]];
+			if (j<0)
+				continue;
+			ks = i*nBlock;
+			cj = correctionFactor[j];
+			for (c=c0; c<c1; c++)
+				outletFlowValue[ks+c] *= 1 + cj[c];
+		}
+	}
+
+	//correction factors n_i*(A'*b)_i of product species i of cases c0 to c1-1, b is the element imbalance or the Lagrangian multipliers
+	//zero atom counts are skipped as in MassBalanceCorrector
+	private void calcCorrectionFactor(BalancePattern pattern, int c0, int c1)
+	{
+		int i, j, c;
+		int nSpeciesProduct = pattern.getNumberOfProductSpecies();
+		int nElementFeed = pattern.getNumberOfFeedElements();
+		double[] patternAtomCount = pattern.getAtomCounts();
+		double a;
+		double[] ci, bj, pi;
+		for (i=0; i<nSpeciesProduct; i++)
+		{
+			ci = correctionFactor[i];
+			pi = productFlow[i];
+			for (c=c0; c<c1; c++)
+				ci[c] = 0;
+			for (j=0; j<nElementFeed; j++)
+			{
+				a = patternAtomCount[j*nSpeciesProduct+i];
+				if (a==0)
+					continue;
+				bj = b[j];
+				for (c=c0; c<c1; c++)
+					ci[c] += a*bj[c];
+			}
+			for (c=c0; c<c1; c++)
+				ci[c] = pi[c]*ci[c];
+		}
+	}
+
+	//calculate species molar flow rates of inlet boundaries of n cases from the ROM input vectors and fixed parameters
+	//a flow without total mass flow is multiplied by 1, which does not change its value
+	private void calcInletSpeciesMoleFlowRate(int n)
+	{
+		int i, j, jt, c, ks;
+		int nInletFlow = plan.getNumberOfInletFlows();
+		int nSpecies = plan.getNumberOfSpecies();
+		int[] iInletFlowSpecies = plan.getInletFlowSpeciesIndices();
+		double[] molecularWeight = plan.getMolecularWeights();
+		Parameter[] inletFlow = plan.getInletFlows();
+		Parameter[] inletTotalFlow = plan.getInletTotalFlows();
+		double flow, total, mw;
+		for (i=0; i<nSpecies*nBlock; i++)
+			speciesMoleFlowRate[i] = 0;
+		for (i=0; i<nInletFlow; i++)
+		{
+			ks = iInletFlowSpecies[i]*nBlock;
+			mw = molecularWeight[iInletFlowSpecies[i]];
+			j = iInletFlowInput[i]*nBlock;
+			jt = inletTotalFlow[i]==null ? -1 : iInletTotalFlowInput[i]*nBlock;
+			flow = inletFlow[i].getDefaultValue();
+			total = inletTotalFlow[i]==null ? 1 : inletTotalFlow[i].getDefaultValue();
+			if (j>=0 && jt>=0)
+			{
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += xBlock[j+c]*xBlock[jt+c]/mw;
+			}
+			else if (j>=0)
+			{
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += xBlock[j+c]*total/mw;
+			}
+			else if (jt>=0)
+			{
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += flow*xBlock[jt+c]/mw;
+			}
+			else
+			{
+				flow = flow*total/mw;
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += flow;
+			}
+		}
+	}
+
+	//calculate species molar flow rates of outlet boundaries of n cases from the eliminated outlet flows
+	private void calcOutletSpeciesMoleFlowRate(int n)
+	{
+		int i, jt, c, is, ks;
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int nSpecies = plan.getNumberOfSpecies();
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		double[] molecularWeight = plan.getMolecularWeights();
+		Parameter[] outletTotalFlow = plan.getOutletTotalFlows();
+		double total, mw;
+		for (i=0; i<nSpecies*nBlock; i++)
+			speciesMoleFlowRate[i] = 0;
+		for (i=0; i<nOutletFlow; i++)
+		{
+			is = i*nBlock;
+			ks = iOutletFlowSpecies[i]*nBlock;
+			mw = molecularWeight[iOutletFlowSpecies[i]];
+			jt = outletTotalFlow[i]==null ? -1 : iOutletTotalFlowOutput[i]*nBlock;
+			if (jt>=0)
+			{
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += outletFlowValue[is+c]*yBlock[jt+c]/mw;
+			}
+			else
+			{
+				total = outletTotalFlow[i]==null ? 1 : outletTotalFlow[i].getDefaultValue();
+				for (c=0; c<n; c++)
+					speciesMoleFlowRate[ks+c] += outletFlowValue[is+c]*total/mw;
+			}
+		}
+	}
+
+	//element molar flow rates of n cases as the product of the positive species molar flow rates and the atom count matrix
+	private void calcElementMoleFlowRate(double[] elementMoleFlowRate, int n)
+	{
+		int i, j, c, ks, js;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		double[] atomCount = plan.getAtomCounts();
+		double a, flow;
+		for (i=0; i<nElement*nBlock; i++)
+			elementMoleFlowRate[i] = 0;
+		for (i=0; i<nSpecies; i++)
+		{
+			ks = i*nBlock;
+			for (j=0; j<nElement; j++)
+			{
+				a = atomCount[i*nElement+j];
+				if (a==0)
+					continue;
+				js = j*nBlock;
+				for (c=0; c<n; c++)
+				{
+					flow = speciesMoleFlowRate[ks+c];
+					elementMoleFlowRate[js+c] += (flow>0 ? flow : 0)*a;
+				}
+			}
+		}
+	}
+}
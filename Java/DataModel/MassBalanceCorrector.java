@@ -0,0 +1,774 @@
+package DataModel;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class enforcing the elemental mass balance on ROM input and output vectors stored in primitive arrays
+ * The corrector is created from a UnitOperation after updateAllSpeciesList(), updateRomInputVector() and updateYromOutputVector() are called.
+ * Species flows in the ROM vectors are taken from the arrays, all other flows are taken from the default values of the fixed parameters.
+ * All scratch arrays are allocated by the constructor, so correct() does not allocate memory unless a new active species pattern is found.
+ * A corrector is not thread-safe, each thread should use its own corrector. The parameters of the UnitOperation are never modified.
+ */
+public class MassBalanceCorrector
+{
+	//return value if correction is successful
+	public static final int SUCCESS = 0;
+
+	//return value if an element in the feed is not found in any product species
+	public static final int ELEMENT_NOT_IN_PRODUCT = 1;
+
+	//return value if the linear equations of the correction cannot be solved
+	public static final int SINGULAR_EQUATIONS = 3;
+
+	//an coefficient to modify the value of a flow rate if it is negative, same as UnitOperation
+	private static final double reflectionCoefficient = -0.01;
+
+	//a pivot relative to its original diagonal value below this value is treated as zero
+	private static final double rankTolerance = 1e-12;
+
+	//normal equations with a relative pivot below this value are solved by QR decomposition instead
+	private static final double illConditionedPivot = 1e-8;
+
+	//topology dependent data
+	private ElementBalancePlan plan;
+
+	//number of ROM input parameters
+	private int nInputParam;
+
+	//number of ROM output parameters
+	private int nOutputParam;
+
+	//index in ROM input vector of each inlet species flow parameter, -1 if not varied
+	private int[] iInletFlowInput;
+
+	//index in ROM input vector of the total mass flow parameter for each inlet species flow, -1 if not varied or not used
+	private int[] iInletTotalFlowInput;
+
+	//index in ROM output vector of each outlet species flow parameter, -1 if not in the output vector
+	private int[] iOutletFlowOutput;
+
+	//index in ROM output vector of the total mass flow parameter for each outlet species flow, -1 if not in the output vector or not used
+	private int[] iOutletTotalFlowOutput;
+
+	//scratch arrays
+	private double[] outletFlowValue;			//outlet species flows after elimination
+	private boolean[] bMixtureModified;			//flags of modified outlet mixtures
+	private double[] mixtureSum;				//sum of species flows in each outlet mixture
+	private double[] speciesMoleFlowRate;		//species molar flow rates
+	private double[] elementMoleFlowFeed;		//element molar flow rates of inlet boundaries
+	private double[] elementMoleFlowProduct;	//element molar flow rates of outlet boundaries
+	private int[] iElementFeedColumn;			//element columns available in feed
+	private double[] speciesMoleFlowRateNonZero;	//molar flow rates of product species with non-zero flow
+	private double[] flowSquared;				//squared molar flow rates of product species
+	private double[] bij;						//flat element by product species matrix of scaled atom counts for QR decomposition
+	private double[] normalMatrix;				//flat matrix of regression equations
+	private double[] schurMatrix;				//flat Schur complement of the Lagrangian equations
+	private double[] tau;						//factors of Householder reflections
+	private double[] b;							//element imbalance, right hand side of linear equations
+	private double[] correctionFactor;			//correction factors of product species
+
+	//rank and conditioning of the last factorization
+	private SolverDiagnostic diagnostic;
+
+	//equation structures of recently used active species patterns
+	private BalancePatternCache patternCache;
+
+	//scratch arrays of correctWithJacobian(), allocated by its first call, a direction d is output y_d or input x_(d-number of outputs)
+	private double[] jacobianFlow;				//outlet species flows after elimination, before the correction
+	private double[] flowJacobian;				//derivatives of jacobianFlow to the outlet flows, entry (i,k) at i*number of outlet flows+k
+	private double[] mixtureJacobian;			//derivatives of the sum of species flows in each outlet mixture to the outlet flows
+	private double[] feedFlowJacobian;			//derivatives of inlet species molar flow rates to the ROM inputs, entry (i,j) at i*number of inputs+j
+	private double[] productFlowJacobian;		//derivatives of product species molar flow rates, entry (i,d) at i*number of directions+d
+	private double[] imbalanceJacobian;			//derivatives of the element imbalance of feed elements, entry (i,d) at i*number of directions+d
+	private double[] correctionJacobian;		//derivatives of the correction factors of product species, entry (i,d) at i*number of directions+d
+	private double[] speciesScale;				//A'*mu for the Lagrangian equations or A'*residual for the regression equations
+	private double[] residual;					//element imbalance after the correction of the regression equations
+	private double[] rhs;						//right hand side of the linear equations of one direction
+
+	//constructor based on the balance plan and ROM vectors of a UnitOperation
+	public MassBalanceCorrector(UnitOperation uo)
+	{
+		this(uo, uo.getElementBalancePlan());
+	}
+
+	//constructor sharing a balance plan of the UnitOperation, the plan is not modified and can be shared by the correctors of multiple threads
+	//the plan is created from the UnitOperation if it is null
+	public MassBalanceCorrector(UnitOperation uo, ElementBalancePlan balancePlan)
+	{
+		int i;
+		plan = balancePlan;
+		if (plan==null)
+			plan = new ElementBalancePlan(uo);
+		List<Parameter> romInputVector = uo.getRomInputVector();
+		List<Parameter> yromOutputVector = uo.getYromOutputVector();
+		nInputParam = romInputVector.size();
+		nOutputParam = yromOutputVector.size();
+		Map<Parameter,Integer> inputIndex = new IdentityHashMap<Parameter,Integer>();
+		Map<Parameter,Integer> outputIndex = new IdentityHashMap<Parameter,Integer>();
+		for (i=0; i<nInputParam; i++)
+			inputIndex.put(romInputVector.get(i), Integer.valueOf(i));
+		for (i=0; i<nOutputParam; i++)
+			outputIndex.put(yromOutputVector.get(i), Integer.valueOf(i));
+		iInletFlowInput = mapParameters(plan.getInletFlows(), inputIndex);
+		iInletTotalFlowInput = mapParameters(plan.getInletTotalFlows(), inputIndex);
+		iOutletFlowOutput = mapParameters(plan.getOutletFlows(), outputIndex);
+		iOutletTotalFlowOutput = mapParameters(plan.getOutletTotalFlows(), outputIndex);
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nMixture = plan.getOutletMixtures().length;
+		outletFlowValue = new double[plan.getNumberOfOutletFlows()];
+		bMixtureModified = new boolean[nMixture];
+		mixtureSum = new double[nMixture];
+		speciesMoleFlowRate = new double[nSpecies];
+		elementMoleFlowFeed = new double[nElement];
+		elementMoleFlowProduct = new double[nElement];
+		iElementFeedColumn = new int[nElement];
+		speciesMoleFlowRateNonZero = new double[nSpecies];
+		flowSquared = new double[nSpecies];
+		bij = new double[nElement*nSpecies];
+		normalMatrix = new double[nSpecies*nSpecies];
+		schurMatrix = new double[nElement*nElement];
+		tau = new double[nSpecies];
+		b = new double[nElement];
+		correctionFactor = new double[nSpecies];
+		diagnostic = new SolverDiagnostic();
+		patternCache = new BalancePatternCache(plan, BalancePatternCache.defaultCapacity);
+	}
+
+	//map parameters to their indices in a ROM vector, -1 if null or not found
+	private static int[] mapParameters(Parameter[] params, Map<Parameter,Integer> index)
+	{
+		int i;
+		int n = params.length;
+		int[] iVector = new int[n];
+		Integer iParam;
+		for (i=0; i<n; i++)
+		{
+			iParam = params[i]==null ? null : index.get(params[i]);
+			iVector[i] = iParam==null ? -1 : iParam.intValue();
+		}
+		return iVector;
+	}
+
+	public ElementBalancePlan getElementBalancePlan()
+	{
+		return plan;
+	}
+
+	public int getNumberOfInputs()
+	{
+		return nInputParam;
+	}
+
+	public int getNumberOfOutputs()
+	{
+		return nOutputParam;
+	}
+
+	//ROM vector indices of the flows of the plan, used by MassBalanceBlockCorrector
+	int[] getInletFlowInputIndices()
+	{
+		return iInletFlowInput;
+	}
+
+	int[] getInletTotalFlowInputIndices()
+	{
+		return iInletTotalFlowInput;
+	}
+
+	int[] getOutletFlowOutputIndices()
+	{
+		return iOutletFlowOutput;
+	}
+
+	int[] getOutletTotalFlowOutputIndices()
+	{
+		return iOutletTotalFlowOutput;
+	}
+
+	//cache of the equation structures, the capacity can be changed by setPatternCacheCapacity()
+	public BalancePatternCache getPatternCache()
+	{
+		return patternCache;
+	}
+
+	//replace the cache with an empty cache holding at most capacity patterns
+	public void setPatternCacheCapacity(int capacity)
+	{
+		patternCache = new BalancePatternCache(plan, capacity);
+	}
+
+	//rank and conditioning found by the factorization of the last correction, not changed if the last correction failed before solving
+	public SolverDiagnostic getLastSolverDiagnostic()
+	{
+		return diagnostic;
+	}
+
+	//enforce elemental mass balance for ROM input vector x and ROM output vector y predicted by CFD or ROM
+	//the corrected output vector is stored in yCorrected, which can be the same array as y
+	//if failed, yCorrected contains the output vector after negative flows and species containing elements unavailable in feed are eliminated
+	//returns SUCCESS, ELEMENT_NOT_IN_PRODUCT or SINGULAR_EQUATIONS
+	public int correct(double[] x, double[] y, double[] yCorrected)
+	{
+		int i, j, k, n;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		int[] iOutletFlowMixture = plan.getOutletFlowMixtureIndices();
+		double[] atomCount = plan.getAtomCounts();
+		double xdouble;
+		if (yCorrected!=y)
+			System.arraycopy(y, 0, yCorrected, 0, nOutputParam);
+		//reflect negative product species flows to small positive values
+		Parameter[] outletFlow = plan.getOutletFlows();
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iOutletFlowOutput[i];
+			xdouble = j>=0 ? y[j] : outletFlow[i].getDefaultValue();
+			if (xdouble<0)
+			{
+				xdouble *= reflectionCoefficient;
+				bMixtureModified[iOutletFlowMixture[i]] = true;
+			}
+			outletFlowValue[i] = xdouble;
+		}
+		normalizeModifiedOutletMixtures(outletFlowValue, null);
+		//eliminate product species containing elements unavailable in feed
+		calcInletSpeciesMoleFlowRate(x);
+		calcElementMoleFlowRate(elementMoleFlowFeed);
+		int nElementFeed = 0;
+		for (j=0; j<nElement; j++)
+		{
+			if (elementMoleFlowFeed[j]<=0)
+			{
+				for (i=0; i<nOutletFlow; i++)
+				{
+					if (atomCount[iOutletFlowSpecies[i]*nElement+j]!=0)
+					{
+						outletFlowValue[i] = 0;
+						bMixtureModified[iOutletFlowMixture[i]] = true;
+					}
+				}
+				normalizeModifiedOutletMixtures(outletFlowValue, null);
+			}
+			else
+				iElementFeedColumn[nElementFeed++] = j;
+		}
+		calcOutletSpeciesMoleFlowRate(y);
+		calcElementMoleFlowRate(elementMoleFlowProduct);
+		//check if all elements in the feed boundaries are also found in the product boundary
+		for (i=0; i<nElementFeed; i++)
+		{
+			if (elementMoleFlowProduct[iElementFeedColumn[i]]<=0)
+			{
+				storeOutletFlows(yCorrected);
+				return ELEMENT_NOT_IN_PRODUCT;
+			}
+		}
+		//the structure of the equations is taken from the cached pattern of the product species and feed elements
+		BalancePattern pattern = patternCache.lookup(speciesMoleFlowRate, iElementFeedColumn, nElementFeed);
+		int nSpeciesProduct = pattern.getNumberOfProductSpecies();
+		int[] iProduct2All = pattern.getProduct2AllIndices();
+		double[] patternAtomCount = pattern.getAtomCounts();
+		for (i=0; i<nSpeciesProduct; i++)
+			speciesMoleFlowRateNonZero[i] = speciesMoleFlowRate[iProduct2All[i]];
+		//element imbalance
+		for (j=0; j<nElementFeed; j++)
+		{
+			k = iElementFeedColumn[j];
+			b[j] = elementMoleFlowFeed[k] - elementMoleFlowProduct[k];
+		}
+		if (pattern.isRegression())	//use regression equations
+		{
+			//normal equations, only the lower triangle is needed by Cholesky decomposition
+			pattern.calcNormalMatrix(speciesMoleFlowRateNonZero, normalMatrix);
+			for (i=0; i<nSpeciesProduct; i++)
+			{
+				xdouble = 0;
+				for (k=0; k<nElementFeed; k++)
+				{
+					if (patternAtomCount[k*nSpeciesProduct+i]!=0)
+						xdouble += patternAtomCount[k*nSpeciesProduct+i]*b[k];
+				}
+				correctionFactor[i] = speciesMoleFlowRateNonZero[i]*xdouble;
+			}
+			if (LinearSolver.choleskyDecomposition(nSpeciesProduct, normalMatrix, rankTolerance, diagnostic)==0 &&
+				diagnostic.getMinRelativePivot()>=illConditionedPivot)
+				LinearSolver.choleskySolve(nSpeciesProduct, normalMatrix, correctionFactor);
+			else
+			{
+				//normal equations are ill-conditioned, solve the least squares problem of the scaled stoichiometry matrix by QR decomposition
+				for (j=0; j<nElementFeed; j++)
+				{
+					n = j*nSpeciesProduct;
+					for (i=0; i<nSpeciesProduct; i++)
+						bij[n+i] = speciesMoleFlowRateNonZero[i]*patternAtomCount[n+i];
+				}
+				if (LinearSolver.householderQR(nElementFeed, nSpeciesProduct, bij, tau, rankTolerance, diagnostic)!=0)
+				{
+					storeOutletFlows(yCorrected);
+					return SINGULAR_EQUATIONS;
+				}
+				LinearSolver.qrSolve(nElementFeed, nSpeciesProduct, bij, tau, b, correctionFactor);
+			}
+		}
+		else		//use Lagrangian multiplier method
+		{
+			//minimizing the sum of squared correction factors subject to the element balances B*c = b gives the saddle point system
+			//[2I B'; B 0] [c; lambda] = [0; b], which is reduced to the Schur complement system B*B'*mu = b with c = B'*mu
+			for (i=0; i<nSpeciesProduct; i++)
+				flowSquared[i] = speciesMoleFlowRateNonZero[i]*speciesMoleFlowRateNonZero[i];
+			pattern.calcSchurComplement(flowSquared, schurMatrix);
+			if (LinearSolver.choleskyDecomposition(nElementFeed, schurMatrix, rankTolerance, diagnostic)!=0)
+			{
+				storeOutletFlows(yCorrected);
+				return SINGULAR_EQUATIONS;
+			}
+			LinearSolver.choleskySolve(nElementFeed, schurMatrix, b);
+			for (i=0; i<nSpeciesProduct; i++)
+			{
+				xdouble = 0;
+				for (j=0; j<nElementFeed; j++)
+				{
+					if (patternAtomCount[j*nSpeciesProduct+i]!=0)
+						xdouble += patternAtomCount[j*nSpeciesProduct+i]*b[j];
+				}
+				correctionFactor[i] = speciesMoleFlowRateNonZero[i]*xdouble;
+			}
+		}
+		//now do correction, if flow is zero, the species is not a product species and the value is still zero
+		int[] iAll2Product = pattern.getAll2ProductIndices();
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iAll2Product[iOutletFlowSpecies[i]];
+			if (j>=0)
+				outletFlowValue[i] *= 1 + correctionFactor[j];
+		}
+		storeOutletFlows(yCorrected);
+		return SUCCESS;
+	}
+
+	//enforce elemental mass balance as correct() and calculate the derivatives of the corrected output vector
+	//dydy is the number of outputs by number of outputs matrix d(yCorrected)/dy and dydx is the number of outputs by number of inputs matrix d(yCorrected)/dx,
+	//both flat row-major arrays, dydx can be null if the derivatives to the inputs are not needed
+	//the derivatives are taken with the active species pattern, the reflected flows and the eliminated species of the case held fixed,
+	//so at a zero flow they are one-sided: a zero flow is not reflected and gives the derivatives of the non-negative side, and a species
+	//with zero flow in every outlet stays out of the correction, so the output of its zero flow has the derivative one to itself and none to the others,
+	//the equations are differentiated analytically with the factorization of the correction, so the cost is about one correction per output
+	//the matrices are only set if the correction is successful, returns the value returned by correct()
+	public int correctWithJacobian(double[] x, double[] y, double[] yCorrected, double[] dydy, double[] dydx)
+	{
+		int i, j, k, d, e, p, s, jt, in, pd;
+		int iReturn = correct(x, y, yCorrected);
+		if (iReturn!=SUCCESS)
+			return iReturn;
+		if (flowJacobian==null)
+			allocateJacobianArrays();
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int nInletFlow = plan.getNumberOfInletFlows();
+		int nDir = dydx==null ? nOutputParam : nOutputParam+nInputParam;
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		int[] iOutletFlowMixture = plan.getOutletFlowMixtureIndices();
+		int[] iInletFlowSpecies = plan.getInletFlowSpeciesIndices();
+		double[] atomCount = plan.getAtomCounts();
+		double[] molecularWeight = plan.getMolecularWeights();
+		Parameter[] outletFlow = plan.getOutletFlows();
+		Parameter[] outletTotalFlow = plan.getOutletTotalFlows();
+		Parameter[] inletFlow = plan.getInletFlows();
+		Parameter[] inletTotalFlow = plan.getInletTotalFlows();
+		BalancePattern pattern = patternCache.getLastPattern();
+		int nSpeciesProduct = pattern.getNumberOfProductSpecies();
+		int nElementFeed = pattern.getNumberOfFeedElements();
+		int[] iAll2Product = pattern.getAll2ProductIndices();
+		int[] iFeedColumn = pattern.getElementFeedColumns();
+		double[] patternAtomCount = pattern.getAtomCounts();
+		double xdouble, flow, total;
+		//outlet flows before the correction and their derivatives to the outlet flows, same steps as correct()
+		for (i=0; i<nOutletFlow*nOutletFlow; i++)
+			flowJacobian[i] = 0;
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iOutletFlowOutput[i];
+			xdouble = j>=0 ? y[j] : outletFlow[i].getDefaultValue();
+			flowJacobian[i*nOutletFlow+i] = j>=0 ? 1 : 0;
+			if (xdouble<0)
+			{
+				xdouble *= reflectionCoefficient;
+				flowJacobian[i*nOutletFlow+i] *= reflectionCoefficient;
+				bMixtureModified[iOutletFlowMixture[i]] = true;
+			}
+			jacobianFlow[i] = xdouble;
+		}
+		normalizeModifiedOutletMixtures(jacobianFlow, flowJacobian);
+		for (j=0; j<nElement; j++)
+		{
+			if (elementMoleFlowFeed[j]<=0)
+			{
+				for (i=0; i<nOutletFlow; i++)
+				{
+					if (atomCount[iOutletFlowSpecies[i]*nElement+j]!=0)
+					{
+						jacobianFlow[i] = 0;
+						for (k=0; k<nOutletFlow; k++)
+							flowJacobian[i*nOutletFlow+k] = 0;
+						bMixtureModified[iOutletFlowMixture[i]] = true;
+					}
+				}
+				normalizeModifiedOutletMixtures(jacobianFlow, flowJacobian);
+			}
+		}
+		//derivatives of product species molar flow rates, which only depend on the outputs
+		for (i=0; i<nSpeciesProduct*nDir; i++)
+			productFlowJacobian[i] = 0;
+		for (i=0; i<nOutletFlow; i++)
+		{
+			p = iAll2Product[iOutletFlowSpecies[i]];
+			if (p<0)
+				continue;
+			pd = p*nDir;
+			in = i*nOutletFlow;
+			total = 1;
+			jt = -1;
+			if (outletTotalFlow[i]!=null)
+			{
+				jt = iOutletTotalFlowOutput[i];
+				total = jt>=0 ? y[jt] : outletTotalFlow[i].getDefaultValue();
+			}
+			xdouble = molecularWeight[iOutletFlowSpecies[i]];
+			for (k=0; k<nOutletFlow; k++)
+			{
+				j = iOutletFlowOutput[k];
+				if (j>=0)
+					productFlowJacobian[pd+j] += total*flowJacobian[in+k]/xdouble;
+			}
+			if (jt>=0)
+				productFlowJacobian[pd+jt] += jacobianFlow[i]/xdouble;
+		}
+		//derivatives of the element imbalance, the feed depends only on the inputs and the product only on the outputs
+		for (e=0; e<nElementFeed; e++)
+		{
+			for (d=0; d<nOutputParam; d++)
+			{
+				xdouble = 0;
+				for (p=0; p<nSpeciesProduct; p++)
+					xdouble -= patternAtomCount[e*nSpeciesProduct+p]*productFlowJacobian[p*nDir+d];
+				imbalanceJacobian[e*nDir+d] = xdouble;
+			}
+		}
+		if (dydx!=null)
+		{
+			calcInletSpeciesMoleFlowRate(x);
+			for (i=0; i<nSpecies*nInputParam; i++)
+				feedFlowJacobian[i] = 0;
+			for (i=0; i<nInletFlow; i++)
+			{
+				s = iInletFlowSpecies[i];
+				j = iInletFlowInput[i];
+				flow = j>=0 ? x[j] : inletFlow[i].getDefaultValue();
+				total = 1;
+				jt = -1;
+				if (inletTotalFlow[i]!=null)
+				{
+					jt = iInletTotalFlowInput[i];
+					total = jt>=0 ? x[jt] : inletTotalFlow[i].getDefaultValue();
+				}
+				if (j>=0)
+					feedFlowJacobian[s*nInputParam+j] += total/molecularWeight[s];
+				if (jt>=0)
+					feedFlowJacobian[s*nInputParam+jt] += flow/molecularWeight[s];
+			}
+			for (e=0; e<nElementFeed; e++)
+			{
+				k = iFeedColumn[e];
+				for (j=0; j<nInputParam; j++)
+				{
+					xdouble = 0;
+					for (s=0; s<nSpecies; s++)
+					{
+						if (speciesMoleFlowRate[s]>0)
+							xdouble += atomCount[s*nElement+k]*feedFlowJacobian[s*nInputParam+j];
+					}
+					imbalanceJacobian[e*nDir+nOutputParam+j] = xdouble;
+				}
+			}
+		}
+		//derivatives of the correction factors with the factorization of the correction
+		if (pattern.isRegression())
+		{
+			//c minimizes |A*N*c-b| with N = diag(n), differentiating the normal equations gives
+			//N*A'*A*N*dc = dN*A'*r + N*A'*(db - A*dN*c) with the residual r = b - A*N*c
+			for (e=0; e<nElementFeed; e++)
+			{
+				k = iFeedColumn[e];
+				xdouble = elementMoleFlowFeed[k] - elementMoleFlowProduct[k];
+				for (p=0; p<nSpeciesProduct; p++)
+					xdouble -= patternAtomCount[e*nSpeciesProduct+p]*speciesMoleFlowRateNonZero[p]*correctionFactor[p];
+				residual[e] = xdouble;
+			}
+			for (p=0; p<nSpeciesProduct; p++)
+			{
+				xdouble = 0;
+				for (e=0; e<nElementFeed; e++)
+					xdouble += patternAtomCount[e*nSpeciesProduct+p]*residual[e];
+				speciesScale[p] = xdouble;
+			}
+			for (d=0; d<nDir; d++)
+			{
+				for (e=0; e<nElementFeed; e++)
+				{
+					xdouble = imbalanceJacobian[e*nDir+d];
+					for (p=0; p<nSpeciesProduct; p++)
+						xdouble -= patternAtomCount[e*nSpeciesProduct+p]*productFlowJacobian[p*nDir+d]*correctionFactor[p];
+					residual[e] = xdouble;
+				}
+				for (p=0; p<nSpeciesProduct; p++)
+				{
+					xdouble = 0;
+					for (e=0; e<nElementFeed; e++)
+						xdouble += patternAtomCount[e*nSpeciesProduct+p]*residual[e];
+					rhs[p] = productFlowJacobian[p*nDir+d]*speciesScale[p] + speciesMoleFlowRateNonZero[p]*xdouble;
+				}
+				if (diagnostic.getMethod()==SolverDiagnostic.CHOLESKY)
+					LinearSolver.choleskySolve(nSpeciesProduct, normalMatrix, rhs);
+				else
+					LinearSolver.qrNormalSolve(nSpeciesProduct, bij, rhs);
+				for (p=0; p<nSpeciesProduct; p++)
+					correctionJacobian[p*nDir+d] = rhs[p];
+			}
+		}
+		else
+		{
+			//c = N*A'*mu with A*N*N*A'*mu = b, so A*N*N*A'*dmu = db - 2*A*N*dN*A'*mu and dc = dN*A'*mu + N*A'*dmu
+			//b holds the Lagrangian multipliers mu and schurMatrix the Cholesky factor after correct()
+			for (p=0; p<nSpeciesProduct; p++)
+			{
+				xdouble = 0;
+				for (e=0; e<nElementFeed; e++)
+					xdouble += patternAtomCount[e*nSpeciesProduct+p]*b[e];
+				speciesScale[p] = xdouble;
+			}
+			for (d=0; d<nDir; d++)
+			{
+				for (e=0; e<nElementFeed; e++)
+				{
+					xdouble = imbalanceJacobian[e*nDir+d];
+					for (p=0; p<nSpeciesProduct; p++)
+						xdouble -= 2*patternAtomCount[e*nSpeciesProduct+p]*speciesMoleFlowRateNonZero[p]*speciesScale[p]*productFlowJacobian[p*nDir+d];
+					rhs[e] = xdouble;
+				}
+				LinearSolver.choleskySolve(nElementFeed, schurMatrix, rhs);
+				for (p=0; p<nSpeciesProduct; p++)
+				{
+					xdouble = 0;
+					for (e=0; e<nElementFeed; e++)
+						xdouble += patternAtomCount[e*nSpeciesProduct+p]*rhs[e];
+					correctionJacobian[p*nDir+d] = productFlowJacobian[p*nDir+d]*speciesScale[p] + speciesMoleFlowRateNonZero[p]*xdouble;
+				}
+			}
+		}
+		//corrected outlet flow f*(1+c) has the derivative df*(1+c) + f*dc, other outputs are not changed
+		for (i=0; i<nOutputParam; i++)
+		{
+			for (j=0; j<nOutputParam; j++)
+				dydy[i*nOutputParam+j] = i==j ? 1 : 0;
+		}
+		if (dydx!=null)
+		{
+			for (i=0; i<nOutputParam*nInputParam; i++)
+				dydx[i] = 0;
+		}
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iOutletFlowOutput[i];
+			if (j<0)
+				continue;
+			in = j*nOutputParam;
+			p = iAll2Product[iOutletFlowSpecies[i]];
+			xdouble = p>=0 ? 1 + correctionFactor[p] : 1;
+			dydy[in+j] = 0;
+			for (k=0; k<nOutletFlow; k++)
+			{
+				if (iOutletFlowOutput[k]>=0)
+					dydy[in+iOutletFlowOutput[k]] = xdouble*flowJacobian[i*nOutletFlow+k];
+			}
+			if (p<0)
+				continue;
+			pd = p*nDir;
+			for (d=0; d<nOutputParam; d++)
+				dydy[in+d] += jacobianFlow[i]*correctionJacobian[pd+d];
+			if (dydx!=null)
+			{
+				for (k=0; k<nInputParam; k++)
+					dydx[j*nInputParam+k] = jacobianFlow[i]*correctionJacobian[pd+nOutputParam+k];
+			}
+		}
+		return iReturn;
+	}
+
+	//allocate the scratch arrays of correctWithJacobian()
+	private void allocateJacobianArrays()
+	{
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int nDir = nOutputParam + nInputParam;
+		jacobianFlow = new double[nOutletFlow];
+		flowJacobian = new double[nOutletFlow*nOutletFlow];
+		mixtureJacobian = new double[plan.getOutletMixtures().length*nOutletFlow];
+		feedFlowJacobian = new double[nSpecies*nInputParam];
+		productFlowJacobian = new double[nSpecies*nDir];
+		imbalanceJacobian = new double[nElement*nDir];
+		correctionJacobian = new double[nSpecies*nDir];
+		speciesScale = new double[nSpecies];
+		residual = new double[nElement];
+		rhs = new double[Math.max(nSpecies, nElement)];
+	}
+
+	//calculate species molar flow rates of inlet boundaries from ROM input vector and fixed parameters
+	private void calcInletSpeciesMoleFlowRate(double[] x)
+	{
+		int i, j;
+		int nInletFlow = plan.getNumberOfInletFlows();
+		int nSpecies = plan.getNumberOfSpecies();
+		int[] iInletFlowSpecies = plan.getInletFlowSpeciesIndices();
+		double[] molecularWeight = plan.getMolecularWeights();
+		Parameter[] inletFlow = plan.getInletFlows();
+		Parameter[] inletTotalFlow = plan.getInletTotalFlows();
+		double flow;
+		for (i=0; i<nSpecies; i++)
+			speciesMoleFlowRate[i] = 0;
+		for (i=0; i<nInletFlow; i++)
+		{
+			j = iInletFlowInput[i];
+			flow = j>=0 ? x[j] : inletFlow[i].getDefaultValue();
+			if (inletTotalFlow[i]!=null)
+			{
+				j = iInletTotalFlowInput[i];
+				flow *= j>=0 ? x[j] : inletTotalFlow[i].getDefaultValue();
+			}
+			speciesMoleFlowRate[iInletFlowSpecies[i]] += flow/molecularWeight[iInletFlowSpecies[i]];
+		}
+	}
+
+	//calculate species molar flow rates of outlet boundaries from the eliminated outlet flows
+	private void calcOutletSpeciesMoleFlowRate(double[] y)
+	{
+		int i, j;
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int nSpecies = plan.getNumberOfSpecies();
+		int[] iOutletFlowSpecies = plan.getOutletFlowSpeciesIndices();
+		double[] molecularWeight = plan.getMolecularWeights();
+		Parameter[] outletTotalFlow = plan.getOutletTotalFlows();
+		double flow;
+		for (i=0; i<nSpecies; i++)
+			speciesMoleFlowRate[i] = 0;
+		for (i=0; i<nOutletFlow; i++)
+		{
+			flow = outletFlowValue[i];
+			if (outletTotalFlow[i]!=null)
+			{
+				j = iOutletTotalFlowOutput[i];
+				flow *= j>=0 ? y[j] : outletTotalFlow[i].getDefaultValue();
+			}
+			speciesMoleFlowRate[iOutletFlowSpecies[i]] += flow/molecularWeight[iOutletFlowSpecies[i]];
+		}
+	}
+
+	//calculate element molar flow rates from current species molar flow rates, indices corresponding to the element columns
+	private void calcElementMoleFlowRate(double[] elementMoleFlowRate)
+	{
+		int i, j;
+		int k = 0;
+		int nSpecies = plan.getNumberOfSpecies();
+		int nElement = plan.getNumberOfElements();
+		double[] atomCount = plan.getAtomCounts();
+		double flow;
+		for (j=0; j<nElement; j++)
+			elementMoleFlowRate[j] = 0;
+		for (i=0; i<nSpecies; i++)
+		{
+			flow = speciesMoleFlowRate[i];
+			if (flow>0)
+			{
+				for (j=0; j<nElement; j++)
+					elementMoleFlowRate[j] += flow*atomCount[k+j];
+			}
+			k += nElement;
+		}
+	}
+
+	//normalize the species flows as mass fractions for modified outlet mixtures with constant mass fractions
+	//if flowJacobian is not null, its rows are the derivatives of the flows and they are transformed with the flows
+	private void normalizeModifiedOutletMixtures(double[] flow, double[] flowJacobian)
+	{
+		int i, k, m, in, mn;
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		int nMixture = bMixtureModified.length;
+		int[] iOutletFlowMixture = plan.getOutletFlowMixtureIndices();
+		Mixture[] outletMixtures = plan.getOutletMixtures();
+		boolean bNormalize = false;
+		for (i=0; i<nMixture; i++)
+		{
+			if (bMixtureModified[i] && outletMixtures[i].hasConstMassFractions())		//usually not constant mass fraction for outlet boundary
+				bNormalize = true;
+			else
+				bMixtureModified[i] = false;
+			mixtureSum[i] = 0;
+		}
+		if (!bNormalize)
+			return;
+		for (i=0; i<nOutletFlow; i++)
+			mixtureSum[iOutletFlowMixture[i]] += flow[i];
+		if (flowJacobian!=null)
+		{
+			//derivative of f_i/S is (df_i - f_i/S*dS)/S with dS the sum of the derivatives of the flows of the mixture
+			for (i=0; i<nMixture*nOutletFlow; i++)
+				mixtureJacobian[i] = 0;
+			for (i=0; i<nOutletFlow; i++)
+			{
+				m = iOutletFlowMixture[i];
+				if (!bMixtureModified[m])
+					continue;
+				in = i*nOutletFlow;
+				mn = m*nOutletFlow;
+				for (k=0; k<nOutletFlow; k++)
+					mixtureJacobian[mn+k] += flowJacobian[in+k];
+			}
+		}
+		for (i=0; i<nOutletFlow; i++)
+		{
+			m = iOutletFlowMixture[i];
+			if (bMixtureModified[m])
+			{
+				flow[i] /= mixtureSum[m];
+				if (flowJacobian!=null)
+				{
+					in = i*nOutletFlow;
+					mn = m*nOutletFlow;
+					for (k=0; k<nOutletFlow; k++)
+						flowJacobian[in+k] = (flowJacobian[in+k] - flow[i]*mixtureJacobian[mn+k])/mixtureSum[m];
+				}
+			}
+		}
+		for (i=0; i<nMixture; i++)
+			bMixtureModified[i] = false;
+	}
+
+	//store outlet species flows to the ROM output vector
+	private void storeOutletFlows(double[] yCorrected)
+	{
+		int i, j;
+		int nOutletFlow = plan.getNumberOfOutletFlows();
+		for (i=0; i<nOutletFlow; i++)
+		{
+			j = iOutletFlowOutput[i];
+			if (j>=0)
+				yCorrected[j] = outletFlowValue[i];
+		}
+	}
+}
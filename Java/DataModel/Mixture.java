@@ -1,12 +1,12 @@
 package DataModel;
 
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import com.google.gson.*;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
 
 /**
  * Class representing a mixture of multiple speices
@@ -26,14 +26,17 @@ public class Mixture implements Serializable
 	//the species index corresponding to the array index in the species list for each phase in UnitOperation class
 	//For MFIX CFD, species index in mfix.dat file is 1-based. Fluent CFD could be 0-based
 	//If hasConstMassFraction is true, speciesFlow in the map is actually the mass fraction of the species, otherwise the mass flow rate
+	//stored in arrays indexed by the species index, written to JSON in the same form as a Map<Integer,Parameter>
 	@Expose
-	private Map<Integer,Parameter> speciesFlowMap;
+	@SerializedName("speciesFlowMap")
+	@JsonAdapter(SpeciesFlowTable.GsonAdapter.class)
+	private SpeciesFlowTable speciesFlows;
 
 	public Mixture()
 	{
 		hasConstMassFractions = true;
 		totalMassFlow = new Parameter("TotalMassFlow");
-		speciesFlowMap = new HashMap<Integer,Parameter>();
+		speciesFlows = new SpeciesFlowTable();
 	}
 
 	public boolean hasConstMassFractions()
@@ -47,39 +50,71 @@ public class Mixture implements Serializable
 		//if true, set isVared in the flow map to false
 		if (b)
 		{
-			Collection<Parameter> speciesFlowValues = speciesFlowMap.values();
-			for (Parameter p : speciesFlowValues)
-				p.enableVaried(false);
+			for (int i : speciesFlows.getIndices())
+				speciesFlows.enableVaried(i, false);
 		}
 	}
 
+	//insert or update the values of Species i with the values of a parameter, the parameter itself is not kept
 	public void putSpeciesFlow(int i, Parameter p)
 	{
-		Integer a = new Integer(i);
-		speciesFlowMap.put(a,p);
+		putParameter(speciesFlows, i, p);
 	}
 
-	//insert or update all mass flow values of Species i
+	private static void putParameter(SpeciesFlowTable table, int i, Parameter p)
+	{
+		table.put(i, p.isVaried(), p.getDefaultValue(), p.getMinValue(), p.getMaxValue(), p.getName());
+		table.getParameter(i).setAlias(p.getAlias());
+	}
+
+	//insert or update all mass flow values of Species i, isVaried is set to false
 	public void putSpeciesFlow(int i, float x)
 	{
-		Integer a = new Integer(i);
-		String paraName = "Species_" + i + "_MassFlow";
-		Parameter p = new Parameter(paraName);	//default constructor will set p.isVaried to false
-		p.setAllValues(x);
-		speciesFlowMap.put(a,p);
+		speciesFlows.put(i, false, x, x, x, null);
 	}
 
 	//insert or update default, min and max mass flow of Species i, set isVaried to true
 	public void putSpeciesFlow(int i, float x, float xmin, float xmax)
 	{
-		Integer a = new Integer(i);
-		String paraName = "Species_" + i + "_MassFlow";
-		Parameter p = new Parameter(paraName);
-		p.enableVaried(true);
-		p.setDefaultValue(x);
-		p.setMinValue(xmin);
-		p.setMaxValue(xmax);
-		speciesFlowMap.put(a,p);
+		speciesFlows.put(i, true, x, xmin, xmax, null);
+	}
+
+	public boolean hasSpeciesFlow(int i)
+	{
+		return speciesFlows.contains(i);
+	}
+
+	//default mass flow or mass fraction of Species i
+	public float getSpeciesFlow(int i)
+	{
+		return speciesFlows.getDefaultValue(i);
+	}
+
+	public void setSpeciesFlow(int i, float x)
+	{
+		speciesFlows.setDefaultValue(i, x);
+	}
+
+	//Parameter view of Species i, null if the species is not in the mixture
+	public Parameter getSpeciesFlowParameter(int i)
+	{
+		return speciesFlows.getParameter(i);
+	}
+
+	//species indices in the mixture in insertion order
+	public int[] getSpeciesIndices()
+	{
+		return speciesFlows.getIndices();
+	}
+
+	public SpeciesFlowTable getSpeciesFlows()
+	{
+		return speciesFlows;
+	}
+
+	public void setSpeciesFlows(SpeciesFlowTable table)
+	{
+		speciesFlows = table;
 	}
 
 	public Parameter getTotalMassFlow()
@@ -87,15 +122,18 @@ public class Mixture implements Serializable
 		return totalMassFlow;
 	}
 
+	public void setTotalMassFlow(Parameter p)
+	{
+		totalMassFlow = p;
+	}
+
 	//calculate total mass flow rate based on default value of individual species mass flow
 	public void calcTotalMassFlow()
 	{
 		float total = 0;
-		Object mf[] = speciesFlowMap.values().toArray();
-		for (int i=0; i<mf.length; i++)
-		{
-			total += ((Parameter)mf[i]).getDefaultValue();
-		}
+		float[] x = speciesFlows.getDefaultValues();
+		for (int i : speciesFlows.getIndices())
+			total += x[i];
 		totalMassFlow.setDefaultValue(total);
 	}
 
@@ -103,38 +141,39 @@ public class Mixture implements Serializable
 	public void normalizeSpeciesMassFlowAsMassFraction()
 	{
 		float sum = 0;
-		Parameter param = null;
-		for(Map.Entry<Integer,Parameter> entry : speciesFlowMap.entrySet())
-		{
-			param = entry.getValue();
-			sum += param.getDefaultValue();
-		}
-		for(Map.Entry<Integer,Parameter> entry : speciesFlowMap.entrySet())
-		{
-			param = entry.getValue();
-			param.setDefaultValue(param.getDefaultValue()/sum);
-		}
+		float[] x = speciesFlows.getDefaultValues();
+		int[] indices = speciesFlows.getIndices();
+		for (int i : indices)
+			sum += x[i];
+		for (int i : indices)
+			x[i] = x[i]/sum;
 	}
 
+	//read-only map view of the species flows, the Parameter objects are views of the species flow arrays
 	public Map<Integer,Parameter> getSpeciesFlowMap()
 	{
-		return speciesFlowMap;
+		return speciesFlows.asMap();
 	}
 
+	//replace the species flows with the values of the parameters in a map, the map may be a view of the current species flows
+	//the entries keep the iteration order of the map
 	public void setSpeciesFlowMap(Map<Integer,Parameter> m)
 	{
-		speciesFlowMap = m;
+		SpeciesFlowTable table = new SpeciesFlowTable();
+		for (Map.Entry<Integer,Parameter> entry : m.entrySet())
+			putParameter(table, entry.getKey().intValue(), entry.getValue());
+		speciesFlows = table;
 	}
 
 	//append all available input parameters to a list, valid for inlet boundary only
 	public void appendAllInputsToParameterList(List<Parameter> paramList)
 	{
-		Collection<Parameter> speciesFlowValues = speciesFlowMap.values();
 		if (hasConstMassFractions)
 			paramList.add(totalMassFlow);
 		//If hasConstMassFractions is true, allow user to modify the mass fractions
 		//However, GUI should not allow user to vary it or included in the ROM input vector
-		paramList.addAll(speciesFlowValues);
+		for (int i : speciesFlows.getIndices())
+			paramList.add(speciesFlows.getParameter(i));
 	}
 
 	//append varied input parameters to a list, valid for inlet boundary only
@@ -147,11 +186,10 @@ public class Mixture implements Serializable
 		}
 		else
 		{
-			Collection<Parameter> speciesFlowValues = speciesFlowMap.values();
-			for (Parameter p : speciesFlowValues)
+			for (int i : speciesFlows.getIndices())
 			{
-				if (p.isVaried())
-					paramList.add(p);
+				if (speciesFlows.isVaried(i))
+					paramList.add(speciesFlows.getParameter(i));
 			}
 		}
 	}
@@ -159,15 +197,14 @@ public class Mixture implements Serializable
 	//append all output parameters to a list, valid for outlet boundary only
 	public void appendOutputsToParameterList(List<Parameter> paramList)
 	{
-		Collection<Parameter> speciesFlowValues = speciesFlowMap.values();
 		//all of them should have isVaried true, hasConstMassFractions should be false for outlet boundaries
-		paramList.addAll(speciesFlowValues);
+		for (int i : speciesFlows.getIndices())
+			paramList.add(speciesFlows.getParameter(i));
 	}
 
 	public void setAllParemeterAliasAs(String str)
 	{
 		totalMassFlow.setAlias(str);
-		for (Parameter value : speciesFlowMap.values())
-			value.setAlias(str);
+		speciesFlows.setAllAliases(str);
 	}
 }
\ No newline at end of file
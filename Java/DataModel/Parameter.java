@@ -78,32 +78,32 @@ public class Parameter extends Alias implements Serializable {
 	public void printACMVariable(PrintWriter out, String variableName)
 	{
 		out.println(variableName + " as RealVariable;");
-		if (isVaried)
+		if (isVaried())
 		{
-			out.println(variableName + ".lower : " + minValue + ";");
-			out.println(variableName + ".upper : " + maxValue + ";");
+			out.println(variableName + ".lower : " + getMinValue() + ";");
+			out.println(variableName + ".upper : " + getMaxValue() + ";");
 		}
 		else
 		{
-			out.println(variableName + ".lower : " + defaultValue + "*LowerTolerance;");
-			out.println(variableName + ".upper : " + defaultValue + "*UpperTolerance;");
+			out.println(variableName + ".lower : " + getDefaultValue() + "*LowerTolerance;");
+			out.println(variableName + ".upper : " + getDefaultValue() + "*UpperTolerance;");
 		}
 	}
 
 	//print a parameter that is not related to port data, called only if the parameter is varied
 	public void printACMParameter(PrintWriter out, String variableName)
 	{
-		out.println(variableName + " as RealParameter(" + defaultValue + ");");
-		out.println(variableName + ".lower : " + minValue + ";");
-		out.println(variableName + ".upper : " + maxValue + ";");
+		out.println(variableName + " as RealParameter(" + getDefaultValue() + ");");
+		out.println(variableName + ".lower : " + getMinValue() + ";");
+		out.println(variableName + ".upper : " + getMaxValue() + ";");
 	}
 
 	//print a variable or parameter, either related to port or not
 	public void printCapeOpen(PrintWriter out, String variableName)
 	{
-		if (isVaried)
-			out.println("1\t" + defaultValue + "\t" + minValue + "\t" + maxValue + "\t//" + variableName);
+		if (isVaried())
+			out.println("1\t" + getDefaultValue() + "\t" + getMinValue() + "\t" + getMaxValue() + "\t//" + variableName);
 		else
-			out.println("0\t" + defaultValue + "\t//" + variableName);
+			out.println("0\t" + getDefaultValue() + "\t//" + variableName);
 	}
 }
\ No newline at end of file
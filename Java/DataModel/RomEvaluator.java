@@ -0,0 +1,160 @@
+package DataModel;
+
+/**
+ * Class evaluating a mass-balanced ROM in memory, the Kriging prediction of the ROM output vector is followed by the elemental mass balance correction
+ * The evaluator replaces the round trip of writing the input vector, predicting the outputs externally, reading them back with readAnOutputVector(),
+ * calling enforceElementalMassBalance() and writing the corrected vector. The Kriging model is shared and read only,
+ * the evaluator owns a MassBalanceCorrector and the scratch arrays, so an evaluator is not thread-safe and each thread should use its own evaluator.
+ */
+public class RomEvaluator
+{
+	//Kriging model predicting the ROM output vector from the ROM input vector
+	private KrigingModel model;
+
+	//corrector of the predicted output vector
+	private MassBalanceCorrector corrector;
+
+	//number of ROM input parameters
+	private int nInputParam;
+
+	//number of ROM output parameters
+	private int nOutputParam;
+
+	//scratch arrays
+	private double[] work;			//work array of the Kriging prediction
+	private double[] batchWork;		//work array of the batch Kriging prediction, allocated by the first batch evaluation
+	private double[] yRaw;			//output vector predicted by the last evaluation before correction
+	private double[] xCase;			//input vector of a case of a batch
+	private double[] yCase;			//output vector of a case of a batch
+
+	//scratch arrays of evaluateWithGradient(), allocated by its first call
+	private double[] gradientWork;	//work array of the Kriging prediction with gradient
+	private double[] rawGradient;	//derivatives of the predicted outputs to the inputs
+	private double[] dydy;			//derivatives of the corrected outputs to the predicted outputs
+	private double[] dydxCorrection;	//derivatives of the corrected outputs to the inputs through the feed flows
+
+	//return value of the correction of the last evaluation
+	private int lastStatus;
+
+	//constructor based on a UnitOperation with updated ROM vectors and a Kriging model of the same ROM vectors
+	public RomEvaluator(UnitOperation uo, KrigingModel km)
+	{
+		nInputParam = uo.getRomInputVector().size();
+		nOutputParam = uo.getYromOutputVector().size();
+		if (km.getNumberOfInputs()!=nInputParam || km.getNumberOfOutputs()!=nOutputParam)
+			throw new IllegalArgumentException("Kriging model with " + km.getNumberOfInputs() + " inputs and " + km.getNumberOfOutputs() +
+				" outputs does not match ROM vectors with " + nInputParam + " inputs and " + nOutputParam + " outputs");
+		model = km;
+		corrector = new MassBalanceCorrector(uo);
+		work = new double[km.getWorkLength()];
+		yRaw = new double[nOutputParam];
+		xCase = new double[nInputParam];
+		yCase = new double[nOutputParam];
+		lastStatus = MassBalanceCorrector.SUCCESS;
+	}
+
+	public KrigingModel getKrigingModel()
+	{
+		return model;
+	}
+
+	public MassBalanceCorrector getMassBalanceCorrector()
+	{
+		return corrector;
+	}
+
+	public int getNumberOfInputs()
+	{
+		return nInputParam;
+	}
+
+	public int getNumberOfOutputs()
+	{
+		return nOutputParam;
+	}
+
+	//output vector predicted by the last single case evaluation before the correction, the array is reused by the next evaluation
+	public double[] getLastRawOutput()
+	{
+		return yRaw;
+	}
+
+	//return value of the correction of the last single case evaluation
+	public int getLastStatus()
+	{
+		return lastStatus;
+	}
+
+	//predict and correct the output vector of input vector x, the status is returned by getLastStatus()
+	public double[] evaluate(double[] x)
+	{
+		double[] yBalanced = new double[nOutputParam];
+		evaluate(x, yBalanced);
+		return yBalanced;
+	}
+
+	//predict and correct the output vector of input vector x into yBalanced
+	//returns the return value of MassBalanceCorrector.correct(), if failed yBalanced contains the partially corrected vector
+	public int evaluate(double[] x, double[] yBalanced)
+	{
+		model.predict(x, yRaw, work);
+		lastStatus = corrector.correct(x, yRaw, yBalanced);
+		return lastStatus;
+	}
+
+	//predict and correct nCase cases, x is nCase by number of inputs and yBalanced is nCase by number of outputs in row-major order
+	//all cases are predicted as one batch before the cases are corrected one by one
+	//the correction status of each case is stored in status if it is not null, returns the number of cases failed in the correction
+	public int evaluate(double[] x, double[] yBalanced, int nCase, int[] status)
+	{
+		int i, iReturn;
+		int nFailed = 0;
+		if (batchWork==null)
+			batchWork = new double[model.getBatchWorkLength()];
+		model.predict(x, yBalanced, nCase, batchWork);
+		for (i=0; i<nCase; i++)
+		{
+			System.arraycopy(x, i*nInputParam, xCase, 0, nInputParam);
+			System.arraycopy(yBalanced, i*nOutputParam, yCase, 0, nOutputParam);
+			iReturn = corrector.correct(xCase, yCase, yCase);
+			System.arraycopy(yCase, 0, yBalanced, i*nOutputParam, nOutputParam);
+			if (status!=null)
+				status[i] = iReturn;
+			if (iReturn!=MassBalanceCorrector.SUCCESS)
+				nFailed++;
+		}
+		return nFailed;
+	}
+
+	//predict and correct the output vector of input vector x into yBalanced and calculate the derivatives of yBalanced to x
+	//dydx is the number of outputs by number of inputs row-major matrix, the chain rule combines the analytic gradient of the Kriging prediction
+	//with the analytic Jacobian of the correction, dydx is only set if the correction is successful
+	//returns the return value of MassBalanceCorrector.correctWithJacobian(), the status is also returned by getLastStatus()
+	public int evaluateWithGradient(double[] x, double[] yBalanced, double[] dydx)
+	{
+		int i, j, k;
+		double sum;
+		if (gradientWork==null)
+		{
+			gradientWork = new double[model.getGradientWorkLength()];
+			rawGradient = new double[nOutputParam*nInputParam];
+			dydy = new double[nOutputParam*nOutputParam];
+			dydxCorrection = new double[nOutputParam*nInputParam];
+		}
+		model.predictWithGradient(x, yRaw, rawGradient, gradientWork);
+		lastStatus = corrector.correctWithJacobian(x, yRaw, yBalanced, dydy, dydxCorrection);
+		if (lastStatus!=MassBalanceCorrector.SUCCESS)
+			return lastStatus;
+		for (i=0; i<nOutputParam; i++)
+		{
+			for (k=0; k<nInputParam; k++)
+			{
+				sum = dydxCorrection[i*nInputParam+k];
+				for (j=0; j<nOutputParam; j++)
+					sum += dydy[i*nOutputParam+j]*rawGradient[j*nInputParam+k];
+				dydx[i*nInputParam+k] = sum;
+			}
+		}
+		return lastStatus;
+	}
+}
@@ -0,0 +1,464 @@
+package DataModel;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Class for reading the JSON setup file of a UnitOperation with a streaming JsonReader
+ * The file is read in a single pass and the boundaries, mixtures, parameters and species are created directly for the target UnitOperation.
+ * The values are read the same way as the Gson reflective reader used before: unknown or non-exposed names are skipped,
+ * a missing field keeps the value set by the constructor of the object, and a Parameter read from the file has no alias.
+ * The aliases of the mixture parameters are assigned when each flow boundary is read.
+ */
+public class SetupJsonReader
+{
+	private JsonReader in;
+
+	public SetupJsonReader(Reader r)
+	{
+		in = new JsonReader(r);
+		//lenient as the Gson.fromJson() reader used before, the project is pinned to gson 2.8.0, which has setLenient() but not setStrictness()
+		in.setLenient(true);
+	}
+
+	//reader on a JsonReader, used by the type adapters of SetupTypeAdapters
+	SetupJsonReader(JsonReader jr)
+	{
+		in = jr;
+	}
+
+	//read the setup from a file into uo
+	public static void read(UnitOperation uo, String fileName) throws IOException
+	{
+		BufferedReader br = new BufferedReader(new FileReader(fileName), 65536);
+		try
+		{
+			new SetupJsonReader(br).read(uo);
+		}
+		finally
+		{
+			br.close();
+		}
+	}
+
+	//read the setup into uo, fields not in the JSON object are reset to the default values of a new UnitOperation
+	//gas species are appended to the current gas species list as addGasSpecies() does
+	public void read(UnitOperation uo) throws IOException
+	{
+		String field;
+		String name = "rom_model";
+		UnitOperation.RegressionMethod regMethod = UnitOperation.RegressionMethod.KRIGING;
+		int nSample = 10;
+		List<String> solidPhaseList = new ArrayList<String>();
+		List<Integer> solidPhaseTypeList = new ArrayList<Integer>();
+		List<FlowBoundary> inletBoundaryList = new ArrayList<FlowBoundary>();
+		List<FlowBoundary> outletBoundaryList = new ArrayList<FlowBoundary>();
+		List<Parameter> inputParameterList = new ArrayList<Parameter>();
+		List<Parameter> outputParameterList = new ArrayList<Parameter>();
+		uo.setTotalNumberOfSolidPhases(0);
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				if (field.equals("name"))
+					name = null;
+				else if (field.equals("regMethod"))
+					regMethod = null;
+				else if (field.equals("solidPhaseList"))
+					solidPhaseList = null;
+				else if (field.equals("solidPhaseTypeList"))
+					solidPhaseTypeList = null;
+				else if (field.equals("inletBoundaryList"))
+					inletBoundaryList = null;
+				else if (field.equals("outletBoundaryList"))
+					outletBoundaryList = null;
+				else if (field.equals("inputParameterList"))
+					inputParameterList = null;
+				else if (field.equals("outputParameterList"))
+					outputParameterList = null;
+			}
+			else if (field.equals("name"))
+				name = nextString();
+			else if (field.equals("regMethod"))
+				regMethod = nextRegressionMethod();
+			else if (field.equals("nSample"))
+				nSample = in.nextInt();
+			else if (field.equals("gasSpeciesList"))
+				readGasSpeciesList(uo);
+			else if (field.equals("solidSpeciesList"))
+				readSolidSpeciesList(uo);
+			else if (field.equals("solidPhaseList"))
+				solidPhaseList = readStringList();
+			else if (field.equals("solidPhaseTypeList"))
+				solidPhaseTypeList = readIntegerList();
+			else if (field.equals("inletBoundaryList"))
+				inletBoundaryList = readFlowBoundaryList();
+			else if (field.equals("outletBoundaryList"))
+				outletBoundaryList = readFlowBoundaryList();
+			else if (field.equals("inputParameterList"))
+				inputParameterList = readParameterList();
+			else if (field.equals("outputParameterList"))
+				outputParameterList = readParameterList();
+			else
+				in.skipValue();
+		}
+		in.endObject();
+		uo.setName(name);
+		uo.setRegressionMethod(regMethod);
+		uo.setNumberOfSamples(nSample);
+		uo.setSolidPhaseList(solidPhaseList);
+		uo.setSolidPhaseTypeList(solidPhaseTypeList);
+		uo.setInletBoundaryList(inletBoundaryList);
+		uo.setOutletBoundaryList(outletBoundaryList);
+		uo.setInputParameterList(inputParameterList);
+		uo.setOutputParameterList(outputParameterList);
+	}
+
+	//string value, booleans and numbers are converted as Gson does
+	private String nextString() throws IOException
+	{
+		if (in.peek()==JsonToken.BOOLEAN)
+			return Boolean.toString(in.nextBoolean());
+		return in.nextString();
+	}
+
+	//boolean value, a string is parsed as Gson does
+	private boolean nextBoolean() throws IOException
+	{
+		if (in.peek()==JsonToken.STRING)
+			return Boolean.parseBoolean(in.nextString());
+		return in.nextBoolean();
+	}
+
+	//enum constant by name, null if not a constant
+	private UnitOperation.RegressionMethod nextRegressionMethod() throws IOException
+	{
+		String str = in.nextString();
+		for (UnitOperation.RegressionMethod rm : UnitOperation.RegressionMethod.values())
+		{
+			if (rm.name().equals(str))
+				return rm;
+		}
+		return null;
+	}
+
+	//read the name and formula of a species, the formula defaults to N2 as in the Species constructor
+	//returns a two-element array of name and formula
+	private String[] readSpeciesNameAndFormula() throws IOException
+	{
+		String field;
+		String[] nameFormula = {"N2", "N2"};
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				if (field.equals("name"))
+					nameFormula[0] = null;
+				else if (field.equals("formula"))
+					nameFormula[1] = null;
+			}
+			else if (field.equals("name"))
+				nameFormula[0] = nextString();
+			else if (field.equals("formula"))
+				nameFormula[1] = nextString();
+			else
+				in.skipValue();
+		}
+		in.endObject();
+		return nameFormula;
+	}
+
+	//read a species, null if the JSON value is null
+	Species readSpecies() throws IOException
+	{
+		String[] nameFormula;
+		if (in.peek()==JsonToken.NULL)
+		{
+			in.nextNull();
+			return null;
+		}
+		nameFormula = readSpeciesNameAndFormula();
+		return new Species(nameFormula[0], nameFormula[1]);
+	}
+
+	private void readGasSpeciesList(UnitOperation uo) throws IOException
+	{
+		String[] nameFormula;
+		in.beginArray();
+		while (in.hasNext())
+		{
+			nameFormula = readSpeciesNameAndFormula();
+			uo.addGasSpecies(nameFormula[0], nameFormula[1]);
+		}
+		in.endArray();
+	}
+
+	private void readSolidSpeciesList(UnitOperation uo) throws IOException
+	{
+		int iPhase = 0;
+		String[] nameFormula;
+		List<List<Species>> solidSpeciesList = uo.getSolidSpeciesList();
+		solidSpeciesList.clear();
+		in.beginArray();
+		while (in.hasNext())
+		{
+			solidSpeciesList.add(new ArrayList<Species>());
+			in.beginArray();
+			while (in.hasNext())
+			{
+				nameFormula = readSpeciesNameAndFormula();
+				uo.addSolidSpecies(iPhase, nameFormula[0], nameFormula[1]);
+			}
+			in.endArray();
+			iPhase++;
+		}
+		in.endArray();
+	}
+
+	private List<String> readStringList() throws IOException
+	{
+		List<String> list = new ArrayList<String>();
+		in.beginArray();
+		while (in.hasNext())
+		{
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				list.add(null);
+			}
+			else
+				list.add(nextString());
+		}
+		in.endArray();
+		return list;
+	}
+
+	private List<Integer> readIntegerList() throws IOException
+	{
+		List<Integer> list = new ArrayList<Integer>();
+		in.beginArray();
+		while (in.hasNext())
+		{
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				list.add(null);
+			}
+			else
+				list.add(Integer.valueOf(in.nextInt()));
+		}
+		in.endArray();
+		return list;
+	}
+
+	//read a parameter, null if the JSON value is null
+	Parameter readParameter() throws IOException
+	{
+		String field;
+		if (in.peek()==JsonToken.NULL)
+		{
+			in.nextNull();
+			return null;
+		}
+		Parameter p = new Parameter(null, null);
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				if (field.equals("name"))
+					p.setName(null);
+			}
+			else if (field.equals("isVaried"))
+				p.enableVaried(nextBoolean());
+			else if (field.equals("defaultValue"))
+				p.setDefaultValue((float)in.nextDouble());
+			else if (field.equals("minValue"))
+				p.setMinValue((float)in.nextDouble());
+			else if (field.equals("maxValue"))
+				p.setMaxValue((float)in.nextDouble());
+			else if (field.equals("name"))
+				p.setName(nextString());
+			else
+				in.skipValue();
+		}
+		in.endObject();
+		return p;
+	}
+
+	List<Parameter> readParameterList() throws IOException
+	{
+		List<Parameter> list = new ArrayList<Parameter>();
+		in.beginArray();
+		while (in.hasNext())
+			list.add(readParameter());
+		in.endArray();
+		return list;
+	}
+
+	//read a field of the Mixture base class, returns false if the name is not a Mixture field
+	private boolean readMixtureField(Mixture m, String field) throws IOException
+	{
+		if (field.equals("hasConstMassFractions"))
+			m.enableConstMassFractions(nextBoolean());
+		else if (field.equals("totalMassFlow"))
+			m.setTotalMassFlow(readParameter());
+		else if (field.equals("speciesFlowMap"))
+			m.setSpeciesFlows(new SpeciesFlowTable.GsonAdapter().read(in));
+		else
+			return false;
+		return true;
+	}
+
+	GasMixture readGasMixture() throws IOException
+	{
+		String field;
+		if (in.peek()==JsonToken.NULL)
+		{
+			in.nextNull();
+			return null;
+		}
+		GasMixture gm = new GasMixture();
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (field.equals("pressure"))
+				gm.setPressure(readParameter());
+			else if (field.equals("temperature"))
+				gm.setTemperature(readParameter());
+			else if (field.equals("volumeFraction"))
+				gm.setVolumeFraction(readParameter());
+			else if (in.peek()==JsonToken.NULL)
+				in.nextNull();
+			else if (!readMixtureField(gm, field))
+				in.skipValue();
+		}
+		in.endObject();
+		return gm;
+	}
+
+	SolidMixture readSolidMixture() throws IOException
+	{
+		String field;
+		if (in.peek()==JsonToken.NULL)
+		{
+			in.nextNull();
+			return null;
+		}
+		SolidMixture sm = new SolidMixture();
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (field.equals("pressure"))
+				sm.setPressure(readParameter());
+			else if (field.equals("temperature"))
+				sm.setTemperature(readParameter());
+			else if (field.equals("volumeFraction"))
+				sm.setVolumeFraction(readParameter());
+			else if (field.equals("diameter"))
+				sm.setDiameter(readParameter());
+			else if (field.equals("density"))
+				sm.setDensity(readParameter());
+			else if (field.equals("granularTemperature"))
+				sm.setGranularTemperature(readParameter());
+			else if (field.equals("vm"))
+				sm.setVm(readParameter());
+			else if (in.peek()==JsonToken.NULL)
+				in.nextNull();
+			else if (field.equals("phaseIndex"))
+				sm.setPhaseIndex(in.nextInt());
+			else if (field.equals("solidType"))
+				sm.setSolidType(in.nextInt());
+			else if (field.equals("isGranularEnergySolved"))
+				sm.enableGranularEnergySolved(nextBoolean());
+			else if (!readMixtureField(sm, field))
+				in.skipValue();
+		}
+		in.endObject();
+		return sm;
+	}
+
+	//read a flow boundary and assign the aliases of its mixture parameters
+	FlowBoundary readFlowBoundary() throws IOException
+	{
+		String field;
+		if (in.peek()==JsonToken.NULL)
+		{
+			in.nextNull();
+			return null;
+		}
+		FlowBoundary fb = new FlowBoundary();
+		in.beginObject();
+		while (in.hasNext())
+		{
+			field = in.nextName();
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				if (field.equals("boundaryName"))
+					fb.setBoundaryName(null);
+				else if (field.equals("gasMixture"))
+					fb.setGasMixture(null);
+				else if (field.equals("solidMixtures"))
+					fb.setSolidMixtures(null);
+			}
+			else if (field.equals("hasGasPhase"))
+				fb.enableGasPhase(nextBoolean());
+			else if (field.equals("hasSolidPhase"))
+				fb.enableSolidPhase(nextBoolean());
+			else if (field.equals("boundaryIndex"))
+				fb.setBoundaryIndex(in.nextInt());
+			else if (field.equals("boundaryName"))
+				fb.setBoundaryName(nextString());
+			else if (field.equals("gasMixture"))
+			{
+				List<GasMixture> gml = new ArrayList<GasMixture>();
+				in.beginArray();
+				while (in.hasNext())
+					gml.add(readGasMixture());
+				in.endArray();
+				fb.setGasMixture(gml);
+			}
+			else if (field.equals("solidMixtures"))
+			{
+				List<SolidMixture> sml = new ArrayList<SolidMixture>();
+				in.beginArray();
+				while (in.hasNext())
+					sml.add(readSolidMixture());
+				in.endArray();
+				fb.setSolidMixtures(sml);
+			}
+			else
+				in.skipValue();
+		}
+		in.endObject();
+		for (GasMixture gm : fb.getGasMixture())
+			gm.setAllParemeterAliasAs(fb.getBoundaryName() + "GP");
+		for (SolidMixture sm : fb.getSolidMixtures())
+			sm.setAllParemeterAliasAs(fb.getBoundaryName() + "SP" + sm.getPhaseIndex());
+		return fb;
+	}
+
+	private List<FlowBoundary> readFlowBoundaryList() throws IOException
+	{
+		List<FlowBoundary> list = new ArrayList<FlowBoundary>();
+		in.beginArray();
+		while (in.hasNext())
+			list.add(readFlowBoundary());
+		in.endArray();
+		return list;
+	}
+}
@@ -0,0 +1,270 @@
+package DataModel;
+
+import java.io.*;
+import java.util.List;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Class for writing a UnitOperation as a JSON setup file with a streaming JsonWriter
+ * The exposed fields are written explicitly in the order and form of the Gson reflective writer used before:
+ * fields of a class are followed by the fields of its base class, null fields are omitted and strings are HTML-safe escaped.
+ * The file is read back by SetupJsonReader.
+ */
+public class SetupJsonWriter
+{
+	private JsonWriter out;
+
+	public SetupJsonWriter(Writer w, boolean bPretty)
+	{
+		this(new JsonWriter(w));
+		if (bPretty)
+			out.setIndent("  ");
+	}
+
+	//writer on a JsonWriter, used by the type adapters of SetupTypeAdapters
+	SetupJsonWriter(JsonWriter jw)
+	{
+		out = jw;
+		out.setHtmlSafe(true);
+		out.setSerializeNulls(false);
+	}
+
+	//write a setup to a pretty-printed JSON file
+	public static void write(UnitOperation uo, String fileName) throws IOException
+	{
+		Writer w = new BufferedWriter(new FileWriter(fileName), 65536);
+		try
+		{
+			SetupJsonWriter sw = new SetupJsonWriter(w, true);
+			sw.writeUnitOperation(uo);
+			sw.flush();
+		}
+		finally
+		{
+			w.close();
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	private void writeString(String name, String value) throws IOException
+	{
+		out.name(name).value(value);
+	}
+
+	void writeParameter(Parameter p) throws IOException
+	{
+		if (p==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("isVaried").value(p.isVaried());
+		out.name("defaultValue").value(Float.valueOf(p.getDefaultValue()));
+		out.name("minValue").value(Float.valueOf(p.getMinValue()));
+		out.name("maxValue").value(Float.valueOf(p.getMaxValue()));
+		writeString("name", p.getName());
+		out.endObject();
+	}
+
+	private void writeParameter(String name, Parameter p) throws IOException
+	{
+		out.name(name);
+		writeParameter(p);
+	}
+
+	void writeParameterList(List<Parameter> list) throws IOException
+	{
+		if (list==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginArray();
+		for (Parameter p : list)
+			writeParameter(p);
+		out.endArray();
+	}
+
+	void writeSpecies(Species sp) throws IOException
+	{
+		if (sp==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		writeString("name", sp.getName());
+		writeString("formula", sp.getFormula());
+		out.endObject();
+	}
+
+	private void writeSpeciesList(List<Species> list) throws IOException
+	{
+		if (list==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginArray();
+		for (Species sp : list)
+			writeSpecies(sp);
+		out.endArray();
+	}
+
+	//write the fields of the Mixture base class
+	private void writeMixtureFields(Mixture m) throws IOException
+	{
+		out.name("hasConstMassFractions").value(m.hasConstMassFractions());
+		writeParameter("totalMassFlow", m.getTotalMassFlow());
+		out.name("speciesFlowMap");
+		new SpeciesFlowTable.GsonAdapter().write(out, m.getSpeciesFlows());
+	}
+
+	void writeGasMixture(GasMixture gm) throws IOException
+	{
+		if (gm==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		writeParameter("pressure", gm.getPressure());
+		writeParameter("temperature", gm.getTemperature());
+		writeParameter("volumeFraction", gm.getVolumeFraction());
+		writeMixtureFields(gm);
+		out.endObject();
+	}
+
+	void writeSolidMixture(SolidMixture sm) throws IOException
+	{
+		if (sm==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("phaseIndex").value(sm.getPhaseIndex());
+		out.name("solidType").value(sm.getSolidType());
+		out.name("isGranularEnergySolved").value(sm.isGranularEnergySolved());
+		writeParameter("pressure", sm.getPressure());
+		writeParameter("temperature", sm.getTemperature());
+		writeParameter("volumeFraction", sm.getVolumeFraction());
+		writeParameter("diameter", sm.getDiameter());
+		writeParameter("density", sm.getDensity());
+		writeParameter("granularTemperature", sm.getGranularTemperature());
+		writeParameter("vm", sm.getVm());
+		writeMixtureFields(sm);
+		out.endObject();
+	}
+
+	void writeFlowBoundary(FlowBoundary fb) throws IOException
+	{
+		if (fb==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("hasGasPhase").value(fb.hasGasPhase());
+		out.name("hasSolidPhase").value(fb.hasSolidPhase());
+		out.name("boundaryIndex").value(fb.getBoundaryIndex());
+		writeString("boundaryName", fb.getBoundaryName());
+		out.name("gasMixture");
+		if (fb.getGasMixture()==null)
+			out.nullValue();
+		else
+		{
+			out.beginArray();
+			for (GasMixture gm : fb.getGasMixture())
+				writeGasMixture(gm);
+			out.endArray();
+		}
+		out.name("solidMixtures");
+		if (fb.getSolidMixtures()==null)
+			out.nullValue();
+		else
+		{
+			out.beginArray();
+			for (SolidMixture sm : fb.getSolidMixtures())
+				writeSolidMixture(sm);
+			out.endArray();
+		}
+		out.endObject();
+	}
+
+	private void writeFlowBoundaryList(List<FlowBoundary> list) throws IOException
+	{
+		if (list==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginArray();
+		for (FlowBoundary fb : list)
+			writeFlowBoundary(fb);
+		out.endArray();
+	}
+
+	public void writeUnitOperation(UnitOperation uo) throws IOException
+	{
+		if (uo==null)
+		{
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("regMethod");
+		if (uo.getRegressionMethod()==null)
+			out.nullValue();
+		else
+			out.value(uo.getRegressionMethod().name());
+		out.name("nSample").value(uo.getNumberOfSamples());
+		out.name("gasSpeciesList");
+		writeSpeciesList(uo.getGasSpeciesList());
+		out.name("solidSpeciesList");
+		if (uo.getSolidSpeciesList()==null)
+			out.nullValue();
+		else
+		{
+			out.beginArray();
+			for (List<Species> list : uo.getSolidSpeciesList())
+				writeSpeciesList(list);
+			out.endArray();
+		}
+		out.name("solidPhaseList");
+		if (uo.getSolidPhaseList()==null)
+			out.nullValue();
+		else
+		{
+			out.beginArray();
+			for (String str : uo.getSolidPhaseList())
+				out.value(str);
+			out.endArray();
+		}
+		out.name("solidPhaseTypeList");
+		if (uo.getSolidPhaseTypeList()==null)
+			out.nullValue();
+		else
+		{
+			out.beginArray();
+			for (Integer type : uo.getSolidPhaseTypeList())
+				out.value(type);
+			out.endArray();
+		}
+		out.name("inletBoundaryList");
+		writeFlowBoundaryList(uo.getInletBoundaryList());
+		out.name("outletBoundaryList");
+		writeFlowBoundaryList(uo.getOutletBoundaryList());
+		out.name("inputParameterList");
+		writeParameterList(uo.getInputParameterList());
+		out.name("outputParameterList");
+		writeParameterList(uo.getOutputParameterList());
+		writeString("name", uo.getName());
+		out.endObject();
+	}
+}
@@ -0,0 +1,748 @@
+package DataModel;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class of the versioned binary snapshot of a UnitOperation prepared by readUserJsonFile() and updateAllSpeciesList()
+ * Snapshots are only used when a cache directory is set by setCacheDirectory() or the system property iRevealLite.snapshotDir, otherwise load() reads
+ * the JSON file and writes nothing. A snapshot is stored in the cache directory under the JSON file name followed by the hash of its absolute path
+ * and the extension .snap and is keyed by a 64-bit FNV-1a hash and the length of the JSON file,
+ * a snapshot of a different JSON content or format version is ignored and replaced. The file starts with a 32-byte header of little-endian values:
+ * magic number, version, content hash, JSON file length, payload length and a reserved value. The payload contains the setup data,
+ * the parameter names and aliases, the indices calculated by updateAllSpeciesList() and the ROM vectors as indices of the parameters in the order written.
+ * The snapshot is read through a mapped buffer, so no JSON is parsed and the species of the solid phases are not searched again.
+ */
+public class SetupSnapshot
+{
+	//"IRVS" in little-endian byte order
+	public static final int magicNumber = 0x53565249;
+
+	public static final int formatVersion = 3;
+
+	public static final int headerSize = 32;
+
+	public static final String fileExtension = ".snap";
+
+	//system property of the default cache directory
+	public static final String cacheDirectoryProperty = "iRevealLite.snapshotDir";
+
+	//directory of the snapshots, snapshots are not used if null
+	private static volatile File cacheDirectory = getDefaultCacheDirectory();
+
+	//marker of a null list or string length and a null Integer
+	private static final int nullValue = -1;
+	private static final int nullInteger = Integer.MIN_VALUE;
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	//FNV-1a 64-bit offset basis and prime
+	private static final long fnvOffsetBasis = 0xcbf29ce484222325L;
+	private static final long fnvPrime = 0x100000001b3L;
+
+	//buffer written or read
+	private ByteBuffer buffer;
+
+	//index of each parameter written, used to write the ROM vectors
+	//a parameter written more than once is read as separate parameters and referred to by the index of the first one
+	private Map<Parameter,Integer> parameterIndex;
+
+	//number of parameters written
+	private int nParameter;
+
+	//parameters in the order read, used to read the ROM vectors
+	private List<Parameter> parameterList;
+
+	//scratch array for decoding strings
+	private byte[] stringBytes;
+
+	private SetupSnapshot(ByteBuffer bb)
+	{
+		buffer = bb;
+		stringBytes = new byte[64];
+		nParameter = 0;
+	}
+
+	private static File getDefaultCacheDirectory()
+	{
+		String dir = System.getProperty(cacheDirectoryProperty);
+		return dir!=null && !dir.isEmpty() ? new File(dir) : null;
+	}
+
+	public static File getCacheDirectory()
+	{
+		return cacheDirectory;
+	}
+
+	//directory of the snapshots written and read by load(), null to read the JSON files without snapshots
+	public static void setCacheDirectory(File dir)
+	{
+		cacheDirectory = dir;
+	}
+
+	//snapshot file name of a JSON setup file in the cache directory, null if no cache directory is set
+	public static String getSnapshotFileName(String jsonFileName)
+	{
+		File dir = cacheDirectory;
+		if (dir==null)
+			return null;
+		File json = new File(jsonFileName).getAbsoluteFile();
+		byte[] path = json.getPath().getBytes(utf8);
+		String name = json.getName() + "-" + String.format("%016x", hashBytes(fnvOffsetBasis, path, path.length)) + fileExtension;
+		return new File(dir, name).getPath();
+	}
+
+	//FNV-1a 64-bit hash continued from hash with the first n bytes of b
+	private static long hashBytes(long hash, byte[] b, int n)
+	{
+		int i;
+		for (i=0; i<n; i++)
+			hash = (hash ^ (b[i] & 0xff))*fnvPrime;
+		return hash;
+	}
+
+	//64-bit FNV-1a hash of the content of a file
+	public static long hashFile(String fileName) throws IOException
+	{
+		int n;
+		long hash = fnvOffsetBasis;
+		byte[] chunk = new byte[65536];
+		InputStream is = new FileInputStream(fileName);
+		try
+		{
+			while ((n = is.read(chunk))>0)
+				hash = hashBytes(hash, chunk, n);
+		}
+		finally
+		{
+			is.close();
+		}
+		return hash;
+	}
+
+	//load a prepared UnitOperation of a JSON setup file, if a cache directory is set the snapshot is used if it matches the JSON content,
+	//otherwise the JSON file is read and prepared and the snapshot is written to the cache directory for the next load
+	//failures of reading or writing the snapshot are reported on the standard error and the JSON file is used
+	public static UnitOperation load(String jsonFileName)
+	{
+		long hash;
+		long length;
+		UnitOperation uo = null;
+		String snapshotFileName = getSnapshotFileName(jsonFileName);
+		if (snapshotFileName==null)
+			return readJson(jsonFileName);
+		try
+		{
+			hash = hashFile(jsonFileName);
+			length = new File(jsonFileName).length();
+		}
+		catch(IOException e)
+		{
+			System.err.println(e);
+			return readJson(jsonFileName);
+		}
+		if (new File(snapshotFileName).isFile())
+		{
+			try
+			{
+				uo = read(snapshotFileName, hash, length);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to read setup snapshot: " + e);
+			}
+		}
+		if (uo!=null)
+			return uo;
+		uo = readJson(jsonFileName);
+		try
+		{
+			File dir = new File(snapshotFileName).getAbsoluteFile().getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Unable to create directory " + dir);
+			write(uo, snapshotFileName, hash, length);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to write setup snapshot: " + e);
+		}
+		return uo;
+	}
+
+	//read and prepare a UnitOperation from a JSON setup file
+	private static UnitOperation readJson(String jsonFileName)
+	{
+		UnitOperation uo = new UnitOperation();
+		uo.readUserJsonFile(jsonFileName);
+		uo.updateAllSpeciesList();
+		return uo;
+	}
+
+	//write the snapshot of a prepared UnitOperation, the file is replaced after the whole snapshot is written
+	public static void write(UnitOperation uo, String snapshotFileName, long hash, long length) throws IOException
+	{
+		SetupSnapshot ss = new SetupSnapshot(ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN));
+		ss.parameterIndex = new IdentityHashMap<Parameter,Integer>();
+		ss.buffer.position(headerSize);
+		ss.writeUnitOperation(uo);
+		ByteBuffer bb = ss.buffer;
+		int payloadLength = bb.position() - headerSize;
+		bb.putInt(0, magicNumber);
+		bb.putInt(4, formatVersion);
+		bb.putLong(8, hash);
+		bb.putLong(16, length);
+		bb.putInt(24, payloadLength);
+		bb.putInt(28, 0);
+		bb.flip();
+		File target = new File(snapshotFileName).getAbsoluteFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try
+		{
+			FileChannel ch = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try
+			{
+				while (bb.hasRemaining())
+					ch.write(bb);
+			}
+			finally
+			{
+				ch.close();
+			}
+			try
+			{
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			temp.delete();
+		}
+	}
+
+	//read a snapshot, returns null if it is not a snapshot of a JSON file with the given hash and length or of the current format version
+	public static UnitOperation read(String snapshotFileName, long hash, long length) throws IOException
+	{
+		FileChannel ch = FileChannel.open(Paths.get(snapshotFileName), StandardOpenOption.READ);
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+			{
+				if (ch.read(header, header.position())<0)
+					return null;
+			}
+			header.flip();
+			if (header.getInt()!=magicNumber || header.getInt()!=formatVersion || header.getLong()!=hash || header.getLong()!=length)
+				return null;
+			int payloadLength = header.getInt();
+			if (payloadLength<0 || ch.size()<headerSize+(long)payloadLength)
+				throw new EOFException("Setup snapshot " + snapshotFileName + " is truncated");
+			MappedByteBuffer mbb = ch.map(FileChannel.MapMode.READ_ONLY, headerSize, payloadLength);
+			mbb.order(ByteOrder.LITTLE_ENDIAN);
+			SetupSnapshot ss = new SetupSnapshot(mbb);
+			ss.parameterList = new ArrayList<Parameter>();
+			try
+			{
+				return ss.readUnitOperation();
+			}
+			catch(BufferUnderflowException e)
+			{
+				throw new EOFException("Setup snapshot " + snapshotFileName + " is corrupted");
+			}
+			catch(IndexOutOfBoundsException e)
+			{
+				throw new IOException("Setup snapshot " + snapshotFileName + " is corrupted");
+			}
+			catch(NegativeArraySizeException e)
+			{
+				throw new IOException("Setup snapshot " + snapshotFileName + " is corrupted");
+			}
+		}
+		finally
+		{
+			ch.close();
+		}
+	}
+
+	//make sure n more bytes can be written
+	private void ensureRemaining(int n)
+	{
+		if (buffer.remaining()>=n)
+			return;
+		ByteBuffer bb = ByteBuffer.allocate(Math.max(2*buffer.capacity(), buffer.position()+n)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.flip();
+		bb.put(buffer);
+		buffer = bb;
+	}
+
+	private void writeInt(int i)
+	{
+		ensureRemaining(4);
+		buffer.putInt(i);
+	}
+
+	private void writeFloat(float x)
+	{
+		ensureRemaining(4);
+		buffer.putFloat(x);
+	}
+
+	private void writeBoolean(boolean b)
+	{
+		ensureRemaining(1);
+		buffer.put((byte)(b ? 1 : 0));
+	}
+
+	private void writeString(String str)
+	{
+		if (str==null)
+		{
+			writeInt(nullValue);
+			return;
+		}
+		byte[] bytes = str.getBytes(utf8);
+		writeInt(bytes.length);
+		ensureRemaining(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private void writeIntArray(int[] v)
+	{
+		int i;
+		if (v==null)
+		{
+			writeInt(nullValue);
+			return;
+		}
+		writeInt(v.length);
+		ensureRemaining(4*v.length);
+		for (i=0; i<v.length; i++)
+			buffer.putInt(v[i]);
+	}
+
+	//write a parameter and assign its index for the ROM vectors
+	private void writeParameter(Parameter p)
+	{
+		writeBoolean(p!=null);
+		if (p==null)
+			return;
+		if (!parameterIndex.containsKey(p))
+			parameterIndex.put(p, Integer.valueOf(nParameter));
+		nParameter++;
+		writeString(p.getName());
+		writeString(p.getAlias());
+		writeBoolean(p.isVaried());
+		writeFloat(p.getDefaultValue());
+		writeFloat(p.getMinValue());
+		writeFloat(p.getMaxValue());
+	}
+
+	private void writeParameterList(List<Parameter> list)
+	{
+		if (list==null)
+		{
+			writeInt(nullValue);
+			return;
+		}
+		writeInt(list.size());
+		for (Parameter p : list)
+			writeParameter(p);
+	}
+
+	//write a ROM vector as the indices of the parameters written
+	private void writeParameterIndices(List<Parameter> list) throws IOException
+	{
+		Integer index;
+		writeInt(list.size());
+		for (Parameter p : list)
+		{
+			index = parameterIndex.get(p);
+			if (index==null)
+				throw new IOException("ROM vector parameter " + (p==null ? null : p.getName()) + " is not in the setup");
+			writeInt(index.intValue());
+		}
+	}
+
+	private void writeSpeciesList(List<Species> list)
+	{
+		writeInt(list.size());
+		for (Species sp : list)
+		{
+			writeString(sp.getName());
+			writeString(sp.getFormula());
+		}
+	}
+
+	//write the fields of the Mixture base class, the species flow views are indexed as parameters
+	private void writeMixture(Mixture m)
+	{
+		writeBoolean(m.hasConstMassFractions());
+		writeParameter(m.getTotalMassFlow());
+		SpeciesFlowTable table = m.getSpeciesFlows();
+		writeBoolean(table!=null);
+		if (table==null)
+			return;
+		int[] indices = table.getIndices();
+		writeInt(indices.length);
+		for (int i : indices)
+		{
+			writeInt(i);
+			writeParameter(table.getParameter(i));
+		}
+	}
+
+	private void writeFlowBoundaryList(List<FlowBoundary> list)
+	{
+		if (list==null)
+		{
+			writeInt(nullValue);
+			return;
+		}
+		writeInt(list.size());
+		for (FlowBoundary fb : list)
+		{
+			writeBoolean(fb!=null);
+			if (fb==null)
+				continue;
+			writeBoolean(fb.hasGasPhase());
+			writeBoolean(fb.hasSolidPhase());
+			writeInt(fb.getBoundaryIndex());
+			writeString(fb.getBoundaryName());
+			writeInt(fb.getGasMixture()==null ? nullValue : fb.getGasMixture().size());
+			if (fb.getGasMixture()!=null)
+			{
+				for (GasMixture gm : fb.getGasMixture())
+				{
+					writeBoolean(gm!=null);
+					if (gm==null)
+						continue;
+					writeParameter(gm.getPressure());
+					writeParameter(gm.getTemperature());
+					writeParameter(gm.getVolumeFraction());
+					writeMixture(gm);
+				}
+			}
+			writeInt(fb.getSolidMixtures()==null ? nullValue : fb.getSolidMixtures().size());
+			if (fb.getSolidMixtures()!=null)
+			{
+				for (SolidMixture sm : fb.getSolidMixtures())
+				{
+					writeBoolean(sm!=null);
+					if (sm==null)
+						continue;
+					writeInt(sm.getPhaseIndex());
+					writeInt(sm.getSolidType());
+					writeBoolean(sm.isGranularEnergySolved());
+					writeParameter(sm.getPressure());
+					writeParameter(sm.getTemperature());
+					writeParameter(sm.getVolumeFraction());
+					writeParameter(sm.getDiameter());
+					writeParameter(sm.getDensity());
+					writeParameter(sm.getGranularTemperature());
+					writeParameter(sm.getVm());
+					writeMixture(sm);
+				}
+			}
+		}
+	}
+
+	private void writeUnitOperation(UnitOperation uo) throws IOException
+	{
+		int i;
+		writeString(uo.getName());
+		writeString(uo.getAlias());
+		writeInt(uo.getRegressionMethod()==null ? nullValue : uo.getRegressionMethod().ordinal());
+		writeInt(uo.getNumberOfSamples());
+		writeFloat(uo.getLowerTolerance());
+		writeFloat(uo.getUpperTolerance());
+		writeSpeciesList(uo.getGasSpeciesList());
+		writeInt(uo.getSolidSpeciesList().size());
+		for (List<Species> list : uo.getSolidSpeciesList())
+			writeSpeciesList(list);
+		List<String> spl = uo.getSolidPhaseList();
+		writeInt(spl==null ? nullValue : spl.size());
+		if (spl!=null)
+		{
+			for (String str : spl)
+				writeString(str);
+		}
+		List<Integer> sptl = uo.getSolidPhaseTypeList();
+		writeInt(sptl==null ? nullValue : sptl.size());
+		if (sptl!=null)
+		{
+			for (Integer type : sptl)
+				writeInt(type==null ? nullInteger : type.intValue());
+		}
+		writeFlowBoundaryList(uo.getInletBoundaryList());
+		writeFlowBoundaryList(uo.getOutletBoundaryList());
+		writeParameterList(uo.getInputParameterList());
+		writeParameterList(uo.getOutputParameterList());
+		//data calculated by updateAllSpeciesList()
+		int[][] iSolidPhase2All = uo.getSolidPhase2AllSpeciesIndices();
+		if (iSolidPhase2All==null)
+			throw new IOException("updateAllSpeciesList() is not called before writing the setup snapshot");
+		writeInt(iSolidPhase2All.length);
+		for (i=0; i<iSolidPhase2All.length; i++)
+			writeIntArray(iSolidPhase2All[i]);
+		writeIntArray(uo.getInletSpeciesIndices());
+		writeIntArray(uo.getOutletSpeciesIndices());
+		writeIntArray(uo.getAllElementAtomicNumbers());
+		writeParameterIndices(uo.getRomInputVector());
+		writeParameterIndices(uo.getYromOutputVector());
+	}
+
+	private int readInt()
+	{
+		return buffer.getInt();
+	}
+
+	private float readFloat()
+	{
+		return buffer.getFloat();
+	}
+
+	private boolean readBoolean()
+	{
+		return buffer.get()!=0;
+	}
+
+	private String readString()
+	{
+		int len = buffer.getInt();
+		if (len==nullValue)
+			return null;
+		if (len>stringBytes.length)
+			stringBytes = new byte[Math.max(len, 2*stringBytes.length)];
+		buffer.get(stringBytes, 0, len);
+		return new String(stringBytes, 0, len, utf8);
+	}
+
+	private int[] readIntArray()
+	{
+		int i;
+		int n = buffer.getInt();
+		if (n==nullValue)
+			return null;
+		int[] v = new int[n];
+		for (i=0; i<n; i++)
+			v[i] = buffer.getInt();
+		return v;
+	}
+
+	//read a parameter written by writeParameter(), the parameter is added to the parameter list
+	private Parameter readParameter()
+	{
+		if (!readBoolean())
+			return null;
+		Parameter p = new Parameter(null, null);
+		p.setName(readString());
+		p.setAlias(readString());
+		p.enableVaried(readBoolean());
+		p.setDefaultValue(readFloat());
+		p.setMinValue(readFloat());
+		p.setMaxValue(readFloat());
+		parameterList.add(p);
+		return p;
+	}
+
+	private List<Parameter> readParameterList()
+	{
+		int i;
+		int n = readInt();
+		if (n==nullValue)
+			return null;
+		List<Parameter> list = new ArrayList<Parameter>(n);
+		for (i=0; i<n; i++)
+			list.add(readParameter());
+		return list;
+	}
+
+	private List<Parameter> readParameterIndices()
+	{
+		int i;
+		int n = readInt();
+		List<Parameter> list = new ArrayList<Parameter>(n);
+		for (i=0; i<n; i++)
+			list.add(parameterList.get(readInt()));
+		return list;
+	}
+
+	private List<Species> readSpeciesList()
+	{
+		int i;
+		int n = readInt();
+		List<Species> list = new ArrayList<Species>(n);
+		for (i=0; i<n; i++)
+		{
+			String name = readString();
+			list.add(new Species(name, readString()));
+		}
+		return list;
+	}
+
+	//read the fields of the Mixture base class, the species flow views are added to the parameter list
+	private void readMixture(Mixture m)
+	{
+		int i, k, n;
+		m.enableConstMassFractions(readBoolean());
+		m.setTotalMassFlow(readParameter());
+		if (!readBoolean())
+		{
+			m.setSpeciesFlows(null);
+			return;
+		}
+		SpeciesFlowTable table = new SpeciesFlowTable();
+		n = readInt();
+		for (k=0; k<n; k++)
+		{
+			i = readInt();
+			readBoolean();
+			String name = readString();
+			String alias = readString();
+			table.put(i, readBoolean(), readFloat(), readFloat(), readFloat(), name);
+			Parameter p = table.getParameter(i);
+			p.setAlias(alias);
+			parameterList.add(p);
+		}
+		m.setSpeciesFlows(table);
+	}
+
+	private List<FlowBoundary> readFlowBoundaryList()
+	{
+		int i, j, n, m;
+		n = readInt();
+		if (n==nullValue)
+			return null;
+		List<FlowBoundary> list = new ArrayList<FlowBoundary>(n);
+		for (i=0; i<n; i++)
+		{
+			if (!readBoolean())
+			{
+				list.add(null);
+				continue;
+			}
+			FlowBoundary fb = new FlowBoundary();
+			fb.enableGasPhase(readBoolean());
+			fb.enableSolidPhase(readBoolean());
+			fb.setBoundaryIndex(readInt());
+			fb.setBoundaryName(readString());
+			m = readInt();
+			if (m==nullValue)
+				fb.setGasMixture(null);
+			for (j=0; j<m; j++)
+			{
+				if (!readBoolean())
+				{
+					fb.getGasMixture().add(null);
+					continue;
+				}
+				GasMixture gm = new GasMixture();
+				gm.setPressure(readParameter());
+				gm.setTemperature(readParameter());
+				gm.setVolumeFraction(readParameter());
+				readMixture(gm);
+				fb.getGasMixture().add(gm);
+			}
+			m = readInt();
+			if (m==nullValue)
+				fb.setSolidMixtures(null);
+			for (j=0; j<m; j++)
+			{
+				if (!readBoolean())
+				{
+					fb.getSolidMixtures().add(null);
+					continue;
+				}
+				SolidMixture sm = new SolidMixture();
+				sm.setPhaseIndex(readInt());
+				sm.setSolidType(readInt());
+				sm.enableGranularEnergySolved(readBoolean());
+				sm.setPressure(readParameter());
+				sm.setTemperature(readParameter());
+				sm.setVolumeFraction(readParameter());
+				sm.setDiameter(readParameter());
+				sm.setDensity(readParameter());
+				sm.setGranularTemperature(readParameter());
+				sm.setVm(readParameter());
+				readMixture(sm);
+				fb.getSolidMixtures().add(sm);
+			}
+			list.add(fb);
+		}
+		return list;
+	}
+
+	private UnitOperation readUnitOperation() throws IOException
+	{
+		int i, n;
+		UnitOperation uo = new UnitOperation();
+		uo.setName(readString());
+		uo.setAlias(readString());
+		n = readInt();
+		uo.setRegressionMethod(n==nullValue ? null : UnitOperation.RegressionMethod.values()[n]);
+		uo.setNumberOfSamples(readInt());
+		uo.setLowerTolerance(readFloat());
+		uo.setUpperTolerance(readFloat());
+		uo.setGasSpeciesList(readSpeciesList());
+		n = readInt();
+		List<List<Species>> solidSpeciesList = new ArrayList<List<Species>>(n);
+		for (i=0; i<n; i++)
+			solidSpeciesList.add(readSpeciesList());
+		uo.setSolidSpeciesList(solidSpeciesList);
+		n = readInt();
+		List<String> spl = null;
+		if (n!=nullValue)
+		{
+			spl = new ArrayList<String>(n);
+			for (i=0; i<n; i++)
+				spl.add(readString());
+		}
+		uo.setSolidPhaseList(spl);
+		n = readInt();
+		List<Integer> sptl = null;
+		if (n!=nullValue)
+		{
+			sptl = new ArrayList<Integer>(n);
+			for (i=0; i<n; i++)
+			{
+				int type = readInt();
+				sptl.add(type==nullInteger ? null : Integer.valueOf(type));
+			}
+		}
+		uo.setSolidPhaseTypeList(sptl);
+		uo.setInletBoundaryList(readFlowBoundaryList());
+		uo.setOutletBoundaryList(readFlowBoundaryList());
+		uo.setInputParameterList(readParameterList());
+		uo.setOutputParameterList(readParameterList());
+		n = readInt();
+		int[][] iSolidPhase2All = new int[n][];
+		for (i=0; i<n; i++)
+			iSolidPhase2All[i] = readIntArray();
+		int[] iInletSpecies = readIntArray();
+		int[] iOutletSpecies = readIntArray();
+		int[] iElementAll = readIntArray();
+		if (uo.restoreAllSpeciesList(iSolidPhase2All, iInletSpecies, iOutletSpecies, iElementAll)!=0)
+			throw new IOException("Inconsistent species indices in setup snapshot");
+		uo.setRomInputVector(readParameterIndices());
+		uo.setYromOutputVector(readParameterIndices());
+		return uo;
+	}
+}
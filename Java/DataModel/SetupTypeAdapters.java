@@ -0,0 +1,127 @@
+package DataModel;
+
+import java.io.IOException;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Class of the Gson type adapters of the DataModel setup classes
+ * Each adapter reads with SetupJsonReader and writes with SetupJsonWriter, so a Gson instance created by createGson() binds the exposed fields
+ * of the setup classes explicitly without reflection. The adapters are registered by class and are not used for subclasses.
+ */
+public class SetupTypeAdapters
+{
+	public static class ParameterAdapter extends TypeAdapter<Parameter>
+	{
+		public void write(JsonWriter out, Parameter p) throws IOException
+		{
+			new SetupJsonWriter(out).writeParameter(p);
+		}
+
+		public Parameter read(JsonReader in) throws IOException
+		{
+			return new SetupJsonReader(in).readParameter();
+		}
+	}
+
+	public static class SpeciesAdapter extends TypeAdapter<Species>
+	{
+		public void write(JsonWriter out, Species sp) throws IOException
+		{
+			new SetupJsonWriter(out).writeSpecies(sp);
+		}
+
+		public Species read(JsonReader in) throws IOException
+		{
+			return new SetupJsonReader(in).readSpecies();
+		}
+	}
+
+	public static class GasMixtureAdapter extends TypeAdapter<GasMixture>
+	{
+		public void write(JsonWriter out, GasMixture gm) throws IOException
+		{
+			new SetupJsonWriter(out).writeGasMixture(gm);
+		}
+
+		public GasMixture read(JsonReader in) throws IOException
+		{
+			return new SetupJsonReader(in).readGasMixture();
+		}
+	}
+
+	public static class SolidMixtureAdapter extends TypeAdapter<SolidMixture>
+	{
+		public void write(JsonWriter out, SolidMixture sm) throws IOException
+		{
+			new SetupJsonWriter(out).writeSolidMixture(sm);
+		}
+
+		public SolidMixture read(JsonReader in) throws IOException
+		{
+			return new SetupJsonReader(in).readSolidMixture();
+		}
+	}
+
+	//a flow boundary read alone gets the aliases of its mixture parameters as in a setup file
+	public static class FlowBoundaryAdapter extends TypeAdapter<FlowBoundary>
+	{
+		public void write(JsonWriter out, FlowBoundary fb) throws IOException
+		{
+			new SetupJsonWriter(out).writeFlowBoundary(fb);
+		}
+
+		public FlowBoundary read(JsonReader in) throws IOException
+		{
+			return new SetupJsonReader(in).readFlowBoundary();
+		}
+	}
+
+	//a unit operation read by the adapter is not prepared, the ROM vectors are updated as readUserJsonFile() does
+	public static class UnitOperationAdapter extends TypeAdapter<UnitOperation>
+	{
+		public void write(JsonWriter out, UnitOperation uo) throws IOException
+		{
+			new SetupJsonWriter(out).writeUnitOperation(uo);
+		}
+
+		public UnitOperation read(JsonReader in) throws IOException
+		{
+			if (in.peek()==com.google.gson.stream.JsonToken.NULL)
+			{
+				in.nextNull();
+				return null;
+			}
+			UnitOperation uo = new UnitOperation();
+			new SetupJsonReader(in).read(uo);
+			uo.updateRomInputVector();
+			uo.updateYromOutputVector();
+			return uo;
+		}
+	}
+
+	//register the adapters of all setup classes
+	public static GsonBuilder registerTypeAdapters(GsonBuilder builder)
+	{
+		builder.registerTypeAdapter(Parameter.class, new ParameterAdapter());
+		builder.registerTypeAdapter(Species.class, new SpeciesAdapter());
+		builder.registerTypeAdapter(GasMixture.class, new GasMixtureAdapter());
+		builder.registerTypeAdapter(SolidMixture.class, new SolidMixtureAdapter());
+		builder.registerTypeAdapter(FlowBoundary.class, new FlowBoundaryAdapter());
+		builder.registerTypeAdapter(UnitOperation.class, new UnitOperationAdapter());
+		builder.registerTypeAdapter(SpeciesFlowTable.class, new SpeciesFlowTable.GsonAdapter());
+		return builder;
+	}
+
+	//Gson instance binding the setup classes through the registered adapters
+	public static Gson createGson(boolean bPretty)
+	{
+		GsonBuilder builder = registerTypeAdapters(new GsonBuilder());
+		if (bPretty)
+			builder.setPrettyPrinting();
+		return builder.create();
+	}
+}
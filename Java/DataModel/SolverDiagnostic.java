@@ -0,0 +1,102 @@
+package DataModel;
+
+/**
+ * Class reporting the numerical rank and conditioning found by a factorization of LinearSolver
+ * Pivots are relative to the scale of their own row or column, so that the diagnostic does not depend on the scaling of the equations.
+ * For Cholesky decomposition the relative pivot is the diagonal value before the square root is taken divided by the original diagonal value,
+ * for QR decomposition it is the absolute diagonal value of R divided by the norm of the original column.
+ * A relative pivot is between 0 and 1, a small value means the row or column is nearly a linear combination of the previous ones.
+ * The object is reused by the solvers, so it does not allocate memory for each solve.
+ */
+public class SolverDiagnostic
+{
+	//factorization methods
+	public static final int NONE = 0;
+	public static final int CHOLESKY = 1;
+	public static final int QR = 2;
+
+	//method of the last factorization
+	private int method;
+
+	//size of the factorized matrix, number of columns for QR decomposition
+	private int n;
+
+	//number of pivots accepted before the first rejected pivot
+	private int rank;
+
+	//index of the first rejected pivot, -1 if the matrix has full rank
+	private int iDeficientPivot;
+
+	//smallest accepted relative pivot
+	private double minPivot;
+
+	public SolverDiagnostic()
+	{
+		reset(NONE, 0);
+	}
+
+	//called by the solvers before a factorization
+	void reset(int method, int n)
+	{
+		this.method = method;
+		this.n = n;
+		rank = 0;
+		iDeficientPivot = -1;
+		minPivot = 1;
+	}
+
+	//called by the solvers for each accepted relative pivot
+	void acceptPivot(double pivot)
+	{
+		rank++;
+		if (pivot<minPivot)
+			minPivot = pivot;
+	}
+
+	//called by the solvers when pivot i is rejected
+	void rejectPivot(int i)
+	{
+		iDeficientPivot = i;
+	}
+
+	public int getMethod()
+	{
+		return method;
+	}
+
+	public int getSize()
+	{
+		return n;
+	}
+
+	public int getRank()
+	{
+		return rank;
+	}
+
+	public boolean isRankDeficient()
+	{
+		return iDeficientPivot>=0;
+	}
+
+	public int getDeficientPivotIndex()
+	{
+		return iDeficientPivot;
+	}
+
+	//smallest accepted relative pivot, a cheap estimate of the reciprocal condition number of the diagonally scaled matrix
+	public double getMinRelativePivot()
+	{
+		return minPivot;
+	}
+
+	public String toString()
+	{
+		String str = method==CHOLESKY ? "Cholesky" : (method==QR ? "QR" : "No");
+		str += " factorization of size " + n + ", rank " + rank;
+		if (isRankDeficient())
+			str += ", rank deficient at pivot " + iDeficientPivot;
+		str += ", minimum relative pivot " + minPivot;
+		return str;
+	}
+}
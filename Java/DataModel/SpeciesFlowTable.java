@@ -0,0 +1,485 @@
+package DataModel;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Class storing the mass flow rates or mass fractions of the species of a mixture in arrays indexed by the species index of the phase
+ * Each field of Parameter has its own array, so the balance routines read the values without a map lookup or a Parameter object per species.
+ * A species without an entry has hasFlow false. The species indices with entries are iterated in insertion order, the order of a table
+ * read from JSON is the order of the file as with the LinkedHashMap created by Gson for the former field. A table filled by the code follows
+ * the order the species are put in, where the HashMap of the former field followed the hash buckets of the species indices.
+ * getParameter() returns a lightweight Parameter view of an entry, the view of an index is created once and reads and writes the arrays.
+ * The JSON form is the same as that of the former Map<Integer,Parameter> field, an object with the species indices as names.
+ */
+public class SpeciesFlowTable implements Serializable
+{
+	private static final long serialVersionUID = 2895018330513467182L;
+
+	//flag of each species index to indicate the species has an entry
+	private boolean[] hasFlow;
+
+	//fields of Parameter of each species index
+	private boolean[] isVaried;
+	private float[] defaultValue;
+	private float[] minValue;
+	private float[] maxValue;
+	private String[] name;
+	private String[] alias;
+
+	//species indices with entries in insertion order in the first nIndex elements
+	private int[] indices;
+	private int nIndex;
+
+	//copy of the species indices with entries returned by getIndices(), null after the entries are changed
+	private transient int[] indexArray;
+
+	//Parameter views of the species indices, created when first requested
+	private transient Parameter[] views;
+
+	//view of a species entry as a Parameter, every accessor reads and writes the arrays of the table through the table,
+	//so the view stays valid when the table grows and the fields inherited from Parameter and Alias are never used
+	private static class SpeciesFlowParameter extends Parameter
+	{
+		private static final long serialVersionUID = -3206213838524620932L;
+
+		private SpeciesFlowTable table;
+		private int index;
+
+		SpeciesFlowParameter(SpeciesFlowTable table, int index)
+		{
+			super(null, null);
+			this.table = table;
+			this.index = index;
+		}
+
+		//a serialized view is replaced by a Parameter holding the current values of the entry
+		private Object writeReplace()
+		{
+			Parameter p = new Parameter(getName(), getAlias());
+			p.enableVaried(isVaried());
+			p.setDefaultValue(getDefaultValue());
+			p.setMinValue(getMinValue());
+			p.setMaxValue(getMaxValue());
+			return p;
+		}
+
+		public boolean isVaried()
+		{
+			return table.isVaried[index];
+		}
+
+		public void enableVaried(boolean b)
+		{
+			table.isVaried[index] = b;
+		}
+
+		public float getDefaultValue()
+		{
+			return table.defaultValue[index];
+		}
+
+		public void setDefaultValue(float x)
+		{
+			table.defaultValue[index] = x;
+		}
+
+		public float getMinValue()
+		{
+			return table.minValue[index];
+		}
+
+		public void setMinValue(float minValue)
+		{
+			table.minValue[index] = minValue;
+		}
+
+		public float getMaxValue()
+		{
+			return table.maxValue[index];
+		}
+
+		public void setMaxValue(float maxValue)
+		{
+			table.maxValue[index] = maxValue;
+		}
+
+		public void setAllValues(float value)
+		{
+			table.defaultValue[index] = value;
+			table.minValue[index] = value;
+			table.maxValue[index] = value;
+		}
+
+		public String getName()
+		{
+			return table.getName(index);
+		}
+
+		public void setName(String name)
+		{
+			table.name[index] = name;
+		}
+
+		public String getAlias()
+		{
+			return table.getAlias(index);
+		}
+
+		public void setAlias(String alias)
+		{
+			table.alias[index] = alias;
+		}
+	}
+
+	public SpeciesFlowTable()
+	{
+		allocate(0);
+		indices = new int[4];
+		nIndex = 0;
+	}
+
+	private void allocate(int capacity)
+	{
+		hasFlow = new boolean[capacity];
+		isVaried = new boolean[capacity];
+		defaultValue = new float[capacity];
+		minValue = new float[capacity];
+		maxValue = new float[capacity];
+		name = new String[capacity];
+		alias = new String[capacity];
+		views = new Parameter[capacity];
+	}
+
+	//grow the arrays to hold species index i
+	private void ensureCapacity(int i)
+	{
+		int capacity = hasFlow.length;
+		if (i<capacity)
+			return;
+		boolean[] hasFlowOld = hasFlow;
+		boolean[] isVariedOld = isVaried;
+		float[] defaultValueOld = defaultValue;
+		float[] minValueOld = minValue;
+		float[] maxValueOld = maxValue;
+		String[] nameOld = name;
+		String[] aliasOld = alias;
+		Parameter[] viewsOld = getViews();
+		allocate(Math.max(i+1, 2*capacity));
+		System.arraycopy(hasFlowOld, 0, hasFlow, 0, capacity);
+		System.arraycopy(isVariedOld, 0, isVaried, 0, capacity);
+		System.arraycopy(defaultValueOld, 0, defaultValue, 0, capacity);
+		System.arraycopy(minValueOld, 0, minValue, 0, capacity);
+		System.arraycopy(maxValueOld, 0, maxValue, 0, capacity);
+		System.arraycopy(nameOld, 0, name, 0, capacity);
+		System.arraycopy(aliasOld, 0, alias, 0, capacity);
+		System.arraycopy(viewsOld, 0, views, 0, capacity);
+	}
+
+	//views are not serialized
+	private Parameter[] getViews()
+	{
+		if (views==null)
+			views = new Parameter[hasFlow.length];
+		return views;
+	}
+
+	//number of species with entries
+	public int size()
+	{
+		return nIndex;
+	}
+
+	//species indices with entries in insertion order, the array is shared until the entries are changed and should not be modified
+	public int[] getIndices()
+	{
+		if (indexArray==null)
+		{
+			indexArray = new int[nIndex];
+			System.arraycopy(indices, 0, indexArray, 0, nIndex);
+		}
+		return indexArray;
+	}
+
+	//append species index i to the indices in insertion order
+	private void addIndex(int i)
+	{
+		if (nIndex==indices.length)
+		{
+			int[] iOld = indices;
+			indices = new int[2*iOld.length];
+			System.arraycopy(iOld, 0, indices, 0, nIndex);
+		}
+		indices[nIndex++] = i;
+		indexArray = null;
+	}
+
+	public boolean contains(int i)
+	{
+		return i>=0 && i<hasFlow.length && hasFlow[i];
+	}
+
+	//insert or update the entry of species i, the species index must not be negative
+	public void put(int i, boolean bVaried, float x, float xmin, float xmax, String paraName)
+	{
+		if (i<0)
+			throw new IllegalArgumentException("Invalid species index " + i);
+		ensureCapacity(i);
+		isVaried[i] = bVaried;
+		defaultValue[i] = x;
+		minValue[i] = xmin;
+		maxValue[i] = xmax;
+		name[i] = paraName;
+		alias[i] = paraName;
+		if (!hasFlow[i])
+		{
+			hasFlow[i] = true;
+			addIndex(i);
+		}
+	}
+
+	public void remove(int i)
+	{
+		int k, n;
+		if (!contains(i))
+			return;
+		hasFlow[i] = false;
+		n = 0;
+		for (k=0; k<nIndex; k++)
+		{
+			if (indices[k]!=i)
+				indices[n++] = indices[k];
+		}
+		nIndex = n;
+		indexArray = null;
+	}
+
+	public boolean isVaried(int i)
+	{
+		return isVaried[i];
+	}
+
+	public void enableVaried(int i, boolean b)
+	{
+		isVaried[i] = b;
+	}
+
+	public float getDefaultValue(int i)
+	{
+		return defaultValue[i];
+	}
+
+	public void setDefaultValue(int i, float x)
+	{
+		defaultValue[i] = x;
+	}
+
+	public float getMinValue(int i)
+	{
+		return minValue[i];
+	}
+
+	public float getMaxValue(int i)
+	{
+		return maxValue[i];
+	}
+
+	//name of the entry of species i, the default name is created only when requested
+	public String getName(int i)
+	{
+		return name[i]!=null ? name[i] : "Species_" + i + "_MassFlow";
+	}
+
+	public void setName(int i, String paraName)
+	{
+		name[i] = paraName;
+	}
+
+	//alias of the entry of species i, an entry created without a name has the default name as alias
+	public String getAlias(int i)
+	{
+		return alias[i]!=null || name[i]!=null ? alias[i] : getName(i);
+	}
+
+	public void setAllAliases(String str)
+	{
+		for (int i : getIndices())
+			alias[i] = str;
+	}
+
+	//default values of all species indices, species without entries have zero values
+	//the array is replaced when an entry with a species index beyond the capacity is added
+	public float[] getDefaultValues()
+	{
+		return defaultValue;
+	}
+
+	//Parameter view of the entry of species i, null if there is no entry
+	public Parameter getParameter(int i)
+	{
+		if (!contains(i))
+			return null;
+		Parameter[] v = getViews();
+		if (v[i]==null)
+			v[i] = new SpeciesFlowParameter(this, i);
+		return v[i];
+	}
+
+	//read-only map view of the entries by species index in iteration order
+	public Map<Integer,Parameter> asMap()
+	{
+		return new AbstractMap<Integer,Parameter>()
+		{
+			public int size()
+			{
+				return nIndex;
+			}
+
+			public boolean containsKey(Object key)
+			{
+				return key instanceof Integer && contains(((Integer)key).intValue());
+			}
+
+			public Parameter get(Object key)
+			{
+				return key instanceof Integer ? getParameter(((Integer)key).intValue()) : null;
+			}
+
+			public Set<Map.Entry<Integer,Parameter>> entrySet()
+			{
+				return new AbstractSet<Map.Entry<Integer,Parameter>>()
+				{
+					public int size()
+					{
+						return nIndex;
+					}
+
+					public Iterator<Map.Entry<Integer,Parameter>> iterator()
+					{
+						final int[] iSpecies = getIndices();
+						return new Iterator<Map.Entry<Integer,Parameter>>()
+						{
+							private int k = 0;
+
+							public boolean hasNext()
+							{
+								return k<iSpecies.length;
+							}
+
+							public Map.Entry<Integer,Parameter> next()
+							{
+								if (k>=iSpecies.length)
+									throw new NoSuchElementException();
+								int i = iSpecies[k++];
+								return new AbstractMap.SimpleImmutableEntry<Integer,Parameter>(Integer.valueOf(i), getParameter(i));
+							}
+
+							public void remove()
+							{
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Class of the Gson adapter reading and writing a table as an object of Parameter objects named by the species indices
+	 */
+	public static class GsonAdapter extends TypeAdapter<SpeciesFlowTable>
+	{
+		public void write(JsonWriter out, SpeciesFlowTable table) throws IOException
+		{
+			if (table==null)
+			{
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			for (int i : table.getIndices())
+			{
+				out.name(Integer.toString(i));
+				out.beginObject();
+				out.name("isVaried").value(table.isVaried[i]);
+				out.name("defaultValue").value(Float.valueOf(table.defaultValue[i]));
+				out.name("minValue").value(Float.valueOf(table.minValue[i]));
+				out.name("maxValue").value(Float.valueOf(table.maxValue[i]));
+				out.name("name").value(table.getName(i));
+				out.endObject();
+			}
+			out.endObject();
+		}
+
+		public SpeciesFlowTable read(JsonReader in) throws IOException
+		{
+			int i;
+			boolean bVaried;
+			float x, xmin, xmax;
+			String paraName;
+			String key;
+			String field;
+			if (in.peek()==JsonToken.NULL)
+			{
+				in.nextNull();
+				return null;
+			}
+			SpeciesFlowTable table = new SpeciesFlowTable();
+			in.beginObject();
+			while (in.hasNext())
+			{
+				key = in.nextName();
+				try
+				{
+					i = Integer.parseInt(key);
+				}
+				catch (NumberFormatException e)
+				{
+					i = -1;
+				}
+				if (i<0)
+					throw new JsonParseException("Invalid species index \"" + key + "\" in speciesFlowMap");
+				bVaried = false;
+				x = 0;
+				xmin = 0;
+				xmax = 0;
+				paraName = null;
+				in.beginObject();
+				while (in.hasNext())
+				{
+					field = in.nextName();
+					if (in.peek()==JsonToken.NULL)
+						in.nextNull();
+					else if (field.equals("isVaried"))
+						bVaried = in.nextBoolean();
+					else if (field.equals("defaultValue"))
+						x = (float)in.nextDouble();
+					else if (field.equals("minValue"))
+						xmin = (float)in.nextDouble();
+					else if (field.equals("maxValue"))
+						xmax = (float)in.nextDouble();
+					else if (field.equals("name"))
+						paraName = in.nextString();
+					else
+						in.skipValue();
+				}
+				in.endObject();
+				table.put(i, bVaried, x, xmin, xmax, paraName);
+			}
+			in.endObject();
+			return table;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package DataModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class of a registry assigning integer IDs to species, the ID of a species is its index in the species list of the registry
+ * Species are looked up by a hash map keyed by the species itself, Species.equals() and Species.hashCode() compare name and formula ignoring case.
+ * The IDs are stable while the registry is alive, species are only appended. A species should not be renamed while it is registered.
+ */
+public class SpeciesRegistry implements Serializable
+{
+	private static final long serialVersionUID = 7384460712905381255L;
+
+	//registered species, index is the species ID
+	private List<Species> speciesList;
+
+	//ID of the first registered species of each identity
+	private Map<Species,Integer> idMap;
+
+	public SpeciesRegistry()
+	{
+		speciesList = new ArrayList<Species>();
+		idMap = new HashMap<Species,Integer>();
+	}
+
+	public SpeciesRegistry(int capacity)
+	{
+		speciesList = new ArrayList<Species>(capacity);
+		idMap = new HashMap<Species,Integer>(Math.max(16, 2*capacity));
+	}
+
+	public int size()
+	{
+		return speciesList.size();
+	}
+
+	public Species get(int id)
+	{
+		return speciesList.get(id);
+	}
+
+	//registered species in the order of IDs, the list should not be modified
+	public List<Species> getSpeciesList()
+	{
+		return speciesList;
+	}
+
+	public void clear()
+	{
+		speciesList.clear();
+		idMap.clear();
+	}
+
+	//ID of the first registered species equal to sp, -1 if not registered
+	public int indexOf(Species sp)
+	{
+		Integer id = idMap.get(sp);
+		return id==null ? -1 : id.intValue();
+	}
+
+	//append a species without checking duplicates and return its ID
+	//a duplicate gets a new ID, lookups still return the ID of the first one
+	public int add(Species sp)
+	{
+		int id = speciesList.size();
+		speciesList.add(sp);
+		if (!idMap.containsKey(sp))
+			idMap.put(sp, Integer.valueOf(id));
+		return id;
+	}
+
+	//return the ID of a registered species equal to sp, or register sp and return its new ID
+	public int register(Species sp)
+	{
+		Integer id = idMap.get(sp);
+		if (id!=null)
+			return id.intValue();
+		id = Integer.valueOf(speciesList.size());
+		speciesList.add(sp);
+		idMap.put(sp, id);
+		return id.intValue();
+	}
+}
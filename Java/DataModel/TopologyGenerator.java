@@ -0,0 +1,595 @@
+package DataModel;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Class generating random but valid UnitOperation setups and matching case vectors for scaling tests of the mass balance correction
+ * Gas and CISOLID species are taken from pools of real formulas accepted by Species.parseFormula() and restricted to a given element set.
+ * NC phases always contain the ultimate analysis species C, H, N, Cl, S, O, Ah and H2O in the order expected by exportACMRom().
+ * When a pool is used up, further species are made up from 1 to 3 elements of the set with small atom counts, no two species of a phase have the same composition.
+ * Each inlet boundary has a gas mixture and optionally one mixture for each solid phase, all with constant mass fractions and a varied total mass flow.
+ * Each outlet boundary contains all species of the gas phase and optionally all solid phases as varied outputs,
+ * and the default outlet flows are corrected by MassBalanceCorrector so the default case satisfies the elemental mass balance.
+ * The same seed always generates the same setup and the same cases.
+ */
+public class TopologyGenerator
+{
+	//gas species formulas, the first ones are common combustion and gasification products
+	private static final String[] gasFormulaPool = {"O2", "N2", "H2O", "CO2", "CO", "H2", "CH4", "SO2", "H2S", "HCl", "NH3", "NO", "NO2",
+		"N2O", "COS", "HCN", "SO3", "Cl2", "Ar", "C2H2", "C2H4", "C2H6", "C3H6", "C3H8", "C4H10", "C6H6", "CH3OH", "CH2O", "CS2", "HNO3",
+		"CH3Cl", "CCl4", "NOCl", "ClO2", "H2O2", "C2H5OH", "CH3CHO", "HCOOH", "CH3COOH", "C2H4O"};
+
+	//conventional solid species formulas
+	private static final String[] cisolidFormulaPool = {"C", "CaO", "CaCO3", "CaSO4", "CaS", "SiO2", "Al2O3", "Fe2O3", "Fe3O4", "FeO",
+		"FeS", "FeS2", "MgO", "MgCO3", "Na2O", "K2O", "TiO2", "NaCl", "KCl", "CaCl2", "Na2SO4", "K2SO4", "Al2Si2O7", "CaSiO3", "MgSiO3",
+		"Fe2SiO4", "Na2CO3", "K2CO3", "CaH2O2", "Al2O5Si"};
+
+	//non-conventional solid species formulas, ultimate analysis of coal with Ah for ash and H2O for moisture
+	private static final String[] ncFormulas = {"C", "H", "N", "Cl", "S", "O", "Ah", "H2O"};
+
+	//default element set
+	private static final String[] defaultElements = {"C", "H", "O", "N", "S", "Cl", "Ar", "Ca", "Si", "Al", "Fe", "Mg", "Na", "K", "Ti"};
+
+	private Random random;
+
+	//number of gas species
+	private int nGasSpecies;
+
+	//number of CISOLID and NC solid phases, CISOLID phases are listed first
+	private int nCisolidPhase;
+	private int nNcPhase;
+
+	//number of species in each CISOLID phase
+	private int nSolidSpecies;
+
+	//number of inlet and outlet flow boundaries
+	private int nInlet;
+	private int nOutlet;
+
+	//maximum number of species with non-zero mass fraction in an inlet mixture
+	private int nInletSpeciesMax;
+
+	//number of output parameters other than the outlet species flows
+	private int nExtraOutput;
+
+	//element symbols allowed in the gas and CISOLID formulas
+	private Set<String> elements;
+
+	//constructor with a seed and a small default topology
+	public TopologyGenerator(long seed)
+	{
+		random = new Random(seed);
+		nGasSpecies = 10;
+		nCisolidPhase = 0;
+		nNcPhase = 1;
+		nSolidSpecies = 8;
+		nInlet = 2;
+		nOutlet = 1;
+		nInletSpeciesMax = 5;
+		nExtraOutput = 1;
+		setElements(defaultElements);
+	}
+
+	public void setNumberOfGasSpecies(int n)
+	{
+		nGasSpecies = n;
+	}
+
+	public void setNumberOfSolidPhases(int nCisolid, int nNc)
+	{
+		nCisolidPhase = nCisolid;
+		nNcPhase = nNc;
+	}
+
+	public void setNumberOfSolidSpecies(int n)
+	{
+		nSolidSpecies = n;
+	}
+
+	public void setNumberOfInlets(int n)
+	{
+		nInlet = n;
+	}
+
+	public void setNumberOfOutlets(int n)
+	{
+		nOutlet = n;
+	}
+
+	public void setMaxNumberOfInletSpecies(int n)
+	{
+		nInletSpeciesMax = n;
+	}
+
+	public void setNumberOfExtraOutputs(int n)
+	{
+		nExtraOutput = n;
+	}
+
+	public void setElements(String[] symbols)
+	{
+		elements = new HashSet<String>(Arrays.asList(symbols));
+	}
+
+	//generate a setup, updateAllSpeciesList() and the ROM vector updates are already called for the returned object
+	//returns null if the default case cannot be balanced, e.g. the element set is too small for the number of species
+	public UnitOperation generate()
+	{
+		int i, j;
+		int nPhase = nCisolidPhase + nNcPhase;
+		List<String> formulas;
+		UnitOperation uo = new UnitOperation();
+		uo.setName("Synthetic_ROM");
+		uo.setRegressionMethod(UnitOperation.RegressionMethod.KRIGING);
+		uo.setNumberOfSamples(100);
+		formulas = pickFormulas(gasFormulaPool, nGasSpecies);
+		for (String f : formulas)
+			uo.addGasSpecies(f, f);
+		uo.setTotalNumberOfSolidPhases(nPhase);
+		List<String> phaseNames = new ArrayList<String>();
+		List<Integer> phaseTypes = new ArrayList<Integer>();
+		for (i=0; i<nPhase; i++)
+		{
+			boolean bNc = i>=nCisolidPhase;
+			formulas = bNc ? Arrays.asList(ncFormulas) : pickFormulas(cisolidFormulaPool, nSolidSpecies);
+			for (String f : formulas)
+				uo.addSolidSpecies(i, f, f);
+			phaseNames.add((bNc ? "NC" : "CISOLID") + (i+1));
+			phaseTypes.add(Integer.valueOf(bNc ? 1 : 0));
+		}
+		uo.setSolidPhaseList(phaseNames);
+		uo.setSolidPhaseTypeList(phaseTypes);
+		//the first inlet carries the solid phases, the others carry them at random
+		for (i=0; i<nInlet; i++)
+			uo.getInletBoundaryList().add(createInlet(uo, i+1, "Inlet" + (i+1), nPhase>0 && (i==0 || random.nextBoolean())));
+		//the first outlet carries all phases so that every element of the feed can leave the unit
+		for (i=0; i<nOutlet; i++)
+			uo.addOutletFlowBoundary(nInlet+i+1, "Outlet" + (i+1), true, nPhase>0 && (i==0 || random.nextBoolean()));
+		for (FlowBoundary fb : uo.getOutletBoundaryList())
+		{
+			initializeOutletMixture(fb.getGasMixture().get(0), uo.getGasSpeciesList(), fb.getBoundaryName() + "GP");
+			for (SolidMixture sm : fb.getSolidMixtures())
+				initializeOutletMixture(sm, uo.getSolidSpeciesList().get(sm.getPhaseIndex()), fb.getBoundaryName() + "SP" + sm.getPhaseIndex());
+		}
+		for (i=0; i<nExtraOutput; i++)
+		{
+			Parameter p = new Parameter("Output" + (i+1));
+			p.enableVaried(true);
+			p.setDefaultValue(random.nextFloat()*100);
+			p.setMinValue(0);
+			p.setMaxValue(100);
+			uo.getOutputParameterList().add(p);
+		}
+		uo.updateAllSpeciesList();
+		uo.updateRomInputVector();
+		uo.updateYromOutputVector();
+		//store the balanced default outlet flows
+		int nInput = uo.getRomInputVector().size();
+		double[] v = createBalancedCase(uo);
+		if (v==null)
+			return null;
+		List<Parameter> yromOutputVector = uo.getYromOutputVector();
+		for (j=0; j<yromOutputVector.size(); j++)
+		{
+			Parameter p = yromOutputVector.get(j);
+			p.setDefaultValue((float)v[nInput+j]);
+			p.setMaxValue(Math.max(p.getMaxValue(), 2*p.getDefaultValue()));
+		}
+		return uo;
+	}
+
+	//pick n formulas with distinct compositions from a pool in order, then make up formulas if the pool is used up
+	private List<String> pickFormulas(String[] pool, int n)
+	{
+		int i, k;
+		int nTry;
+		int nSymbol;
+		String[] symbols;
+		String formula;
+		StringBuilder sb = new StringBuilder();
+		List<String> formulas = new ArrayList<String>();
+		Set<String> compositions = new HashSet<String>();
+		for (i=0; i<pool.length && formulas.size()<n; i++)
+		{
+			if (isFormulaInElementSet(pool[i]) && compositions.add(getCompositionKey(pool[i])))
+				formulas.add(pool[i]);
+		}
+		symbols = elements.toArray(new String[elements.size()]);
+		Arrays.sort(symbols);
+		nTry = 0;
+		while (formulas.size()<n && nTry<1000*n)
+		{
+			nTry++;
+			sb.setLength(0);
+			nSymbol = 1 + random.nextInt(Math.min(3, symbols.length));
+			k = random.nextInt(symbols.length);
+			for (i=0; i<nSymbol; i++)
+			{
+				//argon does not form compounds, skip it in made up formulas
+				if (symbols[(k+i)%symbols.length].equals("Ar"))
+					continue;
+				sb.append(symbols[(k+i)%symbols.length]);
+				int nAtom = 1 + random.nextInt(6);
+				if (nAtom>1)
+					sb.append(nAtom);
+			}
+			formula = sb.toString();
+			if (formula.length()>0 && compositions.add(getCompositionKey(formula)))
+				formulas.add(formula);
+		}
+		return formulas;
+	}
+
+	//check if all element symbols of a formula are in the element set
+	private boolean isFormulaInElementSet(String formula)
+	{
+		int i = 0;
+		int len = formula.length();
+		String symbol;
+		while (i<len)
+		{
+			if (i+1<len && Character.isLowerCase(formula.charAt(i+1)))
+			{
+				symbol = formula.substring(i, i+2);
+				i += 2;
+			}
+			else
+			{
+				symbol = formula.substring(i, i+1);
+				i++;
+			}
+			if (!elements.contains(symbol))
+				return false;
+			while (i<len && Character.isDigit(formula.charAt(i)))
+				i++;
+		}
+		return true;
+	}
+
+	//string of the sorted atomic numbers and atom counts of a formula, two formulas of the same composition have the same key
+	private static String getCompositionKey(String formula)
+	{
+		int i;
+		Species sp = new Species(formula, formula);
+		int nElement = sp.getNumberOfElements();
+		String[] items = new String[nElement];
+		for (i=0; i<nElement; i++)
+			items[i] = sp.getAtomicNumbers()[i] + ":" + sp.getAtomCounts()[i];
+		Arrays.sort(items);
+		return Arrays.toString(items);
+	}
+
+	//inlet boundary with a gas mixture and optionally a mixture of each solid phase
+	private FlowBoundary createInlet(UnitOperation uo, int ibc, String name, boolean hasSolidPhase)
+	{
+		int i;
+		FlowBoundary fb = new FlowBoundary(ibc, name);
+		fb.enableSolidPhase(hasSolidPhase);
+		GasMixture gm = new GasMixture();
+		initializeInletMixture(gm, uo.getGasSpeciesList(), false, name + "GP");
+		gm.getTemperature().setAllValues(300 + random.nextInt(900));
+		fb.getGasMixture().add(gm);
+		if (hasSolidPhase)
+		{
+			for (i=0; i<uo.getSolidSpeciesList().size(); i++)
+			{
+				SolidMixture sm = new SolidMixture();
+				sm.setPhaseIndex(i);
+				sm.setSolidType(uo.getSolidPhaseTypeList().get(i).intValue());
+				initializeInletMixture(sm, uo.getSolidSpeciesList().get(i), sm.getSolidType()==1, name + "SP" + i);
+				fb.getSolidMixtures().add(sm);
+			}
+		}
+		return fb;
+	}
+
+	//constant mass fractions of all species or of a random subset of the species and a varied total mass flow
+	private void initializeInletMixture(Mixture mixture, List<Species> speciesList, boolean bAllSpecies, String alias)
+	{
+		int i;
+		int nSpecies = speciesList.size();
+		int n = bAllSpecies ? nSpecies : Math.min(nSpecies, 1 + random.nextInt(Math.max(1, nInletSpeciesMax)));
+		int[] order = randomPermutation(nSpecies);
+		for (i=0; i<n; i++)
+		{
+			Parameter p = new Parameter(speciesList.get(order[i]).getName() + "_mass_fraction");
+			p.setAllValues(0.05f + random.nextFloat());
+			mixture.putSpeciesFlow(order[i], p);
+		}
+		mixture.normalizeSpeciesMassFlowAsMassFraction();
+		float total = 1 + 9*random.nextFloat();
+		Parameter totalMassFlow = mixture.getTotalMassFlow();
+		totalMassFlow.enableVaried(true);
+		totalMassFlow.setDefaultValue(total);
+		totalMassFlow.setMinValue(0.8f*total);
+		totalMassFlow.setMaxValue(1.2f*total);
+		mixture.setAllParemeterAliasAs(alias);
+	}
+
+	//varied mass flows of all species of an outlet mixture with random positive default values to be corrected
+	private void initializeOutletMixture(Mixture mixture, List<Species> speciesList, String alias)
+	{
+		for (int iSpecies : mixture.getSpeciesIndices())
+		{
+			Parameter p = mixture.getSpeciesFlowParameter(iSpecies);
+			p.setName(speciesList.get(iSpecies).getName() + "_mass_flow");
+			p.enableVaried(true);
+			p.setDefaultValue(0.01f + random.nextFloat());
+			p.setMinValue(0);
+			p.setMaxValue(1);
+		}
+		mixture.setAllParemeterAliasAs(alias);
+	}
+
+	private int[] randomPermutation(int n)
+	{
+		int i, j, t;
+		int[] order = new int[n];
+		for (i=0; i<n; i++)
+			order[i] = i;
+		for (i=n-1; i>0; i--)
+		{
+			j = random.nextInt(i+1);
+			t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		return order;
+	}
+
+	//ROM input vector followed by ROM output vector of the default values of the parameters
+	public static double[] getDefaultCaseVector(UnitOperation uo)
+	{
+		int i;
+		List<Parameter> romInputVector = uo.getRomInputVector();
+		List<Parameter> yromOutputVector = uo.getYromOutputVector();
+		int nInput = romInputVector.size();
+		double[] v = new double[nInput+yromOutputVector.size()];
+		for (i=0; i<nInput; i++)
+			v[i] = romInputVector.get(i).getDefaultValue();
+		for (i=0; i<yromOutputVector.size(); i++)
+			v[nInput+i] = yromOutputVector.get(i).getDefaultValue();
+		return v;
+	}
+
+	//a case satisfying the elemental mass balance based on the default values of the parameters
+	//outlet species flows in the output vector which are not positive are set to positive values before the correction,
+	//so that every feed element can be found in the products, returns null if the correction fails
+	public static double[] createBalancedCase(UnitOperation uo)
+	{
+		double[] v = getDefaultCaseVector(uo);
+		return balanceCase(uo, new MassBalanceCorrector(uo), v) ? v : null;
+	}
+
+	//correct the output vector of a case in place after setting the non-positive outlet species flows to positive values
+	private static boolean balanceCase(UnitOperation uo, MassBalanceCorrector mbc, double[] v)
+	{
+		int i;
+		int nInput = uo.getRomInputVector().size();
+		int nOutput = uo.getYromOutputVector().size();
+		ElementBalancePlan plan = mbc.getElementBalancePlan();
+		Parameter[] outletFlow = plan.getOutletFlows();
+		Parameter[] outletTotalFlow = plan.getOutletTotalFlows();
+		Map<Parameter,Integer> outputIndex = new IdentityHashMap<Parameter,Integer>();
+		for (i=0; i<nOutput; i++)
+			outputIndex.put(uo.getYromOutputVector().get(i), Integer.valueOf(i));
+		for (i=0; i<outletFlow.length; i++)
+		{
+			Integer index = outputIndex.get(outletFlow[i]);
+			if (index!=null && v[nInput+index.intValue()]<=0)
+				v[nInput+index.intValue()] = outletTotalFlow[i]==null ? 1 : 0.01;		//mass flow or mass fraction
+		}
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		System.arraycopy(v, 0, x, 0, nInput);
+		System.arraycopy(v, nInput, y, 0, nOutput);
+		if (mbc.correct(x, y, y)!=MassBalanceCorrector.SUCCESS)
+			return false;
+		System.arraycopy(y, 0, v, nInput, nOutput);
+		return true;
+	}
+
+	//cases with the output vector of base multiplied by random factors of 1 +/- noise, inputs are not changed
+	public static double[][] createNoisyCases(double[] base, int nInput, int nCase, double noise, long seed)
+	{
+		int i, j;
+		Random random = new Random(seed);
+		double[][] cases = new double[nCase][base.length];
+		for (i=0; i<nCase; i++)
+		{
+			for (j=0; j<base.length; j++)
+				cases[i][j] = j<nInput ? base[j] : base[j]*(1+noise*(2*random.nextDouble()-1));
+		}
+		return cases;
+	}
+
+	//nGroup groups of nCase cases, the first group is based on the default inputs and each other group on inputs drawn uniformly between the limits
+	//the outputs of a group are balanced for its inputs and each case multiplies them by random factors of 1 +/- noise
+	//returns null if a group cannot be balanced
+	public static double[][] createGroupedCases(UnitOperation uo, int nGroup, int nCase, double noise, long seed)
+	{
+		int i, k;
+		Random random = new Random(seed);
+		List<Parameter> romInputVector = uo.getRomInputVector();
+		int nInput = romInputVector.size();
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		double[][] cases = new double[nGroup*nCase][];
+		for (k=0; k<nGroup; k++)
+		{
+			double[] base = getDefaultCaseVector(uo);
+			if (k>0)
+			{
+				for (i=0; i<nInput; i++)
+				{
+					Parameter p = romInputVector.get(i);
+					base[i] = p.getMinValue() + (p.getMaxValue()-p.getMinValue())*random.nextDouble();
+				}
+			}
+			if (!balanceCase(uo, mbc, base))
+				return null;
+			double[][] group = createNoisyCases(base, nInput, nCase, noise, random.nextLong());
+			System.arraycopy(group, 0, cases, k*nCase, nCase);
+		}
+		return cases;
+	}
+
+	//write cases in the grouped text format of -b option, the number of cases must be a multiple of nGroup
+	public static void writeVectorFile(String fileName, double[][] cases, int nGroup) throws IOException
+	{
+		int i;
+		int nCase = cases.length/nGroup;
+		VectorFileWriter out = new VectorFileWriter(fileName);
+		try
+		{
+			out.writeHeader(nGroup, nCase);
+			for (i=0; i<cases.length; i++)
+			{
+				if (i>0 && i%nCase==0)
+					out.println();
+				out.writeCaseVector(cases[i], 0, cases[i].length);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	//write cases in the binary format of -bin option, the number of cases must be a multiple of nGroup
+	public static void writeBinaryVectorFile(String fileName, double[][] cases, int nInput, int nGroup) throws IOException
+	{
+		int i;
+		BinaryVectorFile out = BinaryVectorFile.create(fileName, nInput, cases[0].length-nInput, nGroup, cases.length/nGroup);
+		try
+		{
+			for (i=0; i<cases.length; i++)
+				out.writeCase(i, cases[i], 0);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	//write a setup in the JSON format read by UnitOperation.readUserJsonFile()
+	public static void writeJsonFile(UnitOperation uo, String fileName) throws IOException
+	{
+		SetupJsonWriter.write(uo, fileName);
+	}
+
+	//main method for command line executable
+	//Command example: java DataModel.TopologyGenerator [-seed n] [-g gas_species] [-c cisolid_phases] [-nc nc_phases] [-s cisolid_species] [-i inlets] [-o outlets]
+	//  [-e C,H,O,N,S] setup.json [vector_file number_of_groups number_of_cases noise]
+	//Command example: java DataModel.TopologyGenerator -r [-seed n] setup.json vector_file number_of_groups number_of_cases noise
+	//with -r option the existing setup file is read instead of generated and only the vector file is written
+	//a vector file name ending with .bin is written in the binary format of -bin option, otherwise in the text format of -b option
+	public static void main(String argu[])
+	{
+		int i;
+		long seed = 1;
+		boolean bRead = false;
+		int nGroup = 1;
+		int nCase = 100;
+		double noise = 0.05;
+		List<String> files = new ArrayList<String>();
+		TopologyGenerator tg = null;
+		try
+		{
+			for (i=0; i<argu.length-1; i++)
+			{
+				if (argu[i].equals("-seed"))
+					seed = Long.parseLong(argu[i+1]);
+			}
+			tg = new TopologyGenerator(seed);
+			for (i=0; i<argu.length; i++)
+			{
+				if (argu[i].equals("-seed"))
+					i++;
+				else if (argu[i].equals("-r"))
+					bRead = true;
+				else if (argu[i].equals("-g"))
+					tg.setNumberOfGasSpecies(Integer.parseInt(argu[++i]));
+				else if (argu[i].equals("-c"))
+					tg.setNumberOfSolidPhases(Integer.parseInt(argu[++i]), tg.nNcPhase);
+				else if (argu[i].equals("-nc"))
+					tg.setNumberOfSolidPhases(tg.nCisolidPhase, Integer.parseInt(argu[++i]));
+				else if (argu[i].equals("-s"))
+					tg.setNumberOfSolidSpecies(Integer.parseInt(argu[++i]));
+				else if (argu[i].equals("-i"))
+					tg.setNumberOfInlets(Integer.parseInt(argu[++i]));
+				else if (argu[i].equals("-o"))
+					tg.setNumberOfOutlets(Integer.parseInt(argu[++i]));
+				else if (argu[i].equals("-e"))
+					tg.setElements(argu[++i].split(","));
+				else
+					files.add(argu[i]);
+			}
+			if (files.size()>1)
+			{
+				nGroup = Integer.parseInt(files.get(2));
+				nCase = Integer.parseInt(files.get(3));
+				noise = Double.parseDouble(files.get(4));
+			}
+		}
+		catch(RuntimeException e)
+		{
+			System.out.println("Invalid argument: " + e);
+			return;
+		}
+		if ((files.size()!=1 || bRead) && files.size()!=5)
+		{
+			System.out.println("Usage: java DataModel.TopologyGenerator [options] setup.json [vector_file number_of_groups number_of_cases noise]");
+			System.out.println("       java DataModel.TopologyGenerator -r [-seed n] setup.json vector_file number_of_groups number_of_cases noise");
+			return;
+		}
+		UnitOperation uo;
+		if (bRead)
+		{
+			uo = new UnitOperation();
+			uo.readUserJsonFile(files.get(0));
+			uo.updateAllSpeciesList();
+		}
+		else
+		{
+			uo = tg.generate();
+			if (uo==null)
+			{
+				System.out.println("Unable to balance the default case of the generated setup!");
+				return;
+			}
+		}
+		int nInput = uo.getRomInputVector().size();
+		System.out.println("Species: " + uo.getAllSpeciesList().size() + ", elements: " + uo.getAllElementAtomicNumbers().length +
+			", inputs: " + nInput + ", outputs: " + uo.getYromOutputVector().size());
+		try
+		{
+			if (!bRead)
+				writeJsonFile(uo, files.get(0));
+			if (files.size()>1)
+			{
+				double[][] cases = createGroupedCases(uo, nGroup, nCase, noise, seed);
+				if (cases==null)
+				{
+					System.out.println("Unable to balance a group of cases!");
+					return;
+				}
+				if (files.get(1).endsWith(".bin"))
+					writeBinaryVectorFile(files.get(1), cases, nInput, nGroup);
+				else
+					writeVectorFile(files.get(1), cases, nGroup);
+			}
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+	}
+}
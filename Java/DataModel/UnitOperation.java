@@ -2,6 +2,7 @@ package DataModel;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -60,8 +61,12 @@ public class UnitOperation extends Alias implements Serializable
 	private List<List<Species>> solidSpeciesList;
 
 	//a list of all species from gas and solid phases, calculated by updateAllSpeciesList() method
+	//the list is owned by speciesRegistry, the index of a species in the list is its ID in the registry
 	private List<Species> allSpeciesList;
 
+	//registry of all species for hashed lookup of the index in allSpeciesList, updated by updateAllSpeciesList() method
+	private SpeciesRegistry speciesRegistry;
+
 	//a list of solid phase names, currently not used to avoid too long port name string in ACM
 	@Expose
 	private List<String> solidPhaseList;
@@ -108,9 +113,22 @@ public class UnitOperation extends Alias implements Serializable
 	//output vector of ROM regression function, calculated after user configuration is done
 	private List<Parameter> yromOutputVector;
 
+	//topology dependent data for elemental mass balance correction, compiled by updateAllSpeciesList() method
+	private ElementBalancePlan balancePlan;
+
+	//corrector used by enforceElementalMassBalance(), created when first used after ROM vectors are updated
+	private MassBalanceCorrector balanceCorrector;
+
+	//ROM input and output vectors passed to balanceCorrector
+	private double[] correctorInput;
+	private double[] correctorOutput;
+
 	//ROM related data, depending on regression method
 	//private Rom romdata;
 
+	//Kriging model of the ROM vectors, read by readKrigingModelFile()
+	private KrigingModel krigingModel;
+
 
 	public UnitOperation()
 	{
@@ -121,7 +139,8 @@ public class UnitOperation extends Alias implements Serializable
 		upperTolerance = 1.01f;
 		gasSpeciesList = new ArrayList<Species>();
 		solidSpeciesList = new ArrayList<List<Species>>();
-		allSpeciesList = new ArrayList<Species>();
+		speciesRegistry = new SpeciesRegistry();
+		allSpeciesList = speciesRegistry.getSpeciesList();
 		solidPhaseList = new ArrayList<String>();
 		solidPhaseTypeList = new ArrayList<Integer>();
 		inletBoundaryList = new ArrayList<FlowBoundary>();
@@ -252,6 +271,54 @@ public class UnitOperation extends Alias implements Serializable
 		outputParameterList = opl;
 	}
 
+	//all species list, updated by updateAllSpeciesList()
+	public List<Species> getAllSpeciesList()
+	{
+		return allSpeciesList;
+	}
+
+	//species registry of allSpeciesList, updated by updateAllSpeciesList()
+	public SpeciesRegistry getSpeciesRegistry()
+	{
+		return speciesRegistry;
+	}
+
+	//index of a species in allSpeciesList, compared by name and formula ignoring case, -1 if not found
+	public int getAllSpeciesIndex(Species sp)
+	{
+		return speciesRegistry.indexOf(sp);
+	}
+
+	//index mapping from solid phase species list to all species list, updated by updateAllSpeciesList()
+	public int[][] getSolidPhase2AllSpeciesIndices()
+	{
+		return iSolidPhase2All;
+	}
+
+	//indices in all species list of the species in the inlet flow boundaries, updated by updateAllSpeciesList()
+	public int[] getInletSpeciesIndices()
+	{
+		return iInletSpecies;
+	}
+
+	//indices in all species list of the species in the outlet flow boundaries, updated by updateAllSpeciesList()
+	public int[] getOutletSpeciesIndices()
+	{
+		return iOutletSpecies;
+	}
+
+	//atomic numbers of all elements involved, updated by updateAllSpeciesList()
+	public int[] getAllElementAtomicNumbers()
+	{
+		return iElementAll;
+	}
+
+	//data compiled by updateAllSpeciesList() for mass balance correction
+	public ElementBalancePlan getElementBalancePlan()
+	{
+		return balancePlan;
+	}
+
 	public List<Parameter> getRomInputVector()
 	{
 		return romInputVector;
@@ -260,6 +327,7 @@ public class UnitOperation extends Alias implements Serializable
 	public void setRomInputVector(List<Parameter> iv)
 	{
 		romInputVector = iv;
+		balanceCorrector = null;
 	}
 
 	public List<Parameter> getYromOutputVector()
@@ -270,6 +338,7 @@ public class UnitOperation extends Alias implements Serializable
 	public void setYromOutputVector(List<Parameter> ov)
 	{
 		yromOutputVector = ov;
+		balanceCorrector = null;
 	}
 
 	//get a list of all possible variables for a user to include in ROM model
@@ -289,6 +358,7 @@ public class UnitOperation extends Alias implements Serializable
 	public void updateRomInputVector()
 	{
 		romInputVector.clear();
+		balanceCorrector = null;
 		for (FlowBoundary fb : inletBoundaryList)
 			fb.appendVariedInputsToParameterList(romInputVector);
 		for (Parameter p : inputParameterList)
@@ -302,6 +372,7 @@ public class UnitOperation extends Alias implements Serializable
 	public void updateYromOutputVector()
 	{
 		yromOutputVector.clear();
+		balanceCorrector = null;
 		for (FlowBoundary fb : outletBoundaryList)
 			fb.appendOutputsToParameterList(yromOutputVector);
 		for (Parameter p : outputParameterList)
@@ -326,7 +397,8 @@ public class UnitOperation extends Alias implements Serializable
 		fb.enableSolidPhase(hasSolidPhase);
 		if (hasGasPhase)
 		{
-			GasMixture gm = fb.getGasMixture().get(0);
+			GasMixture gm = new GasMixture();
+			fb.getGasMixture().add(gm);
 			gm.enableConstMassFractions(false);
 			n = gasSpeciesList.size();
 			for (i=0; i<n; i++)
@@ -409,17 +481,15 @@ public class UnitOperation extends Alias implements Serializable
 	//also create and update iSolidPhase2All 2-D array, iInletSpecies, iOutletSpecies and iElementAll 1-D arrays
 	public void updateAllSpeciesList()
 	{
-		boolean found;
-		int i, j, k;
+		int i, j;
 		int iSpecies;
-		int iSpeciesAll;
 		int nSpecies;
 		int nPhase;
 		int nElement;
 		int nBoundary;
 		int nSolidPhase = solidSpeciesList.size();
 		int[] iAtom = null;
-		allSpeciesList.clear();
+		speciesRegistry.clear();
 		iSolidPhase2All = new int[nSolidPhase][];
 		Species sp;
 		FlowBoundary fb = null;
@@ -428,31 +498,15 @@ public class UnitOperation extends Alias implements Serializable
 		List<Species> phaseSpeciesList;
 		for (i=0; i<nSolidPhase; i++)
 			iSolidPhase2All[i] = new int[solidSpeciesList.get(i).size()];
-		//assign allSpeciesList and iSolidPhase2All
-		allSpeciesList.addAll(gasSpeciesList);
+		//assign allSpeciesList and iSolidPhase2All, gas species are all added and solid species are added if not found
+		for (i=0; i<gasSpeciesList.size(); i++)
+			speciesRegistry.add(gasSpeciesList.get(i));
 		for (i=0; i<nSolidPhase; i++)
 		{
 			phaseSpeciesList = solidSpeciesList.get(i);
 			nSpecies = phaseSpeciesList.size();
 			for (j=0; j<nSpecies; j++)
-			{
-				sp = phaseSpeciesList.get(j);
-				found = false;
-				for (k=0; k<allSpeciesList.size(); k++)
-				{
-					if (sp.equals(allSpeciesList.get(k)))
-					{
-						iSolidPhase2All[i][j] = k;
-						found = true;
-						break;
-					}
-				}
-				if (!found)
-				{
-					allSpeciesList.add(sp);
-					iSolidPhase2All[i][j] = k;
-				}
-			}
+				iSolidPhase2All[i][j] = speciesRegistry.register(phaseSpeciesList.get(j));
 		}
 		//find all elements involved
 		boolean[] bAtomAll = new boolean[Species.maxAtomicNumberPlus1];
@@ -490,11 +544,8 @@ public class UnitOperation extends Alias implements Serializable
 			if (fb.hasGasPhase())
 			{
 				gm = fb.getGasMixture().get(0);
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					iSpeciesAll = entry.getKey().intValue();
-					bInletSpecies[iSpeciesAll] = true;
-				}
+				for (int iFlow : gm.getSpeciesIndices())
+					bInletSpecies[iFlow] = true;
 			}
 			if (fb.hasSolidPhase())
 			{
@@ -502,12 +553,8 @@ public class UnitOperation extends Alias implements Serializable
 				for (j=0; j<nPhase; j++)
 				{
 					sm = fb.getSolidMixtures().get(j);
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						iSpecies = entry.getKey().intValue();
-						iSpeciesAll = iSolidPhase2All[sm.getPhaseIndex()][iSpecies];
-						bInletSpecies[iSpeciesAll] = true;
-					}
+					for (int iFlow : sm.getSpeciesIndices())
+						bInletSpecies[iSolidPhase2All[sm.getPhaseIndex()][iFlow]] = true;
 				}
 			}
 		}
@@ -536,11 +583,8 @@ public class UnitOperation extends Alias implements Serializable
 			if (fb.hasGasPhase())
 			{
 				gm = fb.getGasMixture().get(0);
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					iSpeciesAll = entry.getKey().intValue();
-					bOutletSpecies[iSpeciesAll] = true;
-				}
+				for (int iFlow : gm.getSpeciesIndices())
+					bOutletSpecies[iFlow] = true;
 			}
 			if (fb.hasSolidPhase())
 			{
@@ -548,12 +592,8 @@ public class UnitOperation extends Alias implements Serializable
 				for (j=0; j<nPhase; j++)
 				{
 					sm = fb.getSolidMixtures().get(j);
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						iSpecies = entry.getKey().intValue();
-						iSpeciesAll = iSolidPhase2All[sm.getPhaseIndex()][iSpecies];
-						bOutletSpecies[iSpeciesAll] = true;
-					}
+					for (int iFlow : sm.getSpeciesIndices())
+						bOutletSpecies[iSolidPhase2All[sm.getPhaseIndex()][iFlow]] = true;
 				}
 			}
 		}
@@ -573,6 +613,54 @@ public class UnitOperation extends Alias implements Serializable
 				iSpecies++;
 			}
 		}
+		//compile the data used by mass balance correction
+		balancePlan = new ElementBalancePlan(this);
+		balanceCorrector = null;
+	}
+
+	//restore the data calculated by updateAllSpeciesList() from a setup snapshot without searching for duplicated solid species
+	//allSpeciesList is rebuilt from the gas species and the solid species first mapped to a new index in iSolidPhase2All
+	//return a non-zero value if the indices are inconsistent with the species lists
+	int restoreAllSpeciesList(int[][] iSolidPhase2All, int[] iInletSpecies, int[] iOutletSpecies, int[] iElementAll)
+	{
+		int i, j;
+		int nSolidPhase = solidSpeciesList.size();
+		List<Species> phaseSpeciesList;
+		if (iSolidPhase2All.length!=nSolidPhase || iInletSpecies==null || iOutletSpecies==null || iElementAll==null)
+			return 1;
+		speciesRegistry.clear();
+		for (i=0; i<gasSpeciesList.size(); i++)
+			speciesRegistry.add(gasSpeciesList.get(i));
+		for (i=0; i<nSolidPhase; i++)
+		{
+			phaseSpeciesList = solidSpeciesList.get(i);
+			if (iSolidPhase2All[i]==null || iSolidPhase2All[i].length!=phaseSpeciesList.size())
+				return 1;
+			for (j=0; j<iSolidPhase2All[i].length; j++)
+			{
+				if (iSolidPhase2All[i][j]==speciesRegistry.size())
+					speciesRegistry.add(phaseSpeciesList.get(j));
+				else if (iSolidPhase2All[i][j]<0 || iSolidPhase2All[i][j]>speciesRegistry.size())
+					return 1;
+			}
+		}
+		for (i=0; i<iInletSpecies.length; i++)
+		{
+			if (iInletSpecies[i]<0 || iInletSpecies[i]>=speciesRegistry.size())
+				return 1;
+		}
+		for (i=0; i<iOutletSpecies.length; i++)
+		{
+			if (iOutletSpecies[i]<0 || iOutletSpecies[i]>=speciesRegistry.size())
+				return 1;
+		}
+		this.iSolidPhase2All = iSolidPhase2All;
+		this.iInletSpecies = iInletSpecies;
+		this.iOutletSpecies = iOutletSpecies;
+		this.iElementAll = iElementAll;
+		balancePlan = new ElementBalancePlan(this);
+		balanceCorrector = null;
+		return 0;
 	}
 
 	//calculates speceis molar flow rates from given flow boundaries (inlet or outlet)
@@ -582,55 +670,46 @@ public class UnitOperation extends Alias implements Serializable
 	{
 		//assuming updateAllSpeciesList() has been called
 		int i, j;
-		int iSpecies;
-		int iSpeciesAll;
 		int nPhase;
 		int nSpecies = allSpeciesList.size();
 		float[] speciesMoleFlowRate = new float[nSpecies];
 		int nBoundary = flowBoundaryList.size();
 		FlowBoundary fb = null;
-		GasMixture gm = null;
-		SolidMixture sm = null;
-		Parameter param;
 		for (i=0; i<nBoundary; i++)
 		{
 			fb = flowBoundaryList.get(i);
 			if (fb.hasGasPhase())
-			{
-				gm = fb.getGasMixture().get(0);
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					iSpecies = entry.getKey().intValue();
-					iSpeciesAll = iSpecies;
-					param = entry.getValue();
-					if (gm.hasConstMassFractions())
-						speciesMoleFlowRate[iSpeciesAll] += gm.getTotalMassFlow().getDefaultValue()*param.getDefaultValue()/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
-					else
-						speciesMoleFlowRate[iSpeciesAll] += param.getDefaultValue()/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
-				}
-			}
+				addSpeciesMoleFlowRate(fb.getGasMixture().get(0), null, speciesMoleFlowRate);
 			if (fb.hasSolidPhase())
 			{
 				nPhase = fb.getSolidMixtures().size();
 				for (j=0; j<nPhase; j++)
 				{
-					sm = fb.getSolidMixtures().get(j);
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						iSpecies = entry.getKey().intValue();
-						iSpeciesAll = iSolidPhase2All[sm.getPhaseIndex()][iSpecies];
-						param = entry.getValue();
-						if (sm.hasConstMassFractions())
-							speciesMoleFlowRate[iSpeciesAll] += sm.getTotalMassFlow().getDefaultValue()*param.getDefaultValue()/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
-						else
-							speciesMoleFlowRate[iSpeciesAll] += param.getDefaultValue()/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
-					}
+					SolidMixture sm = fb.getSolidMixtures().get(j);
+					addSpeciesMoleFlowRate(sm, iSolidPhase2All[sm.getPhaseIndex()], speciesMoleFlowRate);
 				}
 			}
 		}
 		return speciesMoleFlowRate;
 	}
 
+	//add the species molar flow rates of a mixture to the array of all species, iPhase2All is null for gas phase
+	private void addSpeciesMoleFlowRate(Mixture m, int[] iPhase2All, float[] speciesMoleFlowRate)
+	{
+		int iSpeciesAll;
+		float[] x = m.getSpeciesFlows().getDefaultValues();
+		boolean bConstMassFractions = m.hasConstMassFractions();
+		float totalMassFlow = m.getTotalMassFlow().getDefaultValue();
+		for (int iFlow : m.getSpeciesIndices())
+		{
+			iSpeciesAll = iPhase2All==null ? iFlow : iPhase2All[iFlow];
+			if (bConstMassFractions)
+				speciesMoleFlowRate[iSpeciesAll] += totalMassFlow*x[iFlow]/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
+			else
+				speciesMoleFlowRate[iSpeciesAll] += x[iFlow]/allSpeciesList.get(iSpeciesAll).getMolecularWeight();
+		}
+	}
+
 	//calculates element molar flow rate from given boundaries
 	//returns an array with indices corresponding to the atomic numbers in the periodic table
 	//currently only 87 elements are considered
@@ -666,69 +745,46 @@ public class UnitOperation extends Alias implements Serializable
 	public void eliminateNegativeProductSpeciesFlow()
 	{
 		//assuming updateAllSpeciesList() has been called
-		boolean bNegative;
 		int i, j;
 		int nPhase;
 		int nBoundary = outletBoundaryList.size();
-		float defaultValue;
 		FlowBoundary fb = null;
-		GasMixture gm = null;
-		SolidMixture sm = null;
-		Parameter param = null;
 		for (i=0; i<nBoundary; i++)
 		{
 			fb = outletBoundaryList.get(i);
 			if (fb.hasGasPhase())
-			{
-				gm = fb.getGasMixture().get(0);
-				bNegative = false;
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					param = entry.getValue();
-					defaultValue = param.getDefaultValue();
-					if (defaultValue<0)
-					{
-						param.setDefaultValue(defaultValue*reflectionCoefficient);
-						bNegative = true;
-					}
-				}
-				if (bNegative)
-				{
-					if (gm.hasConstMassFractions())		//usually not constant mass fraction for outlet boundary
-						gm.normalizeSpeciesMassFlowAsMassFraction();
-					else
-						gm.calcTotalMassFlow();
-				}
-			}
+				reflectNegativeSpeciesFlow(fb.getGasMixture().get(0));
 			if (fb.hasSolidPhase())
 			{
 				nPhase = fb.getSolidMixtures().size();
 				for (j=0; j<nPhase; j++)
-				{
-					sm = fb.getSolidMixtures().get(j);
-					bNegative = false;
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						param = entry.getValue();
-						defaultValue = param.getDefaultValue();
-						if (defaultValue<0)
-						{
-							param.setDefaultValue(defaultValue*reflectionCoefficient);
-							bNegative = true;
-						}
-					}
-					if (bNegative)
-					{
-						if (gm.hasConstMassFractions())		//usually not constant mass fraction for outlet boundary
-							gm.normalizeSpeciesMassFlowAsMassFraction();
-						else
-							gm.calcTotalMassFlow();
-					}
-				}
+					reflectNegativeSpeciesFlow(fb.getSolidMixtures().get(j));
 			}
 		}
 	}
 
+	//multiply the negative species flows of a mixture by the reflection coefficient and update the mass fractions or the total flow
+	private void reflectNegativeSpeciesFlow(Mixture m)
+	{
+		boolean bNegative = false;
+		float[] x = m.getSpeciesFlows().getDefaultValues();
+		for (int iFlow : m.getSpeciesIndices())
+		{
+			if (x[iFlow]<0)
+			{
+				x[iFlow] *= reflectionCoefficient;
+				bNegative = true;
+			}
+		}
+		if (bNegative)
+		{
+			if (m.hasConstMassFractions())		//usually not constant mass fraction for outlet boundary
+				m.normalizeSpeciesMassFlowAsMassFraction();
+			else
+				m.calcTotalMassFlow();
+		}
+	}
+
 	//set the product species flow rate to zero if it contains a given element that is not in inlet boundary
 	//usually this is not needed since a valid CFD model would not create element at outlet boundary
 	//even if a specific inlet condition may have some element missing, the correction algorithm should get a correction factor of -1
@@ -736,72 +792,50 @@ public class UnitOperation extends Alias implements Serializable
 	public void eliminateProductSpeciesContainingElement(int iAtomicNumber)
 	{
 		//assuming updateAllSpeciesList() has been called
-		boolean bContainsElement;
 		int i, j;
 		int nPhase;
-		int iSpecies;
-		int iSpeciesAll;
 		int nBoundary = outletBoundaryList.size();
 		FlowBoundary fb = null;
-		GasMixture gm = null;
-		SolidMixture sm = null;
-		Parameter param = null;
 		for (i=0; i<nBoundary; i++)
 		{
 			fb = outletBoundaryList.get(i);
 			if (fb.hasGasPhase())
-			{
-				gm = fb.getGasMixture().get(0);
-				bContainsElement = false;
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					iSpecies = entry.getKey().intValue();
-					iSpeciesAll = iSpecies;
-					param = entry.getValue();
-					if (allSpeciesList.get(iSpeciesAll).containsElement(iAtomicNumber))
-					{
-						param.setDefaultValue(0);
-						bContainsElement = true;
-					}
-				}
-				if (bContainsElement)
-				{
-					if (gm.hasConstMassFractions())
-						gm.normalizeSpeciesMassFlowAsMassFraction();
-					else
-						gm.calcTotalMassFlow();
-				}
-			}
+				zeroSpeciesFlowContainingElement(fb.getGasMixture().get(0), null, iAtomicNumber);
 			if (fb.hasSolidPhase())
 			{
 				nPhase = fb.getSolidMixtures().size();
 				for (j=0; j<nPhase; j++)
 				{
-					sm = fb.getSolidMixtures().get(j);
-					bContainsElement = false;
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						iSpecies = entry.getKey().intValue();
-						iSpeciesAll = iSolidPhase2All[sm.getPhaseIndex()][iSpecies];
-						param = entry.getValue();
-						if (allSpeciesList.get(iSpeciesAll).containsElement(iAtomicNumber))
-						{
-							param.setDefaultValue(0);
-							bContainsElement = true;
-						}
-					}
-					if (bContainsElement)
-					{
-						if (gm.hasConstMassFractions())
-							gm.normalizeSpeciesMassFlowAsMassFraction();
-						else
-							gm.calcTotalMassFlow();
-					}
+					SolidMixture sm = fb.getSolidMixtures().get(j);
+					zeroSpeciesFlowContainingElement(sm, iSolidPhase2All[sm.getPhaseIndex()], iAtomicNumber);
 				}
 			}
 		}
 	}
 
+	//set the flows of the species of a mixture containing a given element to zero and update the mass fractions or the total flow
+	//iPhase2All is null for gas phase
+	private void zeroSpeciesFlowContainingElement(Mixture m, int[] iPhase2All, int iAtomicNumber)
+	{
+		boolean bContainsElement = false;
+		float[] x = m.getSpeciesFlows().getDefaultValues();
+		for (int iFlow : m.getSpeciesIndices())
+		{
+			if (allSpeciesList.get(iPhase2All==null ? iFlow : iPhase2All[iFlow]).containsElement(iAtomicNumber))
+			{
+				x[iFlow] = 0;
+				bContainsElement = true;
+			}
+		}
+		if (bContainsElement)
+		{
+			if (m.hasConstMassFractions())
+				m.normalizeSpeciesMassFlowAsMassFraction();
+			else
+				m.calcTotalMassFlow();
+		}
+	}
+
 	//If an element has zero molar flow in the feed stream, set the flow rate of a product species that containing the element to zero
 	//also create and update iElementFeed[] array
 	//This may not needed since the correction algorithm will correct the product species flow and set it to zero
@@ -849,237 +883,104 @@ public class UnitOperation extends Alias implements Serializable
 	//algorithm to solve a set of linear equations by Gaussian elimination
 	public int GaussianEliminationWithRowPivoting(int nrow, int ncol, double[][] ppa, double[] pb, double[] px)
 	{
-		boolean brank = false;			//true if rank<nrow
-		int i, j, k;
-		int imax;
-		double aijabs;
-		double aijmax;
-		double aswap;
-		double fac;
-		for (i=0; i<nrow; i++)
+		return LinearSolver.gaussianEliminationWithRowPivoting(nrow, ncol, ppa, pb, px);
+	}
+
+	//mass balance corrector of current ROM input and output vectors, created when first used
+	//the corrector is owned by this UnitOperation and should not be shared by multiple threads
+	public MassBalanceCorrector getMassBalanceCorrector()
+	{
+		if (balanceCorrector==null)
 		{
-			imax = i;
-			aijmax = Math.abs(ppa[i][i]);
-			for (k=i+1; k<nrow; k++)
-			{
-				aijabs = Math.abs(ppa[k][i]);
-				if (aijabs > aijmax)
-				{
-					imax = k;
-					aijmax = aijabs;
-				}
-			}
-			if (aijmax==0)		//rank < nrow
-			{
-				brank = true;
-				break;
-			}
-			if (imax!=i)	//swap
-			{
-				for (j=i; j<ncol; j++)
-				{
-					aswap = ppa[i][j];
-					ppa[i][j] = ppa[imax][j];
-					ppa[imax][j] = aswap;
-				}
-				aswap = pb[i];
-				pb[i] = pb[imax];
-				pb[imax] = aswap;
-			}
-			//elimimation
-			for (k=i+1; k<nrow; k++)
-			{
-				fac = ppa[k][i]/ppa[i][i];
-				for (j=i; j<ncol; j++)
-					ppa[k][j] -= fac*ppa[i][j];
-				pb[k] -= fac*pb[i];
-			}
+			balanceCorrector = new MassBalanceCorrector(this);
+			correctorInput = new double[romInputVector.size()];
+			correctorOutput = new double[yromOutputVector.size()];
 		}
-		//set px[] to zero from i to ncol
-		for (k=i; k<ncol; k++)
-			px[k] = 0;
-		//back substitution
-		for (k=i-1; k>=0; k--)
+		return balanceCorrector;
+	}
+
+	public KrigingModel getKrigingModel()
+	{
+		return krigingModel;
+	}
+
+	public void setKrigingModel(KrigingModel km)
+	{
+		krigingModel = km;
+	}
+
+	//read the Kriging model file written by the native CKriging for the ROM vectors
+	//return 0 if successful, 1 if the file cannot be read, 2 if the model dimensions do not match the ROM vectors
+	public int readKrigingModelFile(String fileName)
+	{
+		KrigingModel km;
+		try
 		{
-			aswap = 0;
-			for (j=k+1; j<ncol; j++)
-			{
-				aswap += ppa[k][j]*px[j];
-			}
-			px[k] = (pb[k]-aswap)/ppa[k][k];
+			km = KrigingModel.read(fileName);
 		}
-		if (brank)
+		catch(IOException e)
+		{
+			System.out.println(e);
 			return 1;
+		}
+		if (km.getNumberOfInputs()!=romInputVector.size() || km.getNumberOfOutputs()!=yromOutputVector.size())
+		{
+			System.out.println("Kriging model dimensions do not match the ROM input and output vectors");
+			return 2;
+		}
+		krigingModel = km;
 		return 0;
 	}
 
+	//evaluator of the mass-balanced ROM with the Kriging model, null if no Kriging model is read
+	//each call creates a new evaluator, which should not be shared by multiple threads
+	public RomEvaluator createRomEvaluator()
+	{
+		if (krigingModel==null)
+			return null;
+		return new RomEvaluator(this, krigingModel);
+	}
+
 	//method to enforce elemental mass balance for current set of input vector and output vector predicted by CFD or ROM
 	//all inlet and outlet flow boundary data have to be assigned before calling this method including unvaried parameters
 	//since one UnitOperation class contains one set of input and output, the method enforces the mass balance for one set of data only
+	//the correction is done by a MassBalanceCorrector on the values of romInputVector and yromOutputVector
 	public int enforceElementalMassBalance()
 	{
 		//return non-zero value if failed
 		//assuming updateAllSpeciesList() has been called
-		int i, j, k, n;
-		Species sp;
-		eliminateNegativeProductSpeciesFlow();
-		eliminateProductSpeciesWithElementsUnavailableInFeed();	//this will update iElementFeed array
-		if (!areAllFeedElementsInProductBoundaries())
-		{
-			System.out.println("Mass balance failed");
-			return 1;
-		}
-		float[] speciesMoleFlowRate = getSpeciesMoleFlowRate(outletBoundaryList);
-		float[] elementMoleFlowFeed = getElementMoleFlowRate(inletBoundaryList);
-		float[] elementMoleFlowProduct = getElementMoleFlowRate(outletBoundaryList);
-		int nElementFeed = iElementFeed.length;
-		int nSpecies = allSpeciesList.size();
-		int nSpeciesProduct = 0;
-		for (i=0; i<nSpecies; i++)
-		{
-			if (speciesMoleFlowRate[i]>0)
-				nSpeciesProduct++;
-		}
-		double[] speciesMoleFlowRateNonZero = new double [nSpeciesProduct];
-		int[] iAll2Product = new int[nSpecies];
-		List<Species> productSpeciesList = new ArrayList<Species>();
-		j = 0;
-		for (i=0; i<nSpecies; i++)
-		{
-			if (speciesMoleFlowRate[i]>0)
-			{
-				speciesMoleFlowRateNonZero[j] = speciesMoleFlowRate[i];
-				productSpeciesList.add(allSpeciesList.get(i));
-				iAll2Product[i] = j;
-				j++;
-			}
-		}
-		double[] correctionFactor;
-		if (nElementFeed>nSpeciesProduct)	//use regression equations
-		{
-			double[][] aij = new double[nElementFeed][];
-			for (i=0; i<nElementFeed; i++)
-				aij[i] = new double[nSpeciesProduct];
-			double[][] aij_reg = new double[nSpeciesProduct][];
-			for (i=0; i<nSpeciesProduct; i++)
-				aij_reg[i] = new double[nSpeciesProduct];
-			double[] b = new double[nElementFeed];
-			double[] b_reg = new double[nSpeciesProduct];
-			correctionFactor = new double [nSpeciesProduct];	//correction factor + Langrangian coefficients
-			//calculate equation for each element
-			for (j=0; j<nElementFeed; j++)
-			{
-				k = iElementFeed[j];
-				b[j] = elementMoleFlowFeed[k] - elementMoleFlowProduct[k];
-				for (i=0; i<nSpeciesProduct; i++)
-				{
-					sp = productSpeciesList.get(i);
-					aij[j][i] = speciesMoleFlowRateNonZero[i]*sp.getNumberOfAtoms(k);
-				}
-			}
-			//calculate regression equations
-			for (i=0; i<nSpeciesProduct; i++)
-			{
-				for (j=0; j<nSpeciesProduct; j++)
-				{
-					aij_reg[i][j] = 0;
-					for (k=0; k<nElementFeed; k++)
-						aij_reg[i][j] += aij[k][i]*aij[k][j];
-				}
-				b_reg[i] = 0;
-				for (k=0; k<nElementFeed; k++)
-					b_reg[i] += aij[k][i]*b[k];
-			}
-			if (GaussianEliminationWithRowPivoting(nSpeciesProduct, nSpeciesProduct, aij_reg, b_reg, correctionFactor)!=0)
-				return 3;
-		}
-		else		//use Lagrangian multiplier method
-		{
-			//prepare lagrangian minimization matrix
-			int nx = nElementFeed + nSpeciesProduct;
-			double[] b = new double[nx];
-			correctionFactor = new double [nx];	//correction factor + Langrangian coefficients
-			double[][] aij = new double[nx][];
-			for (i=0; i<nx; i++)
-				aij[i] = new double[nx];
-			//calculate b vector and matrix coefficient
-			for (i=0; i<nSpeciesProduct; i++)
-			{
-				b[i] = 0;
-				for (j=0; j<nSpeciesProduct; j++)
-					aij[i][j] = 0;
-				aij[i][i] = 2;
-				sp = productSpeciesList.get(i);
-				for (j=0; j<nElementFeed; j++)
-					aij[i][j+nSpeciesProduct] = speciesMoleFlowRateNonZero[i]*sp.getNumberOfAtoms(iElementFeed[j]);
-			}
-			for (i=0; i<nElementFeed; i++)
-			{
-				n = i + nSpeciesProduct;
-				for (j=0; j<nSpeciesProduct; j++)
-				{
-					sp = productSpeciesList.get(j);
-					aij[n][j] = speciesMoleFlowRateNonZero[j]*sp.getNumberOfAtoms(iElementFeed[i]);
-				}
-				for (j=0; j<nElementFeed; j++)
-					aij[n][nSpeciesProduct+j] = 0;
-				k = iElementFeed[i];
-				b[n] = elementMoleFlowFeed[k] - elementMoleFlowProduct[k];
-				//debug
-				//float err = Math.abs((float)(b[n]/elementMoleFlowFeed[k]));
-				//System.out.print(err + " " + (float)elementMoleFlowFeed[k] + " ");
+		int i;
+		int iReturn;
+		int nInputParam = romInputVector.size();
+		int nOutputParam = yromOutputVector.size();
+		getMassBalanceCorrector();
+		for (i=0; i<nInputParam; i++)
+			correctorInput[i] = romInputVector.get(i).getDefaultValue();
+		for (i=0; i<nOutputParam; i++)
+			correctorOutput[i] = yromOutputVector.get(i).getDefaultValue();
+		iReturn = balanceCorrector.correct(correctorInput, correctorOutput, correctorOutput);
+		for (i=0; i<nOutputParam; i++)
+			yromOutputVector.get(i).setDefaultValue((float)correctorOutput[i]);
+		printCorrectionFailure(iReturn);
+		return iReturn;
+	}
 
-			}
-			//debug
-			//System.out.println();
-			if (GaussianEliminationWithRowPivoting(nx, nx, aij, b, correctionFactor)!=0)
-				return 3;
-		}
-		//now do correction
-		int iSpecies;
-		int iSpeciesAll;
-		int nPhase;
-		int nBoundary = outletBoundaryList.size();
-		float xfloat;
-		FlowBoundary fb = null;
-		GasMixture gm = null;
-		SolidMixture sm = null;
-		Parameter param;
-		for (i=0; i<nBoundary; i++)
-		{
-			fb = outletBoundaryList.get(i);
-			if (fb.hasGasPhase())
-			{
-				gm = fb.getGasMixture().get(0);
-				for(Map.Entry<Integer,Parameter> entry : gm.getSpeciesFlowMap().entrySet())
-				{
-					iSpecies = entry.getKey().intValue();
-					iSpeciesAll = iSpecies;
-					param = entry.getValue();
-					//if flow is zero, apply correctionFactor[0], the value is still zero
-					xfloat = (float)(param.getDefaultValue()*(1+correctionFactor[iAll2Product[iSpeciesAll]]));
-					param.setDefaultValue(xfloat);
-				}
-			}
-			if (fb.hasSolidPhase())
-			{
-				nPhase = fb.getSolidMixtures().size();
-				for (j=0; j<nPhase; j++)
-				{
-					sm = fb.getSolidMixtures().get(j);
-					for(Map.Entry<Integer,Parameter> entry : sm.getSpeciesFlowMap().entrySet())
-					{
-						iSpecies = entry.getKey().intValue();
-						iSpeciesAll = iSolidPhase2All[sm.getPhaseIndex()][iSpecies];
-						param = entry.getValue();
-						//if flow is zero, apply correctionFactor[0], the value is still zero
-						xfloat = (float)(param.getDefaultValue()*(1+correctionFactor[iAll2Product[iSpeciesAll]]));
-						param.setDefaultValue(xfloat);
-					}
-				}
-			}
-		}
-		return 0;
+	private void printCorrectionFailure(int iReturn)
+	{
+		String message = getCorrectionFailureMessage(iReturn, balanceCorrector.getLastSolverDiagnostic());
+		if (message!=null)
+			System.out.println(message);
+	}
+
+	//message of a value returned by MassBalanceCorrector.correct(), null if the correction succeeded
+	//the diagnostic of the solver is appended to the message of singular equations if it is not null
+	public static String getCorrectionFailureMessage(int iReturn, SolverDiagnostic diagnostic)
+	{
+		if (iReturn==MassBalanceCorrector.ELEMENT_NOT_IN_PRODUCT)
+			return "Mass balance failed";
+		if (iReturn==MassBalanceCorrector.SINGULAR_EQUATIONS)
+			return diagnostic==null ? "Mass balance equations are singular" : "Mass balance equations are singular: " + diagnostic;
+		return null;
 	}
 
 	//this method uses an input file to configure the ROM to be built.
@@ -1706,73 +1607,32 @@ public class UnitOperation extends Alias implements Serializable
 		updateYromOutputVector();
 	}
 
+	//read the user setup JSON file in a single pass, the mixture parameter aliases are set for each boundary as it is read
 	public void readUserJsonFile(String fileName)
 	{
-		Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().setPrettyPrinting().create();
 		try
 		{
-			int i, j;
-			int nSpecies;
-			int nPhase;
-			Species sp;
-			List<Species> splist;
-			BufferedReader br = new BufferedReader(new FileReader(fileName));
-			UnitOperation obj = gson.fromJson(br,UnitOperation.class);
-			br.close();
-			setName(obj.getName());
-			setRegressionMethod(obj.getRegressionMethod());
-			setNumberOfSamples(obj.getNumberOfSamples());
-			//set gas species list data
-			splist = obj.getGasSpeciesList();
-			nSpecies = splist.size();
-			for (i=0; i<nSpecies; i++)
-			{
-				sp = splist.get(i);
-				addGasSpecies(sp.getName(),sp.getFormula());
-			}
-			nPhase = obj.getSolidSpeciesList().size();
-			setTotalNumberOfSolidPhases(nPhase);
-			for (i=0; i<nPhase; i++)
-			{
-				splist = obj.getSolidSpeciesList().get(i);
-				nSpecies = splist.size();
-				for (j=0; j<nSpecies; j++)
-					addSolidSpecies(i,splist.get(j).getName(),splist.get(j).getFormula());
-			}
-			setSolidPhaseList(obj.getSolidPhaseList());
-			setSolidPhaseTypeList(obj.getSolidPhaseTypeList());
-			setInletBoundaryList(obj.getInletBoundaryList());
-			setOutletBoundaryList(obj.getOutletBoundaryList());
-			setInputParameterList(obj.getInputParameterList());
-			setOutputParameterList(obj.getOutputParameterList());
+			SetupJsonReader.read(this, fileName);
 		}
 		catch (IOException e)
 		{
 			e.printStackTrace();
 		}
-		//update alias
-		for (FlowBoundary fb : inletBoundaryList)
+		updateRomInputVector();
+		updateYromOutputVector();
+	}
+
+	//write the setup to a JSON file read by readUserJsonFile()
+	public void writeUserJsonFile(String fileName)
+	{
+		try
 		{
-			for (GasMixture gm : fb.getGasMixture())
-			   gm.setAllParemeterAliasAs(fb.getBoundaryName() + "GP");
-			for (SolidMixture sm : fb.getSolidMixtures())
-			{
-				int iPhase = sm.getPhaseIndex();
-				sm.setAllParemeterAliasAs(fb.getBoundaryName() + "SP" + iPhase);
-			}
+			SetupJsonWriter.write(this, fileName);
 		}
-		for (FlowBoundary fb : outletBoundaryList)
+		catch (IOException e)
 		{
-			for (GasMixture gm : fb.getGasMixture())
-			   gm.setAllParemeterAliasAs(fb.getBoundaryName() + "GP");
-			for (SolidMixture sm : fb.getSolidMixtures())
-			{
-				int iPhase = sm.getPhaseIndex();
-				sm.setAllParemeterAliasAs(fb.getBoundaryName() + "SP" + iPhase);
-			}
+			e.printStackTrace();
 		}
-		updateRomInputVector();
-		updateYromOutputVector();
 	}
 
 	//read a ROM input vector from a text file
@@ -1859,6 +1719,33 @@ public class UnitOperation extends Alias implements Serializable
 		}
 	}
 
+	//correct a case given as a single array of ROM input vector followed by ROM output vector
+	//the array is overwritten by the input and output vectors after the mass balance correction
+	//returns the value returned by enforceElementalMassBalance(), a failure is not printed and should be reported by the caller
+	public int correctCaseVector(float[] v)
+	{
+		int i;
+		int iReturn;
+		int nInputParam = romInputVector.size();
+		int nOutputParam = yromOutputVector.size();
+		//same as setting the default values from v and calling enforceElementalMassBalance(), without reading the parameters back
+		getMassBalanceCorrector();
+		for (i=0; i<nInputParam; i++)
+		{
+			correctorInput[i] = v[i];
+			romInputVector.get(i).setDefaultValue(v[i]);
+		}
+		for (i=0; i<nOutputParam; i++)
+			correctorOutput[i] = v[nInputParam+i];
+		iReturn = balanceCorrector.correct(correctorInput, correctorOutput, correctorOutput);
+		for (i=0; i<nOutputParam; i++)
+		{
+			v[nInputParam+i] = (float)correctorOutput[i];
+			yromOutputVector.get(i).setDefaultValue(v[nInputParam+i]);
+		}
+		return iReturn;
+	}
+
 	//save corrected ROM output vector to a file
 	public void wrtieCorrectedOutputVector(String fileName)
 	{
@@ -4022,31 +3909,118 @@ public class UnitOperation extends Alias implements Serializable
 		}
 	}
 
+	//sample the ranges of the ROM input vector by LatinHypercubeSampler and write the cases in the same CSV format as the native sampling,
+	//the output columns are left for the results of the high-fidelity model
+	public void exportSampleFile(String fileName)
+	{
+		exportSampleFile(fileName, -1);
+	}
+
+	//same as exportSampleFile(String) with nExchange attempted exchanges in each start of the sampler, the default of the sampler if negative
+	public void exportSampleFile(String fileName, int nExchange)
+	{
+		//assuming updateRomInputVector() and updateYromOutputVector() have been called
+		int i, k;
+		int ninput = romInputVector.size();
+		int noutput = yromOutputVector.size();
+		LatinHypercubeSampler lhs = new LatinHypercubeSampler(this, nSample);
+		lhs.setNumberOfExchanges(nExchange);
+		double[] x = lhs.sample();
+		try
+		{
+			PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+			Parameter param;
+			out.print("I/O data for " + getName());
+			for (i=0; i<ninput; i++)
+				out.print(",Input");
+			for (i=0; i<noutput; i++)
+				out.print(",Output");
+			out.print("\nCase");
+			for (i=0; i<ninput+noutput; i++)
+			{
+				param = i<ninput ? romInputVector.get(i) : yromOutputVector.get(i-ninput);
+				if (param.getAlias()!=null && !param.getAlias().isEmpty())
+					out.print("," + param.getName() + "_" + param.getAlias());
+				else
+					out.print("," + param.getName());
+			}
+			out.print("\n");
+			for (i=0; i<nSample; i++)
+			{
+				out.print(i+1);
+				for (k=0; k<ninput; k++)
+					out.print("," + x[i*ninput+k]);
+				out.print("\n");
+			}
+			out.close();
+		}
+		catch(IOException e)
+		{
+			System.out.println(e);
+		}
+	}
+
 	//main method for command line executable
-	//Command example: java DataModel.UnitOperation -b user_input.json row_vectors.input corrected_vectors.output
+	//Command example: java DataModel.UnitOperation -b user_input.json row_vectors.input corrected_vectors.output [number_of_threads]
+	//Command example: java DataModel.UnitOperation -bin user_input.json row_vectors.bin corrected_vectors.bin [number_of_threads]
+	//Command example: java DataModel.UnitOperation -s port [-t number_of_threads] user_input_1.json [user_input_2.json ...]
 	//Command example: java DataModel.UnitOperation -a user_input.json
 	//Command example: java DataModel.UnitOperation -c user_input.json
+	//Command example: java DataModel.UnitOperation -l user_input.json iRevealLite.csv [number_of_exchanges]
 	public static void main(String argu[])
 	{
-		//argu[0]: option, -b for mass/energy balance correction, -a for exporting ACM code, -c for exporting CapeOpen code
+		//argu[0]: option, -b for mass/energy balance correction, -bin for mass/energy balance correction of binary vector files, -a for exporting ACM code, -c for exporting CapeOpen code
 		//argu[1]: name of JSON file for user inputs
 		//argu[2]: name of ACM or CapeOpen file for output or the name of raw (uncorrected) ROM input and output vectors
 		//argu[3]: name of file for input vector and output vector to be used by sampling code (rom.in) or name of corrected output file
+		//argu[4]: optional number of threads for -b option, default is the number of available processors
+		//for -l option, argu[2] is the optional name of the CSV file of the Latin hypercube samples, default is iRevealLite.csv
+		//and argu[3] is the optional number of attempted exchanges in each start of the sampler, default is 2 per grid value of the design
+		//for -s option, argu[1] is the local TCP port of the correction server and argu[2] and following arguments are the JSON files of the setups served
+		//optionally preceded by -t and the maximum number of connections handled at the same time, default is the number of available processors
 		//Note: for -b option, input and output vectors for each case are in a single line, vecters can be in multiple groups separated by empty lines comparible to 2-D GNUPLOT format
-		int i, j, k;
-		int nGroup;		//number of groups
-		int nCase;		//number of cases in each group
-		float xfloat;
+		int i;
+		int nThread;	//number of threads for mass balance correction
 		i = argu.length;
 		if (i<2)
 		{
 			System.out.println("Number of argument < 2!");
 			return;
 		}
-		UnitOperation uo = new UnitOperation();
+		if (argu[0].equals("-s"))
+		{
+			if (i<3)
+			{
+				System.out.println("Number of argument < 3! Unable to start correction server.");
+				return;
+			}
+			try
+			{
+				int iFile = 2;
+				nThread = Runtime.getRuntime().availableProcessors();
+				if (argu[2].equals("-t") && i>4)
+				{
+					nThread = Integer.parseInt(argu[3]);
+					iFile = 4;
+				}
+				CorrectionServer server = CorrectionServer.fromJsonFiles(Arrays.copyOfRange(argu, iFile, i), nThread);
+				server.bind(Integer.parseInt(argu[1]));
+				System.out.println("Correction server is listening on port " + server.getPort());
+				server.serve();
+			}
+			catch(NumberFormatException e)
+			{
+				System.out.println(e);
+			}
+			catch(IOException e)
+			{
+				System.out.println(e);
+			}
+			return;
+		}
 		//uo.readUserSetupFile(argu[1]);	//original version with setup input file
-		uo.readUserJsonFile(argu[1]);
-		uo.updateAllSpeciesList();
+		//the prepared setup is loaded from its snapshot if -DiRevealLite.snapshotDir=directory is given and the JSON file is not changed
+		UnitOperation uo = SetupSnapshot.load(argu[1]);
 		if (argu[0].equals("-a"))
 		{
 			uo.exportACMRom();
@@ -4059,74 +4033,47 @@ public class UnitOperation extends Alias implements Serializable
 			uo.exportFileForSampling("iRevealLite.io");
 			return;
 		}
-		//assume any other option is "-b" option
-		if (i<4)
-		{
-			System.out.println("Number of argument < 4! Unable to perform mass/energy balance.");
-			return;
-		}
-		int nInputParam = uo.romInputVector.size();
-		int nOutputParam = uo.yromOutputVector.size();
-		Scanner s = null;
-		Parameter param;
-		try
+		if (argu[0].equals("-l"))
 		{
-			s = new Scanner(new BufferedReader(new FileReader(argu[2])));
-			FileWriter outFile = new FileWriter(argu[3]);
-			PrintWriter out = new PrintWriter(outFile);
-			nGroup = s.nextInt();
-			nCase = s.nextInt();
-			s.nextLine();
-			for (k=0; k<nGroup; k++)
+			int nExchange = -1;
+			if (i>3)
 			{
-				for (j=0; j<nCase; j++)
+				try
 				{
-					for (i=0; i<nInputParam; i++)
-					{
-						param = uo.romInputVector.get(i);
-						xfloat = s.nextFloat();
-						param.setDefaultValue(xfloat);
-					}
-					for (i=0; i<nOutputParam; i++)
-					{
-						param = uo.yromOutputVector.get(i);
-						xfloat = s.nextFloat();
-						param.setDefaultValue(xfloat);
-					}
-					s.nextLine();
-					//perform elemental balance correction
-					uo.enforceElementalMassBalance();
-					for (i=0; i<nInputParam; i++)
-					{
-						param = uo.romInputVector.get(i);
-						xfloat = param.getDefaultValue();
-						out.print(xfloat);
-						out.print("\t");
-					}
-					for (i=0; i<nOutputParam; i++)
-					{
-						param = uo.yromOutputVector.get(i);
-						xfloat = param.getDefaultValue();
-						out.print(xfloat);
-						out.print("\t");
-					}
-					out.println();
+					nExchange = Integer.parseInt(argu[3]);
 				}
-				if (k<nGroup-1)
+				catch(NumberFormatException e)
 				{
-					s.nextLine();
-					out.println();
+					System.out.println(e);
+					return;
 				}
 			}
-			out.close();
-		}//end of try
-		catch(IOException e)
+			uo.exportSampleFile(i>2 ? argu[2] : "iRevealLite.csv", nExchange);
+			return;
+		}
+		//assume any other option is "-b" option
+		if (i<4)
 		{
-			System.out.println(e);
+			System.out.println("Number of argument < 4! Unable to perform mass/energy balance.");
+			return;
 		}
-		finally
+		nThread = Runtime.getRuntime().availableProcessors();
+		if (i>4)
 		{
-			s.close();
+			try
+			{
+				nThread = Integer.parseInt(argu[4]);
+			}
+			catch(NumberFormatException e)
+			{
+				System.out.println(e);
+				return;
+			}
 		}
+		MassBalanceBatchCorrector bc = new MassBalanceBatchCorrector(uo, argu[1], nThread);
+		if (argu[0].equals("-bin"))
+			bc.correctBinaryFile(argu[2], argu[3]);
+		else
+			bc.correctVectorFile(argu[2], argu[3]);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,322 @@
+package DataModel;
+
+import java.io.*;
+
+/**
+ * Class for reading whitespace-separated numbers of the grouped ROM vector files used by the -b option
+ * The file is read through a fixed size byte buffer and numbers are parsed directly from the bytes,
+ * so that the memory used does not depend on the size of the file.
+ * The first line of a grouped vector file contains the number of groups and the number of cases in each group,
+ * each case is in a single line and groups are separated by empty lines.
+ */
+public class VectorFileReader implements Closeable
+{
+	//size of the byte buffer
+	private static final int bufferSize = 65536;
+
+	//maximum length of a number
+	private static final int maxTokenLength = 256;
+
+	//maximum mantissa exactly represented by float and double
+	private static final long maxFloatMantissa = 1L<<24;
+	private static final long maxDoubleMantissa = 1L<<53;
+
+	//low bits of a double mantissa dropped by rounding to float, and their value at a float halfway point
+	private static final long halfFloatUlpMask = (1L<<29) - 1;
+	private static final long halfFloatUlp = 1L<<28;
+
+	//powers of 10 exactly represented by float and double
+	private static final float[] floatPow10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+	private static final double[] doublePow10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private InputStream in;
+
+	private byte[] buffer;
+
+	//position of next byte to read in buffer
+	private int position;
+
+	//number of valid bytes in buffer
+	private int limit;
+
+	//true if end of file is reached
+	private boolean bEndOfFile;
+
+	//1-based line number of current position, used for error messages
+	private int lineNumber;
+
+	//fields of last number scanned by scanNumber()
+	private boolean bNegative;
+	private long mantissa;
+	private int exponent10;
+	private boolean bExact;			//false if the number cannot be assembled exactly from mantissa and exponent10
+	private int tokenStart;
+	private int tokenEnd;
+
+	public VectorFileReader(String fileName) throws IOException
+	{
+		this(new FileInputStream(fileName));
+	}
+
+	public VectorFileReader(InputStream is)
+	{
+		in = is;
+		buffer = new byte[bufferSize];
+		position = 0;
+		limit = 0;
+		bEndOfFile = false;
+		lineNumber = 1;
+	}
+
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	//make sure at least n bytes are available in buffer unless end of file is reached
+	//returns false if fewer than n bytes are available
+	private boolean fill(int n) throws IOException
+	{
+		int nRead;
+		if (limit-position>=n)
+			return true;
+		if (bEndOfFile)
+			return false;
+		//move remaining bytes to the beginning of the buffer
+		if (position>0)
+		{
+			System.arraycopy(buffer, position, buffer, 0, limit-position);
+			limit -= position;
+			position = 0;
+		}
+		while (limit<n)
+		{
+			nRead = in.read(buffer, limit, bufferSize-limit);
+			if (nRead<0)
+			{
+				bEndOfFile = true;
+				return false;
+			}
+			limit += nRead;
+		}
+		return true;
+	}
+
+	//skip whitespace including line terminators, returns false if end of file is reached
+	private boolean skipWhitespace() throws IOException
+	{
+		byte ch;
+		while (true)
+		{
+			if (position>=limit && !fill(1))
+				return false;
+			ch = buffer[position];
+			if (ch=='\n')
+				lineNumber++;
+			else if (ch!=' ' && ch!='\t' && ch!='\r' && ch!='\f')
+				return true;
+			position++;
+		}
+	}
+
+	//skip the rest of current line including the line terminator
+	public void skipLine() throws IOException
+	{
+		while (true)
+		{
+			if (position>=limit && !fill(1))
+				return;
+			if (buffer[position++]=='\n')
+			{
+				lineNumber++;
+				return;
+			}
+		}
+	}
+
+	//scan next token as a decimal number and move position to the end of the token
+	private void scanNumber() throws IOException
+	{
+		boolean bDigit = false;
+		boolean bExponentNegative = false;
+		int nSignificant = 0;
+		int exponent = 0;
+		byte ch;
+		if (!skipWhitespace())
+			throw new EOFException("Unexpected end of vector file at line " + lineNumber);
+		fill(maxTokenLength);
+		tokenStart = position;
+		bNegative = false;
+		mantissa = 0;
+		exponent10 = 0;
+		bExact = true;
+		ch = buffer[position];
+		if (ch=='-' || ch=='+')
+		{
+			bNegative = ch=='-';
+			position++;
+		}
+		//integer part
+		while (position<limit && (ch=buffer[position])>='0' && ch<='9')
+		{
+			bDigit = true;
+			if (nSignificant<18)
+			{
+				mantissa = mantissa*10 + (ch-'0');
+				if (mantissa>0)
+					nSignificant++;
+			}
+			else
+			{
+				exponent10++;
+				if (ch!='0')
+					bExact = false;
+			}
+			position++;
+		}
+		//fraction part
+		if (position<limit && buffer[position]=='.')
+		{
+			position++;
+			while (position<limit && (ch=buffer[position])>='0' && ch<='9')
+			{
+				bDigit = true;
+				if (nSignificant<18)
+				{
+					mantissa = mantissa*10 + (ch-'0');
+					exponent10--;
+					if (mantissa>0)
+						nSignificant++;
+				}
+				else if (ch!='0')
+					bExact = false;
+				position++;
+			}
+		}
+		//exponent part
+		if (bDigit && position<limit && ((ch=buffer[position])=='e' || ch=='E'))
+		{
+			position++;
+			if (position<limit && ((ch=buffer[position])=='-' || ch=='+'))
+			{
+				bExponentNegative = ch=='-';
+				position++;
+			}
+			bDigit = false;
+			while (position<limit && (ch=buffer[position])>='0' && ch<='9')
+			{
+				bDigit = true;
+				if (exponent<10000)
+					exponent = exponent*10 + (ch-'0');
+				position++;
+			}
+			exponent10 += bExponentNegative ? -exponent : exponent;
+		}
+		//other characters such as NaN and Infinity are handled by Java parser
+		while (position<limit && (ch=buffer[position])!=' ' && ch!='\t' && ch!='\r' && ch!='\n' && ch!='\f')
+		{
+			bExact = false;
+			position++;
+		}
+		tokenEnd = position;
+		if (!bDigit)
+			bExact = false;
+	}
+
+	//token of the last scanned number as a string
+	private String lastToken()
+	{
+		return new String(buffer, tokenStart, tokenEnd-tokenStart, java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	//read next number as float, same value as Float.parseFloat()
+	public float nextFloat() throws IOException
+	{
+		float x;
+		double d;
+		scanNumber();
+		if (bExact && mantissa<=maxFloatMantissa && exponent10>=-10 && exponent10<=10)
+		{
+			//both operands are exact, so the result is correctly rounded
+			x = exponent10>=0 ? (float)mantissa*floatPow10[exponent10] : (float)mantissa/floatPow10[-exponent10];
+			return bNegative ? -x : x;
+		}
+		if (bExact && mantissa<=maxDoubleMantissa && exponent10>=-22 && exponent10<=22)
+		{
+			//the correctly rounded double is rounded again to float, which is correct unless the double is halfway between two floats
+			d = exponent10>=0 ? (double)mantissa*doublePow10[exponent10] : (double)mantissa/doublePow10[-exponent10];
+			if ((Double.doubleToRawLongBits(d) & halfFloatUlpMask)!=halfFloatUlp)
+				return bNegative ? -(float)d : (float)d;
+		}
+		try
+		{
+			return Float.parseFloat(lastToken());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Invalid number " + lastToken() + " at line " + lineNumber);
+		}
+	}
+
+	//read next number as double, same value as Double.parseDouble()
+	public double nextDouble() throws IOException
+	{
+		double x;
+		scanNumber();
+		if (bExact && mantissa<=maxDoubleMantissa && exponent10>=-22 && exponent10<=22)
+		{
+			//both operands are exact, so the result is correctly rounded
+			x = exponent10>=0 ? (double)mantissa*doublePow10[exponent10] : (double)mantissa/doublePow10[-exponent10];
+			return bNegative ? -x : x;
+		}
+		try
+		{
+			return Double.parseDouble(lastToken());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Invalid number " + lastToken() + " at line " + lineNumber);
+		}
+	}
+
+	//read next integer
+	public int nextInt() throws IOException
+	{
+		scanNumber();
+		if (bExact && exponent10==0 && mantissa<=Integer.MAX_VALUE)
+			return bNegative ? -(int)mantissa : (int)mantissa;
+		try
+		{
+			return Integer.parseInt(lastToken());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Invalid integer " + lastToken() + " at line " + lineNumber);
+		}
+	}
+
+	//read values of a case from current position and skip the rest of the line
+	public void readCaseVector(float[] v) throws IOException
+	{
+		int i;
+		int n = v.length;
+		for (i=0; i<n; i++)
+			v[i] = nextFloat();
+		skipLine();
+	}
+
+	//read values of a case from current position and skip the rest of the line
+	public void readCaseVector(double[] v, int offset, int n) throws IOException
+	{
+		int i;
+		for (i=0; i<n; i++)
+			v[offset+i] = nextDouble();
+		skipLine();
+	}
+
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
@@ -0,0 +1,145 @@
+package DataModel;
+
+import java.io.*;
+
+/**
+ * Class for writing the grouped ROM vector files used by the -b option
+ * Numbers are formatted into a reused character buffer and written through a fixed size byte buffer,
+ * the text written is the same as PrintWriter.print(float) followed by a tab for each value.
+ */
+public class VectorFileWriter implements Closeable, Flushable
+{
+	//size of the byte buffer
+	private static final int bufferSize = 65536;
+
+	//maximum length of a formatted number
+	private static final int maxTokenLength = 64;
+
+	private OutputStream out;
+
+	private byte[] buffer;
+
+	//number of bytes in buffer
+	private int position;
+
+	//reused buffer for formatting a number
+	private StringBuilder sb;
+
+	//platform line separator, same as PrintWriter.println()
+	private byte[] lineSeparator;
+
+	public VectorFileWriter(String fileName) throws IOException
+	{
+		this(new FileOutputStream(fileName));
+	}
+
+	public VectorFileWriter(OutputStream os)
+	{
+		int i;
+		String ls = System.getProperty("line.separator");
+		out = os;
+		buffer = new byte[bufferSize];
+		position = 0;
+		sb = new StringBuilder(maxTokenLength);
+		lineSeparator = new byte[ls.length()];
+		for (i=0; i<lineSeparator.length; i++)
+			lineSeparator[i] = (byte)ls.charAt(i);
+	}
+
+	//make sure at least n bytes are free in buffer
+	private void reserve(int n) throws IOException
+	{
+		if (position+n>bufferSize)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		if (position>0)
+		{
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	//copy the formatted characters in sb to the byte buffer, all characters are ASCII
+	private void appendFormatted() throws IOException
+	{
+		int i;
+		int n = sb.length();
+		reserve(n+1);
+		for (i=0; i<n; i++)
+			buffer[position++] = (byte)sb.charAt(i);
+		sb.setLength(0);
+	}
+
+	//write a number followed by a tab
+	public void writeFloat(float x) throws IOException
+	{
+		sb.append(x);
+		appendFormatted();
+		buffer[position++] = '\t';
+	}
+
+	//write a number followed by a tab
+	public void writeDouble(double x) throws IOException
+	{
+		sb.append(x);
+		appendFormatted();
+		buffer[position++] = '\t';
+	}
+
+	//write the first line of a grouped vector file with the number of groups and the number of cases in each group
+	public void writeHeader(int nGroup, int nCase) throws IOException
+	{
+		sb.append(nGroup).append(' ').append(nCase);
+		appendFormatted();
+		println();
+	}
+
+	//write a line separator
+	public void println() throws IOException
+	{
+		int i;
+		reserve(lineSeparator.length);
+		for (i=0; i<lineSeparator.length; i++)
+			buffer[position++] = lineSeparator[i];
+	}
+
+	//write input and output vectors of a case in a single line
+	public void writeCaseVector(float[] v) throws IOException
+	{
+		int i;
+		int n = v.length;
+		for (i=0; i<n; i++)
+			writeFloat(v[i]);
+		println();
+	}
+
+	//write input and output vectors of a case in a single line
+	public void writeCaseVector(double[] v, int offset, int n) throws IOException
+	{
+		int i;
+		for (i=0; i<n; i++)
+			writeDouble(v[offset+i]);
+		println();
+	}
+
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		out.flush();
+	}
+
+	public void close() throws IOException
+	{
+		try
+		{
+			flushBuffer();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package DataModel;
+
+import java.io.*;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Class preparing the inputs of the JMH benchmarks
+ * A setup name is either "boiler" for examples/boiler.json or the name of a synthetic topology made by TopologyGenerator with a fixed seed,
+ * "small" has 10 gas species, one NC phase and one outlet, "large" has 60 gas species, two CISOLID phases of 25 species, one NC phase
+ * and four outlets. The synthetic setups are written to a temporary directory, so every benchmark reads its setup from a JSON file.
+ */
+public class BenchmarkInput
+{
+	//setup names accepted by getJsonFile()
+	public static final String BOILER = "boiler";
+	public static final String SMALL = "small";
+	public static final String LARGE = "large";
+
+	//names of the two branches of the correction
+	public static final String LAGRANGIAN = "Lagrangian";
+	public static final String REGRESSION = "regression";
+
+	//directory of the example setups, passed by the build as a system property
+	public static File getExamplesDirectory()
+	{
+		return new File(System.getProperty("iRevealLite.examples", "../examples"));
+	}
+
+	//create a temporary directory for the files of a benchmark
+	public static File createWorkDirectory() throws IOException
+	{
+		File dir = File.createTempFile("iRevealLiteBenchmark", "");
+		dir.delete();
+		if (!dir.mkdir())
+			throw new IOException("Unable to create directory " + dir);
+		return dir;
+	}
+
+	//delete the files of a temporary directory and the directory
+	public static void deleteWorkDirectory(File dir)
+	{
+		File[] files = dir.listFiles();
+		if (files!=null)
+		{
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	//JSON file of a setup name, synthetic setups are written to workDir
+	public static String getJsonFile(String setup, File workDir) throws IOException
+	{
+		if (setup.equals(BOILER))
+			return new File(getExamplesDirectory(), "boiler.json").getPath();
+		TopologyGenerator tg = new TopologyGenerator(1);
+		if (setup.equals(LARGE))
+		{
+			tg.setNumberOfGasSpecies(60);
+			tg.setNumberOfSolidPhases(2, 1);
+			tg.setNumberOfSolidSpecies(25);
+			tg.setNumberOfInlets(3);
+			tg.setNumberOfOutlets(4);
+		}
+		else if (!setup.equals(SMALL))
+			throw new IllegalArgumentException("Unknown benchmark setup " + setup);
+		UnitOperation uo = tg.generate();
+		if (uo==null)
+			throw new IllegalStateException("Unable to balance the default case of setup " + setup);
+		String fileName = new File(workDir, setup + ".json").getPath();
+		TopologyGenerator.writeJsonFile(uo, fileName);
+		return fileName;
+	}
+
+	//read a setup file and prepare the species list
+	public static UnitOperation loadSetup(String jsonFileName)
+	{
+		UnitOperation uo = new UnitOperation();
+		uo.readUserJsonFile(jsonFileName);
+		uo.updateAllSpeciesList();
+		return uo;
+	}
+
+	//nCase noisy cases around a balanced case whose correction uses the given branch, each case is the input vector followed by the output vector
+	public static double[][] createCases(UnitOperation uo, String branch, int nCase, long seed)
+	{
+		double[] base = TopologyGenerator.createBalancedCase(uo);
+		if (base==null)
+			throw new IllegalStateException("Unable to create a case satisfying the mass balance");
+		if (branch.equals(REGRESSION))
+		{
+			base = createRegressionCase(uo, base);
+			if (base==null)
+				throw new IllegalStateException("No case using the regression equations is found");
+		}
+		else if (!branch.equals(LAGRANGIAN))
+			throw new IllegalArgumentException("Unknown correction branch " + branch);
+		return TopologyGenerator.createNoisyCases(base, uo.getRomInputVector().size(), nCase, 0.05, seed);
+	}
+
+	//zero the outlet species flows of the output vector of a case one by one, as long as every feed element stays in the products,
+	//until the correction uses the regression equations, returns null if not possible
+	private static double[] createRegressionCase(UnitOperation uo, double[] base)
+	{
+		int i, j;
+		int nInput = uo.getRomInputVector().size();
+		int nOutput = uo.getYromOutputVector().size();
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		Map<Parameter,Integer> outputIndex = new IdentityHashMap<Parameter,Integer>();
+		for (i=0; i<nOutput; i++)
+			outputIndex.put(uo.getYromOutputVector().get(i), i);
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		double[] yCorrected = new double[nOutput];
+		double yOld;
+		System.arraycopy(base, 0, x, 0, nInput);
+		System.arraycopy(base, nInput, y, 0, nOutput);
+		for (Parameter p : mbc.getElementBalancePlan().getOutletFlows())
+		{
+			Integer index = outputIndex.get(p);
+			if (index==null)
+				continue;
+			j = index.intValue();
+			yOld = y[j];
+			y[j] = 0;
+			if (mbc.correct(x, y, yCorrected)!=MassBalanceCorrector.SUCCESS)
+				y[j] = yOld;
+			else if (mbc.getPatternCache().getLastPattern().isRegression())
+			{
+				double[] v = base.clone();
+				System.arraycopy(y, 0, v, nInput, nOutput);
+				return v;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,115 @@
+package DataModel;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks of the elemental mass balance correction of one case, cycling through a fixed set of noisy cases
+ * Each branch of the correction is measured with cases whose correction uses that branch.
+ * The blocked corrector is measured on all cases at once and its time is reported per case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrectionBenchmark
+{
+	//number of cases cycled through
+	private static final int nCase = 1024;
+
+	@Param({BenchmarkInput.BOILER, BenchmarkInput.SMALL, BenchmarkInput.LARGE})
+	public String setup;
+
+	@Param({BenchmarkInput.LAGRANGIAN, BenchmarkInput.REGRESSION})
+	public String branch;
+
+	private UnitOperation uo;
+	private MassBalanceCorrector mbc;
+	private MassBalanceBlockCorrector mbbc;
+	private float[][] caseVectors;
+	private float[] v;
+	private double[][] x;
+	private double[][] y;
+	private double[] xBlock;
+	private double[] yBlock;
+	private double[] yCorrected;
+	private double[] yCorrectedBlock;
+	private double[] dydy;
+	private double[] dydx;
+	private int iCase;
+
+	@Setup(Level.Trial)
+	public void prepare() throws IOException
+	{
+		int i, j;
+		File workDir = BenchmarkInput.createWorkDirectory();
+		try
+		{
+			uo = BenchmarkInput.loadSetup(BenchmarkInput.getJsonFile(setup, workDir));
+		}
+		finally
+		{
+			BenchmarkInput.deleteWorkDirectory(workDir);
+		}
+		double[][] cases = BenchmarkInput.createCases(uo, branch, nCase, 1);
+		mbc = new MassBalanceCorrector(uo);
+		mbbc = new MassBalanceBlockCorrector(uo);
+		int nInput = mbc.getNumberOfInputs();
+		int nOutput = mbc.getNumberOfOutputs();
+		caseVectors = new float[nCase][cases[0].length];
+		x = new double[nCase][nInput];
+		y = new double[nCase][nOutput];
+		xBlock = new double[nCase*nInput];
+		yBlock = new double[nCase*nOutput];
+		for (i=0; i<nCase; i++)
+		{
+			for (j=0; j<cases[i].length; j++)
+				caseVectors[i][j] = (float)cases[i][j];
+			System.arraycopy(cases[i], 0, x[i], 0, nInput);
+			System.arraycopy(cases[i], nInput, y[i], 0, nOutput);
+			System.arraycopy(cases[i], 0, xBlock, i*nInput, nInput);
+			System.arraycopy(cases[i], nInput, yBlock, i*nOutput, nOutput);
+		}
+		v = new float[cases[0].length];
+		yCorrected = new double[nOutput];
+		yCorrectedBlock = new double[nCase*nOutput];
+		dydy = new double[nOutput*nOutput];
+		dydx = new double[nOutput*nInput];
+	}
+
+	//correction through the parameters of UnitOperation as the -b option before MassBalanceCorrector
+	@Benchmark
+	public float enforceElementalMassBalance()
+	{
+		System.arraycopy(caseVectors[iCase], 0, v, 0, v.length);
+		iCase = (iCase+1)%nCase;
+		return uo.correctCaseVector(v) + v[v.length-1];
+	}
+
+	@Benchmark
+	public double massBalanceCorrector()
+	{
+		int i = iCase;
+		iCase = (iCase+1)%nCase;
+		return mbc.correct(x[i], y[i], yCorrected) + yCorrected[0];
+	}
+
+	@Benchmark
+	public double massBalanceCorrectorJacobian()
+	{
+		int i = iCase;
+		iCase = (iCase+1)%nCase;
+		return mbc.correctWithJacobian(x[i], y[i], yCorrected, dydy, dydx) + dydy[0];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(nCase)
+	public double massBalanceBlockCorrector()
+	{
+		return mbbc.correct(xBlock, yBlock, yCorrectedBlock, nCase, null) + yCorrectedBlock[0];
+	}
+}
@@ -0,0 +1,87 @@
+package DataModel;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks of the ROM code export and of the -b and -bin batch drivers, the exported and corrected files are written to a temporary directory
+ * The batch drivers correct a file of noisy cases on one thread and their time is reported per case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark
+{
+	//number of cases in the batch files
+	private static final int nBatchCase = 4096;
+
+	@Param({BenchmarkInput.BOILER, BenchmarkInput.SMALL, BenchmarkInput.LARGE})
+	public String setup;
+
+	private File workDir;
+	private UnitOperation uo;
+	private MassBalanceBatchCorrector bc;
+	private String textInput;
+	private String textOutput;
+	private String binaryInput;
+	private String binaryOutput;
+
+	@Setup(Level.Trial)
+	public void prepare() throws IOException
+	{
+		int i;
+		workDir = BenchmarkInput.createWorkDirectory();
+		String jsonFileName = BenchmarkInput.getJsonFile(setup, workDir);
+		uo = BenchmarkInput.loadSetup(jsonFileName);
+		uo.setName(new File(workDir, "benchmark").getPath());
+		int nInput = uo.getRomInputVector().size();
+		double[][] batch = BenchmarkInput.createCases(uo, BenchmarkInput.LAGRANGIAN, nBatchCase, 3);
+		textInput = new File(workDir, "batch.input").getPath();
+		textOutput = new File(workDir, "batch.output").getPath();
+		binaryInput = new File(workDir, "batch.bin").getPath();
+		binaryOutput = new File(workDir, "batch_corrected.bin").getPath();
+		TopologyGenerator.writeVectorFile(textInput, batch, 1);
+		BinaryVectorFile bvf = BinaryVectorFile.create(binaryInput, nInput, batch[0].length-nInput, 1, nBatchCase);
+		for (i=0; i<nBatchCase; i++)
+			bvf.writeCase(i, batch[i], 0);
+		bvf.close();
+		bc = new MassBalanceBatchCorrector(uo, jsonFileName, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanUp()
+	{
+		BenchmarkInput.deleteWorkDirectory(workDir);
+	}
+
+	@Benchmark
+	public void exportACMRom()
+	{
+		uo.exportACMRom();
+	}
+
+	@Benchmark
+	public void exportCapeOpenRom()
+	{
+		uo.exportCapeOpenRom();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(nBatchCase)
+	public int batchDriverText()
+	{
+		return bc.correctVectorFile(textInput, textOutput);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(nBatchCase)
+	public int batchDriverBinary()
+	{
+		return bc.correctBinaryFile(binaryInput, binaryOutput);
+	}
+}
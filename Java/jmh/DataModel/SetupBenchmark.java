@@ -0,0 +1,85 @@
+package DataModel;
+
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks of reading, preparing and writing a setup and of parsing the species formulas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetupBenchmark
+{
+	@Param({BenchmarkInput.BOILER, BenchmarkInput.SMALL, BenchmarkInput.LARGE})
+	public String setup;
+
+	private File workDir;
+	private String jsonFileName;
+	private String outputJsonFileName;
+	private String snapshotFileName;
+	private UnitOperation uo;
+	private List<Species> speciesList;
+
+	@Setup(Level.Trial)
+	public void prepare() throws IOException
+	{
+		workDir = BenchmarkInput.createWorkDirectory();
+		jsonFileName = BenchmarkInput.getJsonFile(setup, workDir);
+		outputJsonFileName = new File(workDir, "output.json").getPath();
+		snapshotFileName = new File(workDir, "setup" + SetupSnapshot.fileExtension).getPath();
+		uo = BenchmarkInput.loadSetup(jsonFileName);
+		speciesList = uo.getAllSpeciesList();
+		SetupSnapshot.write(uo, snapshotFileName, 0, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanUp()
+	{
+		BenchmarkInput.deleteWorkDirectory(workDir);
+	}
+
+	@Benchmark
+	public UnitOperation readUserJsonFile()
+	{
+		UnitOperation uo1 = new UnitOperation();
+		uo1.readUserJsonFile(jsonFileName);
+		return uo1;
+	}
+
+	@Benchmark
+	public List<Species> updateAllSpeciesList()
+	{
+		uo.updateAllSpeciesList();
+		return uo.getAllSpeciesList();
+	}
+
+	@Benchmark
+	public long writeJson() throws IOException
+	{
+		SetupJsonWriter.write(uo, outputJsonFileName);
+		return new File(outputJsonFileName).length();
+	}
+
+	@Benchmark
+	public UnitOperation readSnapshot() throws IOException
+	{
+		return SetupSnapshot.read(snapshotFileName, 0, 0);
+	}
+
+	//time of parsing the formulas of all species of the setup
+	@Benchmark
+	public double parseSpeciesFormulas()
+	{
+		double sum = 0;
+		for (Species sp : speciesList)
+			sum += new Species(sp.getName(), sp.getFormula()).getMolecularWeight();
+		return sum;
+	}
+}
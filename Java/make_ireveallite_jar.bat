@@ -1,3 +1,20 @@
 javac -cp gson-2.8.0.jar DataModel/*java
 jar xf gson-2.8.0.jar
-jar cmf MANIFEST.MF iRevealLite.jar com/* DataModel/*.class
\ No newline at end of file
+jar cmf MANIFEST.MF iRevealLite.jar com/* DataModel/*.class META-INF/native-image
+rem application class-data sharing archive iRevealLite.jsa of the classes loaded by -a, -c and -b runs on the example setup, requires JDK 10 or later
+rem usage: java -XX:SharedArchiveFile=iRevealLite.jsa -jar iRevealLite.jar -b user_input.json row_vectors.input corrected_vectors.output
+set JAR=%CD%\iRevealLite.jar
+set TRAIN=%TEMP%\iRevealLite_cds
+if exist "%TRAIN%" rmdir /s /q "%TRAIN%"
+mkdir "%TRAIN%"
+copy ..\examples\boiler.json "%TRAIN%" >nul
+pushd "%TRAIN%"
+java -cp "%JAR%" DataModel.TopologyGenerator -r boiler.json vectors.txt 1 20 0.05 >nul
+java -Xshare:off -XX:DumpLoadedClassList=a.classlist -jar "%JAR%" -a boiler.json >nul
+java -Xshare:off -XX:DumpLoadedClassList=c.classlist -jar "%JAR%" -c boiler.json >nul
+java -Xshare:off -XX:DumpLoadedClassList=b.classlist -jar "%JAR%" -b boiler.json vectors.txt corrected.txt 1 >nul
+popd
+copy /b "%TRAIN%\a.classlist"+"%TRAIN%\c.classlist"+"%TRAIN%\b.classlist" iRevealLite.classlist >nul
+java -Xshare:dump -XX:SharedClassListFile=iRevealLite.classlist -XX:SharedArchiveFile=iRevealLite.jsa -cp "%JAR%" >nul 2>&1
+if errorlevel 1 (echo AppCDS archive is not created, JDK 10 or later is required) else (echo AppCDS archive iRevealLite.jsa is created)
+rmdir /s /q "%TRAIN%"
@@ -1,4 +1,23 @@
 #!/bin/sh
 javac -cp gson-2.8.0.jar DataModel/*java
 jar xf gson-2.8.0.jar
-jar cmf MANIFEST.MF iRevealLite.jar com/* DataModel/*.class
+jar cmf MANIFEST.MF iRevealLite.jar com/* DataModel/*.class META-INF/native-image
+#application class-data sharing archive iRevealLite.jsa of the classes loaded by -a, -c and -b runs on the example setup, requires JDK 10 or later
+#usage: java -XX:SharedArchiveFile=iRevealLite.jsa -jar iRevealLite.jar -b user_input.json row_vectors.input corrected_vectors.output
+#the archive is ignored by the JVM if iRevealLite.jar is moved or rebuilt or another JDK is used, run this script again in that case
+JAR="$(pwd)/iRevealLite.jar"
+TRAIN="$(mktemp -d)"
+cp ../examples/boiler.json "$TRAIN"
+if (cd "$TRAIN" &&
+	java -cp "$JAR" DataModel.TopologyGenerator -r boiler.json vectors.txt 1 20 0.05 >/dev/null &&
+	java -Xshare:off -XX:DumpLoadedClassList=a.classlist -jar "$JAR" -a boiler.json >/dev/null &&
+	java -Xshare:off -XX:DumpLoadedClassList=c.classlist -jar "$JAR" -c boiler.json >/dev/null &&
+	java -Xshare:off -XX:DumpLoadedClassList=b.classlist -jar "$JAR" -b boiler.json vectors.txt corrected.txt 1 >/dev/null) &&
+	cat "$TRAIN"/*.classlist | sort -u > iRevealLite.classlist &&
+	java -Xshare:dump -XX:SharedClassListFile=iRevealLite.classlist -XX:SharedArchiveFile=iRevealLite.jsa -cp "$JAR" >/dev/null 2>&1
+then
+	echo "AppCDS archive iRevealLite.jsa is created"
+else
+	echo "AppCDS archive is not created, JDK 10 or later is required"
+fi
+rm -rf "$TRAIN"
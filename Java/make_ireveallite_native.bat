@@ -0,0 +1,2 @@
+rem GraalVM native image iRevealLite.exe of the command line executable, run make_ireveallite_jar.bat first
+native-image -jar iRevealLite.jar
@@ -0,0 +1,8 @@
+#!/bin/sh
+#GraalVM native image iRevealLite of the command line executable, run make_ireveallite_jar.sh first
+#the reflection and resource configuration in META-INF/native-image of iRevealLite.jar is used by native-image
+if ! command -v native-image >/dev/null 2>&1; then
+	echo "native-image is not found, GraalVM is required"
+	exit 1
+fi
+native-image -jar iRevealLite.jar
@@ -0,0 +1,48 @@
+#!/bin/sh
+#usage: ./run_startup_benchmark.sh [-n number_of_runs] [user_input.json]
+#wall time in milliseconds of one -b correction run of 10 vectors for a plain JVM, a JVM with the AppCDS archive iRevealLite.jsa and the native image iRevealLite
+#build with make_ireveallite_jar.sh and make_ireveallite_native.sh first, a launcher without its archive or image is skipped
+#the vectors are generated with a fixed seed and the corrected vectors of all launchers are compared with those of the plain JVM
+#requires date with nanoseconds (GNU coreutils)
+N=20
+if [ "$1" = "-n" ]; then N=$2; shift 2; fi
+SETUP=${1:-../examples/boiler.json}
+DIR="$(pwd)"
+WORK="$(mktemp -d)"
+cp "$SETUP" "$WORK/setup.json"
+cd "$WORK"
+java -cp "$DIR/iRevealLite.jar" DataModel.TopologyGenerator -r -seed 1 setup.json vectors.txt 1 10 0.05 >/dev/null
+#first run writes the setup snapshot so that every timed run loads the same prepared setup
+java -jar "$DIR/iRevealLite.jar" -b setup.json vectors.txt corrected_jvm.txt 1 >/dev/null
+
+run()
+{
+	label=$1
+	shift
+	"$@" -b setup.json vectors.txt "corrected_$label.txt" 1 >/dev/null
+	if ! cmp -s corrected_jvm.txt "corrected_$label.txt"; then
+		echo "$label: corrected vectors differ from the plain JVM"
+	fi
+	i=0
+	while [ $i -lt $N ]; do
+		t0=$(date +%s%N)
+		"$@" -b setup.json vectors.txt "corrected_$label.txt" 1 >/dev/null
+		t1=$(date +%s%N)
+		echo $(( (t1-t0)/1000 ))
+		i=$((i+1))
+	done | sort -n | awk -v label="$label" '{t[NR]=$1; s+=$1} END {printf "%-8s runs %4d  min %8.1f  median %8.1f  mean %8.1f ms\n", label, NR, t[1]/1000, t[int((NR+1)/2)]/1000, s/NR/1000}'
+}
+
+run jvm java -jar "$DIR/iRevealLite.jar"
+if [ -f "$DIR/iRevealLite.jsa" ]; then
+	run appcds java -Xshare:on -XX:SharedArchiveFile="$DIR/iRevealLite.jsa" -jar "$DIR/iRevealLite.jar"
+else
+	echo "appcds   skipped, iRevealLite.jsa is not found"
+fi
+if [ -x "$DIR/iRevealLite" ]; then
+	run native "$DIR/iRevealLite"
+else
+	echo "native   skipped, iRevealLite is not found"
+fi
+cd "$DIR"
+rm -rf "$WORK"
@@ -0,0 +1,483 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the memory-mapped binary vector format, its conversions to and from the text and csv formats
+ * and the correction of a binary vector file by MassBalanceBatchCorrector
+ */
+public class BinaryVectorFileTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String jsonFileName;
+	private static String csvFileName;
+	private static UnitOperation uo;
+	private static int nInput;
+	private static int nOutput;
+	private static float[][] cases;
+
+	@BeforeClass
+	public static void loadCases() throws IOException
+	{
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		jsonFileName = new File(examples, "boiler.json").getPath();
+		csvFileName = new File(examples, "iRevealLite.csv").getPath();
+		uo = new UnitOperation();
+		uo.readUserJsonFile(jsonFileName);
+		uo.updateAllSpeciesList();
+		nInput = uo.getRomInputVector().size();
+		nOutput = uo.getYromOutputVector().size();
+		cases = MassBalanceCorrectorTest.createCases(csvFileName, nInput);
+	}
+
+	private String getPath(String name)
+	{
+		return new File(folder.getRoot(), name).getPath();
+	}
+
+	private static byte[] readBytes(String fileName) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		try
+		{
+			byte[] b = new byte[(int)raf.length()];
+			raf.readFully(b);
+			return b;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static void writeBytes(String fileName, byte[] b, int n) throws IOException
+	{
+		OutputStream out = new FileOutputStream(fileName);
+		try
+		{
+			out.write(b, 0, n);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	//binary file of the test cases in nGroup groups
+	private static void writeCases(String fileName, int nGroup) throws IOException
+	{
+		int i, j;
+		int nCase = cases.length/nGroup;
+		double[] v = new double[nInput+nOutput];
+		BinaryVectorFile bvf = BinaryVectorFile.create(fileName, nInput, nOutput, nGroup, nCase);
+		try
+		{
+			for (i=0; i<nGroup*nCase; i++)
+			{
+				for (j=0; j<v.length; j++)
+					v[j] = cases[i][j];
+				bvf.writeCase(i, v, 0);
+			}
+		}
+		finally
+		{
+			bvf.close();
+		}
+	}
+
+	private static void assertOpenFails(String fileName, Class<? extends IOException> type, String message)
+	{
+		try
+		{
+			BinaryVectorFile.open(fileName, false).close();
+			fail("Invalid file was opened: " + message);
+		}
+		catch(IOException e)
+		{
+			assertEquals(e.getMessage(), type, e.getClass());
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	//the header and the rows written by create() are read back by open(), the rows are little-endian float64 after the header
+	@Test
+	public void createAndOpen() throws IOException
+	{
+		int i, j;
+		String fileName = getPath("cases.bin");
+		writeCases(fileName, 4);
+		int nCase = cases.length/4;
+		BinaryVectorFile bvf = BinaryVectorFile.open(fileName, false);
+		try
+		{
+			assertEquals(nInput, bvf.getNumberOfInputs());
+			assertEquals(nOutput, bvf.getNumberOfOutputs());
+			assertEquals(4, bvf.getNumberOfGroups());
+			assertEquals(nCase, bvf.getNumberOfCases());
+			assertEquals(4L*nCase, bvf.getNumberOfCasesTotal());
+			assertEquals(bvf.getFileSize(), new File(fileName).length());
+			double[] v = new double[nInput+nOutput+1];
+			for (i=0; i<4*nCase; i++)
+			{
+				bvf.readCase(i, v, 1);
+				for (j=0; j<nInput+nOutput; j++)
+					assertEquals("case " + i + " value " + j, cases[i][j], v[j+1], 0);
+			}
+		}
+		finally
+		{
+			bvf.close();
+		}
+		ByteBuffer bb = ByteBuffer.wrap(readBytes(fileName)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(BinaryVectorFile.magicNumber, bb.getInt(0));
+		assertEquals(BinaryVectorFile.formatVersion, bb.getInt(4));
+		assertEquals(nInput, bb.getInt(8));
+		assertEquals(nOutput, bb.getInt(12));
+		assertEquals(4, bb.getInt(16));
+		assertEquals(nCase, bb.getInt(20));
+		assertEquals(cases[1][2], bb.getDouble(BinaryVectorFile.headerSize + 8*(nInput+nOutput+2)), 0);
+	}
+
+	//an empty file of zero cases is valid, invalid sizes are rejected by create()
+	@Test
+	public void createValidatesSizes() throws IOException
+	{
+		String fileName = getPath("empty.bin");
+		BinaryVectorFile.create(fileName, nInput, nOutput, 0, 5).close();
+		BinaryVectorFile bvf = BinaryVectorFile.open(fileName, false);
+		assertEquals(0, bvf.getNumberOfCasesTotal());
+		bvf.close();
+		assertEquals(BinaryVectorFile.headerSize, new File(fileName).length());
+		int[][] sizes = {{-1, 1, 1, 1}, {0, 0, 1, 1}, {1, -1, 1, 1}, {1, 1, -1, 1}, {1, 1, 1, -1}};
+		for (int[] s : sizes)
+		{
+			try
+			{
+				BinaryVectorFile.create(getPath("invalid.bin"), s[0], s[1], s[2], s[3]).close();
+				fail("Invalid size was created " + s[0] + " " + s[1] + " " + s[2] + " " + s[3]);
+			}
+			catch(IOException e)
+			{
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid size"));
+			}
+		}
+	}
+
+	//files that are not binary vector files, of another version, with an incomplete header or truncated rows are rejected by open()
+	@Test
+	public void openValidatesHeader() throws IOException
+	{
+		String fileName = getPath("cases.bin");
+		String invalid = getPath("invalid.bin");
+		writeCases(fileName, 1);
+		byte[] b = readBytes(fileName);
+		ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+		writeBytes(invalid, b, b.length-1);
+		assertOpenFails(invalid, EOFException.class, "is truncated");
+		writeBytes(invalid, b, BinaryVectorFile.headerSize-1);
+		assertOpenFails(invalid, EOFException.class, "Incomplete header");
+		bb.putInt(4, BinaryVectorFile.formatVersion+1);
+		writeBytes(invalid, b, b.length);
+		assertOpenFails(invalid, IOException.class, "Unsupported version");
+		bb.putInt(0, 0x42565250);
+		writeBytes(invalid, b, b.length);
+		assertOpenFails(invalid, IOException.class, "is not a binary vector file");
+		assertOpenFails(csvFileName, IOException.class, "is not a binary vector file");
+	}
+
+	//a binary file opened for writing is changed in place, a file opened for reading cannot be written
+	@Test
+	public void openForWriting() throws IOException
+	{
+		String fileName = getPath("cases.bin");
+		writeCases(fileName, 1);
+		double[] v = new double[nInput+nOutput];
+		BinaryVectorFile bvf = BinaryVectorFile.open(fileName, true);
+		try
+		{
+			v[3] = -1.25;
+			bvf.writeCase(7, v, 0);
+		}
+		finally
+		{
+			bvf.close();
+		}
+		bvf = BinaryVectorFile.open(fileName, false);
+		try
+		{
+			bvf.readCase(7, v, 0);
+			assertEquals(-1.25, v[3], 0);
+			assertEquals(0, v[0], 0);
+			bvf.writeCase(7, v, 0);
+			fail("Read-only file was written");
+		}
+		catch(ReadOnlyBufferException e)
+		{
+			//expected
+		}
+		finally
+		{
+			bvf.close();
+		}
+	}
+
+	//text written by the binary to text conversion is converted to the same binary file and back to the same text,
+	//double values survive both conversions exactly
+	@Test
+	public void textAndBinaryConversionsAreLossless() throws IOException
+	{
+		int i, j;
+		int nGroup = 3;
+		int nCase = 7;
+		Random random = new Random(21);
+		double[] v = new double[nInput+nOutput];
+		String binaryFileName = getPath("random.bin");
+		BinaryVectorFile bvf = BinaryVectorFile.create(binaryFileName, nInput, nOutput, nGroup, nCase);
+		for (i=0; i<nGroup*nCase; i++)
+		{
+			for (j=0; j<v.length; j++)
+				v[j] = j%3==0 ? Double.longBitsToDouble(random.nextLong()) : random.nextGaussian()*Math.pow(10, random.nextInt(40) - 20);
+			bvf.writeCase(i, v, 0);
+		}
+		bvf.close();
+		String textFileName = getPath("random.input");
+		String binaryFileName2 = getPath("random2.bin");
+		String textFileName2 = getPath("random2.input");
+		assertEquals(0, BinaryVectorFile.convertBinaryToText(binaryFileName, textFileName));
+		assertEquals(0, BinaryVectorFile.convertTextToBinary(textFileName, binaryFileName2, nInput, nOutput));
+		assertEquals(0, BinaryVectorFile.convertBinaryToText(binaryFileName2, textFileName2));
+		assertArrayEquals(readBytes(binaryFileName), readBytes(binaryFileName2));
+		assertArrayEquals(readBytes(textFileName), readBytes(textFileName2));
+		//the text is the grouped format of the -b option
+		VectorFileReader in = new VectorFileReader(textFileName);
+		try
+		{
+			assertEquals(nGroup, in.nextInt());
+			assertEquals(nCase, in.nextInt());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	//text file of 2 groups of 5 test cases with the header of nGroup groups of nCase cases
+	private static void writeText(String textFileName, int nGroup, int nCase) throws IOException
+	{
+		int i, j;
+		VectorFileWriter out = new VectorFileWriter(textFileName);
+		try
+		{
+			out.writeHeader(nGroup, nCase);
+			for (i=0; i<10; i++)
+			{
+				for (j=0; j<nInput+nOutput; j++)
+					out.writeFloat(cases[i][j]);
+				out.println();
+				if (i==4)
+					out.println();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	//a text file with fewer cases than its header or fewer values than the given vector sizes is not converted
+	@Test
+	public void textToBinaryRejectsHeaderMismatch() throws IOException
+	{
+		String textFileName = getPath("cases.input");
+		String binaryFileName = getPath("cases.bin");
+		writeText(textFileName, 2, 5);
+		assertEquals(0, BinaryVectorFile.convertTextToBinary(textFileName, binaryFileName, nInput, nOutput));
+		BinaryVectorFile bvf = BinaryVectorFile.open(binaryFileName, false);
+		assertEquals(2, bvf.getNumberOfGroups());
+		assertEquals(5, bvf.getNumberOfCases());
+		bvf.close();
+		assertEquals(1, BinaryVectorFile.convertTextToBinary(textFileName, binaryFileName, nInput, nOutput+3));
+		writeText(textFileName, 2, 6);
+		assertEquals(1, BinaryVectorFile.convertTextToBinary(textFileName, binaryFileName, nInput, nOutput));
+		writeText(textFileName, 3, 5);
+		assertEquals(1, BinaryVectorFile.convertTextToBinary(textFileName, binaryFileName, nInput, nOutput));
+	}
+
+	//the csv file of the examples is converted to a single group of its rows, and back to a csv file with the same values
+	@Test
+	public void csvConversions() throws IOException
+	{
+		int i, j;
+		List<String[]> rows = new ArrayList<String[]>();
+		BufferedReader in = new BufferedReader(new FileReader(csvFileName));
+		try
+		{
+			String line;
+			while ((line=in.readLine())!=null)
+			{
+				if (line.trim().length()!=0)
+					rows.add(line.split(","));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		int nCase = rows.size() - 2;
+		String binaryFileName = getPath("csv.bin");
+		String csvFileName2 = getPath("csv.csv");
+		String binaryFileName2 = getPath("csv2.bin");
+		assertEquals(0, BinaryVectorFile.convertCsvToBinary(csvFileName, binaryFileName));
+		double[] v = new double[nInput+nOutput];
+		BinaryVectorFile bvf = BinaryVectorFile.open(binaryFileName, false);
+		try
+		{
+			assertEquals(nInput, bvf.getNumberOfInputs());
+			assertEquals(nOutput, bvf.getNumberOfOutputs());
+			assertEquals(1, bvf.getNumberOfGroups());
+			assertEquals(nCase, bvf.getNumberOfCases());
+			for (i=0; i<nCase; i++)
+			{
+				bvf.readCase(i, v, 0);
+				for (j=0; j<v.length; j++)
+					assertEquals("case " + i + " value " + j, Double.parseDouble(rows.get(i+2)[j+1]), v[j], 0);
+			}
+		}
+		finally
+		{
+			bvf.close();
+		}
+		String[] names = new String[nInput+nOutput];
+		System.arraycopy(rows.get(1), 1, names, 0, names.length);
+		assertEquals(0, BinaryVectorFile.convertBinaryToCsv(binaryFileName, csvFileName2, "Boiler_ROM", names));
+		assertEquals(0, BinaryVectorFile.convertCsvToBinary(csvFileName2, binaryFileName2));
+		assertArrayEquals(readBytes(binaryFileName), readBytes(binaryFileName2));
+		in = new BufferedReader(new FileReader(csvFileName2));
+		try
+		{
+			assertEquals(join(rows.get(0)), in.readLine());
+			assertEquals(join(rows.get(1)), in.readLine());
+			assertTrue(in.readLine().startsWith("1,"));
+		}
+		finally
+		{
+			in.close();
+		}
+		assertEquals(1, BinaryVectorFile.convertCsvToBinary(getPath("missing.csv"), binaryFileName2));
+	}
+
+	private static String join(String[] items)
+	{
+		int i;
+		StringBuilder sb = new StringBuilder(items[0]);
+		for (i=1; i<items.length; i++)
+			sb.append(',').append(items[i]);
+		return sb.toString();
+	}
+
+	//the corrected binary file has the values of the double corrector for any number of threads,
+	//a file of other vector sizes than the setup is rejected
+	@Test
+	public void correctBinaryFile() throws IOException
+	{
+		int i, j, nThread;
+		int nGroup = 2;
+		int nCase = cases.length/nGroup;
+		String inFileName = getPath("raw.bin");
+		writeCases(inFileName, nGroup);
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		double[] v = new double[nInput+nOutput];
+		int nFailed = 0;
+		for (i=0; i<nGroup*nCase; i++)
+		{
+			for (j=0; j<nInput; j++)
+				x[j] = cases[i][j];
+			for (j=0; j<nOutput; j++)
+				y[j] = cases[i][nInput+j];
+			if (mbc.correct(x, y, y)!=MassBalanceCorrector.SUCCESS)
+				nFailed++;
+		}
+		for (nThread=1; nThread<=3; nThread+=2)
+		{
+			String outFileName = getPath("corrected" + nThread + ".bin");
+			assertEquals(nFailed, new MassBalanceBatchCorrector(null, jsonFileName, nThread).correctBinaryFile(inFileName, outFileName));
+			BinaryVectorFile bvf = BinaryVectorFile.open(outFileName, false);
+			try
+			{
+				assertEquals(nGroup, bvf.getNumberOfGroups());
+				assertEquals(nCase, bvf.getNumberOfCases());
+				for (i=0; i<nGroup*nCase; i++)
+				{
+					for (j=0; j<nInput; j++)
+						x[j] = cases[i][j];
+					for (j=0; j<nOutput; j++)
+						y[j] = cases[i][nInput+j];
+					mbc.correct(x, y, y);
+					bvf.readCase(i, v, 0);
+					for (j=0; j<nInput; j++)
+						assertEquals("threads " + nThread + " case " + i + " input " + j, x[j], v[j], 0);
+					for (j=0; j<nOutput; j++)
+						assertEquals("threads " + nThread + " case " + i + " output " + j, y[j], v[nInput+j], 0);
+				}
+			}
+			finally
+			{
+				bvf.close();
+			}
+		}
+		//the failed cases are printed by the calling thread in case order, a case with zero outputs has no product of its elements
+		int nZero = 0;
+		StringBuilder expected = new StringBuilder();
+		String eol = System.getProperty("line.separator");
+		BinaryVectorFile bvf = BinaryVectorFile.open(inFileName, true);
+		try
+		{
+			for (i=0; i<nGroup*nCase; i+=37)
+			{
+				bvf.readCase(i, v, 0);
+				for (j=nInput; j<nInput+nOutput; j++)
+					v[j] = 0;
+				bvf.writeCase(i, v, 0);
+				expected.append("Case " + (i%nCase + 1) + " of group " + (i/nCase + 1) + ": Mass balance failed" + eol);
+				nZero++;
+			}
+		}
+		finally
+		{
+			bvf.close();
+		}
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(printed, true));
+		try
+		{
+			nFailed = new MassBalanceBatchCorrector(uo, jsonFileName, 3).correctBinaryFile(inFileName, getPath("failed.bin"));
+		}
+		finally
+		{
+			System.setOut(stdout);
+		}
+		assertEquals(nZero, nFailed);
+		assertEquals(expected.toString(), printed.toString());
+		String otherFileName = getPath("other.bin");
+		BinaryVectorFile.create(otherFileName, nInput+1, nOutput-1, 1, 3).close();
+		assertEquals(-1, new MassBalanceBatchCorrector(uo, jsonFileName, 1).correctBinaryFile(otherFileName, getPath("other.output.bin")));
+	}
+}
@@ -0,0 +1,271 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Loopback tests of the protocol of CorrectionServer with CorrectionClient and raw sockets for the malformed requests
+ * The corrections of the server are compared with a MassBalanceCorrector of the same setup on the cases of MassBalanceCorrectorTest.
+ */
+public class CorrectionServerTest
+{
+	private static UnitOperation uo;
+	private static int nInput;
+	private static int nOutput;
+	private static float[][] cases;
+
+	private CorrectionServer server;
+
+	@BeforeClass
+	public static void loadSetup() throws IOException
+	{
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		uo = new UnitOperation();
+		uo.readUserJsonFile(new File(examples, "boiler.json").getPath());
+		uo.updateAllSpeciesList();
+		nInput = uo.getRomInputVector().size();
+		nOutput = uo.getYromOutputVector().size();
+		cases = MassBalanceCorrectorTest.createCases(new File(examples, "iRevealLite.csv").getPath(), nInput);
+	}
+
+	@After
+	public void stopServer()
+	{
+		if (server!=null)
+			server.stop();
+	}
+
+	private CorrectionServer startServer(int nThread, int nQueue, int idleTimeout) throws IOException
+	{
+		server = new CorrectionServer(Collections.singletonList(uo), nThread);
+		server.setMaxQueuedConnections(nQueue);
+		server.setIdleTimeout(idleTimeout);
+		server.start(0);
+		return server;
+	}
+
+	//nCase cases repeating the test cases, input vector followed by output vector
+	private static double[] createRequest(int nCase)
+	{
+		int i, j;
+		int nVector = nInput + nOutput;
+		double[] v = new double[nCase*nVector];
+		for (i=0; i<nCase; i++)
+		{
+			for (j=0; j<nVector; j++)
+				v[i*nVector+j] = cases[i%cases.length][j];
+		}
+		return v;
+	}
+
+	//error message of the next response of a raw connection
+	private static String readError(DataInputStream in) throws IOException
+	{
+		in.readInt();
+		assertEquals(CorrectionServer.STATUS_ERROR, in.readInt());
+		return in.readUTF();
+	}
+
+	@Test
+	public void info() throws IOException
+	{
+		startServer(2, 2, CorrectionServer.defaultIdleTimeout);
+		CorrectionClient client = new CorrectionClient(server.getPort());
+		try
+		{
+			assertEquals(1, client.getNumberOfSetups());
+			assertEquals(nInput, client.getNumberOfInputs(0));
+			assertEquals(nOutput, client.getNumberOfOutputs(0));
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	//the request is larger than the socket buffers, so the server writes the response while the client writes the request
+	@Test
+	public void correctMatchesCorrector() throws IOException
+	{
+		int i, j;
+		int nCase = 20000;
+		int nVector = nInput + nOutput;
+		double[] v = createRequest(nCase);
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		int[] codes = new int[nCase];
+		int nFailed = 0;
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		startServer(2, 2, CorrectionServer.defaultIdleTimeout);
+		CorrectionClient client = new CorrectionClient(server.getPort());
+		try
+		{
+			int nFailedServer = client.correct(0, nCase, v, codes);
+			for (i=0; i<nCase; i++)
+			{
+				for (j=0; j<nInput; j++)
+					x[j] = cases[i%cases.length][j];
+				for (j=0; j<nOutput; j++)
+					y[j] = cases[i%cases.length][nInput+j];
+				assertEquals("case " + i, mbc.correct(x, y, y), codes[i]);
+				if (codes[i]!=MassBalanceCorrector.SUCCESS)
+					nFailed++;
+				for (j=0; j<nInput; j++)
+					assertEquals("case " + i + " input " + j, x[j], v[i*nVector+j], 0);
+				for (j=0; j<nOutput; j++)
+					assertEquals("case " + i + " output " + j, y[j], v[i*nVector+nInput+j], 0);
+			}
+			assertEquals(nFailed, nFailedServer);
+			assertEquals(0, client.correct(0, 0, new double[0], null));
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	//an error response keeps the connection usable
+	@Test
+	public void invalidSetupIndex() throws IOException
+	{
+		startServer(2, 2, CorrectionServer.defaultIdleTimeout);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(12 + 8*(nInput+nOutput));
+			out.writeInt(CorrectionServer.OP_CORRECT);
+			out.writeInt(1);
+			out.writeInt(1);
+			out.write(new byte[8*(nInput+nOutput)]);
+			out.flush();
+			assertTrue(readError(in).startsWith("Invalid setup index 1"));
+			out.writeInt(4);
+			out.writeInt(CorrectionServer.OP_INFO);
+			out.flush();
+			in.readInt();
+			assertEquals(CorrectionServer.STATUS_OK, in.readInt());
+			assertEquals(1, in.readInt());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//a number of cases above the limit of the setup or not matching the message length is rejected before anything is allocated
+	@Test
+	public void invalidNumberOfCases() throws IOException
+	{
+		startServer(2, 2, CorrectionServer.defaultIdleTimeout);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(12);
+			out.writeInt(CorrectionServer.OP_CORRECT);
+			out.writeInt(0);
+			out.writeInt(Integer.MAX_VALUE);
+			out.flush();
+			assertTrue(readError(in).startsWith("Number of cases"));
+			out.writeInt(12);
+			out.writeInt(CorrectionServer.OP_CORRECT);
+			out.writeInt(0);
+			out.writeInt(1);
+			out.flush();
+			assertTrue(readError(in).startsWith("Message length does not match"));
+		}
+		finally
+		{
+			socket.close();
+		}
+		assertTrue(CorrectionServer.getMaxNumberOfCases(0, 0)>0);
+		assertTrue(12 + 8L*CorrectionServer.getMaxNumberOfCases(nInput, nOutput)*(nInput+nOutput)<=CorrectionServer.maxMessageLength);
+	}
+
+	//a message length that cannot be framed gets an error response and the connection is closed
+	@Test
+	public void malformedLength() throws IOException
+	{
+		startServer(2, 2, CorrectionServer.defaultIdleTimeout);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeInt(2);
+			out.flush();
+			assertTrue(readError(in).startsWith("Invalid message length 2"));
+			assertEquals(-1, in.read());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//a connection beyond the threads and the queue gets an error instead of waiting
+	@Test
+	public void busyServerRefusesConnection() throws IOException
+	{
+		startServer(1, 0, CorrectionServer.defaultIdleTimeout);
+		CorrectionClient client = new CorrectionClient(server.getPort());
+		try
+		{
+			new CorrectionClient(server.getPort()).close();
+			fail("Connection beyond the limit was accepted");
+		}
+		catch(IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Server is busy"));
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	//an idle connection is closed, so a queued connection gets the thread
+	@Test
+	public void idleConnectionIsClosed() throws IOException
+	{
+		startServer(1, 1, 200);
+		CorrectionClient idle = new CorrectionClient(server.getPort());
+		CorrectionClient queued = new CorrectionClient(server.getPort());
+		try
+		{
+			assertEquals(1, queued.getNumberOfSetups());
+			try
+			{
+				idle.correct(0, 1, createRequest(1), null);
+				fail("Idle connection was not closed");
+			}
+			catch(IOException e)
+			{
+				//closed by the server
+			}
+		}
+		finally
+		{
+			queued.close();
+			try
+			{
+				idle.close();
+			}
+			catch(IOException e)
+			{
+				//already closed by the server
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests of the formula grammar of FormulaComposition and of the compositions of the formulas in examples/boiler.json
+ * An expected composition is written as element symbols with their counts in the order of first appearance, e.g. "Ca1 O2 H2".
+ */
+public class FormulaCompositionTest
+{
+	//compositions of the formulas of examples/boiler.json, the same as the baseline parser
+	private static final String[][] boilerFormulas = {
+		{"Ah", "Ah1"}, {"C", "C1"}, {"CO", "C1 O1"}, {"CO2", "C1 O2"}, {"Cl", "Cl1"}, {"H", "H1"}, {"H2O", "H2 O1"},
+		{"HCl", "H1 Cl1"}, {"N", "N1"}, {"N2", "N2"}, {"O", "O1"}, {"O2", "O2"}, {"S", "S1"}, {"SO2", "S1 O2"}};
+
+	private static void assertComposition(String formula, int status, String expected)
+	{
+		int i;
+		FormulaComposition c = FormulaComposition.of(formula);
+		String[] items = expected.split(" ");
+		assertEquals(formula, status, c.getStatus());
+		assertEquals(formula, items.length, c.getNumberOfElements());
+		for (i=0; i<items.length; i++)
+		{
+			int len = items[i].length()>1 && Character.isLowerCase(items[i].charAt(1)) ? 2 : 1;
+			assertEquals(formula + " element " + i, items[i].substring(0, len), FormulaComposition.getElementSymbol(c.getAtomicNumbers()[i]));
+			assertEquals(formula + " element " + i, Double.parseDouble(items[i].substring(len)), c.getAtomCounts()[i], 0);
+		}
+	}
+
+	@Test
+	public void groups()
+	{
+		assertComposition("Ca(OH)2", FormulaComposition.statusOk, "Ca1 O2 H2");
+		assertComposition("K4[Fe(CN)6]", FormulaComposition.statusOk, "K4 Fe1 C6 N6");
+		assertComposition("Ca(OH", FormulaComposition.statusUnbalancedGroup, "Ca1 O1 H1");
+		assertComposition("CaOH)2", FormulaComposition.statusUnbalancedGroup, "Ca1 O1 H1");
+	}
+
+	@Test
+	public void hydrates()
+	{
+		assertComposition("CuSO4*5H2O", FormulaComposition.statusOk, "Cu1 S1 O9 H10");
+		assertComposition("CaSO4·2H2O", FormulaComposition.statusOk, "Ca1 S1 O6 H4");
+		assertComposition("2H2O", FormulaComposition.statusOk, "H4 O2");
+		assertComposition("3(NH4)2SO4*2H2O", FormulaComposition.statusOk, "N6 H28 S3 O14");
+	}
+
+	//a period is always a decimal point, it is not a hydrate separator
+	@Test
+	public void decimals()
+	{
+		assertComposition("CH0.8O0.1", FormulaComposition.statusOk, "C1 H0.8 O0.1");
+		assertComposition("C1.25H3.0001", FormulaComposition.statusOk, "C1.25 H3.0001");
+		assertComposition("CaSO4.2H2O", FormulaComposition.statusOk, "Ca1 S1 O5.2 H2");
+		assertComposition("CaSO4.H2O", FormulaComposition.statusInvalidCharacter, "Ca1 S1 O4");
+	}
+
+	//parsing stops at a state in parentheses or a charge, an upper case symbol in parentheses is a group if it is an element
+	@Test
+	public void statesAndCharges()
+	{
+		assertComposition("H2O(l)", FormulaComposition.statusOk, "H2 O1");
+		assertComposition("NaCl(aq)", FormulaComposition.statusOk, "Na1 Cl1");
+		assertComposition("Fe(s)", FormulaComposition.statusOk, "Fe1");
+		assertComposition("Fe(S)", FormulaComposition.statusOk, "Fe1 S1");
+		assertComposition("H2O(G)", FormulaComposition.statusOk, "H2 O1");
+		assertComposition("Fe(OH)3", FormulaComposition.statusOk, "Fe1 O3 H3");
+		assertComposition("CO3-2", FormulaComposition.statusOk, "C1 O3");
+		assertComposition("NH4+", FormulaComposition.statusOk, "N1 H4");
+		assertComposition("H2O!", FormulaComposition.statusInvalidCharacter, "H2 O1");
+	}
+
+	//unknown symbols are counted as ash, a two-letter symbol needs a lower case second letter
+	@Test
+	public void unknownElements()
+	{
+		assertComposition("CQ2", FormulaComposition.statusUnknownElement, "C1 Ah2");
+		assertComposition("SI", FormulaComposition.statusOk, "S1 I1");
+		assertComposition("Si", FormulaComposition.statusOk, "Si1");
+	}
+
+	@Test
+	public void molecularWeight()
+	{
+		assertEquals(2*FormulaComposition.getAtomicMass(1) + FormulaComposition.getAtomicMass(8), FormulaComposition.of("H2O").getMolecularWeight(), 1e-12);
+		assertEquals(FormulaComposition.of("CaSO4*2H2O").getMolecularWeight(), FormulaComposition.of("CaSO4(H2O)2").getMolecularWeight(), 1e-12);
+	}
+
+	//species with the same formula share one composition
+	@Test
+	public void compositionsAreShared()
+	{
+		FormulaComposition c = FormulaComposition.of("CH4");
+		assertSame(c, FormulaComposition.of(new String("CH4")));
+		assertSame(c, new Species("methane", "CH4").getComposition());
+		assertNotSame(c, FormulaComposition.of("C2H6"));
+	}
+
+	//every formula of examples/boiler.json has its baseline composition
+	@Test
+	public void boilerFormulas() throws IOException
+	{
+		int i;
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		StringBuilder sb = new StringBuilder();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(new File(examples, "boiler.json")), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line=in.readLine())!=null)
+				sb.append(line).append('\n');
+		}
+		finally
+		{
+			in.close();
+		}
+		Set<String> formulas = new TreeSet<String>();
+		Matcher m = Pattern.compile("\"formula\"\\s*:\\s*\"([^\"]*)\"").matcher(sb);
+		while (m.find())
+			formulas.add(m.group(1));
+		Set<String> expected = new TreeSet<String>();
+		for (i=0; i<boilerFormulas.length; i++)
+		{
+			expected.add(boilerFormulas[i][0]);
+			assertComposition(boilerFormulas[i][0], FormulaComposition.statusOk, boilerFormulas[i][1]);
+		}
+		assertEquals(expected, formulas);
+	}
+}
@@ -0,0 +1,426 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the Kriging predictor on models fitted by KrigingTrainer to smooth functions of three inputs with different scales
+ * The models are created with a fixed theta, so they do not depend on the optimization of the trainer.
+ * The kriging_native_*.model files are written by CKriging::Write() of the native code with kriging_native.cpp,
+ * which also writes the predictions of CKriging::Interpolate() at test points to the kriging_native_*.predict files.
+ */
+public class KrigingModelTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//number of inputs, outputs and design sites
+	private static final int nx = 3;
+	private static final int ny = 2;
+	private static final int nds = 40;
+
+	//ln(theta) of the normalized inputs of every model
+	private static final double lnTheta = -0.5;
+
+	//lower bounds and ranges of the inputs
+	private static final double[] xLower = {0, -1, 10};
+	private static final double[] xRange = {2, 2, 10};
+
+	private static double[] xDesign;
+	private static double[] yDesign;
+
+	@BeforeClass
+	public static void createDesignSites()
+	{
+		xDesign = randomPoints(nds, 1);
+		yDesign = new double[nds*ny];
+		calcFunction(xDesign, yDesign, nds);
+	}
+
+	//native model fixtures, regression option, correlation option and ln(theta) of kriging_native.cpp
+	private static final double[][] nativeModels = {{1, 0, -0.5}, {2, 3, -1}};
+
+	//number of design sites of the native models
+	private static final int ndsNative = 20;
+
+	//fractional parts of the square roots of 2, 3 and 5 of the points of kriging_native.cpp
+	private static final double[] alpha = {0.41421356237309515, 0.7320508075688772, 0.2360679774997898};
+
+	//point i of kriging_native.cpp, fractional parts of multiples of alpha in the input ranges
+	private static void calcNativePoint(int i, double[] x, int offset)
+	{
+		int k;
+		double t;
+		for (k=0; k<nx; k++)
+		{
+			t = (i + 1)*alpha[k];
+			x[offset+k] = xLower[k] + xRange[k]*(t - Math.floor(t));
+		}
+	}
+
+	private static String getNativeFileName(double[] m, String extension) throws IOException
+	{
+		String name = "kriging_native_" + (int)m[0] + "_" + (int)m[1] + extension;
+		URL url = KrigingModelTest.class.getResource(name);
+		assertNotNull("Missing test data " + name, url);
+		try
+		{
+			return new File(url.toURI()).getPath();
+		}
+		catch(URISyntaxException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	//nPoint random points in the input ranges, nPoint by nx
+	static double[] randomPoints(int nPoint, long seed)
+	{
+		int i, k;
+		Random random = new Random(seed);
+		double[] x = new double[nPoint*nx];
+		for (i=0; i<nPoint; i++)
+		{
+			for (k=0; k<nx; k++)
+				x[i*nx+k] = xLower[k] + xRange[k]*random.nextDouble();
+		}
+		return x;
+	}
+
+	//outputs of the function fitted by the models
+	static void calcFunction(double[] x, double[] y, int nPoint)
+	{
+		int i;
+		double x0, x1, x2;
+		for (i=0; i<nPoint; i++)
+		{
+			x0 = x[i*nx];
+			x1 = x[i*nx+1];
+			x2 = x[i*nx+2];
+			y[i*ny] = Math.sin(x0)*x1 + 0.1*x2;
+			y[i*ny+1] = Math.exp(-x1*x1) + 0.01*x0*x2;
+		}
+	}
+
+	//model of the design sites with the regression and correlation options
+	static KrigingModel createModel(int iregression, int icorrelation)
+	{
+		double[] pln = new double[nx];
+		Arrays.fill(pln, lnTheta);
+		KrigingModel model = new KrigingTrainer(iregression, icorrelation, nx, ny, xDesign, yDesign).createModel(pln);
+		assertNotNull("regression " + iregression + " correlation " + icorrelation, model);
+		return model;
+	}
+
+	//the predictor interpolates the design sites for every correlation option
+	@Test
+	public void predictInterpolatesDesignSites()
+	{
+		int i, j, icorrelation;
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		for (icorrelation=KrigingModel.CORRELATION_GAUSS; icorrelation<=KrigingModel.CORRELATION_SPLINE; icorrelation++)
+		{
+			KrigingModel model = createModel(KrigingModel.REGRESSION_LINEAR, icorrelation);
+			for (i=0; i<nds; i++)
+			{
+				System.arraycopy(xDesign, i*nx, x, 0, nx);
+				model.predict(x, y);
+				for (j=0; j<ny; j++)
+					assertEquals("correlation " + icorrelation + " site " + i + " output " + j, yDesign[i*ny+j], y[j], 1e-6);
+			}
+		}
+	}
+
+	//the batch prediction gives the points of the single point prediction, for a number of points that is not a multiple of the block size
+	@Test
+	public void batchPredictMatchesPredict()
+	{
+		int i, j, iregression;
+		int nPoint = 75;
+		double[] xBatch = randomPoints(nPoint, 2);
+		double[] yBatch = new double[nPoint*ny];
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		for (iregression=KrigingModel.REGRESSION_CONSTANT; iregression<=KrigingModel.REGRESSION_QUADRATIC; iregression++)
+		{
+			KrigingModel model = createModel(iregression, KrigingModel.CORRELATION_GAUSS);
+			model.predict(xBatch, yBatch, nPoint);
+			for (i=0; i<nPoint; i++)
+			{
+				System.arraycopy(xBatch, i*nx, x, 0, nx);
+				model.predict(x, y);
+				for (j=0; j<ny; j++)
+					assertEquals("regression " + iregression + " point " + i + " output " + j, y[j], yBatch[i*ny+j], 1e-12*Math.max(Math.abs(y[j]), 1));
+			}
+		}
+	}
+
+	//the analytic gradient matches the central differences of predict() between the design sites for every regression and correlation option
+	//the steps are small enough that no step crosses a kink of the exponential, linear or spherical correlations at these points
+	@Test
+	public void gradientMatchesFiniteDifferences()
+	{
+		int i, j, k, iregression, icorrelation;
+		int nPoint = 10;
+		double h;
+		double[] xTest = randomPoints(nPoint, 4);
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		double[] yGradient = new double[ny];
+		double[] yPlus = new double[ny];
+		double[] yMinus = new double[ny];
+		double[] dydx = new double[ny*nx];
+		double[] fd = new double[ny*nx];
+		for (iregression=KrigingModel.REGRESSION_CONSTANT; iregression<=KrigingModel.REGRESSION_QUADRATIC; iregression++)
+		{
+			for (icorrelation=KrigingModel.CORRELATION_GAUSS; icorrelation<=KrigingModel.CORRELATION_SPLINE; icorrelation++)
+			{
+				KrigingModel model = createModel(iregression, icorrelation);
+				for (i=0; i<nPoint; i++)
+				{
+					System.arraycopy(xTest, i*nx, x, 0, nx);
+					model.predict(x, y);
+					model.predictWithGradient(x, yGradient, dydx);
+					for (k=0; k<nx; k++)
+					{
+						h = 1e-6*xRange[k];
+						x[k] = xTest[i*nx+k] + h;
+						model.predict(x, yPlus);
+						x[k] = xTest[i*nx+k] - h;
+						model.predict(x, yMinus);
+						x[k] = xTest[i*nx+k];
+						for (j=0; j<ny; j++)
+							fd[j*nx+k] = (yPlus[j] - yMinus[j])/(2*h);
+					}
+					for (j=0; j<ny; j++)
+					{
+						assertEquals("regression " + iregression + " correlation " + icorrelation + " point " + i + " output " + j, y[j], yGradient[j], 0);
+						for (k=0; k<nx; k++)
+							assertEquals("regression " + iregression + " correlation " + icorrelation + " point " + i + " dy" + j + "/dx" + k,
+								fd[j*nx+k], dydx[j*nx+k], 1e-6*Math.max(Math.abs(fd[j*nx+k]), 1));
+					}
+				}
+			}
+		}
+	}
+
+	//standard deviation of input k of n points, as the normalization of KrigingTrainer
+	private static double calcSigma(double[] x, int n, int k)
+	{
+		int i;
+		double d;
+		double mean = 0;
+		double sum = 0;
+		for (i=0; i<n; i++)
+			mean += x[i*nx+k];
+		mean /= n;
+		for (i=0; i<n; i++)
+		{
+			d = x[i*nx+k] - mean;
+			sum += d*d;
+		}
+		return Math.sqrt(sum/(n-1));
+	}
+
+	//the closed-form residuals match the residuals of models refitted without each design site for every regression and correlation option
+	//the refit normalizes the inputs again, so its ln(theta) is shifted to keep the correlations of the unnormalized inputs unchanged,
+	//the Gaussian correlation is a function of theta*dx^2 and the others of theta*|dx|
+	@Test
+	public void crossValidateMatchesRefit()
+	{
+		int i, j, k, iregression, icorrelation;
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		double[] xRefit = new double[(nds-1)*nx];
+		double[] yRefit = new double[(nds-1)*ny];
+		double[] pln = new double[nx];
+		double[] sigma = new double[nx];
+		for (k=0; k<nx; k++)
+			sigma[k] = calcSigma(xDesign, nds, k);
+		for (iregression=KrigingModel.REGRESSION_CONSTANT; iregression<=KrigingModel.REGRESSION_QUADRATIC; iregression++)
+		{
+			for (icorrelation=KrigingModel.CORRELATION_GAUSS; icorrelation<=KrigingModel.CORRELATION_SPLINE; icorrelation++)
+			{
+				KrigingCrossValidation cv = createModel(iregression, icorrelation).crossValidate();
+				double[] variance = cv.getVariances();
+				assertEquals(nds, cv.getNumberOfDesignSites());
+				assertEquals(ny, cv.getNumberOfOutputs());
+				for (i=0; i<nds; i++)
+				{
+					//design sites without site i
+					System.arraycopy(xDesign, 0, xRefit, 0, i*nx);
+					System.arraycopy(xDesign, (i+1)*nx, xRefit, i*nx, (nds-1-i)*nx);
+					System.arraycopy(yDesign, 0, yRefit, 0, i*ny);
+					System.arraycopy(yDesign, (i+1)*ny, yRefit, i*ny, (nds-1-i)*ny);
+					for (k=0; k<nx; k++)
+						pln[k] = lnTheta + (icorrelation==KrigingModel.CORRELATION_GAUSS ? 2 : 1)*Math.log(calcSigma(xRefit, nds-1, k)/sigma[k]);
+					KrigingModel refit = new KrigingTrainer(iregression, icorrelation, nx, ny, xRefit, yRefit).createModel(pln);
+					assertNotNull("regression " + iregression + " correlation " + icorrelation + " site " + i, refit);
+					System.arraycopy(xDesign, i*nx, x, 0, nx);
+					refit.predict(x, y);
+					for (j=0; j<ny; j++)
+					{
+						assertEquals("regression " + iregression + " correlation " + icorrelation + " site " + i + " output " + j,
+							yDesign[i*ny+j] - y[j], cv.getResidual(i, j), 1e-6);
+						assertTrue(variance[i*ny+j]>0);
+					}
+				}
+			}
+		}
+	}
+
+	//the error estimate gives the prediction of predict(), is zero at the design sites and positive between them
+	@Test
+	public void errorEstimateVanishesAtDesignSites()
+	{
+		int i, j;
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		double[] yEstimate = new double[ny];
+		double[] e = new double[ny];
+		double[] xTest = randomPoints(10, 3);
+		KrigingModel model = createModel(KrigingModel.REGRESSION_LINEAR, KrigingModel.CORRELATION_GAUSS);
+		for (i=0; i<nds; i++)
+		{
+			System.arraycopy(xDesign, i*nx, x, 0, nx);
+			model.predictWithErrorEstimate(x, yEstimate, e);
+			for (j=0; j<ny; j++)
+				assertEquals("site " + i + " output " + j, 0, e[j], 1e-4);
+		}
+		for (i=0; i<10; i++)
+		{
+			System.arraycopy(xTest, i*nx, x, 0, nx);
+			model.predict(x, y);
+			model.predictWithErrorEstimate(x, yEstimate, e);
+			for (j=0; j<ny; j++)
+			{
+				assertEquals("point " + i + " output " + j, y[j], yEstimate[j], 0);
+				assertTrue("point " + i + " output " + j, e[j]>0);
+			}
+		}
+	}
+
+	//a model written by the native code predicts the values of CKriging::Interpolate() and the model fitted in Java to the same design sites
+	@Test
+	public void readNativeModel() throws IOException
+	{
+		int i, j, k;
+		double[] x = new double[nx];
+		double[] y = new double[ny];
+		double[] yJava = new double[ny];
+		double[] xNative = new double[ndsNative*nx];
+		double[] yNative = new double[ndsNative*ny];
+		double[] pln = new double[nx];
+		for (i=0; i<ndsNative; i++)
+			calcNativePoint(i, xNative, i*nx);
+		calcFunction(xNative, yNative, ndsNative);
+		for (double[] m : nativeModels)
+		{
+			String message = "regression " + (int)m[0] + " correlation " + (int)m[1];
+			KrigingModel model = KrigingModel.read(getNativeFileName(m, ".model"));
+			assertEquals(message, (int)m[0], model.getRegressionOption());
+			assertEquals(message, (int)m[1], model.getCorrelationOption());
+			assertEquals(message, nx, model.getNumberOfInputs());
+			assertEquals(message, ny, model.getNumberOfOutputs());
+			assertEquals(message, ndsNative, model.getNumberOfDesignSites());
+			for (k=0; k<nx; k++)
+				assertEquals(message + " theta " + k, Math.exp(m[2]), model.getTheta()[k], 1e-15);
+			Arrays.fill(pln, m[2]);
+			KrigingModel javaModel = new KrigingTrainer((int)m[0], (int)m[1], nx, ny, xNative, yNative).createModel(pln);
+			assertNotNull(message, javaModel);
+			assertEquals(message, model.getDetR1m(), javaModel.getDetR1m(), 1e-9*model.getDetR1m());
+			BufferedReader in = new BufferedReader(new FileReader(getNativeFileName(m, ".predict")));
+			try
+			{
+				String line;
+				int nPoint = 0;
+				while ((line=in.readLine())!=null)
+				{
+					String[] items = line.trim().split("\\s+");
+					assertEquals(nx+ny, items.length);
+					for (k=0; k<nx; k++)
+						x[k] = Double.parseDouble(items[k]);
+					model.predict(x, y);
+					javaModel.predict(x, yJava);
+					for (j=0; j<ny; j++)
+					{
+						double expected = Double.parseDouble(items[nx+j]);
+						assertEquals(message + " point " + nPoint + " output " + j, expected, y[j], 1e-12*Math.max(Math.abs(expected), 1));
+						assertEquals(message + " point " + nPoint + " output " + j, expected, yJava[j], 1e-9*Math.max(Math.abs(expected), 1));
+					}
+					nPoint++;
+				}
+				assertEquals(10, nPoint);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	//a truncated model file is reported as the end of the file, a file of the other byte order as invalid data
+	@Test
+	public void readRejectsInvalidFiles() throws IOException
+	{
+		byte[] data;
+		String fileName = getNativeFileName(nativeModels[0], ".model");
+		RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		try
+		{
+			data = new byte[(int)raf.length()];
+			raf.readFully(data);
+		}
+		finally
+		{
+			raf.close();
+		}
+		File truncated = new File(folder.getRoot(), "truncated.model");
+		for (int length : new int[]{0, 10, 37, data.length/2, data.length-1})
+		{
+			OutputStream out = new FileOutputStream(truncated);
+			try
+			{
+				out.write(data, 0, length);
+			}
+			finally
+			{
+				out.close();
+			}
+			try
+			{
+				KrigingModel.read(truncated.getPath());
+				fail("Model truncated to " + length + " bytes was read");
+			}
+			catch(EOFException e)
+			{
+				assertTrue(e.getMessage(), e.getMessage().endsWith("is truncated"));
+			}
+		}
+		try
+		{
+			KrigingModel.read(fileName, ByteOrder.BIG_ENDIAN);
+			fail("Model was read in the wrong byte order");
+		}
+		catch(EOFException e)
+		{
+			fail("Model in the wrong byte order was reported as truncated");
+		}
+		catch(IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid Kriging"));
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the optimization of ln(theta) by KrigingTrainer.train() on the design sites of KrigingModelTest
+ * The trainings use a few starts, so they test the limits, the rounds of starts and the objective options rather than the fitted models.
+ */
+public class KrigingTrainerTest
+{
+	//number of inputs, outputs and design sites
+	private static final int nx = 3;
+	private static final int ny = 2;
+	private static final int nds = 30;
+
+	private static double[] xDesign;
+	private static double[] yDesign;
+
+	@BeforeClass
+	public static void createDesignSites()
+	{
+		xDesign = KrigingModelTest.randomPoints(nds, 5);
+		yDesign = new double[nds*ny];
+		KrigingModelTest.calcFunction(xDesign, yDesign, nds);
+	}
+
+	private static KrigingTrainer createTrainer(int icorrelation)
+	{
+		KrigingTrainer trainer = new KrigingTrainer(KrigingModel.REGRESSION_LINEAR, icorrelation, nx, ny, xDesign, yDesign);
+		trainer.setNumberOfStarts(6);
+		trainer.setNumberOfStartsPerRound(3);
+		trainer.setSeed(7);
+		return trainer;
+	}
+
+	//the best ln(theta) is the ln(theta) of the model and the objective is the objective function at it
+	private static void assertTrained(String message, KrigingTrainer trainer, KrigingModel model)
+	{
+		int k;
+		assertNotNull(message, model);
+		double[] pln = trainer.getBestLnTheta();
+		double[] theta = model.getTheta();
+		assertEquals(message, nx, pln.length);
+		for (k=0; k<nx; k++)
+			assertEquals(message + " theta " + k, Math.exp(pln[k]), theta[k], 1e-12*theta[k]);
+		assertEquals(message, trainer.calcObjectiveFunction(pln), trainer.getBestObjective(), 0);
+	}
+
+	//ln(theta) stays in limits that do not contain the first start at zero or its initial simplex
+	@Test
+	public void lnThetaStaysWithinLimits()
+	{
+		int k;
+		double[][] limits = {{-3, 5}, {-2.5, -0.5}, {0.5, 1.2}, {-1, -1}};
+		for (double[] lim : limits)
+		{
+			String message = "limits " + lim[0] + " " + lim[1];
+			KrigingTrainer trainer = createTrainer(KrigingModel.CORRELATION_GAUSS);
+			trainer.setLnThetaLimits(lim[0], lim[1]);
+			KrigingModel model = trainer.train();
+			assertTrained(message, trainer, model);
+			double[] pln = trainer.getBestLnTheta();
+			for (k=0; k<nx; k++)
+				assertTrue(message + " ln(theta) " + pln[k], pln[k]>=lim[0] && pln[k]<=lim[1]);
+		}
+	}
+
+	//the result depends on the seed and the rounds of starts but not on the number of threads
+	@Test
+	public void resultDoesNotDependOnPool()
+	{
+		int k, nThread;
+		double[] pln = null;
+		double objective = 0;
+		int nStartRun = 0;
+		for (nThread=1; nThread<=4; nThread*=2)
+		{
+			ForkJoinPool pool = new ForkJoinPool(nThread);
+			try
+			{
+				KrigingTrainer trainer = createTrainer(KrigingModel.CORRELATION_GAUSS);
+				trainer.setPool(pool);
+				assertTrained("threads " + nThread, trainer, trainer.train());
+				if (pln==null)
+				{
+					pln = trainer.getBestLnTheta();
+					objective = trainer.getBestObjective();
+					nStartRun = trainer.getNumberOfStartsRun();
+					continue;
+				}
+				for (k=0; k<nx; k++)
+					assertEquals("threads " + nThread + " ln(theta) " + k, pln[k], trainer.getBestLnTheta()[k], 0);
+				assertEquals("threads " + nThread, objective, trainer.getBestObjective(), 0);
+				assertEquals("threads " + nThread, nStartRun, trainer.getNumberOfStartsRun());
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	//the remaining rounds are skipped once enough starts agree, and all starts run if the number of converged starts is 0
+	@Test
+	public void convergedStartsSkipRounds()
+	{
+		KrigingTrainer trainer = createTrainer(KrigingModel.CORRELATION_GAUSS);
+		trainer.setNumberOfConvergedStarts(0);
+		trainer.train();
+		assertEquals(6, trainer.getNumberOfStartsRun());
+		trainer.setNumberOfConvergedStarts(1);
+		trainer.train();
+		assertEquals(3, trainer.getNumberOfStartsRun());
+	}
+
+	//the cross-validation objective gives a model whose mean square leave-one-out error of the normalized outputs is the objective,
+	//no larger than at the first start
+	@Test
+	public void crossValidationObjectiveReturnsModel()
+	{
+		int i, j;
+		double sigma, e;
+		double[] y = new double[nds];
+		for (int icorrelation : new int[]{KrigingModel.CORRELATION_GAUSS, KrigingModel.CORRELATION_EXPONENTIAL})
+		{
+			String message = "correlation " + icorrelation;
+			KrigingTrainer trainer = createTrainer(icorrelation);
+			trainer.setObjectiveOption(KrigingTrainer.OBJECTIVE_CROSS_VALIDATION);
+			KrigingModel model = trainer.train();
+			assertTrained(message, trainer, model);
+			assertTrue(message, trainer.getBestObjective()<=trainer.calcObjectiveFunction(new double[nx]));
+			KrigingCrossValidation cv = model.crossValidate();
+			double mse = 0;
+			for (j=0; j<ny; j++)
+			{
+				for (i=0; i<nds; i++)
+					y[i] = yDesign[i*ny+j];
+				sigma = calcSigma(y);
+				for (i=0; i<nds; i++)
+				{
+					e = cv.getResidual(i, j)/sigma;
+					mse += e*e;
+				}
+			}
+			assertEquals(message, trainer.getBestObjective(), mse/nds, 1e-9*mse/nds);
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void invalidObjectiveOption()
+	{
+		createTrainer(KrigingModel.CORRELATION_GAUSS).setObjectiveOption(2);
+	}
+
+	//sample standard deviation, as the normalization of KrigingTrainer
+	private static double calcSigma(double[] v)
+	{
+		int i;
+		double d;
+		double mean = 0;
+		double sum = 0;
+		for (i=0; i<v.length; i++)
+			mean += v[i];
+		mean /= v.length;
+		for (i=0; i<v.length; i++)
+		{
+			d = v[i] - mean;
+			sum += d*d;
+		}
+		return Math.sqrt(sum/(v.length-1));
+	}
+}
@@ -0,0 +1,162 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests of the designs of LatinHypercubeSampler: the Latin hypercube property, the independence of the number of threads
+ * and the improvement of the random Latin hypercubes by the exchanges
+ */
+public class LatinHypercubeSamplerTest
+{
+	//each column of the grid indices is a permutation of 0 to nPoint-1
+	private static void assertLatinHypercube(String message, int[] g, int nPoint, int nDim)
+	{
+		int i, k;
+		assertEquals(message, nPoint*nDim, g.length);
+		for (k=0; k<nDim; k++)
+		{
+			boolean[] bUsed = new boolean[nPoint];
+			for (i=0; i<nPoint; i++)
+			{
+				int j = g[i*nDim+k];
+				assertTrue(message + " point " + i + " dimension " + k + " index " + j, j>=0 && j<nPoint && !bUsed[j]);
+				bUsed[j] = true;
+			}
+		}
+	}
+
+	@Test
+	public void columnsArePermutationsOfTheGrid()
+	{
+		int i, k;
+		int[][] sizes = {{1, 3}, {2, 2}, {3, 1}, {37, 4}, {100, 6}};
+		double[] lo = {-1, 0, 10, 5, -3, 0};
+		double[] up = {1, 1, 20, 5, -2, 1e6};
+		for (int criterion=LatinHypercubeSampler.CRITERION_MAXIMIN; criterion<=LatinHypercubeSampler.CRITERION_PHI_P; criterion++)
+		{
+			for (int[] s : sizes)
+			{
+				int nPoint = s[0];
+				int nDim = s[1];
+				String message = "criterion " + criterion + " points " + nPoint + " dimensions " + nDim;
+				LatinHypercubeSampler lhs = new LatinHypercubeSampler(Arrays.copyOf(lo, nDim), Arrays.copyOf(up, nDim), nPoint);
+				lhs.setCriterion(criterion);
+				lhs.setNumberOfStarts(3);
+				int[] g = lhs.sampleGrid();
+				assertLatinHypercube(message, g, nPoint, nDim);
+				//the points of the same seed are the grid values of the grid indices, the grid is the same as CLHS
+				double[] x = lhs.sample();
+				for (i=0; i<nPoint; i++)
+				{
+					for (k=0; k<nDim; k++)
+					{
+						double expected = nPoint>1 ? lo[k] + (up[k] - lo[k])/(nPoint-1)*g[i*nDim+k] : lo[k];
+						assertEquals(message + " point " + i + " dimension " + k, expected, x[i*nDim+k], 0);
+					}
+				}
+			}
+		}
+	}
+
+	//the design depends on the seed only, for pools of different sizes and for a design large enough to split the sums of the exchanges
+	@Test
+	public void sameSeedGivesSameDesignForAnyPool()
+	{
+		int nThread;
+		int[][] sizes = {{60, 3, -1, 4}, {8500, 4, 200, 2}};
+		for (int[] s : sizes)
+		{
+			int[] g = null;
+			for (nThread=1; nThread<=4; nThread*=2)
+			{
+				ForkJoinPool pool = new ForkJoinPool(nThread);
+				try
+				{
+					double[] lo = new double[s[1]];
+					double[] up = new double[s[1]];
+					Arrays.fill(up, 1);
+					LatinHypercubeSampler lhs = new LatinHypercubeSampler(lo, up, s[0]);
+					lhs.setNumberOfStarts(s[3]);
+					lhs.setNumberOfExchanges(s[2]);
+					lhs.setSeed(17);
+					lhs.setPool(pool);
+					int[] gPool = lhs.sampleGrid();
+					if (g==null)
+					{
+						g = gPool;
+						assertLatinHypercube("points " + s[0], g, s[0], s[1]);
+						lhs.setSeed(18);
+						assertFalse(s[0]<1000 && Arrays.equals(g, lhs.sampleGrid()));
+					}
+					else
+						assertArrayEquals("points " + s[0] + " threads " + nThread, g, gPool);
+				}
+				finally
+				{
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	//the exchanges improve the random Latin hypercubes of the same starts, the first random permutations of a start do not
+	//depend on the number of exchanges
+	@Test
+	public void exchangesImproveRandomDesign()
+	{
+		int[][] sizes = {{20, 2}, {40, 3}, {100, 5}};
+		for (int[] s : sizes)
+		{
+			String message = "points " + s[0] + " dimensions " + s[1];
+			LatinHypercubeSampler lhs = new LatinHypercubeSampler(new double[s[1]], new double[s[1]], s[0]);
+			lhs.setNumberOfStarts(4);
+			lhs.setNumberOfExchanges(0);
+			int[] gRandom = lhs.sampleGrid();
+			lhs.setNumberOfExchanges(-1);
+			assertEquals(LatinHypercubeSampler.exchangesPerValue*s[0]*s[1], lhs.getNumberOfExchanges());
+			int[] g = lhs.sampleGrid();
+			assertLatinHypercube(message, g, s[0], s[1]);
+			assertTrue(message, lhs.getMinimumSquaredDistance(g)>lhs.getMinimumSquaredDistance(gRandom));
+			lhs.setCriterion(LatinHypercubeSampler.CRITERION_PHI_P);
+			lhs.setNumberOfExchanges(0);
+			gRandom = lhs.sampleGrid();
+			lhs.setNumberOfExchanges(-1);
+			g = lhs.sampleGrid();
+			assertTrue(message, lhs.getPhi(g)<lhs.getPhi(gRandom));
+		}
+	}
+
+	//the ranges of a setup are the limits of its ROM input parameters
+	@Test
+	public void samplesRomInputRanges()
+	{
+		int i, k;
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		UnitOperation uo = new UnitOperation();
+		uo.readUserJsonFile(new File(examples, "boiler.json").getPath());
+		List<Parameter> inputs = uo.getRomInputVector();
+		int nDim = inputs.size();
+		LatinHypercubeSampler lhs = new LatinHypercubeSampler(uo, 11);
+		assertEquals(nDim, lhs.getNumberOfDimensions());
+		double[] x = lhs.sample();
+		for (k=0; k<nDim; k++)
+		{
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for (i=0; i<11; i++)
+			{
+				min = Math.min(min, x[i*nDim+k]);
+				max = Math.max(max, x[i*nDim+k]);
+			}
+			assertEquals("dimension " + k, inputs.get(k).getMinValue(), min, 0);
+			assertEquals("dimension " + k, inputs.get(k).getMaxValue(), max, 1e-12*Math.abs(inputs.get(k).getMaxValue()));
+		}
+	}
+}
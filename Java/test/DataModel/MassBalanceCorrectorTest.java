@@ -0,0 +1,320 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Regression tests of the mass balance correction of examples/boiler.json against the -b output of the baseline code
+ * The cases are the samples of examples/iRevealLite.csv and noisy copies of them, some with negative or zero product flows.
+ * boiler_baseline.output is the corrected vector file written by the -b option of the code before MassBalanceCorrector for these cases.
+ */
+public class MassBalanceCorrectorTest
+{
+	//number of noisy copies of each sample
+	private static final int nNoisyCase = 4;
+
+	//relative tolerance of the double corrector against the float values of the baseline
+	private static final double tolerance = 1e-5;
+
+	private static UnitOperation uo;
+	private static int nInput;
+	private static int nOutput;
+	private static float[][] cases;
+	private static float[][] expected;
+
+	@BeforeClass
+	public static void loadCases() throws IOException
+	{
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		uo = new UnitOperation();
+		uo.readUserJsonFile(new File(examples, "boiler.json").getPath());
+		uo.updateAllSpeciesList();
+		nInput = uo.getRomInputVector().size();
+		nOutput = uo.getYromOutputVector().size();
+		cases = createCases(new File(examples, "iRevealLite.csv").getPath(), nInput);
+		expected = readVectors(MassBalanceCorrectorTest.class.getResourceAsStream("boiler_baseline.output"));
+	}
+
+	//samples of a csv file followed by nNoisyCase noisy copies of each sample, the noise of a copy grows with its index
+	//the first output of every third copy is negated and the second output of every fifth copy is zeroed
+	//the values are rounded to float as the -b option reads them
+	static float[][] createCases(String csvFileName, int nInput) throws IOException
+	{
+		int i, j, k;
+		List<double[]> samples = new ArrayList<double[]>();
+		BufferedReader in = new BufferedReader(new FileReader(csvFileName));
+		try
+		{
+			String line;
+			in.readLine();
+			in.readLine();
+			while ((line=in.readLine())!=null)
+			{
+				if (line.trim().length()==0)
+					continue;
+				String[] items = line.split(",");
+				double[] v = new double[items.length-1];
+				for (i=0; i<v.length; i++)
+					v[i] = Double.parseDouble(items[i+1]);
+				samples.add(v);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		List<float[]> list = new ArrayList<float[]>();
+		for (k=0; k<samples.size(); k++)
+		{
+			double[] sample = samples.get(k);
+			list.add(toFloat(sample));
+			double[][] noisy = TopologyGenerator.createNoisyCases(sample, nInput, nNoisyCase, 0.1*(k%4+1), k);
+			for (i=0; i<nNoisyCase; i++)
+			{
+				j = k*nNoisyCase + i;
+				if (j%3==0)
+					noisy[i][nInput+1] = -noisy[i][nInput+1];
+				if (j%5==0)
+					noisy[i][nInput+2] = 0;
+				list.add(toFloat(noisy[i]));
+			}
+		}
+		return list.toArray(new float[list.size()][]);
+	}
+
+	private static float[] toFloat(double[] v)
+	{
+		int i;
+		float[] f = new float[v.length];
+		for (i=0; i<v.length; i++)
+			f[i] = (float)v[i];
+		return f;
+	}
+
+	//vectors of a text vector file without header, one case per line
+	static float[][] readVectors(InputStream is) throws IOException
+	{
+		int i;
+		assertNotNull("Missing test data", is);
+		List<float[]> list = new ArrayList<float[]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		try
+		{
+			String line;
+			while ((line=in.readLine())!=null)
+			{
+				line = line.trim();
+				if (line.length()==0)
+					continue;
+				String[] items = line.split("\\s+");
+				float[] v = new float[items.length];
+				for (i=0; i<v.length; i++)
+					v[i] = Float.parseFloat(items[i]);
+				list.add(v);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return list.toArray(new float[list.size()][]);
+	}
+
+	private static void assertClose(String message, double expectedValue, double actualValue)
+	{
+		assertEquals(message, expectedValue, actualValue, tolerance*Math.max(Math.abs(expectedValue), 1e-30));
+	}
+
+	@Test
+	public void casesMatchBaselineFile()
+	{
+		assertEquals(cases.length, expected.length);
+		assertEquals(nInput+nOutput, expected[0].length);
+	}
+
+	//the -b path through UnitOperation, which rounds the corrected vector to float as the baseline
+	@Test
+	public void correctCaseVectorMatchesBaseline()
+	{
+		int i, j;
+		for (i=0; i<cases.length; i++)
+		{
+			float[] v = cases[i].clone();
+			uo.correctCaseVector(v);
+			for (j=0; j<v.length; j++)
+				assertClose("case " + i + " value " + j, expected[i][j], v[j]);
+		}
+	}
+
+	@Test
+	public void correctorMatchesBaseline()
+	{
+		int i, j;
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		for (i=0; i<cases.length; i++)
+		{
+			for (j=0; j<nInput; j++)
+				x[j] = cases[i][j];
+			for (j=0; j<nOutput; j++)
+				y[j] = cases[i][nInput+j];
+			assertEquals("case " + i, MassBalanceCorrector.SUCCESS, mbc.correct(x, y, y));
+			for (j=0; j<nOutput; j++)
+				assertClose("case " + i + " output " + j, expected[i][nInput+j], y[j]);
+		}
+	}
+
+	//input and output vectors of case i
+	private static void getCase(int i, double[] x, double[] y)
+	{
+		int j;
+		for (j=0; j<nInput; j++)
+			x[j] = cases[i][j];
+		for (j=0; j<nOutput; j++)
+			y[j] = cases[i][nInput+j];
+	}
+
+	//derivatives of the corrected outputs to output k (k<nOutput) or input k-nOutput by differences of corrections at v+h and v-h,
+	//a forward difference if bCentral is false
+	private static void calcDifferences(MassBalanceCorrector mbc, double[] x, double[] y, int k, double h, boolean bCentral, double[] dy)
+	{
+		int j;
+		double[] xPlus = x.clone();
+		double[] yPlus = y.clone();
+		double[] xMinus = x.clone();
+		double[] yMinus = y.clone();
+		if (k<nOutput)
+		{
+			yPlus[k] += h;
+			if (bCentral)
+				yMinus[k] -= h;
+		}
+		else
+		{
+			xPlus[k-nOutput] += h;
+			if (bCentral)
+				xMinus[k-nOutput] -= h;
+		}
+		assertEquals(MassBalanceCorrector.SUCCESS, mbc.correct(xPlus, yPlus, yPlus));
+		assertEquals(MassBalanceCorrector.SUCCESS, mbc.correct(xMinus, yMinus, yMinus));
+		for (j=0; j<nOutput; j++)
+			dy[j] = (yPlus[j] - yMinus[j])/(bCentral ? 2*h : h);
+	}
+
+	//the analytic Jacobian matches central differences of the correction for outputs and inputs that are not zero,
+	//the steps are relative to the values, so no step crosses the reflection of a flow at zero, and large enough for the rounding of the solver,
+	//the cases with a reflected flow have ill-conditioned normal equations, whose rounding needs larger steps and a looser tolerance
+	@Test
+	public void jacobianMatchesCentralDifferences()
+	{
+		int i, j, k;
+		double v;
+		boolean bIllConditioned;
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		double[] yCorrected = new double[nOutput];
+		double[] dydy = new double[nOutput*nOutput];
+		double[] dydx = new double[nOutput*nInput];
+		double[] dy = new double[nOutput];
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		int nIllConditioned = 0;
+		for (i=0; i<cases.length; i++)
+		{
+			getCase(i, x, y);
+			assertEquals("case " + i, MassBalanceCorrector.SUCCESS, mbc.correctWithJacobian(x, y, yCorrected, dydy, dydx));
+			bIllConditioned = mbc.getLastSolverDiagnostic().getMinRelativePivot()<1e-3;
+			if (bIllConditioned)
+				nIllConditioned++;
+			for (k=0; k<nOutput+nInput; k++)
+			{
+				v = k<nOutput ? y[k] : x[k-nOutput];
+				if (v==0)
+					continue;
+				calcDifferences(mbc, x, y, k, (bIllConditioned ? 3e-2 : 1e-3)*Math.abs(v), true, dy);
+				for (j=0; j<nOutput; j++)
+				{
+					double d = k<nOutput ? dydy[j*nOutput+k] : dydx[j*nInput+k-nOutput];
+					assertEquals("case " + i + " output " + j + " direction " + k, dy[j], d, (bIllConditioned ? 5e-3 : 1e-5)*Math.max(Math.abs(dy[j]), 1));
+				}
+			}
+		}
+		assertTrue(nIllConditioned>0 && nIllConditioned<cases.length);
+	}
+
+	//at a zero flow the Jacobian is one-sided: the moisture of the coal is zero in every case and its species H2O has other flows,
+	//so its derivatives are those of the non-negative side, while N2 has no other flow, so a zero N2 flow stays out of the correction
+	@Test
+	public void jacobianAtZeroFlowIsOneSided()
+	{
+		int i, j;
+		int iMoisture = 16;
+		int iN2 = 2;
+		double[] x = new double[nInput];
+		double[] y = new double[nOutput];
+		double[] yCorrected = new double[nOutput];
+		double[] dydy = new double[nOutput*nOutput];
+		double[] dydx = new double[nOutput*nInput];
+		double[] dy = new double[nOutput];
+		assertEquals("moisture", uo.getYromOutputVector().get(iMoisture).getName());
+		assertEquals("N2_MassFlow", uo.getYromOutputVector().get(iN2).getName());
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		int nZeroN2 = 0;
+		for (i=0; i<cases.length; i++)
+		{
+			getCase(i, x, y);
+			assertEquals(0, y[iMoisture], 0);
+			assertEquals("case " + i, MassBalanceCorrector.SUCCESS, mbc.correctWithJacobian(x, y, yCorrected, dydy, dydx));
+			calcDifferences(mbc, x, y, iMoisture, 1e-5, false, dy);
+			for (j=0; j<nOutput; j++)
+				assertEquals("case " + i + " output " + j, dy[j], dydy[j*nOutput+iMoisture], 1e-4*Math.max(Math.abs(dy[j]), 1));
+			if (y[iN2]!=0)
+				continue;
+			nZeroN2++;
+			for (j=0; j<nOutput; j++)
+				assertEquals("case " + i + " output " + j, j==iN2 ? 1 : 0, dydy[j*nOutput+iN2], 0);
+		}
+		assertTrue(nZeroN2>0);
+	}
+
+	//the block corrector gives the same vectors as the corrector, for blocks that split the cases at different points
+	@Test
+	public void blockCorrectorMatchesCorrector()
+	{
+		int i, j;
+		int nCase = cases.length;
+		double[] x = new double[nCase*nInput];
+		double[] y = new double[nCase*nOutput];
+		double[] yCorrected = new double[nCase*nOutput];
+		int[] status = new int[nCase];
+		for (i=0; i<nCase; i++)
+		{
+			for (j=0; j<nInput; j++)
+				x[i*nInput+j] = cases[i][j];
+			for (j=0; j<nOutput; j++)
+				y[i*nOutput+j] = cases[i][nInput+j];
+		}
+		MassBalanceCorrector mbc = new MassBalanceCorrector(uo);
+		double[] xCase = new double[nInput];
+		double[] yCase = new double[nOutput];
+		for (int nBlock : new int[]{1, 7, 64})
+		{
+			MassBalanceBlockCorrector mbbc = new MassBalanceBlockCorrector(new MassBalanceCorrector(uo), nBlock);
+			assertEquals(0, mbbc.correct(x, y, yCorrected, nCase, status));
+			for (i=0; i<nCase; i++)
+			{
+				System.arraycopy(x, i*nInput, xCase, 0, nInput);
+				System.arraycopy(y, i*nOutput, yCase, 0, nOutput);
+				assertEquals(mbc.correct(xCase, yCase, yCase), status[i]);
+				for (j=0; j<nOutput; j++)
+					assertEquals("block " + nBlock + " case " + i + " output " + j, yCase[j], yCorrected[i*nOutput+j], 0);
+			}
+		}
+	}
+}
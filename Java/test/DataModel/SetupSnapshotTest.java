@@ -0,0 +1,143 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round-trip tests of the setup snapshot of examples/boiler.json
+ * A setup read from its snapshot has to write the same JSON, have the same ROM vectors and correct the cases of MassBalanceCorrectorTest
+ * to the same values as the setup read from the JSON file.
+ */
+public class SetupSnapshotTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String jsonFileName;
+	private static float[][] cases;
+
+	@BeforeClass
+	public static void loadCases() throws IOException
+	{
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		jsonFileName = new File(examples, "boiler.json").getPath();
+		cases = MassBalanceCorrectorTest.createCases(new File(examples, "iRevealLite.csv").getPath(), readSetup().getRomInputVector().size());
+	}
+
+	//setup read from the JSON file, a new one for each use as correctCaseVector() changes the default values of the parameters
+	private static UnitOperation readSetup()
+	{
+		UnitOperation uo = new UnitOperation();
+		uo.readUserJsonFile(jsonFileName);
+		uo.updateAllSpeciesList();
+		return uo;
+	}
+
+	//cache directory of the system property, the tests start without one and set their own
+	private File savedCacheDirectory;
+
+	@Before
+	public void clearCacheDirectory()
+	{
+		savedCacheDirectory = SetupSnapshot.getCacheDirectory();
+		SetupSnapshot.setCacheDirectory(null);
+	}
+
+	@After
+	public void restoreCacheDirectory()
+	{
+		SetupSnapshot.setCacheDirectory(savedCacheDirectory);
+	}
+
+	private static String toJson(UnitOperation u) throws IOException
+	{
+		StringWriter w = new StringWriter();
+		SetupJsonWriter sw = new SetupJsonWriter(w, true);
+		sw.writeUnitOperation(u);
+		sw.flush();
+		return w.toString();
+	}
+
+	private static void assertSameNames(String message, List<Parameter> expected, List<Parameter> actual)
+	{
+		int i;
+		assertEquals(message, expected.size(), actual.size());
+		for (i=0; i<expected.size(); i++)
+			assertEquals(message + " " + i, expected.get(i).getName(), actual.get(i).getName());
+	}
+
+	//the setup of a snapshot is the same as the setup read from the JSON file
+	private static void assertSameSetup(UnitOperation actual) throws IOException
+	{
+		int i, j;
+		UnitOperation uo = readSetup();
+		assertNotNull(actual);
+		assertEquals(toJson(uo), toJson(actual));
+		assertSameNames("ROM input", uo.getRomInputVector(), actual.getRomInputVector());
+		assertSameNames("ROM output", uo.getYromOutputVector(), actual.getYromOutputVector());
+		for (i=0; i<cases.length; i++)
+		{
+			float[] v = cases[i].clone();
+			float[] vActual = cases[i].clone();
+			assertEquals("case " + i, uo.correctCaseVector(v), actual.correctCaseVector(vActual));
+			for (j=0; j<v.length; j++)
+				assertEquals("case " + i + " value " + j, v[j], vActual[j], 0);
+		}
+	}
+
+	@Test
+	public void readReturnsWrittenSetup() throws IOException
+	{
+		long hash = SetupSnapshot.hashFile(jsonFileName);
+		long length = new File(jsonFileName).length();
+		String snapshotFileName = new File(folder.getRoot(), "boiler.json" + SetupSnapshot.fileExtension).getPath();
+		SetupSnapshot.write(readSetup(), snapshotFileName, hash, length);
+		assertSameSetup(SetupSnapshot.read(snapshotFileName, hash, length));
+	}
+
+	//a snapshot of a different JSON content is not read
+	@Test
+	public void readIgnoresOtherJsonContent() throws IOException
+	{
+		long hash = SetupSnapshot.hashFile(jsonFileName);
+		long length = new File(jsonFileName).length();
+		String snapshotFileName = new File(folder.getRoot(), "boiler.json" + SetupSnapshot.fileExtension).getPath();
+		SetupSnapshot.write(readSetup(), snapshotFileName, hash, length);
+		assertNull(SetupSnapshot.read(snapshotFileName, hash+1, length));
+		assertNull(SetupSnapshot.read(snapshotFileName, hash, length+1));
+	}
+
+	//without a cache directory load() reads the JSON file and writes no snapshot
+	@Test
+	public void loadWithoutCacheDirectory() throws IOException
+	{
+		assertNull(SetupSnapshot.getSnapshotFileName(jsonFileName));
+		assertSameSetup(SetupSnapshot.load(jsonFileName));
+	}
+
+	//the first load() writes the snapshot to the cache directory and the second one reads it
+	@Test
+	public void loadWritesAndReadsSnapshot() throws IOException
+	{
+		File dir = new File(folder.getRoot(), "cache");
+		SetupSnapshot.setCacheDirectory(dir);
+		String snapshotFileName = SetupSnapshot.getSnapshotFileName(jsonFileName);
+		assertEquals(dir.getPath(), new File(snapshotFileName).getParent());
+		assertSameSetup(SetupSnapshot.load(jsonFileName));
+		File snapshot = new File(snapshotFileName);
+		assertTrue(snapshot.isFile());
+		long lastModified = snapshot.lastModified();
+		assertSameSetup(SetupSnapshot.load(jsonFileName));
+		assertEquals(lastModified, snapshot.lastModified());
+		assertEquals(1, dir.list().length);
+	}
+}
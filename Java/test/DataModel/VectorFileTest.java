@@ -0,0 +1,369 @@
+package DataModel;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the text vector files of the -b option read by VectorFileReader and written by VectorFileWriter
+ * The reader has to parse every number to the value of Float.parseFloat() and Double.parseDouble() used before it,
+ * and the writer has to write the bytes of PrintWriter.print(float) followed by a tab, so corrected files are the same as before.
+ */
+public class VectorFileTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String jsonFileName;
+	private static UnitOperation uo;
+	private static int nInput;
+	private static int nOutput;
+	private static float[][] cases;
+
+	//numbers with the fast paths, their limits and the fallback to the Java parser
+	private static final String[] tokens = {"0", "-0", "+1", "1.5", "-2.25e3", "0.1", "1E10", "1e-10", "3.4028235e38", "3.4028236e38",
+		"1.4e-45", "7e-46", "1e-50", "1e400", "16777216", "16777217", "16777219", "9007199254740993", "123456789012345678901234567890",
+		"1.000000059604644775390625", "1.0000000596046448", "1.00000005960464477539062500000000000001", "0.000000000000000000000123",
+		"5e-324", "2.4703282292062327e-324", "1.7976931348623157e308", "4.9e-324", "1.", ".5", "-.5e1", "NaN", "Infinity", "-Infinity",
+		"0x1p3", "1e+05", "00012.50"};
+
+	@BeforeClass
+	public static void loadCases() throws IOException
+	{
+		File examples = new File(System.getProperty("iRevealLite.examples", "../examples"));
+		jsonFileName = new File(examples, "boiler.json").getPath();
+		uo = new UnitOperation();
+		uo.readUserJsonFile(jsonFileName);
+		uo.updateAllSpeciesList();
+		nInput = uo.getRomInputVector().size();
+		nOutput = uo.getYromOutputVector().size();
+		cases = MassBalanceCorrectorTest.createCases(new File(examples, "iRevealLite.csv").getPath(), nInput);
+	}
+
+	private static VectorFileReader createReader(String text) throws IOException
+	{
+		return new VectorFileReader(new ByteArrayInputStream(text.getBytes("ISO-8859-1")));
+	}
+
+	//the parsed values are the values of the Java parser, bit for bit
+	private static void assertParsed(String token) throws IOException
+	{
+		VectorFileReader in = createReader(" " + token + "\t" + token + "\n");
+		try
+		{
+			assertEquals(token, Float.floatToIntBits(Float.parseFloat(token)), Float.floatToIntBits(in.nextFloat()));
+			assertEquals(token, Double.doubleToLongBits(Double.parseDouble(token)), Double.doubleToLongBits(in.nextDouble()));
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Test
+	public void parseMatchesJavaParser() throws IOException
+	{
+		for (String token : tokens)
+			assertParsed(token);
+	}
+
+	//shortest representations of random floats and doubles, and random decimals with up to 20 digits and exponents around the fast paths
+	@Test
+	public void parseMatchesJavaParserOnRandomNumbers() throws IOException
+	{
+		int i, j, nDigit;
+		Random random = new Random(11);
+		StringBuilder sb = new StringBuilder();
+		for (i=0; i<20000; i++)
+		{
+			assertParsed(Float.toString(Float.intBitsToFloat(random.nextInt())));
+			assertParsed(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			assertParsed(Float.toString(random.nextFloat()*1000));
+			sb.setLength(0);
+			if (random.nextBoolean())
+				sb.append('-');
+			nDigit = 1 + random.nextInt(20);
+			for (j=0; j<nDigit; j++)
+			{
+				if (j==nDigit/2)
+					sb.append('.');
+				sb.append((char)('0' + random.nextInt(10)));
+			}
+			sb.append('e').append(random.nextInt(61) - 30);
+			assertParsed(sb.toString());
+		}
+	}
+
+	@Test
+	public void invalidNumbersAreReportedWithLine() throws IOException
+	{
+		VectorFileReader in = createReader("1 2\n3 abc\n");
+		try
+		{
+			assertEquals(1, in.nextInt());
+			assertEquals(2, in.nextFloat(), 0);
+			assertEquals(3, in.nextDouble(), 0);
+			in.nextFloat();
+			fail("Invalid number was read");
+		}
+		catch(IOException e)
+		{
+			assertEquals("Invalid number abc at line 2", e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+		in = createReader("1.5 3000000000");
+		try
+		{
+			in.nextInt();
+			fail("Invalid integer was read");
+		}
+		catch(IOException e)
+		{
+			assertEquals("Invalid integer 1.5 at line 1", e.getMessage());
+		}
+		try
+		{
+			in.nextInt();
+			fail("Integer overflow was read");
+		}
+		catch(IOException e)
+		{
+			assertEquals("Invalid integer 3000000000 at line 1", e.getMessage());
+		}
+		try
+		{
+			in.nextFloat();
+			fail("Number was read after the end of the file");
+		}
+		catch(EOFException e)
+		{
+			//expected
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	//numbers crossing the end of the byte buffer are read whole
+	@Test
+	public void readAcrossBufferBoundaries() throws IOException
+	{
+		int i;
+		int n = 30000;
+		Random random = new Random(12);
+		float[] expected = new float[n];
+		StringBuilder sb = new StringBuilder();
+		for (i=0; i<n; i++)
+		{
+			expected[i] = random.nextFloat()*(float)Math.pow(10, random.nextInt(20) - 10);
+			sb.append(expected[i]).append(i%7==6 ? "\r\n" : "  \t");
+		}
+		VectorFileReader in = createReader(sb.toString());
+		try
+		{
+			for (i=0; i<n; i++)
+				assertEquals("value " + i, expected[i], in.nextFloat(), 0);
+			assertEquals(n/7+1, in.getLineNumber());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	//the writer writes the bytes of PrintWriter.print() with a tab after each value and PrintWriter.println()
+	@Test
+	public void writerMatchesPrintWriter() throws IOException
+	{
+		int i, j;
+		Random random = new Random(13);
+		float[] v = new float[25];
+		double[] d = new double[25];
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(expected, "ISO-8859-1"));
+		VectorFileWriter out = new VectorFileWriter(actual);
+		for (i=0; i<4000; i++)
+		{
+			for (j=0; j<v.length; j++)
+			{
+				v[j] = j%5==0 ? Float.intBitsToFloat(random.nextInt()) : (float)(random.nextGaussian()*Math.pow(10, random.nextInt(16) - 8));
+				d[j] = j%5==0 ? Double.longBitsToDouble(random.nextLong()) : v[j];
+				pw.print(v[j]);
+				pw.print("\t");
+			}
+			pw.println();
+			out.writeCaseVector(v);
+			for (j=0; j<d.length; j++)
+			{
+				pw.print(d[j]);
+				pw.print("\t");
+			}
+			pw.println();
+			out.writeCaseVector(d, 0, d.length);
+		}
+		pw.print(3 + " " + 4000);
+		pw.println();
+		out.writeHeader(3, 4000);
+		pw.close();
+		out.close();
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	//text of grouped vectors as written by PrintWriter, the cases of group k are the test cases from case k,
+	//the groups are separated by a blank line, bCrlf uses CRLF line terminators and trailing whitespace as written on other systems
+	private static String formatGroups(float[][] v, int nGroup, int nCase, boolean bHeader, boolean bCrlf)
+	{
+		int i, j, k;
+		String eol = bCrlf ? " \r\n" : System.getProperty("line.separator");
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		if (bHeader)
+			pw.print(nGroup + " " + nCase + eol);
+		for (k=0; k<nGroup; k++)
+		{
+			for (j=0; j<nCase; j++)
+			{
+				for (i=0; i<v[k*nCase+j].length; i++)
+				{
+					pw.print(v[k*nCase+j][i]);
+					pw.print("\t");
+				}
+				pw.print(eol);
+			}
+			if (k<nGroup-1)
+				pw.print(eol);
+		}
+		pw.close();
+		return sw.toString();
+	}
+
+	private static void writeFile(File file, String text) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(text.getBytes("ISO-8859-1"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static String readFile(File file) throws IOException
+	{
+		int n;
+		byte[] b = new byte[65536];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			while ((n=in.read(b))>0)
+				bytes.write(b, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+		return bytes.toString("ISO-8859-1");
+	}
+
+	//the corrected file of several groups larger than a block of cases is the file written by the -b loop of PrintWriter before,
+	//byte for byte for any number of threads, and the blank lines between groups may have CRLF terminators and whitespace
+	@Test
+	public void correctedFileMatchesPrintWriterLoop() throws IOException
+	{
+		int i, nThread;
+		int nGroup = 3;
+		int nCase = 300;
+		float[][] raw = new float[nGroup*nCase][];
+		float[][] corrected = new float[nGroup*nCase][];
+		for (i=0; i<raw.length; i++)
+		{
+			raw[i] = cases[i%cases.length].clone();
+			corrected[i] = raw[i].clone();
+			uo.correctCaseVector(corrected[i]);
+		}
+		String expected = formatGroups(corrected, nGroup, nCase, false, false);
+		for (boolean bCrlf : new boolean[]{false, true})
+		{
+			File in = new File(folder.getRoot(), "raw.input");
+			writeFile(in, formatGroups(raw, nGroup, nCase, true, bCrlf));
+			for (nThread=1; nThread<=3; nThread+=2)
+			{
+				File out = new File(folder.getRoot(), "corrected" + nThread + ".output");
+				MassBalanceBatchCorrector mbbc = new MassBalanceBatchCorrector(null, jsonFileName, nThread);
+				assertEquals(0, mbbc.correctVectorFile(in.getPath(), out.getPath()));
+				assertEquals("threads " + nThread + " CRLF " + bCrlf, expected, readFile(out));
+			}
+		}
+	}
+
+	//the failed cases are printed once by the calling thread in case order with their case and group numbers, for any number of threads,
+	//a case with zero outputs has no product of its elements
+	@Test
+	public void failedCasesArePrintedInOrder() throws IOException
+	{
+		int i, j, nThread;
+		int nGroup = 2;
+		int nCase = 600;
+		float[][] raw = new float[nGroup*nCase][];
+		StringBuilder expected = new StringBuilder();
+		String eol = System.getProperty("line.separator");
+		for (i=0; i<raw.length; i++)
+		{
+			raw[i] = cases[i%cases.length].clone();
+			if (i%97==5)
+			{
+				for (j=nInput; j<nInput+nOutput; j++)
+					raw[i][j] = 0;
+			}
+			String message = UnitOperation.getCorrectionFailureMessage(uo.correctCaseVector(raw[i].clone()), null);
+			if (message!=null)
+				expected.append("Case " + (i%nCase + 1) + " of group " + (i/nCase + 1) + ": " + message + eol);
+		}
+		assertTrue(expected.toString().startsWith("Case 6 of group 1: Mass balance failed" + eol));
+		File in = new File(folder.getRoot(), "failed.input");
+		writeFile(in, formatGroups(raw, nGroup, nCase, true, false));
+		for (nThread=1; nThread<=3; nThread+=2)
+		{
+			File out = new File(folder.getRoot(), "failed" + nThread + ".output");
+			ByteArrayOutputStream printed = new ByteArrayOutputStream();
+			PrintStream stdout = System.out;
+			int nFailed;
+			System.setOut(new PrintStream(printed, true));
+			try
+			{
+				nFailed = new MassBalanceBatchCorrector(uo, jsonFileName, nThread).correctVectorFile(in.getPath(), out.getPath());
+			}
+			finally
+			{
+				System.setOut(stdout);
+			}
+			assertEquals("threads " + nThread, expected.toString(), printed.toString());
+			assertEquals("threads " + nThread, expected.toString().split(eol).length, nFailed);
+		}
+	}
+
+	//a file with fewer cases than its header is an error
+	@Test
+	public void missingCasesAreAnError() throws IOException
+	{
+		File in = new File(folder.getRoot(), "short.input");
+		File out = new File(folder.getRoot(), "short.output");
+		String text = formatGroups(cases, 2, 10, false, false);
+		writeFile(in, "2 11" + System.getProperty("line.separator") + text);
+		assertEquals(-1, new MassBalanceBatchCorrector(uo, jsonFileName, 1).correctVectorFile(in.getPath(), out.getPath()));
+	}
+}
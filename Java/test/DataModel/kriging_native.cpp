@@ -0,0 +1,101 @@
+//kriging_native.cpp
+
+//writes the native Kriging model fixtures of KrigingModelTest with CKriging::Write() and the predictions of CKriging::Interpolate()
+//build and run from this directory on a little-endian machine:
+//g++ -I../../../iRevealLite -o kriging_native kriging_native.cpp ../../../iRevealLite/Kriging.cpp ../../../iRevealLite/DesignSite.cpp ../../../iRevealLite/Matrix.cpp
+//./kriging_native
+//each model file kriging_native_<regression>_<correlation>.model has a text file kriging_native_<regression>_<correlation>.predict
+//with one test point per line, the inputs followed by the predicted outputs
+
+#include <stdio.h>
+#include <math.h>
+#include "Kriging.h"
+
+const int nx = 3;
+const int ny = 2;
+const int nds = 20;
+const int npoint = 10;
+const double xlower[nx] = {0, -1, 10};
+const double xrange[nx] = {2, 2, 10};
+
+//fractional parts of the square roots of 2, 3 and 5
+const double alpha[nx] = {0.41421356237309515, 0.7320508075688772, 0.2360679774997898};
+
+//deterministic point i of the input ranges, fractional parts of multiples of an irrational number in each dimension
+void CalcPoint(int i, double* px)
+{
+	for (int k=0; k<nx; k++)
+	{
+		double t = (i + 1)*alpha[k];
+		px[k] = xlower[k] + xrange[k]*(t - floor(t));
+	}
+}
+
+//same function as KrigingModelTest.calcFunction()
+void CalcFunction(double* px, double* py)
+{
+	py[0] = sin(px[0])*px[1] + 0.1*px[2];
+	py[1] = exp(-px[1]*px[1]) + 0.01*px[0]*px[2];
+}
+
+int WriteModel(int iregression, int icorrelation, double lntheta)
+{
+	int i, k;
+	char fname[64];
+	double x[nds][nx];
+	double y[nds][ny];
+	double* ppx[nds];
+	double* ppy[nds];
+	double theta[nx];
+	double px[nx];
+	double py[ny];
+	for (i=0; i<nds; i++)
+	{
+		CalcPoint(i, x[i]);
+		CalcFunction(x[i], y[i]);
+		ppx[i] = x[i];
+		ppy[i] = y[i];
+	}
+	for (k=0; k<nx; k++)
+		theta[k] = exp(lntheta);
+	CKriging krig;
+	krig.SetDimensions(nx, ny, nds);
+	krig.SetRegressionModelOption(iregression);
+	krig.SetCorrelationOption(icorrelation);
+	krig.AllocateMemory();
+	krig.SetDesignSiteInputArray(ppx);
+	krig.SetDesignSiteOutputArray(ppy);
+	krig.NormalizeRawDesignSites();
+	krig.SetThetaVector(theta);
+	krig.CalcAllMatrices();
+	sprintf(fname, "kriging_native_%d_%d.model", iregression, icorrelation);
+	FILE* pf = fopen(fname, "wb");
+	if (pf==NULL)
+		return 1;
+	krig.Write(pf);
+	fclose(pf);
+	sprintf(fname, "kriging_native_%d_%d.predict", iregression, icorrelation);
+	pf = fopen(fname, "w");
+	if (pf==NULL)
+		return 1;
+	for (i=0; i<npoint; i++)
+	{
+		CalcPoint(nds+i, px);
+		krig.Interpolate(px, py);
+		for (k=0; k<nx; k++)
+			fprintf(pf, "%.17g ", px[k]);
+		fprintf(pf, "%.17g %.17g\n", py[0], py[1]);
+	}
+	fclose(pf);
+	return 0;
+}
+
+int main()
+{
+	if (WriteModel(1, 0, -0.5) || WriteModel(2, 3, -1))
+	{
+		printf("Cannot write the model files\n");
+		return 1;
+	}
+	return 0;
+}